@@ -20,16 +20,10 @@
 
 package com.liquidfortress.packetanalyzer.arp;
 
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.ArpPacket;
-import org.pcap4j.packet.IllegalRawDataException;
-import org.pcap4j.packet.Packet;
-import org.pcap4j.packet.namednumber.ArpOperation;
-import org.pcap4j.util.MacAddress;
-
-import java.net.InetAddress;
 
 /**
  * ArpPacketProcessor
@@ -37,28 +31,22 @@ import java.net.InetAddress;
  * Processes ARP packets
  */
 public class ArpPacketProcessor {
+    private static final int ARP_REQUEST = 1;
     private static Logger log = Main.log;
 
 
-    public static void processArpPacket(Packet packet, PcapFileSummary pcapFileSummary) {
-        if (packet == null) {
-            return; // skip empty packets
-        }
-        log.trace("Converting to ARP packet");
-        try {
-            ArpPacket arpPacket = ArpPacket.newPacket(packet.getRawData(), 0, packet.length());
-            ArpPacket.ArpHeader arpHeader = arpPacket.getHeader();
-            ArpOperation arpOperation = arpHeader.getOperation();
-            InetAddress sourceIp = arpHeader.getSrcProtocolAddr();
-            MacAddress sourceMac = arpHeader.getSrcHardwareAddr();
-
-            if (arpOperation == ArpOperation.REQUEST) {
-                // only add / check the source addresses for an ARP request
-                //IpMacTrackerResult result = pcapFileSummary.ipMacTracker.query(sourceIp.getHostAddress(), sourceMac.toString());
+    public static void processArpPacket(PacketDecoder decoder, PcapFileSummary pcapFileSummary) {
+        log.trace("Decoding ARP header");
+        if (!decoder.decodeArp()) {
+            pcapFileSummary.malformedPacketCount++;
+            if (log.isTraceEnabled()) {
+                log.trace("Skipping malformed ARP packet " + pcapFileSummary.packetCount);
             }
-
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
+            return;
+        }
+        if (decoder.getArpOperation() == ARP_REQUEST) {
+            // only add / check the source addresses for an ARP request
+            //IpMacTrackerResult result = pcapFileSummary.ipMacTracker.query(sourceIp.getHostAddress(), sourceMac.toString());
         }
     }
 }
@@ -23,7 +23,9 @@ package com.liquidfortress.packetanalyzer.arp;
 import com.liquidfortress.packetanalyzer.main.Main;
 import org.apache.logging.log4j.core.Logger;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 /**
  * IpMacTracker
@@ -31,11 +33,17 @@ import java.util.HashMap;
  * IP Address-to-MAC Address and MAC Address-to-IP Address tracking
  * based on ARP traffic.  Each mapping obtained from ARP increases the
  * confidence counter.  This is used to detect spoofed IP packets.
+ * <p/>
+ * Possible spoofing is kept as warnings, printed with the report of the
+ * capture, so that captures analyzed in parallel are reported whole.
  */
 public class IpMacTracker {
+    private static final int MAX_REPORTED_WARNINGS = 256;
     private static Logger log = Main.log;
 
     private final HashMap<String, IpMacAddressPair> pairMap = new HashMap<>();
+    private final List<String> warnings = new ArrayList<>();
+    private long warningCount = 0;
 
     public IpMacTracker() {
     }
@@ -53,12 +61,12 @@ public class IpMacTracker {
         } else if (ipPair == null) {
             // MAC address pair was found, but nothing was found for the IP address => likely spoofing of a bogus IP address
             log.trace("*** Possible Spoofing!! IP Address NOT FOUND, MAC Address pair: " + macPair);
-            log.info("*** Possible Spoofing!  Source IP Address " + ipAddress + " may be fake!");
+            warn("*** Possible Spoofing!  Source IP Address " + ipAddress + " may be fake!");
             return IpMacTrackerResult.POSSIBLE_SPOOFING_FAKE_IP_ADDRESS;
         } else if (macPair == null) {
             // IP address pair was found, but nothing found for the MAC address => possible MAC address spoofing?
             log.trace("*** Possible Spoofing!! IP Address pair: " + ipPair + ", MAC Address NOT FOUND");
-            log.info("*** Possible Spoofing!  MAC Address " + macAddress + " may be fake!");
+            warn("*** Possible Spoofing!  MAC Address " + macAddress + " may be fake!");
             return IpMacTrackerResult.POSSIBLE_SPOOFING_FAKE_MAC_ADDRESS;
         } else if (!ipPair.equals(macPair)) {
             // both addresses found, but they do not match => likely spoofing of a node
@@ -66,7 +74,7 @@ public class IpMacTracker {
             // for this school assignment.  If necessary, add DHCP processor to augment the ARP
             // processing that we use for the IpMacTracker
             log.trace("*** Possible Spoofing!! IP Address pair: " + ipPair + ", MAC Address pair: " + macPair);
-            log.info("*** Possible Spoofing!  Source IP Address " + ipAddress + " may not be true sender!");
+            warn("*** Possible Spoofing!  Source IP Address " + ipAddress + " may not be true sender!");
             return IpMacTrackerResult.POSSIBLE_SPOOFING_IMPERSONATING_IP_ADDRESS;
         } else if (ipPair.equals(macPair)) {
             // both addresses found and they match => existing entry found
@@ -82,4 +90,38 @@ public class IpMacTracker {
         return pairMap.get(address);
     }
 
+    private void warn(String warning) {
+        warningCount++;
+        if (warnings.size() < MAX_REPORTED_WARNINGS) {
+            warnings.add(warning);
+        }
+    }
+
+    /**
+     * @return the first MAX_REPORTED_WARNINGS warnings, in the order they were found
+     */
+    public List<String> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * @return the number of warnings, including those that are not reported
+     */
+    public long getWarningCount() {
+        return warningCount;
+    }
+
+    /**
+     * Add the warnings of another tracker, as when merging summaries
+     */
+    public void mergeWarnings(IpMacTracker other) {
+        warningCount += other.warningCount;
+        for (String warning : other.warnings) {
+            if (warnings.size() >= MAX_REPORTED_WARNINGS) {
+                break;
+            }
+            warnings.add(warning);
+        }
+    }
+
 }
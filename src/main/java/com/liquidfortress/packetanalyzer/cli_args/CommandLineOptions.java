@@ -37,6 +37,10 @@ public class CommandLineOptions {
     public static final String INPUT_FILES = "input-files";
     public static final String SILENT = "silent";
     public static final String VERBOSE = "verbose";
+    public static final String THREADS = "threads";
+    public static final String SHARDS = "shards";
+    public static final String SPILL_DIRECTORY = "spill-directory";
+    public static final String FLOW_EXPORT = "flow-export";
     public static final String HELP = "help";
 
     private static final Options options = new Options();
@@ -98,7 +102,7 @@ public class CommandLineOptions {
                 .longOpt(INPUT_FILES)
                 .hasArgs()
                 .argName("INPUT_FILES")
-                .desc("Input files in tcpdump / pcap format")
+                .desc("Input files in tcpdump / pcap / pcapng format, optionally gzip / zstd / lz4 compressed")
                 .build();
         options.addOption(inputFiles);
 
@@ -114,6 +118,49 @@ public class CommandLineOptions {
                 .build();
         options.addOption(verbose);
 
+        Option threads = Option.builder("t")
+                .longOpt(THREADS)
+                .hasArg()
+                .argName("THREADS")
+                .type(Integer.class)
+                .desc("Number of input files to analyze in parallel (default: 1).  Reports are\n" +
+                        "printed in input file order, followed by an aggregate summary")
+                .build();
+        options.addOption(threads);
+
+        Option shards = Option.builder("p")
+                .longOpt(SHARDS)
+                .hasArg()
+                .argName("SHARDS")
+                .type(Integer.class)
+                .desc("Number of flow shards used to analyze each input file in a parallel\n" +
+                        "pipeline (default: 1).  Used by modes 1 and 2; mode 3 correlates\n" +
+                        "packets across flows and always runs on a single thread")
+                .build();
+        options.addOption(shards);
+
+        Option spillDirectory = Option.builder("d")
+                .longOpt(SPILL_DIRECTORY)
+                .hasArg()
+                .argName("SPILL_DIRECTORY")
+                .type(String.class)
+                .desc("Write closed TCP connections to a record log in this directory as they\n" +
+                        "close, instead of keeping them in memory.  The mode 2 report is streamed\n" +
+                        "from the log, so memory use does not grow with the number of connections")
+                .build();
+        options.addOption(spillDirectory);
+
+        Option flowExport = Option.builder("x")
+                .longOpt(FLOW_EXPORT)
+                .hasArg()
+                .argName("FLOW_EXPORT_FILE")
+                .type(String.class)
+                .desc("Export a fixed-width binary record of every TCP and UDP flow to this\n" +
+                        "file: endpoints, packets and bytes in each direction, first and last\n" +
+                        "seen times and the TCP flags sent by each end")
+                .build();
+        options.addOption(flowExport);
+
         Option help = Option.builder("h")
                 .longOpt(HELP)
                 .desc("Print help and usage instructions")
@@ -89,6 +89,35 @@ public class CommandLineValidator {
         return (existsAndWritable || doesNotExistButWritablePath);
     }
 
+    private static boolean isThreadsValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        try {
+            validatedArgs.threads = Integer.valueOf(commandLine.getOptionValue(CommandLineOptions.THREADS));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return validatedArgs.threads > 0;
+    }
+
+    private static boolean isShardsValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        try {
+            validatedArgs.shards = Integer.valueOf(commandLine.getOptionValue(CommandLineOptions.SHARDS));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return validatedArgs.shards > 0;
+    }
+
+    private static boolean isSpillDirectoryValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        validatedArgs.spillDirectory = new File(commandLine.getOptionValue(CommandLineOptions.SPILL_DIRECTORY));
+        return validatedArgs.spillDirectory.isDirectory() && validatedArgs.spillDirectory.canWrite();
+    }
+
+    private static boolean isFlowExportFileValid(CommandLine commandLine, ValidatedArgs validatedArgs) {
+        validatedArgs.flowExportFile = new File(commandLine.getOptionValue(CommandLineOptions.FLOW_EXPORT));
+        File directory = validatedArgs.flowExportFile.getAbsoluteFile().getParentFile();
+        return !validatedArgs.flowExportFile.isDirectory() && (directory != null) && directory.canWrite();
+    }
+
     public static ValidatedArgs validateCommandLineArgs(String[] args) {
         ValidatedArgs validatedArgs = new ValidatedArgs();
         CommandLine commandLine = null;
@@ -128,6 +157,30 @@ public class CommandLineValidator {
             if (commandLine.hasOption(CommandLineOptions.VERBOSE)) {
                 validatedArgs.verbose = true;
             }
+            // threads
+            if (commandLine.hasOption(CommandLineOptions.THREADS) && !isThreadsValid(commandLine, validatedArgs)) {
+                System.out.println("Threads is not valid!  It must be a positive number.");
+                CommandLineOptions.printHelp();
+                System.exit(-5);
+            }
+            // shards
+            if (commandLine.hasOption(CommandLineOptions.SHARDS) && !isShardsValid(commandLine, validatedArgs)) {
+                System.out.println("Shards is not valid!  It must be a positive number.");
+                CommandLineOptions.printHelp();
+                System.exit(-6);
+            }
+            // spill directory
+            if (commandLine.hasOption(CommandLineOptions.SPILL_DIRECTORY) && !isSpillDirectoryValid(commandLine, validatedArgs)) {
+                System.out.println("Spill directory is not valid!  It must be an existing, writable directory.");
+                CommandLineOptions.printHelp();
+                System.exit(-7);
+            }
+            // flow export file
+            if (commandLine.hasOption(CommandLineOptions.FLOW_EXPORT) && !isFlowExportFileValid(commandLine, validatedArgs)) {
+                System.out.println("Flow export file is not valid!  Its directory must exist and be writable.");
+                CommandLineOptions.printHelp();
+                System.exit(-8);
+            }
         } catch (ParseException e) {
             CommandLineOptions.printHelp();
             System.out.println("The error is:  " + e);
@@ -37,6 +37,10 @@ public class ValidatedArgs {
     public File outputFile = null;
     public boolean silent = false;
     public boolean verbose = false;
+    public int threads = 1;
+    public int shards = 1;
+    public File spillDirectory = null;
+    public File flowExportFile = null;
 
     @Override
     public String toString() {
@@ -46,6 +50,10 @@ public class ValidatedArgs {
                 ", outputFile=" + outputFile +
                 ", silent=" + silent +
                 ", verbose=" + verbose +
+                ", threads=" + threads +
+                ", shards=" + shards +
+                ", spillDirectory=" + spillDirectory +
+                ", flowExportFile=" + flowExportFile +
                 '}';
     }
 }
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.decoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * PacketDecoder
+ * <p/>
+ * Flyweight decoder over a captured record.  Each decodeXxx() call checks
+ * one layer and records where it and the next layer start; the accessors
+ * then read header fields straight out of the record buffer.  Nothing is
+ * copied and no objects are created, so one decoder is reused for every
+ * record a thread processes.  All reads use absolute indexes, so the
+ * position and limit of the record buffer are never changed.
+ */
+public class PacketDecoder {
+
+    public static final int ETHERNET_HEADER_LENGTH = 14;
+    public static final int IPV4_MIN_HEADER_LENGTH = 20;
+    public static final int IPV6_HEADER_LENGTH = 40;
+    public static final int TCP_MIN_HEADER_LENGTH = 20;
+    public static final int UDP_HEADER_LENGTH = 8;
+    public static final int ICMP_HEADER_LENGTH = 4;
+    public static final int ARP_HEADER_LENGTH = 8;
+
+    public static final int ETHERTYPE_IPV4 = 0x0800;
+    public static final int ETHERTYPE_ARP = 0x0806;
+    public static final int ETHERTYPE_IPV6 = 0x86DD;
+
+    public static final int IP_PROTOCOL_ICMPV4 = 1;
+    public static final int IP_PROTOCOL_TCP = 6;
+    public static final int IP_PROTOCOL_UDP = 17;
+    public static final int IP_PROTOCOL_ICMPV6 = 58;
+
+    public static final int TCP_FIN = 0x01;
+    public static final int TCP_SYN = 0x02;
+    public static final int TCP_RST = 0x04;
+    public static final int TCP_ACK = 0x10;
+
+    private ByteBuffer buffer;
+    private boolean bigEndian;
+    private int end;           // end of the captured data, exclusive
+    private int linkOffset;    // start of the Ethernet header
+    private int networkOffset; // start of the IP / ARP header
+    private int networkEnd;    // end of the IP datagram, without any Ethernet padding
+    private int transportOffset;
+    private int payloadOffset;
+    private int etherType;
+    private int ipProtocol;
+
+    public PacketDecoder() {
+    }
+
+    /**
+     * Point the decoder at a new record.  The record may start with an
+     * Ethernet header, or with an IP header when a reassembled datagram is
+     * decoded.
+     *
+     * @param buffer buffer holding the record; its byte order does not matter
+     * @param offset index of the first byte of the record
+     * @param length number of captured bytes in the record
+     */
+    public void wrap(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.bigEndian = (buffer.order() == ByteOrder.BIG_ENDIAN);
+        this.end = offset + length;
+        this.linkOffset = offset;
+        this.networkOffset = offset;
+        this.networkEnd = end;
+        this.transportOffset = end;
+        this.payloadOffset = end;
+        this.etherType = 0;
+        this.ipProtocol = 0;
+    }
+
+    private int getByte(int index) {
+        return buffer.get(index) & 0xFF;
+    }
+
+    private int getShort(int index) {
+        short value = buffer.getShort(index);
+        return (bigEndian ? value : Short.reverseBytes(value)) & 0xFFFF;
+    }
+
+    private int getInt(int index) {
+        int value = buffer.getInt(index);
+        return bigEndian ? value : Integer.reverseBytes(value);
+    }
+
+    private long getLong(int index) {
+        long value = buffer.getLong(index);
+        return bigEndian ? value : Long.reverseBytes(value);
+    }
+
+    // Ethernet
+
+    public boolean decodeEthernet() {
+        if (end - linkOffset < ETHERNET_HEADER_LENGTH) {
+            return false;
+        }
+        etherType = getShort(linkOffset + 12);
+        networkOffset = linkOffset + ETHERNET_HEADER_LENGTH;
+        networkEnd = end;
+        return true;
+    }
+
+    public int getEtherType() {
+        return etherType;
+    }
+
+    // IPv4
+
+    public boolean decodeIpv4() {
+        return decodeIpv4(false);
+    }
+
+    /**
+     * Decode a datagram built by the IpDefragmenter.  The datagram fills the
+     * wrapped record exactly, and may be longer than its 16-bit total length
+     * field can express (a ping of death is exactly that).
+     */
+    public boolean decodeReassembledIpv4() {
+        return decodeIpv4(true);
+    }
+
+    private boolean decodeIpv4(boolean reassembled) {
+        if ((end - networkOffset < IPV4_MIN_HEADER_LENGTH) || ((getByte(networkOffset) >>> 4) != 4)) {
+            return false;
+        }
+        int headerLength = getIpv4HeaderLength();
+        int totalLength = getShort(networkOffset + 2);
+        if ((headerLength < IPV4_MIN_HEADER_LENGTH) || (networkOffset + headerLength > end) ||
+                (!reassembled && (totalLength < headerLength))) {
+            return false;
+        }
+        networkEnd = reassembled ? end : Math.min(networkOffset + totalLength, end); // drop Ethernet padding
+        ipProtocol = getByte(networkOffset + 9);
+        transportOffset = networkOffset + headerLength;
+        payloadOffset = transportOffset;
+        return true;
+    }
+
+    public int getIpv4HeaderLength() {
+        return (getByte(networkOffset) & 0x0F) * 4;
+    }
+
+    public int getIpv4TotalLength() {
+        return getShort(networkOffset + 2);
+    }
+
+    public int getIpv4Identification() {
+        return getShort(networkOffset + 4);
+    }
+
+    public boolean getIpv4MoreFragments() {
+        return (getByte(networkOffset + 6) & 0x20) != 0;
+    }
+
+    // fragment offset in bytes
+    public int getIpv4FragmentOffset() {
+        return (getShort(networkOffset + 6) & 0x1FFF) * 8;
+    }
+
+    public boolean isIpv4Fragment() {
+        return getIpv4MoreFragments() || (getIpv4FragmentOffset() > 0);
+    }
+
+    public int getIpv4Source() {
+        return getInt(networkOffset + 12);
+    }
+
+    public int getIpv4Destination() {
+        return getInt(networkOffset + 16);
+    }
+
+    // IPv6
+
+    public boolean decodeIpv6() {
+        if ((end - networkOffset < IPV6_HEADER_LENGTH) || ((getByte(networkOffset) >>> 4) != 6)) {
+            return false;
+        }
+        int payloadLength = getShort(networkOffset + 4);
+        // a payload length of zero is a jumbogram; its length is in an extension header
+        networkEnd = (payloadLength == 0) ? end : Math.min(networkOffset + IPV6_HEADER_LENGTH + payloadLength, end);
+        ipProtocol = getByte(networkOffset + 6);
+        transportOffset = networkOffset + IPV6_HEADER_LENGTH;
+        payloadOffset = transportOffset;
+        return true;
+    }
+
+    public long getIpv6SourceHigh() {
+        return getLong(networkOffset + 8);
+    }
+
+    public long getIpv6SourceLow() {
+        return getLong(networkOffset + 16);
+    }
+
+    public long getIpv6DestinationHigh() {
+        return getLong(networkOffset + 24);
+    }
+
+    public long getIpv6DestinationLow() {
+        return getLong(networkOffset + 32);
+    }
+
+    // IP, common to both versions
+
+    public int getIpProtocol() {
+        return ipProtocol;
+    }
+
+    public int getNetworkOffset() {
+        return networkOffset;
+    }
+
+    public int getNetworkLength() {
+        return networkEnd - networkOffset;
+    }
+
+    public int getTransportOffset() {
+        return transportOffset;
+    }
+
+    // length of the IP payload: the transport header and its data
+    public int getTransportLength() {
+        return networkEnd - transportOffset;
+    }
+
+    // TCP and UDP
+
+    public boolean decodeTcp() {
+        if (getTransportLength() < TCP_MIN_HEADER_LENGTH) {
+            return false;
+        }
+        int headerLength = (getByte(transportOffset + 12) >>> 4) * 4;
+        if ((headerLength < TCP_MIN_HEADER_LENGTH) || (headerLength > getTransportLength())) {
+            return false;
+        }
+        payloadOffset = transportOffset + headerLength;
+        return true;
+    }
+
+    public boolean decodeUdp() {
+        if (getTransportLength() < UDP_HEADER_LENGTH) {
+            return false;
+        }
+        payloadOffset = transportOffset + UDP_HEADER_LENGTH;
+        return true;
+    }
+
+    public int getSourcePort() {
+        return getShort(transportOffset);
+    }
+
+    public int getDestinationPort() {
+        return getShort(transportOffset + 2);
+    }
+
+    public long getTcpSequenceNumber() {
+        return getInt(transportOffset + 4) & 0xFFFFFFFFL;
+    }
+
+    public long getTcpAcknowledgementNumber() {
+        return getInt(transportOffset + 8) & 0xFFFFFFFFL;
+    }
+
+    // the TCP_XXX flag bits
+    public int getTcpFlags() {
+        return getByte(transportOffset + 13);
+    }
+
+    // ICMPv4 and ICMPv6 share the type, code and checksum header
+
+    public boolean decodeIcmp() {
+        if (getTransportLength() < ICMP_HEADER_LENGTH) {
+            return false;
+        }
+        payloadOffset = transportOffset + ICMP_HEADER_LENGTH;
+        return true;
+    }
+
+    public int getIcmpType() {
+        return getByte(transportOffset);
+    }
+
+    // echo requests and replies carry an identifier and a sequence number
+    public boolean hasIcmpEchoHeader() {
+        return getPayloadLength() >= 4;
+    }
+
+    public int getIcmpEchoIdentifier() {
+        return getShort(payloadOffset);
+    }
+
+    public int getIcmpEchoSequenceNumber() {
+        return getShort(payloadOffset + 2);
+    }
+
+    // ARP
+
+    public boolean decodeArp() {
+        if (end - networkOffset < ARP_HEADER_LENGTH) {
+            return false;
+        }
+        int hardwareLength = getByte(networkOffset + 4);
+        int protocolLength = getByte(networkOffset + 5);
+        return networkOffset + ARP_HEADER_LENGTH + 2 * (hardwareLength + protocolLength) <= end;
+    }
+
+    public int getArpOperation() {
+        return getShort(networkOffset + 6);
+    }
+
+    // Payload of the innermost decoded layer
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public int getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    public int getPayloadLength() {
+        return Math.max(0, networkEnd - payloadOffset);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.dispatch;
+
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import com.liquidfortress.packetanalyzer.util.FlowStore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Analyzer
+ * <p/>
+ * A detector or other consumer of decoded packets.  The PacketDispatcher
+ * calls onPacket for the packets of the IP protocols the analyzer asks
+ * for, once the transport header has been decoded, onFlowEnd when a
+ * tracked flow ends and onFinish once the capture has been read.
+ * <p/>
+ * The TCP connection tracking reports client SYNs to onSyn and the
+ * server's answers to onSynAcknowledged.  Analyzers that read the
+ * reassembled TCP streams say so with readsTcpStreams; the streams are
+ * only reassembled when one of the active analyzers does.
+ */
+public interface Analyzer {
+    int[] NO_IP_PROTOCOLS = new int[0];
+
+    /**
+     * @return the IP protocols whose packets are passed to onPacket
+     */
+    int[] getIpProtocols();
+
+    /**
+     * Look at a packet of one of the IP protocols of the analyzer
+     *
+     * @return false to keep the analyzers after this one from seeing the packet
+     */
+    default boolean onPacket(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        return true;
+    }
+
+    /**
+     * @return true if the analyzer wants the reassembled TCP streams passed to onStreamData
+     */
+    default boolean readsTcpStreams() {
+        return false;
+    }
+
+    /**
+     * Called for every client SYN that opens a TCP connection
+     *
+     * @param flow       handle of the connection it opened, or FlowStore.NO_FLOW if it is not tracked
+     * @param packetInfo the SYN; it is not kept
+     */
+    default void onSyn(int flow, PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+    }
+
+    /**
+     * Called when the server answers the SYN of a tracked TCP connection
+     */
+    default void onSynAcknowledged(int flow, PcapFileSummary pcapFileSummary) {
+    }
+
+    /**
+     * Look at the next in-order bytes of an established TCP connection
+     *
+     * @param buffer     buffer holding the bytes
+     * @param offset     index of the first byte
+     * @param length     number of bytes
+     * @param packetInfo packet that made the bytes available
+     */
+    default void onStreamData(ByteBuffer buffer, int offset, int length, PacketInfo packetInfo,
+                              PcapFileSummary pcapFileSummary) {
+    }
+
+    /**
+     * Called when a tracked flow ends or expires, before its handle is reused
+     */
+    default void onFlowEnd(FlowStore flows, int flow, PcapFileSummary pcapFileSummary) {
+    }
+
+    /**
+     * Called once all packets of the capture have been processed
+     */
+    default void onFinish(PcapFileSummary pcapFileSummary) {
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.dispatch;
+
+import com.liquidfortress.packetanalyzer.arp.ArpPacketProcessor;
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.icmp.IcmpPacketProcessor;
+import com.liquidfortress.packetanalyzer.ip.IpPacketProcessor;
+import com.liquidfortress.packetanalyzer.main.DecodePlan;
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import com.liquidfortress.packetanalyzer.tcp.TcpPacketProcessor;
+import com.liquidfortress.packetanalyzer.tcp.TcpStreamReassembler;
+import com.liquidfortress.packetanalyzer.udp.UdpPacketProcessor;
+import com.liquidfortress.packetanalyzer.util.FlowStore;
+import org.apache.logging.log4j.core.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PacketDispatcher
+ * <p/>
+ * Routes each packet through handler tables indexed by EtherType and IP
+ * protocol number, built once per summary from a DecodePlan.  An IP
+ * protocol maps to an array of handlers: the layer processor first,
+ * followed by the onPacket of every active analyzer that asked for the
+ * protocol.  Protocols the plan does not need have no handlers, so
+ * turning an analyzer on or off does not add a branch for every packet.
+ * <p/>
+ * The TCP connection tracking hands SYNs, their acknowledgements and the
+ * reassembled streams to the dispatcher, which passes them on to the
+ * active analyzers.
+ */
+public class PacketDispatcher implements TcpStreamReassembler.StreamConsumer {
+    private static final PacketHandler[] NO_HANDLERS = new PacketHandler[0];
+    private static Logger log = Main.log;
+
+    private final DecodePlan plan;
+    private final PcapFileSummary pcapFileSummary;
+    private final List<Analyzer> analyzers;
+    private final List<Analyzer> streamAnalyzers = new ArrayList<>();
+    private final PacketHandler[] etherTypeHandlers = new PacketHandler[1 << 16];
+    private final PacketHandler[][] ipProtocolHandlers = new PacketHandler[1 << 8][];
+
+    /**
+     * @param plan            what to decode and which analyzers are active
+     * @param pcapFileSummary summary the packets are added to; its analyzers are the active ones
+     */
+    public PacketDispatcher(DecodePlan plan, PcapFileSummary pcapFileSummary) {
+        this.plan = plan;
+        this.pcapFileSummary = pcapFileSummary;
+        this.analyzers = plan.analyzers(pcapFileSummary);
+        Arrays.fill(etherTypeHandlers, (PacketHandler) PacketDispatcher::otherEtherType);
+        Arrays.fill(ipProtocolHandlers, NO_HANDLERS);
+
+        etherTypeHandlers[PacketDecoder.ETHERTYPE_IPV4] = (decoder, summary, packetInfo) ->
+                IpPacketProcessor.processIpv4Packet(decoder, summary, packetInfo, this);
+        etherTypeHandlers[PacketDecoder.ETHERTYPE_IPV6] = (decoder, summary, packetInfo) ->
+                IpPacketProcessor.processIpv6Packet(decoder, summary, packetInfo, this);
+        if (plan.detectAttacks) {
+            etherTypeHandlers[PacketDecoder.ETHERTYPE_ARP] = PacketDispatcher::arp;
+        }
+        addIpProtocolHandler(PacketDecoder.IP_PROTOCOL_TCP, (decoder, summary, packetInfo) ->
+                TcpPacketProcessor.processTcpPacket(decoder, summary, packetInfo, this));
+        addIpProtocolHandler(PacketDecoder.IP_PROTOCOL_UDP, (decoder, summary, packetInfo) ->
+                UdpPacketProcessor.processUdpPacket(decoder, summary, packetInfo, plan));
+        if (plan.decodeIcmp) {
+            addIpProtocolHandler(PacketDecoder.IP_PROTOCOL_ICMPV4, IcmpPacketProcessor::processIcmpv4Packet);
+            addIpProtocolHandler(PacketDecoder.IP_PROTOCOL_ICMPV6, IcmpPacketProcessor::processIcmpv6Packet);
+        }
+        for (Analyzer analyzer : analyzers) {
+            for (int ipProtocol : analyzer.getIpProtocols()) {
+                addIpProtocolHandler(ipProtocol, analyzer::onPacket);
+            }
+            if (analyzer.readsTcpStreams()) {
+                streamAnalyzers.add(analyzer);
+            }
+        }
+        if (!analyzers.isEmpty()) {
+            FlowStore tcpFlows = pcapFileSummary.activeTcpConnections.getFlows();
+            pcapFileSummary.activeTcpConnections.setFlowEndListener((int flow) -> flowEnded(tcpFlows, flow));
+            FlowStore udpFlows = pcapFileSummary.activeUdpFlows.getFlows();
+            pcapFileSummary.activeUdpFlows.setFlowEndListener((int flow) -> flowEnded(udpFlows, flow));
+            pcapFileSummary.activeTcpConnections.getFlows().setSynAcknowledgedListener(this::synAcknowledged);
+        }
+    }
+
+    private void addIpProtocolHandler(int ipProtocol, PacketHandler handler) {
+        PacketHandler[] handlers = ipProtocolHandlers[ipProtocol];
+        handlers = Arrays.copyOf(handlers, handlers.length + 1);
+        handlers[handlers.length - 1] = handler;
+        ipProtocolHandlers[ipProtocol] = handlers;
+    }
+
+    private static boolean arp(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        pcapFileSummary.nonIpPacketCount++;
+        ArpPacketProcessor.processArpPacket(decoder, pcapFileSummary);
+        return true;
+    }
+
+    private static boolean otherEtherType(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        pcapFileSummary.nonIpPacketCount++;
+        if (log.isTraceEnabled()) {
+            log.trace("Skipping packet with EtherType: " + decoder.getEtherType());
+        }
+        return true;
+    }
+
+    private void flowEnded(FlowStore flows, int flow) {
+        for (Analyzer analyzer : analyzers) {
+            analyzer.onFlowEnd(flows, flow, pcapFileSummary);
+        }
+    }
+
+    public DecodePlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return true if an active analyzer reads the reassembled TCP streams
+     */
+    public boolean readsTcpStreams() {
+        return !streamAnalyzers.isEmpty();
+    }
+
+    /**
+     * Pass a client SYN to the analyzers
+     *
+     * @param flow handle of the connection it opened, or FlowStore.NO_FLOW if it is not tracked
+     */
+    public void synSent(int flow, PacketInfo packetInfo) {
+        for (Analyzer analyzer : analyzers) {
+            analyzer.onSyn(flow, packetInfo, pcapFileSummary);
+        }
+    }
+
+    private void synAcknowledged(int flow) {
+        for (Analyzer analyzer : analyzers) {
+            analyzer.onSynAcknowledged(flow, pcapFileSummary);
+        }
+    }
+
+    /**
+     * Pass the next in-order bytes of a TCP stream to the analyzers that read the streams
+     */
+    @Override
+    public void streamData(ByteBuffer data, int offset, int length, PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+        for (Analyzer analyzer : streamAnalyzers) {
+            analyzer.onStreamData(data, offset, length, packetInfo, pcapFileSummary);
+        }
+    }
+
+    /**
+     * Pass a decoded ethernet frame to the handler of its EtherType
+     */
+    public void dispatchEtherType(PacketDecoder decoder, PacketInfo packetInfo) {
+        etherTypeHandlers[decoder.getEtherType()].handle(decoder, pcapFileSummary, packetInfo);
+    }
+
+    /**
+     * Pass a decoded IP packet to the handlers of its protocol, in order,
+     * until one of them returns false
+     */
+    public void dispatchIpProtocol(int ipProtocol, PacketDecoder decoder, PacketInfo packetInfo) {
+        PacketHandler[] handlers = ipProtocolHandlers[ipProtocol];
+        if ((handlers.length == 0) && log.isTraceEnabled()) {
+            log.trace("Skipping packet with IP protocol: " + ipProtocol);
+        }
+        for (PacketHandler handler : handlers) {
+            if (!handler.handle(decoder, pcapFileSummary, packetInfo)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Let the analyzers know that every packet has been processed
+     */
+    public void finish() {
+        for (Analyzer analyzer : analyzers) {
+            analyzer.onFinish(pcapFileSummary);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.dispatch;
+
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+
+/**
+ * PacketHandler
+ * <p/>
+ * Handles the packets of one EtherType or IP protocol
+ */
+@FunctionalInterface
+public interface PacketHandler {
+    /**
+     * @return false if the packet was malformed or has been fully dealt
+     * with, so the handlers after this one must not see it
+     */
+    boolean handle(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo);
+}
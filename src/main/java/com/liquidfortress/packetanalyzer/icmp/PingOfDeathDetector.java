@@ -20,52 +20,68 @@
 
 package com.liquidfortress.packetanalyzer.icmp;
 
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.dispatch.Analyzer;
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.IncidentTracker;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.Packet;
 
 /**
  * PingOfDeathDetector
  * <p/>
  * Detect Ping of Death attacks
  */
-public class PingOfDeathDetector {
+public class PingOfDeathDetector implements Analyzer {
+    private static final int[] IP_PROTOCOLS = {PacketDecoder.IP_PROTOCOL_ICMPV4};
     private final static int MAX_PING_LENGTH = 65515;  // bytes
     private final static int MAX_PING_PAYLOAD = 65507; // bytes
     private static Logger log = Main.log;
-    private boolean attackInProgress = false;
-    private AttackSummary attackSummary = null;
+    private final IncidentTracker incidents = new IncidentTracker("PING OF DEATH"); // keyed by target address
 
-    private boolean isPingOfDeath(Packet packet) {
-        return (((packet.getRawData() != null) && (packet.getRawData().length > MAX_PING_LENGTH)) ||
-                ((packet.getPayload() != null) && (packet.getPayload().getRawData() != null) &&
-                        (packet.getPayload().getRawData().length > MAX_PING_PAYLOAD)));
+    // only a reassembled datagram can be this long
+    private boolean isPingOfDeath(PacketDecoder decoder) {
+        int icmpLength = decoder.getTransportLength();
+        return (icmpLength > MAX_PING_LENGTH) || (icmpLength - PacketDecoder.ICMP_HEADER_LENGTH > MAX_PING_PAYLOAD);
     }
 
-    public boolean detect(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
+    @Override
+    public int[] getIpProtocols() {
+        return IP_PROTOCOLS;
+    }
+
+    // the packets of a Ping of Death are not analyzed any further
+    @Override
+    public boolean onPacket(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        return !detect(decoder, pcapFileSummary, packetInfo);
+    }
 
-        if (isPingOfDeath(packet) && !attackInProgress) { // attack first detected
-            log.trace("*** PING OF DEATH detected!");
-            attackInProgress = true;
-            attackSummary = new AttackSummary();
-            attackSummary.setAttackName("PING OF DEATH");
-            attackSummary.addSourceIpAndPort(sourceAddress);
-            attackSummary.addTargetIpAndPort(destinationAddress);
-            attackSummary.setStartTimestamp(packetInfo.get(PacketInfo.TIMESTAMP));
-        } else if (isPingOfDeath(packet) && attackInProgress) { // add more details while attack in progress
-            attackSummary.addSourceIpAndPort(sourceAddress);
-            attackSummary.addTargetIpAndPort(destinationAddress);
-        } else if (!isPingOfDeath(packet) && attackInProgress) { // attack ended, close out attack details
-            attackInProgress = false;
-            attackSummary.setEndTimestamp(packetInfo.get(PacketInfo.TIMESTAMP));
-            pcapFileSummary.attackSummaries.add(attackSummary);
-            this.attackSummary = null;
+    public boolean detect(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        boolean pingOfDeath = isPingOfDeath(decoder);
+        long targetHigh = packetInfo.getDestinationAddressHigh();
+        long targetLow = packetInfo.getDestinationAddressLow();
+        int incident = incidents.find(targetHigh, targetLow);
+        if (pingOfDeath) {
+            if (incident == IncidentTracker.NO_INCIDENT) { // attack first detected
+                log.trace("*** PING OF DEATH detected!");
+                incident = incidents.open(targetHigh, targetLow, packetInfo.getTimestampNanos(), pcapFileSummary);
+            }
+            // add more details while attack in progress
+            incidents.update(incident, packetInfo.getTimestampNanos());
+            AttackSummary attackSummary = incidents.getAttackSummary(incident);
+            attackSummary.addSourceIpAndPort(packetInfo.getSourceAddress());
+            attackSummary.addTargetIpAndPort(packetInfo.getDestinationAddress());
+        } else if (incident != IncidentTracker.NO_INCIDENT) { // attack ended, close out attack details
+            incidents.close(incident, packetInfo.getTimestampNanos(), pcapFileSummary);
         }
-        return this.attackInProgress;
+        return pingOfDeath;
+    }
+
+    // report the attacks that are still in progress at the end of the capture
+    @Override
+    public void onFinish(PcapFileSummary pcapFileSummary) {
+        incidents.closeAll(pcapFileSummary);
     }
 }
@@ -20,84 +20,188 @@
 
 package com.liquidfortress.packetanalyzer.icmp;
 
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.dispatch.Analyzer;
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.IncidentTracker;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import com.liquidfortress.packetanalyzer.util.AddressTable;
+import com.liquidfortress.packetanalyzer.util.FlowHash;
+import com.liquidfortress.packetanalyzer.util.RecencyList;
+import com.liquidfortress.packetanalyzer.util.SlidingHyperLogLog;
 import org.apache.logging.log4j.core.Logger;
 
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.Arrays;
 
 /**
  * SmurfDetector
  * <p/>
  * Detect smurf attacks
+ * <p/>
+ * Each victim address counts the distinct addresses that sent it echo
+ * replies within the lookback window in a SlidingHyperLogLog sketch.  The
+ * count is exact up to SlidingHyperLogLog.EXACT_LIMIT repliers, which
+ * covers the detection threshold, and estimated beyond that, so a
+ * reflected flood from any number of amplifiers costs each victim the
+ * same fixed memory and each reply a constant amount of work.  Once a
+ * victim's count has been estimated, the end of its attack is judged on
+ * the estimate too, and the attack summary reports the largest estimate
+ * with its standard error.  Only the
+ * latest replies are kept, to name the sources when an attack is first
+ * detected.  Victims that have received no reply for a whole window are
+ * expired from the oldest end of a RecencyList.
  */
-public class SmurfDetector {
+public class SmurfDetector implements Analyzer {
+    private static final int[] IP_PROTOCOLS = {PacketDecoder.IP_PROTOCOL_ICMPV4};
     private static final int DETECTION_SCORE = 21;
     private static final long LOOKBACK_WINDOW = 600; //milliseconds
+    private static final int BUCKET_COUNT = 6;
+    private static final long BUCKET_NANOS = LOOKBACK_WINDOW * 1000000L / BUCKET_COUNT;
+    private static final int SKETCH_PRECISION = 8; // 256 registers per bucket, a standard error of 6.5%
+    private static final int RECENT_REPLIES = 64; // replies whose sources are reported when an attack is first detected
+    private static final int MAX_REPORTED_SOURCES = 256; // a flood usually comes from far more amplifiers
     private static Logger log = Main.log;
-    private final HashMap<String, LinkedHashSet<PacketInfo>> recentEchoReplies = new HashMap<>();
-    private boolean attackInProgress = false;
-    private AttackSummary attackSummary = null;
+    private final IncidentTracker incidents = new IncidentTracker("SMURF ATTACK"); // keyed by victim address
+
+    // per victim state, indexed by the handle kept in victims
+    private final AddressTable victims = new AddressTable();
+    private final RecencyList recentVictims = new RecencyList();
+    private final SlidingHyperLogLog repliers = new SlidingHyperLogLog(SKETCH_PRECISION, BUCKET_COUNT, BUCKET_NANOS);
+    private long[] victimHighs = new long[0];
+    private long[] victimLows = new long[0];
+    private long[] lastReplyNanos = new long[0];
+    private long[] recentReplyNanos = new long[0];  // RECENT_REPLIES per victim, ring of the latest replies
+    private long[] recentSourceHighs = new long[0];
+    private long[] recentSourceLows = new long[0];
+    private int[] recentReplyCounts = new int[0];
+
+    @Override
+    public int[] getIpProtocols() {
+        return IP_PROTOCOLS;
+    }
+
+    // the ICMP header has been decoded; only echo replies are counted
+    @Override
+    public boolean onPacket(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        if ((decoder.getIcmpType() == IcmpPacketProcessor.ICMPV4_ECHO_REPLY) && decoder.hasIcmpEchoHeader()) {
+            add(packetInfo, pcapFileSummary);
+        }
+        return true;
+    }
 
     public void add(PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
         if (packetInfo == null) {
             throw new IllegalArgumentException("packetInfo cannot be null!");
         }
-        // add the packetInfo
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        Instant currentTime = Timestamp.valueOf(packetInfo.get(PacketInfo.TIMESTAMP)).toInstant();
-        Instant lookbackStart = currentTime.minusMillis(LOOKBACK_WINDOW);
-
-        LinkedHashSet<PacketInfo> packetInfos = recentEchoReplies.get(destinationAddress);
-        if (packetInfos == null) {
-            packetInfos = new LinkedHashSet<>();
-            packetInfos.add(packetInfo);
+        long currentTime = packetInfo.getTimestampNanos();
+        long lookbackStart = currentTime - LOOKBACK_WINDOW * 1000000L;
+        expireVictims(lookbackStart, pcapFileSummary);
+
+        long victimHigh = packetInfo.getDestinationAddressHigh();
+        long victimLow = packetInfo.getDestinationAddressLow();
+        int victim = victims.get(victimHigh, victimLow);
+        if (victim == AddressTable.NO_VALUE) {
+            victim = allocateVictim(victimHigh, victimLow);
         } else {
-            // prune packetInfos that are beyond the lookback window
-            LinkedHashSet<PacketInfo> keep = new LinkedHashSet<>();
-            for (PacketInfo pi : packetInfos) {
-                Instant packetTime = Timestamp.valueOf(pi.get(PacketInfo.TIMESTAMP)).toInstant();
-                if (packetTime.isAfter(lookbackStart)) {
-                    keep.add(pi);
-                }
+            recentVictims.touch(victim);
+        }
+        lastReplyNanos[victim] = currentTime;
+        long sourceHigh = packetInfo.getSourceAddressHigh();
+        long sourceLow = packetInfo.getSourceAddressLow();
+        repliers.add(victim, FlowHash.mix(sourceHigh ^ FlowHash.mix(sourceLow)), currentTime);
+        int recent = victim * RECENT_REPLIES + (recentReplyCounts[victim]++ % RECENT_REPLIES);
+        recentReplyNanos[recent] = currentTime;
+        recentSourceHighs[recent] = sourceHigh;
+        recentSourceLows[recent] = sourceLow;
+
+        long distinctRepliers = repliers.estimate(victim, currentTime);
+        int incident = incidents.find(victimHigh, victimLow);
+        if (distinctRepliers >= DETECTION_SCORE && incident == IncidentTracker.NO_INCIDENT) { // attack first detected
+            log.trace("*** SMURF ATTACK detected! " + distinctRepliers + " distinct repliers" + (repliers.isExact(victim) ?
+                    "" : String.format(" (+/- %.1f%%)", 100.0 * repliers.getStandardError())));
+            incident = incidents.open(victimHigh, victimLow, lookbackStart, pcapFileSummary);
+            incidents.update(incident, currentTime);
+            AttackSummary attackSummary = incidents.getAttackSummary(incident);
+            attackSummary.addTargetIpAndPort(packetInfo.getDestinationAddress());
+            addRecentSources(victim, lookbackStart, attackSummary);
+            addEstimate(victim, distinctRepliers, attackSummary);
+        } else if (distinctRepliers >= DETECTION_SCORE) { // add more details while attack in progress
+            incidents.update(incident, currentTime);
+            AttackSummary attackSummary = incidents.getAttackSummary(incident);
+            if (attackSummary.getSourceIpAndPorts().size() < MAX_REPORTED_SOURCES) {
+                attackSummary.addSourceIpAndPort(packetInfo.getSourceAddress());
             }
-            keep.add(packetInfo);
-            packetInfos = keep;
+            addEstimate(victim, distinctRepliers, attackSummary);
+        } else if (incident != IncidentTracker.NO_INCIDENT) { // attack ended, close out attack details
+            incidents.close(incident, currentTime, pcapFileSummary);
         }
-        recentEchoReplies.put(destinationAddress, packetInfos);
+    }
 
-        // calculate detection score
-        HashSet<String> sourceAddressSet = new HashSet<>();
-        for (PacketInfo recentPi : packetInfos) {
-            String sourceAddress = recentPi.get(PacketInfo.SOURCE_ADDRESS);
-            sourceAddressSet.add(sourceAddress);
+    // report the attacks that are still in progress at the end of the capture
+    @Override
+    public void onFinish(PcapFileSummary pcapFileSummary) {
+        incidents.closeAll(pcapFileSummary);
+    }
+
+    /**
+     * @return the number of victim addresses with echo replies in the lookback window
+     */
+    public int getTrackedVictimCount() {
+        return victims.size();
+    }
+
+    // the reported sources are capped, so the size of a larger attack is given by the largest estimate
+    private void addEstimate(int victim, long distinctRepliers, AttackSummary attackSummary) {
+        if (!repliers.isExact(victim) && (distinctRepliers > attackSummary.getEstimatedSourceCount())) {
+            attackSummary.setEstimatedSourceCount(distinctRepliers, repliers.getStandardError());
         }
-        if (sourceAddressSet.size() >= DETECTION_SCORE && !attackInProgress) { // attack first detected
-            log.trace("*** SMURF ATTACK detected!");
-            attackInProgress = true;
-            attackSummary = new AttackSummary();
-            attackSummary.setAttackName("SMURF ATTACK");
-            attackSummary.setStartTimestamp(lookbackStart.toString());
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS));
+    }
+
+    // the sources of the latest replies within the lookback window, oldest first
+    private void addRecentSources(int victim, long lookbackStart, AttackSummary attackSummary) {
+        int count = Math.min(recentReplyCounts[victim], RECENT_REPLIES);
+        for (int i = recentReplyCounts[victim] - count; i < recentReplyCounts[victim]; i++) {
+            int recent = victim * RECENT_REPLIES + (i % RECENT_REPLIES);
+            if (recentReplyNanos[recent] > lookbackStart) {
+                attackSummary.addSourceIpAndPort(PacketInfo.formatAddress(recentSourceHighs[recent], recentSourceLows[recent]));
             }
-        } else if (sourceAddressSet.size() >= DETECTION_SCORE && attackInProgress) { // add more details while attack in progress
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS));
+        }
+    }
+
+    // drop victims that have had no reply since lookbackStart; their attack, if any, ended with that reply
+    private void expireVictims(long lookbackStart, PcapFileSummary pcapFileSummary) {
+        int victim = recentVictims.getOldest();
+        while ((victim != RecencyList.NONE) && (lastReplyNanos[victim] <= lookbackStart)) {
+            int incident = incidents.find(victimHighs[victim], victimLows[victim]);
+            if (incident != IncidentTracker.NO_INCIDENT) {
+                incidents.close(incident, lastReplyNanos[victim], pcapFileSummary);
             }
-        } else if (sourceAddressSet.size() < DETECTION_SCORE && attackInProgress) { // attack ended, close out attack details
-            attackInProgress = false;
-            attackSummary.setEndTimestamp(currentTime.toString());
-            pcapFileSummary.attackSummaries.add(attackSummary);
-            this.attackSummary = null;
+            victims.remove(victimHighs[victim], victimLows[victim]);
+            recentVictims.release(victim);
+            victim = recentVictims.getOldest();
+        }
+    }
+
+    private int allocateVictim(long victimHigh, long victimLow) {
+        int victim = recentVictims.allocate();
+        if (lastReplyNanos.length < recentVictims.getCapacity()) {
+            int capacity = recentVictims.getCapacity();
+            victimHighs = Arrays.copyOf(victimHighs, capacity);
+            victimLows = Arrays.copyOf(victimLows, capacity);
+            lastReplyNanos = Arrays.copyOf(lastReplyNanos, capacity);
+            recentReplyNanos = Arrays.copyOf(recentReplyNanos, capacity * RECENT_REPLIES);
+            recentSourceHighs = Arrays.copyOf(recentSourceHighs, capacity * RECENT_REPLIES);
+            recentSourceLows = Arrays.copyOf(recentSourceLows, capacity * RECENT_REPLIES);
+            recentReplyCounts = Arrays.copyOf(recentReplyCounts, capacity);
+            repliers.ensureCapacity(capacity);
         }
+        victimHighs[victim] = victimHigh;
+        victimLows[victim] = victimLow;
+        recentReplyCounts[victim] = 0;
+        repliers.clear(victim);
+        victims.put(victimHigh, victimLow, victim);
+        return victim;
     }
 }
@@ -20,40 +20,135 @@
 
 package com.liquidfortress.packetanalyzer.ip;
 
-import org.pcap4j.packet.IpV4Packet;
-import org.pcap4j.util.IpV4Helper;
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * IpDefragmenter
  * <p/>
- * Tracks and assembles fragmented IP packets
+ * Tracks and assembles fragmented IP packets.  Fragments are copied out of
+ * the record buffer (they are the only packets that are), and a datagram is
+ * assembled as soon as every byte of it has arrived, in whatever order the
+ * fragments came.
  */
 public class IpDefragmenter {
+    private static final int MAX_PENDING_DATAGRAMS = 1024;
+    // the last fragment may start at offset 65528 and be a full datagram long, as in a ping of death
+    private static final int MAX_PAYLOAD_LENGTH = 0x1FFF * 8 + 0xFFFF;
+    private static final int BLOCK_SIZE = 8; // fragment offsets count 8-byte blocks
 
-    private final HashMap<Integer, List<IpV4Packet>> fragments = new HashMap<>();
+    // fragments belong together when source, destination, protocol and identification all match
+    private static class FragmentKey {
+        private final int sourceAddress;
+        private final int destinationAddress;
+        private final int protocolAndIdentification;
+
+        FragmentKey(int sourceAddress, int destinationAddress, int protocol, int identification) {
+            this.sourceAddress = sourceAddress;
+            this.destinationAddress = destinationAddress;
+            this.protocolAndIdentification = (protocol << 16) | identification;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            FragmentKey that = (FragmentKey) o;
+
+            return sourceAddress == that.sourceAddress &&
+                    destinationAddress == that.destinationAddress &&
+                    protocolAndIdentification == that.protocolAndIdentification;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * sourceAddress + destinationAddress) + protocolAndIdentification;
+        }
+    }
+
+    private static class PartialDatagram {
+        private byte[] header;           // IP header of the fragment at offset 0
+        private byte[] payload = new byte[2048];
+        private final BitSet receivedBlocks = new BitSet();
+        private int payloadLength = -1; // known once the last fragment has arrived
+    }
+
+    private final LinkedHashMap<FragmentKey, PartialDatagram> fragments =
+            new LinkedHashMap<FragmentKey, PartialDatagram>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<FragmentKey, PartialDatagram> eldest) {
+                    return size() > MAX_PENDING_DATAGRAMS; // drop datagrams that will never be completed
+                }
+            };
 
     public IpDefragmenter() {
     }
 
-    public void addFragment(int identification, IpV4Packet fragment) {
-        List<IpV4Packet> collected = fragments.get(identification);
-        if (collected == null) {
-            collected = new LinkedList<IpV4Packet>();
+    /**
+     * Add the IPv4 fragment the decoder is positioned on
+     *
+     * @param decoder decoder positioned on a fragment by decodeIpv4()
+     * @return the reassembled datagram, starting with its IP header, once every fragment
+     * has arrived; null while fragments are still missing
+     */
+    public ByteBuffer addFragment(PacketDecoder decoder) {
+        int offset = decoder.getIpv4FragmentOffset();
+        int length = decoder.getTransportLength();
+        if (offset + length > MAX_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException("Fragment extends beyond the largest possible datagram");
+        }
+        FragmentKey key = new FragmentKey(decoder.getIpv4Source(), decoder.getIpv4Destination(),
+                decoder.getIpProtocol(), decoder.getIpv4Identification());
+        PartialDatagram datagram = fragments.get(key);
+        if (datagram == null) {
+            datagram = new PartialDatagram();
+            fragments.put(key, datagram);
+        }
+        ByteBuffer buffer = decoder.getBuffer();
+        if (offset == 0) {
+            datagram.header = new byte[decoder.getIpv4HeaderLength()];
+            copy(buffer, decoder.getNetworkOffset(), datagram.header, 0, datagram.header.length);
+        }
+        if (offset + length > datagram.payload.length) {
+            byte[] grown = new byte[Math.max(offset + length, datagram.payload.length * 2)];
+            System.arraycopy(datagram.payload, 0, grown, 0, datagram.payload.length);
+            datagram.payload = grown;
+        }
+        copy(buffer, decoder.getTransportOffset(), datagram.payload, offset, length);
+        datagram.receivedBlocks.set(offset / BLOCK_SIZE, (offset + length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        if (!decoder.getIpv4MoreFragments()) {
+            datagram.payloadLength = offset + length;
+        }
+
+        if ((datagram.header == null) || (datagram.payloadLength < 0) ||
+                (datagram.receivedBlocks.nextClearBit(0) * BLOCK_SIZE < datagram.payloadLength)) {
+            return null; // we need all the fragments before this packet can be processed further
         }
-        collected.add(fragment);
-        fragments.put(identification, collected);
+        fragments.remove(key);
+        return assemble(datagram);
     }
 
-    public IpV4Packet defragment(int identification) {
-        List<IpV4Packet> collected = fragments.get(identification);
-        if (collected == null) {
-            throw new IllegalArgumentException("No fragments collected for ID: " + identification);
+    private static void copy(ByteBuffer buffer, int index, byte[] destination, int destinationOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            destination[destinationOffset + i] = buffer.get(index + i);
         }
-        fragments.remove(identification);
-        return IpV4Helper.defragment(collected);
+    }
+
+    private static ByteBuffer assemble(PartialDatagram datagram) {
+        int headerLength = datagram.header.length;
+        byte[] assembled = new byte[headerLength + datagram.payloadLength];
+        System.arraycopy(datagram.header, 0, assembled, 0, headerLength);
+        System.arraycopy(datagram.payload, 0, assembled, headerLength, datagram.payloadLength);
+        int totalLength = Math.min(assembled.length, 0xFFFF);
+        assembled[2] = (byte) (totalLength >>> 8);
+        assembled[3] = (byte) totalLength;
+        assembled[6] &= 0x40; // keep Don't Fragment; clear More Fragments and the fragment offset
+        assembled[7] = 0;
+        return ByteBuffer.wrap(assembled);
     }
 }
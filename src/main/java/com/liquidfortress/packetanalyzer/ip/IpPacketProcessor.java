@@ -20,22 +20,14 @@
 
 package com.liquidfortress.packetanalyzer.ip;
 
-import com.liquidfortress.packetanalyzer.icmp.IcmpPacketProcessor;
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.dispatch.PacketDispatcher;
 import com.liquidfortress.packetanalyzer.main.Main;
-import com.liquidfortress.packetanalyzer.main.Mode;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
-import com.liquidfortress.packetanalyzer.tcp.TcpPacketProcessor;
-import com.liquidfortress.packetanalyzer.udp.UdpPacketProcessor;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.IllegalRawDataException;
-import org.pcap4j.packet.IpV4Packet;
-import org.pcap4j.packet.IpV6Packet;
-import org.pcap4j.packet.Packet;
-import org.pcap4j.packet.namednumber.IpNumber;
 
-import java.net.Inet4Address;
-import java.net.Inet6Address;
+import java.nio.ByteBuffer;
 
 /**
  * IpPacketProcessor
@@ -45,99 +37,82 @@ import java.net.Inet6Address;
 public class IpPacketProcessor {
     private static Logger log = Main.log;
 
+    private static void addUniqueIpAddresses(PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        if (log.isTraceEnabled()) {
+            log.trace("Adding IP addresses to set:  source: " + packetInfo.getSourceAddress() +
+                    ", dest: " + packetInfo.getDestinationAddress());
+        }
+        pcapFileSummary.uniqueIpAddresses.add(packetInfo.getSourceAddressHigh(), packetInfo.getSourceAddressLow());
+        pcapFileSummary.uniqueIpAddresses.add(packetInfo.getDestinationAddressHigh(), packetInfo.getDestinationAddressLow());
+    }
 
-    public static void processIpv4Packet(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
-            return; // skip empty packets
+    public static boolean processIpv4Packet(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo,
+                                            PacketDispatcher dispatcher) {
+        log.trace("Decoding IPv4 header");
+        if (!decoder.decodeIpv4()) {
+            pcapFileSummary.malformedPacketCount++;
+            if (log.isTraceEnabled()) {
+                log.trace("Skipping malformed IPv4 packet " + pcapFileSummary.packetCount);
+            }
+            return false;
         }
-        try {
-            log.trace("Converting to IPv4 packet");
-            IpV4Packet ipV4Packet = IpV4Packet.newPacket(packet.getRawData(), 0, packet.length());
-            IpV4Packet.IpV4Header ipV4Header = ipV4Packet.getHeader();
-            boolean fragmented = ipV4Header.getMoreFragmentFlag() || (ipV4Header.getFragmentOffset() > 0);
+        if (decoder.isIpv4Fragment()) {
             try {
-                if (fragmented) {
-                    int identification = ipV4Header.getIdentificationAsInt();
-                    pcapFileSummary.ipDefragmenter.addFragment(identification, ipV4Packet);
-                    if ((!ipV4Header.getMoreFragmentFlag()) && (ipV4Header.getFragmentOffset() > 0)) {
-                        ipV4Packet = pcapFileSummary.ipDefragmenter.defragment(identification);
-                        ipV4Header = ipV4Packet.getHeader();
-                        packetInfo.put(PacketInfo.IP_IDENTIFICATION, Integer.toString(identification));
-                        packetInfo.put(PacketInfo.WAS_FRAGMENTED, Boolean.TRUE.toString());
-                    } else {
-                        return; // we need all the fragments before this packet can be processed further
-                    }
+                int identification = decoder.getIpv4Identification();
+                ByteBuffer datagram = pcapFileSummary.ipDefragmenter.addFragment(decoder);
+                if (datagram == null) {
+                    return false; // we need all the fragments before this packet can be processed further
                 }
+                decoder.wrap(datagram, 0, datagram.remaining());
+                decoder.decodeReassembledIpv4();
+                packetInfo.setIpIdentification(identification);
+                packetInfo.setFlag(PacketInfo.WAS_FRAGMENTED);
             } catch (IllegalArgumentException e) {
                 log.trace("Exception occurred while processing a packet. Exception was: " + e);
-                return;
+                return false;
             }
-            Inet4Address sourceAddress = ipV4Header.getSrcAddr();
-            Inet4Address destAddress = ipV4Header.getDstAddr();
+        }
 
-            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                //pcapFileSummary.ipMacTracker.query(sourceAddress.getHostAddress(), sourceMac.toString());
-            }
-            packetInfo.put(PacketInfo.SOURCE_ADDRESS, sourceAddress.getHostAddress());
-            packetInfo.put(PacketInfo.DESTINATION_ADDRESS, destAddress.getHostAddress());
-            log.trace("Adding IPv4 addresses to set:  source: " + sourceAddress.getHostAddress() + ", dest: " + destAddress.getHostAddress());
-            pcapFileSummary.uniqueIpAddresses.add(sourceAddress.getHostAddress());
-            pcapFileSummary.uniqueIpAddresses.add(destAddress.getHostAddress());
-            IpNumber ipNumber = ipV4Header.getProtocol();
-            packetInfo.put(PacketInfo.IP_PROTOCOL, ipNumber.toString());
-            pcapFileSummary.ipProtocolCounter.increment(ipNumber);
-            Packet payload = ipV4Packet.getPayload();
-            if (ipNumber == IpNumber.ICMPV4) {
-                IcmpPacketProcessor.processIcmpv4Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.ICMPV6) {
-                IcmpPacketProcessor.processIcmpv6Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.TCP) {
-                TcpPacketProcessor.processTcpPacket(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.UDP) {
-                UdpPacketProcessor.processUdpPacket(payload, pcapFileSummary, packetInfo, mode);
-            } else {
-                log.trace("Skipping packet: " + payload);
+        if (dispatcher.getPlan().detectAttacks) {
+            //pcapFileSummary.ipMacTracker.query(sourceAddress.getHostAddress(), sourceMac.toString());
+        }
+        packetInfo.setIpv4Addresses(decoder.getIpv4Source(), decoder.getIpv4Destination());
+        addUniqueIpAddresses(pcapFileSummary, packetInfo);
+        processIpPayload(decoder, pcapFileSummary, packetInfo, dispatcher);
+        return true;
+    }
+
+    public static boolean processIpv6Packet(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo,
+                                            PacketDispatcher dispatcher) {
+        log.trace("Decoding IPv6 header");
+        if (!decoder.decodeIpv6()) {
+            pcapFileSummary.malformedPacketCount++;
+            if (log.isTraceEnabled()) {
+                log.trace("Skipping malformed IPv6 packet " + pcapFileSummary.packetCount);
             }
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
+            return false;
         }
+        if (dispatcher.getPlan().detectAttacks) {
+            //pcapFileSummary.ipMacTracker.query(sourceAddress.getHostAddress(), sourceMac.toString());
+        }
+        packetInfo.setIpv6Addresses(decoder.getIpv6SourceHigh(), decoder.getIpv6SourceLow(),
+                decoder.getIpv6DestinationHigh(), decoder.getIpv6DestinationLow());
+        addUniqueIpAddresses(pcapFileSummary, packetInfo);
+        processIpPayload(decoder, pcapFileSummary, packetInfo, dispatcher);
+        return true;
     }
 
-    public static void processIpv6Packet(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
-            return; // skip empty packets
+    // the same protocol handlers serve IPv4 and IPv6
+    private static void processIpPayload(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo,
+                                         PacketDispatcher dispatcher) {
+        int ipProtocol = decoder.getIpProtocol();
+        packetInfo.setIpProtocol(ipProtocol);
+        if (dispatcher.getPlan().countIpProtocols) {
+            pcapFileSummary.ipProtocolCounter.increment(ipProtocol);
         }
-        try {
-            log.trace("Converting to IPv6 packet");
-            IpV6Packet ipV6Packet = IpV6Packet.newPacket(packet.getRawData(), 0, packet.length());
-            IpV6Packet.IpV6Header ipV6Header = ipV6Packet.getHeader();
-            Inet6Address sourceAddress = ipV6Header.getSrcAddr();
-            Inet6Address destAddress = ipV6Header.getDstAddr();
-            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                //pcapFileSummary.ipMacTracker.query(sourceAddress.getHostAddress(), sourceMac.toString());
-            }
-            packetInfo.put(PacketInfo.SOURCE_ADDRESS, sourceAddress.getHostAddress());
-            packetInfo.put(PacketInfo.DESTINATION_ADDRESS, destAddress.getHostAddress());
-            log.trace("Adding IPv6 addresses to set:  source: " + sourceAddress.getHostAddress() + ", dest: " + destAddress.getHostAddress());
-            pcapFileSummary.uniqueIpAddresses.add(sourceAddress.getHostAddress());
-            pcapFileSummary.uniqueIpAddresses.add(destAddress.getHostAddress());
-            IpNumber ipNumber = ipV6Header.getProtocol();
-            packetInfo.put(PacketInfo.IP_PROTOCOL, ipNumber.toString());
-            pcapFileSummary.ipProtocolCounter.increment(ipNumber);
-            Packet payload = ipV6Packet.getPayload();
-            if (ipNumber == IpNumber.ICMPV4) {
-                IcmpPacketProcessor.processIcmpv4Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.ICMPV6) {
-                IcmpPacketProcessor.processIcmpv6Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.TCP) {
-                TcpPacketProcessor.processTcpPacket(payload, pcapFileSummary, packetInfo, mode);
-            } else if (ipNumber == IpNumber.UDP) {
-                UdpPacketProcessor.processUdpPacket(payload, pcapFileSummary, packetInfo, mode);
-            } else {
-                log.trace("Skipping packet: " + payload);
-            }
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
+        if (decoder.getTransportLength() <= 0) {
+            return; // skip empty packets
         }
+        dispatcher.dispatchIpProtocol(ipProtocol, decoder, packetInfo);
     }
 }
@@ -45,6 +45,18 @@ public class LoggerFactory {
     private static final String LOGGER_NAME = "LFPA_LOGGER";
     private static final Level DEFAULT_LEVEL = Level.INFO;
     private static final Level VERBOSE_LEVEL = Level.TRACE;
+    private static final String STATUS_LOGGER_LEVEL = "org.apache.logging.log4j.simplelog.StatusLogger.level";
+
+    /**
+     * Get the logger used for output before getLogger has configured it;
+     * it is the same logger, so classes that keep it see the configuration
+     *
+     * @return Logger with the default configuration, which only logs errors
+     */
+    public static Logger getDefaultLogger() {
+        System.setProperty(STATUS_LOGGER_LEVEL, "FATAL");
+        return (Logger) LogManager.getLogger(LOGGER_NAME);
+    }
 
     /**
      * Get the logger used for output
@@ -57,7 +69,7 @@ public class LoggerFactory {
         // This approach is ugly, but it circumvents the need for multiple log4j
         // configuration files and simplifies writing results to the console and the output file
         // Silence StatusLogger
-        System.setProperty("org.apache.logging.log4j.simplelog.StatusLogger.level", "FATAL");
+        System.setProperty(STATUS_LOGGER_LEVEL, "FATAL");
         // Setup context
         LoggerContext loggerContext = (LoggerContext) LogManager.getContext(false);
         Configuration configuration = loggerContext.getConfiguration();
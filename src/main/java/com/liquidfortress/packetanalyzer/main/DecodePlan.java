@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.main;
+
+import com.liquidfortress.packetanalyzer.dispatch.Analyzer;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DecodePlan
+ * <p/>
+ * What the layer processors decode and track for a Mode.  Each Mode only
+ * reports part of what could be extracted from a packet; the plan is built
+ * once per capture and lets the processors skip the rest.  Mode 1 only
+ * needs the addresses, the TCP handshakes and the UDP sources, so it does
+ * not count flow bytes, decode ICMP, count IP protocols or format
+ * connection reports.  The analyzers that run are listed by analyzers.
+ */
+public class DecodePlan {
+    public final Mode mode;
+    // run the mode 3 detectors, including TCP stream reassembly
+    public final boolean detectAttacks;
+    // decode ICMP messages; only the mode 3 detectors look at them
+    public final boolean decodeIcmp;
+    // count packets per IP protocol, reported in mode 2
+    public final boolean countIpProtocols;
+    // count packets and bytes per flow and track UDP flows, for the mode 2 report and the flow export
+    public final boolean accountFlows;
+    // keep reports of the closed TCP connections, listed in mode 2
+    public final boolean reportConnections;
+
+    private DecodePlan(Mode mode, boolean exportFlows) {
+        this.mode = mode;
+        this.detectAttacks = (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS);
+        this.decodeIcmp = detectAttacks;
+        this.countIpProtocols = (mode == Mode.DETAILED_ANALYSIS);
+        this.accountFlows = (mode == Mode.DETAILED_ANALYSIS) || exportFlows;
+        this.reportConnections = (mode == Mode.DETAILED_ANALYSIS);
+    }
+
+    /**
+     * @return the analyzers of the summary that run in this mode, in the order they see each packet
+     */
+    public List<Analyzer> analyzers(PcapFileSummary pcapFileSummary) {
+        List<Analyzer> analyzers = new ArrayList<>();
+        if (detectAttacks) {
+            analyzers.add(pcapFileSummary.portScanDetector);
+            analyzers.add(pcapFileSummary.ipScanDetector);
+            analyzers.add(pcapFileSummary.pingOfDeathDetector); // ends the analysis of a Ping of Death packet
+            analyzers.add(pcapFileSummary.smurfDetector);
+            analyzers.add(pcapFileSummary.synFloodDetector);
+            analyzers.add(pcapFileSummary.accountBruteForceDetector);
+        }
+        return analyzers;
+    }
+
+    /**
+     * @param mode        analysis mode
+     * @param exportFlows true if flow records are exported, which needs the flow counters in every mode
+     */
+    public static DecodePlan forMode(Mode mode, boolean exportFlows) {
+        if (mode == null) {
+            throw new IllegalArgumentException("mode cannot be null!");
+        }
+        return new DecodePlan(mode, exportFlows);
+    }
+}
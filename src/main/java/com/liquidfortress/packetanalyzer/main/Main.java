@@ -29,7 +29,7 @@ import org.apache.logging.log4j.core.Logger;
 
 public class Main {
 
-    public static Logger log;
+    public static Logger log = LoggerFactory.getDefaultLogger();
 
     public static void main(String[] args) {
         System.setErr(SystemErrEater.getEater());
@@ -20,6 +20,8 @@
 
 package com.liquidfortress.packetanalyzer.pcap_file;
 
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
+
 import java.util.LinkedHashSet;
 
 /**
@@ -29,12 +31,18 @@ import java.util.LinkedHashSet;
  */
 public class AttackSummary {
 
+    public static final long NOT_SET = Long.MIN_VALUE;
+
     private String attackName;
     private LinkedHashSet<String> sourceIpAndPorts = new LinkedHashSet<>();
     private LinkedHashSet<String> targetIpAndPorts = new LinkedHashSet<>();
-    private String startTimestamp;
-    private String endTimestamp;
+    // capture times in nanoseconds since the epoch; formatted only by toString()
+    private long startTimestampNanos = NOT_SET;
+    private long endTimestampNanos = NOT_SET;
     private LinkedHashSet<String> usernameAndPasswords = new LinkedHashSet<>();
+    // distinct sources when there were too many to count exactly, with the relative standard error of the estimate
+    private long estimatedSourceCount = NOT_SET;
+    private double estimatedSourceCountError;
 
     public AttackSummary() {
     }
@@ -67,20 +75,24 @@ public class AttackSummary {
         }
     }
 
-    public String getStartTimestamp() {
-        return startTimestamp;
+    public long getStartTimestampNanos() {
+        return startTimestampNanos;
     }
 
-    public void setStartTimestamp(String startTimestamp) {
-        this.startTimestamp = startTimestamp;
+    public void setStartTimestampNanos(long startTimestampNanos) {
+        this.startTimestampNanos = startTimestampNanos;
     }
 
-    public String getEndTimestamp() {
-        return endTimestamp;
+    public long getEndTimestampNanos() {
+        return endTimestampNanos;
     }
 
-    public void setEndTimestamp(String endTimestamp) {
-        this.endTimestamp = endTimestamp;
+    public void setEndTimestampNanos(long endTimestampNanos) {
+        this.endTimestampNanos = endTimestampNanos;
+    }
+
+    private static String formatTimestamp(long timestampNanos) {
+        return (timestampNanos == NOT_SET) ? null : PacketInfoUtils.formatTimestamp(timestampNanos);
     }
 
     public LinkedHashSet<String> getUsernameAndPasswords() {
@@ -93,15 +105,34 @@ public class AttackSummary {
         }
     }
 
+    public long getEstimatedSourceCount() {
+        return estimatedSourceCount;
+    }
+
+    public double getEstimatedSourceCountError() {
+        return estimatedSourceCountError;
+    }
+
+    /**
+     * @param estimatedSourceCount estimated number of distinct sources
+     * @param standardError        relative standard error of the estimate, 0.065 for 6.5%
+     */
+    public void setEstimatedSourceCount(long estimatedSourceCount, double standardError) {
+        this.estimatedSourceCount = estimatedSourceCount;
+        this.estimatedSourceCountError = standardError;
+    }
+
     @Override
     public String toString() {
         return "AttackSummary{" +
                 "attackName='" + attackName + '\'' +
                 ", sourceIpAndPorts=" + sourceIpAndPorts +
                 ", targetIpAndPorts=" + targetIpAndPorts +
-                ", startTimestamp=" + startTimestamp +
-                ", endTimestamp=" + endTimestamp +
+                ", startTimestamp=" + formatTimestamp(startTimestampNanos) +
+                ", endTimestamp=" + formatTimestamp(endTimestampNanos) +
                 ", usernameAndPasswords=" + usernameAndPasswords +
+                ((estimatedSourceCount == NOT_SET) ? "" : String.format(", estimatedSourceCount=%d (+/- %.1f%%)",
+                        estimatedSourceCount, 100.0 * estimatedSourceCountError)) +
                 '}';
     }
 }
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+/**
+ * CaptureCompression
+ * <p/>
+ * Compression formats that capture files may be stored in
+ */
+public enum CaptureCompression {
+    NONE,
+    GZIP,
+    ZSTD,
+    LZ4;
+
+    private static final int GZIP_MAGIC = 0x1f8b0000;  // first two bytes only
+    private static final int ZSTD_MAGIC = 0x28b52ffd;
+    private static final int LZ4_FRAME_MAGIC = 0x04224d18;
+
+    /**
+     * Identify the compression format from the first four bytes of a file
+     *
+     * @param magic first four bytes of the file, read as a big-endian int
+     * @return the compression format, or NONE if the file is not compressed
+     */
+    public static CaptureCompression fromMagic(int magic) {
+        if ((magic & 0xFFFF0000) == GZIP_MAGIC) {
+            return GZIP;
+        } else if (magic == ZSTD_MAGIC) {
+            return ZSTD;
+        } else if (magic == LZ4_FRAME_MAGIC) {
+            return LZ4;
+        }
+        return NONE;
+    }
+}
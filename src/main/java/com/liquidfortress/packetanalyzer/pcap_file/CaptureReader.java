@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * CaptureReader
+ * <p/>
+ * Sequential access to the records of a capture file.  Implementations
+ * hand out views of each record instead of copies; a view is only valid
+ * until the next call to next().
+ */
+public interface CaptureReader extends Closeable {
+
+    int LINKTYPE_ETHERNET = 1;
+
+    /**
+     * Advance to the next packet record in the file
+     *
+     * @return true if a complete record is available, false at the end of the file
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Get a view of the current record.  The position and limit of the
+     * returned buffer frame the captured bytes of the current record.
+     *
+     * @return shared buffer positioned on the current record
+     */
+    ByteBuffer getRecord();
+
+    int getCapturedLength();
+
+    int getOriginalLength();
+
+    // capture time of the current record in nanoseconds since the epoch
+    long getTimestampNanos();
+
+    // link type of the interface that captured the current record
+    int getLinkType();
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.util.ReadAheadChannel;
+import io.airlift.compress.zstd.ZstdInputStream;
+import net.jpountz.lz4.LZ4FrameInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * CaptureReaderFactory
+ * <p/>
+ * Open the right CaptureReader for a capture file based on its magic number.
+ * Compressed captures are decompressed on a read-ahead thread of their own,
+ * which hands decompressed chunks to the parser through a bounded queue,
+ * while a second read-ahead thread keeps the compressed file data flowing.
+ */
+public class CaptureReaderFactory {
+
+    private static final int READ_AHEAD_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int READ_AHEAD_CHUNK_COUNT = 4;
+    private static final int COMPRESSED_CHUNK_SIZE = 1024 * 1024;
+    private static final int COMPRESSED_CHUNK_COUNT = 4;
+
+    private static int readMagic(InputStream inputStream) throws IOException {
+        try (DataInputStream dataInputStream = new DataInputStream(inputStream)) {
+            return dataInputStream.readInt();
+        }
+    }
+
+    private static InputStream decompress(InputStream compressed, CaptureCompression compression) throws IOException {
+        switch (compression) {
+            case GZIP:
+                return new GZIPInputStream(compressed, 64 * 1024);
+            case ZSTD:
+                return new ZstdInputStream(compressed);
+            case LZ4:
+                return new LZ4FrameInputStream(compressed);
+            default:
+                return compressed;
+        }
+    }
+
+    private static FileChannel openChannel(File captureFile) throws IOException {
+        return FileChannel.open(captureFile.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Open a capture file for reading
+     *
+     * @param captureFile pcap or pcapng file, optionally gzip, zstd or lz4 compressed
+     * @return reader positioned before the first record
+     * @throws IOException if the file cannot be opened or is not a supported format
+     */
+    public static CaptureReader open(File captureFile) throws IOException {
+        CaptureCompression compression = CaptureCompression.fromMagic(readMagic(new FileInputStream(captureFile)));
+        if (compression == CaptureCompression.NONE) {
+            if (readMagic(new FileInputStream(captureFile)) == PcapNgReader.SECTION_HEADER_BLOCK) {
+                return new PcapNgReader(new ReadAheadChannel(openChannel(captureFile), READ_AHEAD_CHUNK_SIZE, READ_AHEAD_CHUNK_COUNT));
+            }
+            return new MappedPcapReader(captureFile);
+        }
+        // peek at the decompressed magic number with a short-lived stream
+        int magic = readMagic(decompress(new BufferedInputStream(new FileInputStream(captureFile)), compression));
+        InputStream compressed = Channels.newInputStream(
+                new ReadAheadChannel(openChannel(captureFile), COMPRESSED_CHUNK_SIZE, COMPRESSED_CHUNK_COUNT));
+        ReadAheadChannel decompressed = new ReadAheadChannel(Channels.newChannel(decompress(compressed, compression)),
+                READ_AHEAD_CHUNK_SIZE, READ_AHEAD_CHUNK_COUNT);
+        if (magic == PcapNgReader.SECTION_HEADER_BLOCK) {
+            return new PcapNgReader(decompressed);
+        }
+        return new PcapStreamReader(decompressed);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.util.AddressTable;
+import com.liquidfortress.packetanalyzer.util.RecencyList;
+
+import java.util.Arrays;
+
+/**
+ * IncidentTracker
+ * <p/>
+ * The open attacks of one detector, each keyed by the address (and
+ * optionally port) it is about, such as the scanning source or the flooded
+ * server.  Attacks on different keys are tracked and reported separately
+ * instead of merging into, or cutting off, a single attack in progress.
+ * <p/>
+ * Incidents live in int handle columns ordered by last update.  At most
+ * maxOpenIncidents are open at once: opening one more closes out the
+ * incident updated least recently, ending it at its last update.
+ */
+public class IncidentTracker {
+    public static final int NO_INCIDENT = -1;
+    public static final int DEFAULT_MAX_OPEN_INCIDENTS = 1024;
+
+    private final String attackName;
+    private final int maxOpenIncidents;
+    private final AddressTable keys = new AddressTable();
+    private final RecencyList recentIncidents = new RecencyList();
+    private long[] keyHighs = new long[0];
+    private long[] keyLows = new long[0];
+    private int[] keyPorts = new int[0];
+    private long[] lastUpdateNanos = new long[0];
+    private AttackSummary[] attackSummaries = new AttackSummary[0];
+
+    public IncidentTracker(String attackName) {
+        this(attackName, DEFAULT_MAX_OPEN_INCIDENTS);
+    }
+
+    public IncidentTracker(String attackName, int maxOpenIncidents) {
+        if (maxOpenIncidents < 1) {
+            throw new IllegalArgumentException("IncidentTracker must allow at least one open incident!");
+        }
+        this.attackName = attackName;
+        this.maxOpenIncidents = maxOpenIncidents;
+    }
+
+    /**
+     * @return the number of open incidents
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return the open incident about the address, or NO_INCIDENT
+     */
+    public int find(long addressHigh, long addressLow) {
+        return find(addressHigh, addressLow, 0);
+    }
+
+    /**
+     * @return the open incident about the address and port, or NO_INCIDENT
+     */
+    public int find(long addressHigh, long addressLow, int port) {
+        int incident = keys.get(addressHigh, addressLow, port);
+        return (incident == AddressTable.NO_VALUE) ? NO_INCIDENT : incident;
+    }
+
+    public int open(long addressHigh, long addressLow, long startTimestampNanos, PcapFileSummary pcapFileSummary) {
+        return open(addressHigh, addressLow, 0, startTimestampNanos, pcapFileSummary);
+    }
+
+    /**
+     * Open an incident about an address and port that has none open; when
+     * too many are open, the least recently updated one is closed out first
+     *
+     * @return handle of the incident, valid until it is closed
+     */
+    public int open(long addressHigh, long addressLow, int port, long startTimestampNanos, PcapFileSummary pcapFileSummary) {
+        if (find(addressHigh, addressLow, port) != NO_INCIDENT) {
+            throw new IllegalStateException("An incident is already open for this key!");
+        }
+        if (size() >= maxOpenIncidents) {
+            int oldest = recentIncidents.getOldest();
+            close(oldest, lastUpdateNanos[oldest], pcapFileSummary);
+        }
+        int incident = recentIncidents.allocate();
+        if (attackSummaries.length < recentIncidents.getCapacity()) {
+            int capacity = recentIncidents.getCapacity();
+            keyHighs = Arrays.copyOf(keyHighs, capacity);
+            keyLows = Arrays.copyOf(keyLows, capacity);
+            keyPorts = Arrays.copyOf(keyPorts, capacity);
+            lastUpdateNanos = Arrays.copyOf(lastUpdateNanos, capacity);
+            attackSummaries = Arrays.copyOf(attackSummaries, capacity);
+        }
+        AttackSummary attackSummary = new AttackSummary();
+        attackSummary.setAttackName(attackName);
+        attackSummary.setStartTimestampNanos(startTimestampNanos);
+        keyHighs[incident] = addressHigh;
+        keyLows[incident] = addressLow;
+        keyPorts[incident] = port;
+        lastUpdateNanos[incident] = startTimestampNanos;
+        attackSummaries[incident] = attackSummary;
+        keys.put(addressHigh, addressLow, port, incident);
+        return incident;
+    }
+
+    public AttackSummary getAttackSummary(int incident) {
+        return attackSummaries[incident];
+    }
+
+    /**
+     * Note that the attack of an open incident is still going on
+     */
+    public void update(int incident, long timestampNanos) {
+        lastUpdateNanos[incident] = timestampNanos;
+        recentIncidents.touch(incident);
+    }
+
+    /**
+     * Close an open incident and add its attack to the pcap file summary
+     */
+    public void close(int incident, long endTimestampNanos, PcapFileSummary pcapFileSummary) {
+        AttackSummary attackSummary = attackSummaries[incident];
+        attackSummary.setEndTimestampNanos(endTimestampNanos);
+        pcapFileSummary.attackSummaries.add(attackSummary);
+        attackSummaries[incident] = null;
+        keys.remove(keyHighs[incident], keyLows[incident], keyPorts[incident]);
+        recentIncidents.release(incident);
+    }
+
+    /**
+     * Close every open incident at its last update, least recently updated first
+     */
+    public void closeAll(PcapFileSummary pcapFileSummary) {
+        int incident = recentIncidents.getOldest();
+        while (incident != RecencyList.NONE) {
+            close(incident, lastUpdateNanos[incident], pcapFileSummary);
+            incident = recentIncidents.getOldest();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.dispatch.Analyzer;
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.util.KeyedWindows;
+import org.apache.logging.log4j.core.Logger;
+
+/**
+ * IpScanDetector
+ * <p/>
+ * Detects horizontal scans (sweeps), where one source probes many
+ * destination addresses, usually on one port.  PortScanDetector only sees
+ * vertical scans of the ports of each source.
+ * <p/>
+ * Each source address counts the distinct destinations of its TCP
+ * connection attempts and UDP datagrams in a TUMBLING KeyedWindows window,
+ * which keeps them in an IntBitmap, so a sweep of a whole /16 costs about
+ * 8 KiB.  IPv6 destinations are counted by the low 32 bits of their address.
+ */
+public class IpScanDetector implements Analyzer {
+    private static final int[] IP_PROTOCOLS = {PacketDecoder.IP_PROTOCOL_TCP, PacketDecoder.IP_PROTOCOL_UDP};
+    private static final int DETECTION_COUNT = 128; // distinct destination addresses within the window
+    private static final long DETECTION_WINDOW = 3000; //milliseconds
+    private static final long DETECTION_WINDOW_NANOS = DETECTION_WINDOW * 1000000L;
+    private static final int MAX_REPORTED_TARGETS = 64; // a sweep can touch far more targets than are worth listing
+    private static Logger log = Main.log;
+
+    private final IncidentTracker incidents = new IncidentTracker("IP SCANNING"); // keyed by source address
+
+    // destinations of each source address within the current window
+    private final KeyedWindows windows = new KeyedWindows(KeyedWindows.Kind.TUMBLING, DETECTION_WINDOW_NANOS,
+            null, this::windowClosed);
+
+    @Override
+    public int[] getIpProtocols() {
+        return IP_PROTOCOLS;
+    }
+
+    // only connection attempts count for TCP, so replies from a busy server are not a sweep
+    @Override
+    public boolean onPacket(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        if ((packetInfo.getIpProtocol() != PacketDecoder.IP_PROTOCOL_TCP) ||
+                (packetInfo.hasFlag(PacketInfo.SYN) && !packetInfo.hasFlag(PacketInfo.ACK))) {
+            add(packetInfo, pcapFileSummary);
+        }
+        return true;
+    }
+
+    public void add(PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+        if (packetInfo == null) {
+            throw new IllegalArgumentException("packetInfo cannot be null!");
+        }
+        long currentTime = packetInfo.getTimestampNanos();
+        long sourceHigh = packetInfo.getSourceAddressHigh();
+        long sourceLow = packetInfo.getSourceAddressLow();
+        int source = windows.add(sourceHigh, sourceLow, 0, currentTime, (int) packetInfo.getDestinationAddressLow(), 0,
+                packetInfo.getDestinationAddressHigh(), packetInfo.getDestinationAddressLow(), pcapFileSummary);
+
+        if (windows.getDistinctCount(source) >= DETECTION_COUNT) {
+            int incident = incidents.find(sourceHigh, sourceLow);
+            if (incident == IncidentTracker.NO_INCIDENT) { // attack first detected
+                log.trace("*** IP SCANNING detected!");
+                incident = incidents.open(sourceHigh, sourceLow, windows.getStartTimestampNanos(source), pcapFileSummary);
+                incidents.getAttackSummary(incident).addSourceIpAndPort(packetInfo.getSourceAddress());
+            }
+            // add more details while attack in progress
+            incidents.update(incident, currentTime);
+            AttackSummary attackSummary = incidents.getAttackSummary(incident);
+            if (attackSummary.getTargetIpAndPorts().size() < MAX_REPORTED_TARGETS) {
+                attackSummary.addTargetIpAndPort(packetInfo.getDestinationEndpoint());
+            }
+        }
+    }
+
+    // a scan ends with a window below the threshold, or when its source goes quiet for a whole window
+    private void windowClosed(int source, boolean expiring, PcapFileSummary pcapFileSummary) {
+        int incident = incidents.find(windows.getKeyHigh(source), windows.getKeyLow(source));
+        if ((incident != IncidentTracker.NO_INCIDENT) && (expiring || (windows.getDistinctCount(source) < DETECTION_COUNT))) {
+            incidents.close(incident, windows.getLastTimestampNanos(source), pcapFileSummary);
+        }
+    }
+
+    // report the attacks that are still in progress at the end of the capture
+    @Override
+    public void onFinish(PcapFileSummary pcapFileSummary) {
+        incidents.closeAll(pcapFileSummary);
+    }
+
+    /**
+     * @return the number of source addresses with a window still open
+     */
+    public int getTrackedSourceCount() {
+        return windows.size();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedPcapReader
+ * <p/>
+ * Pure-Java reader for classic libpcap capture files.  The file is memory
+ * mapped in windows of up to MAX_WINDOW_SIZE bytes and each record is
+ * handed out as a view into the mapped window, so no per-packet copy,
+ * native call or timestamp object is needed.
+ */
+public class MappedPcapReader implements CaptureReader {
+
+    private static final int MAGIC_MICROSECONDS = 0xa1b2c3d4;
+    private static final int MAGIC_MICROSECONDS_SWAPPED = 0xd4c3b2a1;
+    private static final int MAGIC_NANOSECONDS = 0xa1b23c4d;
+    private static final int MAGIC_NANOSECONDS_SWAPPED = 0x4d3cb2a1;
+    private static final int GLOBAL_HEADER_LENGTH = 24;
+    private static final int RECORD_HEADER_LENGTH = 16;
+    private static final int MAX_CAPTURED_LENGTH = 16 * 1024 * 1024; // sanity limit for corrupt record headers
+    private static final long MAX_WINDOW_SIZE = 1L << 30; // a single mapping cannot exceed 2 GB
+
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final ByteOrder byteOrder;
+    private final int snapLength;
+    private final int linkType;
+    private final long nanosPerTimestampUnit; // the fractional timestamp is in micro- or nanoseconds
+
+    private MappedByteBuffer window;
+    private long windowStart = 0;
+    private long position = GLOBAL_HEADER_LENGTH; // file position of the next record header
+
+    private int recordOffset;
+    private int capturedLength;
+    private int originalLength;
+    private long timestampNanos;
+
+    public MappedPcapReader(File pcapFile) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(pcapFile, "r");
+        this.channel = randomAccessFile.getChannel();
+        this.fileSize = channel.size();
+        try {
+            if (fileSize < GLOBAL_HEADER_LENGTH) {
+                throw new IOException("File is too short to be a pcap file: " + pcapFile);
+            }
+            mapWindow(0);
+            int magic = window.order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+            if ((magic == MAGIC_MICROSECONDS) || (magic == MAGIC_NANOSECONDS)) {
+                byteOrder = ByteOrder.LITTLE_ENDIAN;
+            } else if ((magic == MAGIC_MICROSECONDS_SWAPPED) || (magic == MAGIC_NANOSECONDS_SWAPPED)) {
+                byteOrder = ByteOrder.BIG_ENDIAN;
+            } else {
+                throw new IOException("Unsupported pcap magic number 0x" + Integer.toHexString(magic) + " in: " + pcapFile);
+            }
+            nanosPerTimestampUnit = ((magic == MAGIC_NANOSECONDS) || (magic == MAGIC_NANOSECONDS_SWAPPED)) ? 1L : 1000L;
+            window.order(byteOrder);
+            this.snapLength = window.getInt(16);
+            this.linkType = window.getInt(20) & 0x0FFFFFFF; // upper bits may carry FCS information
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void mapWindow(long start) throws IOException {
+        long size = Math.min(MAX_WINDOW_SIZE, fileSize - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        if (byteOrder != null) {
+            window.order(byteOrder);
+        }
+        windowStart = start;
+    }
+
+    // make sure that [start, start + length) is inside the mapped window, remapping if necessary
+    private void ensureMapped(long start, int length) throws IOException {
+        if ((start < windowStart) || (start + length > windowStart + window.capacity())) {
+            mapWindow(start);
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (position + RECORD_HEADER_LENGTH > fileSize) {
+            return false;
+        }
+        ensureMapped(position, RECORD_HEADER_LENGTH);
+        window.clear(); // absolute reads are bounded by the limit set for the previous record
+        int headerOffset = (int) (position - windowStart);
+        long seconds = window.getInt(headerOffset) & 0xFFFFFFFFL;
+        long fraction = window.getInt(headerOffset + 4) & 0xFFFFFFFFL;
+        int recordCapturedLength = window.getInt(headerOffset + 8);
+        int recordOriginalLength = window.getInt(headerOffset + 12);
+        if ((recordCapturedLength < 0) || (recordCapturedLength > MAX_CAPTURED_LENGTH)) {
+            throw new IOException("Corrupt pcap record header at offset " + position +
+                    ": captured length is " + recordCapturedLength);
+        }
+        long dataStart = position + RECORD_HEADER_LENGTH;
+        if (dataStart + recordCapturedLength > fileSize) {
+            return false; // truncated final record
+        }
+        ensureMapped(position, RECORD_HEADER_LENGTH + recordCapturedLength);
+        this.recordOffset = (int) (dataStart - windowStart);
+        this.capturedLength = recordCapturedLength;
+        this.originalLength = recordOriginalLength;
+        this.timestampNanos = (seconds * 1000000000L) + (fraction * nanosPerTimestampUnit);
+        this.position = dataStart + recordCapturedLength;
+        return true;
+    }
+
+    @Override
+    public ByteBuffer getRecord() {
+        window.limit(recordOffset + capturedLength);
+        window.position(recordOffset);
+        return window;
+    }
+
+    @Override
+    public int getCapturedLength() {
+        return capturedLength;
+    }
+
+    @Override
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getSnapLength() {
+        return snapLength;
+    }
+
+    @Override
+    public int getLinkType() {
+        return linkType;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        randomAccessFile.close();
+    }
+}
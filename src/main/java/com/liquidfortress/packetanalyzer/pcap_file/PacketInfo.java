@@ -20,46 +20,225 @@
 
 package com.liquidfortress.packetanalyzer.pcap_file;
 
-import java.util.HashMap;
-import java.util.Map;
+import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
 
 /**
  * PacketInfo
  * <p/>
- * Stores information gathered about the current packet being processed
+ * Stores information gathered about the current packet being processed.
+ * Fields are kept in their binary form; they are only formatted as text
+ * when a report or an attack summary needs them.  One instance is reused
+ * for every packet a thread processes, so anything that keeps a PacketInfo
+ * after the packet has been processed must keep a copy().
  */
 public class PacketInfo {
 
-    public static final String TIMESTAMP = "TIMESTAMP";
-    public static final String SOURCE_MAC = "SOURCE_MAC";
-    public static final String DESTINATION_MAC = "DESTINATION_MAC";
-    public static final String ETHERTYPE = "ETHERTYPE";
-    public static final String SOURCE_ADDRESS = "SOURCE_ADDRESS";
-    public static final String SOURCE_PORT = "SOURCE_PORT";
-    public static final String DESTINATION_ADDRESS = "DESTINATION_ADDRESS";
-    public static final String DESTINATION_PORT = "DESTINATION_PORT";
-    public static final String IP_PROTOCOL = "IP_PROTOCOL";
-    public static final String IP_IDENTIFICATION = "IP_IDENTIFICATION";
-    public static final String WAS_FRAGMENTED = "WAS_FRAGMENTED";
-    public static final String SYN = "SYN";
-    public static final String ACK = "ACK";
-    public static final String FIN = "FIN";
-
-    private final HashMap<String, String> info = new HashMap<>();
+    // flags
+    public static final int SYN = 1;
+    public static final int ACK = 1 << 1;
+    public static final int FIN = 1 << 2;
+    public static final int RST = 1 << 3;
+    public static final int WAS_FRAGMENTED = 1 << 8;
+
+    public static final int IP_VERSION_NONE = 0;
+    public static final int IP_VERSION_4 = 4;
+    public static final int IP_VERSION_6 = 6;
+
+    // IPv4 addresses are stored as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d) when a 128-bit key is needed
+    private static final long IPV4_MAPPED_PREFIX = 0x0000FFFF00000000L;
+
+    private long timestampNanos;
+    private byte ipVersion;
+    private byte ipProtocol;
+    private int ipIdentification;
+    private int sourceIpv4;
+    private int destinationIpv4;
+    private long sourceIpv6High;
+    private long sourceIpv6Low;
+    private long destinationIpv6High;
+    private long destinationIpv6Low;
+    private short sourcePort;
+    private short destinationPort;
+    private int flags;
 
     public PacketInfo() {
     }
 
-    public String get(Object o) {
-        return info.get(o);
+    // clear every field before the next packet is decoded into this instance
+    public void reset() {
+        timestampNanos = 0;
+        ipVersion = IP_VERSION_NONE;
+        ipProtocol = 0;
+        ipIdentification = 0;
+        sourceIpv4 = 0;
+        destinationIpv4 = 0;
+        sourceIpv6High = 0;
+        sourceIpv6Low = 0;
+        destinationIpv6High = 0;
+        destinationIpv6Low = 0;
+        sourcePort = 0;
+        destinationPort = 0;
+        flags = 0;
+    }
+
+    public PacketInfo copy() {
+        PacketInfo copy = new PacketInfo();
+        copy.timestampNanos = timestampNanos;
+        copy.ipVersion = ipVersion;
+        copy.ipProtocol = ipProtocol;
+        copy.ipIdentification = ipIdentification;
+        copy.sourceIpv4 = sourceIpv4;
+        copy.destinationIpv4 = destinationIpv4;
+        copy.sourceIpv6High = sourceIpv6High;
+        copy.sourceIpv6Low = sourceIpv6Low;
+        copy.destinationIpv6High = destinationIpv6High;
+        copy.destinationIpv6Low = destinationIpv6Low;
+        copy.sourcePort = sourcePort;
+        copy.destinationPort = destinationPort;
+        copy.flags = flags;
+        return copy;
     }
 
-    public boolean containsKey(Object o) {
-        return info.containsKey(o);
+    // Accessors
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getIpVersion() {
+        return ipVersion;
+    }
+
+    public int getIpProtocol() {
+        return ipProtocol & 0xFF;
+    }
+
+    public int getIpIdentification() {
+        return ipIdentification;
+    }
+
+    public int getSourceIpv4() {
+        return sourceIpv4;
+    }
+
+    public int getDestinationIpv4() {
+        return destinationIpv4;
+    }
+
+    public long getSourceAddressHigh() {
+        return (ipVersion == IP_VERSION_6) ? sourceIpv6High : 0;
+    }
+
+    public long getSourceAddressLow() {
+        return (ipVersion == IP_VERSION_6) ? sourceIpv6Low : (IPV4_MAPPED_PREFIX | (sourceIpv4 & 0xFFFFFFFFL));
+    }
+
+    public long getDestinationAddressHigh() {
+        return (ipVersion == IP_VERSION_6) ? destinationIpv6High : 0;
+    }
+
+    public long getDestinationAddressLow() {
+        return (ipVersion == IP_VERSION_6) ? destinationIpv6Low : (IPV4_MAPPED_PREFIX | (destinationIpv4 & 0xFFFFFFFFL));
+    }
+
+    public int getSourcePort() {
+        return sourcePort & 0xFFFF;
+    }
+
+    public int getDestinationPort() {
+        return destinationPort & 0xFFFF;
+    }
+
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    // Mutators
+
+    public void setTimestampNanos(long timestampNanos) {
+        this.timestampNanos = timestampNanos;
     }
 
-    public void put(String s, String s2) {
-        info.put(s, s2);
+    public void setIpv4Addresses(int sourceIpv4, int destinationIpv4) {
+        this.ipVersion = IP_VERSION_4;
+        this.sourceIpv4 = sourceIpv4;
+        this.destinationIpv4 = destinationIpv4;
+    }
+
+    public void setIpv6Addresses(long sourceHigh, long sourceLow, long destinationHigh, long destinationLow) {
+        this.ipVersion = IP_VERSION_6;
+        this.sourceIpv6High = sourceHigh;
+        this.sourceIpv6Low = sourceLow;
+        this.destinationIpv6High = destinationHigh;
+        this.destinationIpv6Low = destinationLow;
+    }
+
+    public void setIpProtocol(int ipProtocol) {
+        this.ipProtocol = (byte) ipProtocol;
+    }
+
+    public void setIpIdentification(int ipIdentification) {
+        this.ipIdentification = ipIdentification;
+    }
+
+    public void setPorts(int sourcePort, int destinationPort) {
+        this.sourcePort = (short) sourcePort;
+        this.destinationPort = (short) destinationPort;
+    }
+
+    public void setFlag(int flag) {
+        this.flags |= flag;
+    }
+
+    // Report-time formatting
+
+    public String getSourceAddress() {
+        return (ipVersion == IP_VERSION_6) ? formatIpv6(sourceIpv6High, sourceIpv6Low) : formatIpv4(sourceIpv4);
+    }
+
+    public String getDestinationAddress() {
+        return (ipVersion == IP_VERSION_6) ? formatIpv6(destinationIpv6High, destinationIpv6Low) : formatIpv4(destinationIpv4);
+    }
+
+    // "address:port", as used in attack summaries
+    public String getSourceEndpoint() {
+        return getSourceAddress() + ":" + getSourcePort();
+    }
+
+    public String getDestinationEndpoint() {
+        return getDestinationAddress() + ":" + getDestinationPort();
+    }
+
+    public String getTimestamp() {
+        return PacketInfoUtils.formatTimestamp(timestampNanos);
+    }
+
+    // address as returned by getSourceAddressHigh/Low: IPv4-mapped addresses are formatted as IPv4
+    public static String formatAddress(long high, long low) {
+        if ((high == 0) && ((low & 0xFFFFFFFF00000000L) == IPV4_MAPPED_PREFIX)) {
+            return formatIpv4((int) low);
+        }
+        return formatIpv6(high, low);
+    }
+
+    // same text as Inet4Address.getHostAddress()
+    public static String formatIpv4(int address) {
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "." +
+                ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    // same text as Inet6Address.getHostAddress(): eight groups, no zero compression
+    public static String formatIpv6(long high, long low) {
+        StringBuilder builder = new StringBuilder(39);
+        for (int group = 0; group < 8; group++) {
+            long half = (group < 4) ? high : low;
+            int shift = 48 - (group % 4) * 16;
+            if (group > 0) {
+                builder.append(':');
+            }
+            builder.append(Integer.toHexString((int) ((half >>> shift) & 0xFFFF)));
+        }
+        return builder.toString();
     }
 
     @Override
@@ -69,23 +248,48 @@ public class PacketInfo {
 
         PacketInfo that = (PacketInfo) o;
 
-        return info.equals(that.info);
+        return timestampNanos == that.timestampNanos &&
+                ipVersion == that.ipVersion &&
+                ipProtocol == that.ipProtocol &&
+                ipIdentification == that.ipIdentification &&
+                sourceIpv4 == that.sourceIpv4 &&
+                destinationIpv4 == that.destinationIpv4 &&
+                sourceIpv6High == that.sourceIpv6High &&
+                sourceIpv6Low == that.sourceIpv6Low &&
+                destinationIpv6High == that.destinationIpv6High &&
+                destinationIpv6Low == that.destinationIpv6Low &&
+                sourcePort == that.sourcePort &&
+                destinationPort == that.destinationPort &&
+                flags == that.flags;
     }
 
     @Override
     public int hashCode() {
-        return info.hashCode();
+        long result = timestampNanos;
+        result = 31 * result + getSourceAddressLow();
+        result = 31 * result + getDestinationAddressLow();
+        result = 31 * result + getSourceAddressHigh();
+        result = 31 * result + getDestinationAddressHigh();
+        result = 31 * result + ((sourcePort << 16) | (destinationPort & 0xFFFF));
+        result = 31 * result + ((ipProtocol << 24) | (ipVersion << 16) | flags);
+        result = 31 * result + ipIdentification;
+        return (int) (result ^ (result >>> 32));
     }
 
     public String toString() {
-        StringBuilder builder = new StringBuilder("PacketInfo {\n");
-        for (Map.Entry<String, String> entry : info.entrySet()) {
-            builder.append(entry.getKey());
-            builder.append(" => ");
-            builder.append(entry.getValue());
-            builder.append("\n");
-        }
-        builder.append("}");
-        return builder.toString();
+        return "PacketInfo {\n" +
+                "TIMESTAMP => " + getTimestamp() + "\n" +
+                "SOURCE_ADDRESS => " + getSourceAddress() + "\n" +
+                "SOURCE_PORT => " + getSourcePort() + "\n" +
+                "DESTINATION_ADDRESS => " + getDestinationAddress() + "\n" +
+                "DESTINATION_PORT => " + getDestinationPort() + "\n" +
+                "IP_PROTOCOL => " + getIpProtocol() + "\n" +
+                "IP_IDENTIFICATION => " + ipIdentification + "\n" +
+                "SYN => " + hasFlag(SYN) + "\n" +
+                "ACK => " + hasFlag(ACK) + "\n" +
+                "FIN => " + hasFlag(FIN) + "\n" +
+                "RST => " + hasFlag(RST) + "\n" +
+                "WAS_FRAGMENTED => " + hasFlag(WAS_FRAGMENTED) + "\n" +
+                "}";
     }
 }
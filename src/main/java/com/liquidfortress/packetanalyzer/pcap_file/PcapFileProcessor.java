@@ -20,109 +20,207 @@
 
 package com.liquidfortress.packetanalyzer.pcap_file;
 
-import com.liquidfortress.packetanalyzer.arp.ArpPacketProcessor;
 import com.liquidfortress.packetanalyzer.cli_args.ValidatedArgs;
-import com.liquidfortress.packetanalyzer.ip.IpPacketProcessor;
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.dispatch.PacketDispatcher;
+import com.liquidfortress.packetanalyzer.main.DecodePlan;
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.main.Mode;
+import com.liquidfortress.packetanalyzer.pipeline.ShardedPcapFileProcessor;
 import com.liquidfortress.packetanalyzer.tcp.TcpConnectionTracker;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.core.NotOpenException;
-import org.pcap4j.core.PcapHandle;
-import org.pcap4j.core.PcapNativeException;
-import org.pcap4j.core.Pcaps;
-import org.pcap4j.packet.EthernetPacket;
-import org.pcap4j.packet.IllegalRawDataException;
-import org.pcap4j.packet.Packet;
-import org.pcap4j.packet.namednumber.DataLinkType;
-import org.pcap4j.packet.namednumber.EtherType;
-import org.pcap4j.util.MacAddress;
 
 import java.io.File;
-import java.sql.Timestamp;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class PcapFileProcessor {
     private static Logger log = Main.log;
 
 
-    public static void processEthernetPacket(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
-            return; // skip empty packets
-        }
-        try {
-            log.trace("Converting to ethernet packet");
-            EthernetPacket ethernetPacket = EthernetPacket.newPacket(packet.getRawData(), 0, packet.length());
-            EthernetPacket.EthernetHeader ethernetHeader = ethernetPacket.getHeader();
-            MacAddress sourceMac = ethernetHeader.getSrcAddr();
-            log.trace("Source MAC: " + sourceMac);
-            packetInfo.put(PacketInfo.SOURCE_MAC, sourceMac.toString());
-            MacAddress destMac = ethernetHeader.getDstAddr();
-            log.trace("Destination MAC: " + destMac);
-            packetInfo.put(PacketInfo.DESTINATION_MAC, destMac.toString());
-            EtherType etherType = ethernetHeader.getType();
-            log.trace("EtherType: " + etherType.toString());
-            packetInfo.put(PacketInfo.ETHERTYPE, etherType.toString());
-            Packet payload = ethernetPacket.getPayload();
-            if (etherType == EtherType.IPV4) {
-                IpPacketProcessor.processIpv4Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if (etherType == EtherType.IPV6) {
-                IpPacketProcessor.processIpv6Packet(payload, pcapFileSummary, packetInfo, mode);
-            } else if ((mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) && (etherType == EtherType.ARP)) {
-                pcapFileSummary.nonIpPacketCount++;
-                ArpPacketProcessor.processArpPacket(payload, pcapFileSummary);
-            } else {
-                pcapFileSummary.nonIpPacketCount++;
-                log.trace("Skipping packet with EtherType: " + etherType);
+    public static void processEthernetPacket(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo,
+                                             PacketDispatcher dispatcher) {
+        log.trace("Decoding ethernet header");
+        if (!decoder.decodeEthernet()) {
+            pcapFileSummary.malformedPacketCount++;
+            if (log.isTraceEnabled()) {
+                log.trace("Skipping truncated ethernet frame " + pcapFileSummary.packetCount);
             }
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
+            return;
         }
+        dispatcher.dispatchEtherType(decoder, packetInfo);
     }
 
-    public static PcapFileSummary processPcapFile(File pcapFile, Mode mode) {
-        PcapFileSummary pcapFileSummary = new PcapFileSummary(pcapFile.getAbsolutePath());
-        try {
-            log.trace("Opening pcap file: " + pcapFile.getAbsolutePath());
-            PcapHandle pcapHandle = Pcaps.openOffline(pcapFile.getAbsolutePath());
-            DataLinkType dataLinkType = pcapHandle.getDlt();
-            log.trace("DataLinkType is: " + dataLinkType);
-            if (dataLinkType == DataLinkType.EN10MB) { // Ethernet
-                Timestamp timestamp;
-                Packet packet = pcapHandle.getNextPacket();
-                while (packet != null) {
-                    PacketInfo packetInfo = new PacketInfo();
-                    timestamp = pcapHandle.getTimestamp();
-                    packetInfo.put(PacketInfo.TIMESTAMP, timestamp.toString());
-                    pcapFileSummary.packetCount++;
-                    log.trace("======= Processing packet " + pcapFileSummary.packetCount + " =======");
-                    log.trace("Packet capture timestamp: " + timestamp);
-                    processEthernetPacket(packet, pcapFileSummary, packetInfo, mode);
-                    try {
-                        packet = pcapHandle.getNextPacket();
-                    } catch (ArrayIndexOutOfBoundsException e) {
-                        log.trace("Exception occurred while processing pcapFile: " + pcapFile + ".  Exception was: " + e);
-                        packet = pcapHandle.getNextPacket();
-                    }
-                }
+    /**
+     * Process one captured record in place
+     *
+     * @param record     buffer holding the record; only absolute reads are made from it
+     * @param offset     index of the first byte of the record
+     * @param length     captured length of the record
+     * @param decoder    reusable decoder; it is pointed at the record here
+     * @param packetInfo reusable scratch record; it is reset here and filled in as the layers are decoded
+     * @param dispatcher routes the packet to the handlers of its protocols; built once for the capture
+     */
+    public static void processRecord(ByteBuffer record, int offset, int length, long timestampNanos, int linkType,
+                                     PacketDecoder decoder, PacketInfo packetInfo,
+                                     PcapFileSummary pcapFileSummary, PacketDispatcher dispatcher) {
+        pcapFileSummary.packetCount++;
+        if (log.isTraceEnabled()) {
+            log.trace("======= Processing packet " + pcapFileSummary.packetCount + " =======");
+        }
+        if (linkType != CaptureReader.LINKTYPE_ETHERNET) {
+            pcapFileSummary.nonIpPacketCount++;
+            if (log.isTraceEnabled()) {
+                log.trace("Skipping packet with link type: " + linkType);
+            }
+            return;
+        }
+        packetInfo.reset();
+        packetInfo.setTimestampNanos(timestampNanos);
+        decoder.wrap(record, offset, length);
+        processEthernetPacket(decoder, pcapFileSummary, packetInfo, dispatcher);
+    }
 
-                if (mode == Mode.BASIC_ANALYSIS) {
-                    printMode1Output(pcapFileSummary);
-                } else if (mode == Mode.DETAILED_ANALYSIS) {
-                    printMode1Output(pcapFileSummary);
-                    printMode2Output(pcapFileSummary);
-                } else if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                    printMode3Output(pcapFileSummary);
-                }
+    public static PcapFileSummary processPcapFile(File pcapFile, Mode mode, File spillDirectory, File flowRecordDirectory) {
+        PcapFileSummary pcapFileSummary = new PcapFileSummary(pcapFile.getAbsolutePath(), spillDirectory, flowRecordDirectory);
+        log.trace("Opening pcap file: " + pcapFile.getAbsolutePath());
+        try (CaptureReader captureReader = CaptureReaderFactory.open(pcapFile)) {
+            // reused for every record; records are decoded where the reader left them
+            PacketDecoder decoder = new PacketDecoder();
+            PacketInfo packetInfo = new PacketInfo();
+            PacketDispatcher dispatcher = new PacketDispatcher(DecodePlan.forMode(mode, flowRecordDirectory != null),
+                    pcapFileSummary);
+            while (captureReader.next()) {
+                ByteBuffer record = captureReader.getRecord();
+                processRecord(record, record.position(), record.remaining(), captureReader.getTimestampNanos(),
+                        captureReader.getLinkType(), decoder, packetInfo, pcapFileSummary, dispatcher);
             }
-        } catch (PcapNativeException | NotOpenException e) {
+            dispatcher.finish();
+        } catch (IOException e) {
             log.error("Exception occurred while processing pcapFile: " + pcapFile + ".  Exception was: " + e);
         }
         return pcapFileSummary;
     }
 
+    // mode 3 detectors correlate packets across flows, so they cannot be split into flow shards
+    private static PcapFileSummary analyzePcapFile(File pcapFile, ValidatedArgs validatedArgs) {
+        if ((validatedArgs.shards > 1) && (validatedArgs.mode != Mode.POSSIBLE_ATTACKS_ANALYSIS)) {
+            return ShardedPcapFileProcessor.processPcapFile(pcapFile, validatedArgs.mode, validatedArgs.shards,
+                    validatedArgs.spillDirectory, flowRecordDirectory(validatedArgs));
+        }
+        return processPcapFile(pcapFile, validatedArgs.mode, validatedArgs.spillDirectory, flowRecordDirectory(validatedArgs));
+    }
+
+    // flow records are logged next to the export file until they are exported
+    private static File flowRecordDirectory(ValidatedArgs validatedArgs) {
+        return (validatedArgs.flowExportFile != null) ? validatedArgs.flowExportFile.getAbsoluteFile().getParentFile() : null;
+    }
+
     public static void processPcapFiles(ValidatedArgs validatedArgs) {
-        for (File pcapFile : validatedArgs.inputFiles) {
-            processPcapFile(pcapFile, validatedArgs.mode);
+        List<File> inputFiles = validatedArgs.inputFiles;
+        // the aggregate only keeps counters, attacks and flow records, so it never spills connections
+        PcapFileSummary aggregateSummary = new PcapFileSummary("all " + inputFiles.size() + " input files",
+                null, flowRecordDirectory(validatedArgs));
+        int threads = Math.min(validatedArgs.threads, inputFiles.size());
+        if (threads <= 1) {
+            for (File pcapFile : inputFiles) {
+                PcapFileSummary pcapFileSummary;
+                try {
+                    pcapFileSummary = analyzePcapFile(pcapFile, validatedArgs);
+                } catch (RuntimeException e) {
+                    logFailedFile(pcapFile, e);
+                    continue;
+                }
+                printPcapFileSummary(pcapFileSummary, validatedArgs.mode);
+                aggregateSummary.add(pcapFileSummary);
+            }
+        } else {
+            // each file is analyzed on its own worker with its own PcapFileSummary;
+            // only this thread prints, in input order, so reports never interleave
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<PcapFileSummary>> results = new ArrayList<>();
+                for (File pcapFile : inputFiles) {
+                    results.add(executorService.submit(() -> analyzePcapFile(pcapFile, validatedArgs)));
+                }
+                for (int i = 0; i < results.size(); i++) {
+                    PcapFileSummary pcapFileSummary;
+                    try {
+                        pcapFileSummary = results.get(i).get();
+                    } catch (ExecutionException e) {
+                        // one bad file does not cost the reports of the others
+                        logFailedFile(inputFiles.get(i), e.getCause());
+                        continue;
+                    } finally {
+                        results.set(i, null); // release the summary once it has been reported
+                    }
+                    printPcapFileSummary(pcapFileSummary, validatedArgs.mode);
+                    aggregateSummary.add(pcapFileSummary);
+                }
+            } catch (InterruptedException e) {
+                log.error("Exception occurred while processing pcap files.  Exception was: " + e);
+                return;
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+        if (inputFiles.size() > 1) {
+            printAggregateOutput(aggregateSummary, validatedArgs.mode);
+        }
+        if (validatedArgs.flowExportFile != null) {
+            try {
+                aggregateSummary.exportFlowRecords(validatedArgs.flowExportFile);
+            } catch (IOException e) {
+                log.error("Exception occurred while exporting flow records to: " + validatedArgs.flowExportFile +
+                        ".  Exception was: " + e);
+            }
+        }
+    }
+
+    private static void logFailedFile(File pcapFile, Throwable e) {
+        log.error("Exception occurred while processing pcapFile: " + pcapFile + ".  Exception was: " + e);
+    }
+
+    public static void printPcapFileSummary(PcapFileSummary pcapFileSummary, Mode mode) {
+        if (mode == Mode.BASIC_ANALYSIS) {
+            printMode1Output(pcapFileSummary);
+        } else if (mode == Mode.DETAILED_ANALYSIS) {
+            printMode1Output(pcapFileSummary);
+            printMode2Output(pcapFileSummary);
+        } else if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+            printMode3Output(pcapFileSummary);
+        }
+        printWarnings(pcapFileSummary);
+    }
+
+    private static void printAggregateOutput(PcapFileSummary aggregateSummary, Mode mode) {
+        printMode1Output(aggregateSummary);
+        if (mode == Mode.DETAILED_ANALYSIS) {
+            log.info(aggregateSummary.ipProtocolCounter.toString());
+        } else if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
+            log.info("Possible attacks detected: " + aggregateSummary.attackSummaries.size());
+        }
+        printWarnings(aggregateSummary);
+    }
+
+    // problems found while the packets were processed, printed with the report they belong to
+    private static void printWarnings(PcapFileSummary pcapFileSummary) {
+        pcapFileSummary.ipMacTracker.getWarnings().forEach((String warning) -> {
+            log.info(warning);
+        });
+        long unreportedWarnings = pcapFileSummary.ipMacTracker.getWarningCount() -
+                pcapFileSummary.ipMacTracker.getWarnings().size();
+        if (unreportedWarnings > 0) {
+            log.info("*** Possible Spoofing warnings not shown: " + unreportedWarnings);
+        }
+        if (pcapFileSummary.malformedPacketCount > 0) {
+            log.info("Skipped malformed packets: " + pcapFileSummary.malformedPacketCount);
         }
     }
 
@@ -141,9 +239,26 @@ public class PcapFileProcessor {
             log.info(tracker.toString());
         });
         log.info("==== Opened TCP Connections (opened but not closed) ====");
-        pcapFileSummary.activeTcpConnections.values().forEach((TcpConnectionTracker tracker) -> {
+        pcapFileSummary.activeTcpConnections.forEach((TcpConnectionTracker tracker) -> {
             log.info(tracker.toString());
         });
+        if (pcapFileSummary.timedOutTcpConnections.size() > 0) {
+            log.info("==== Timed Out TCP Connections (idle past their timeout: " + pcapFileSummary.timedOutTcpConnections.size() +
+                    ", showing " + pcapFileSummary.timedOutTcpConnections.reportedSize() + ") ====");
+            pcapFileSummary.timedOutTcpConnections.forEach((TcpConnectionTracker tracker) -> {
+                log.info(tracker.toString());
+            });
+        }
+        if (pcapFileSummary.activeTcpConnections.getUntrackedFlowCount() > 0) {
+            log.info("TCP connections not tracked because the connection table was full: " +
+                    pcapFileSummary.activeTcpConnections.getUntrackedFlowCount());
+        }
+        log.info("UDP Flows: " + pcapFileSummary.activeUdpFlows.size() + " active, " +
+                pcapFileSummary.activeUdpFlows.getExpiredFlowCount() + " idle timed out");
+        if (pcapFileSummary.activeUdpFlows.getUntrackedFlowCount() > 0) {
+            log.info("UDP flows not tracked because the flow table was full: " +
+                    pcapFileSummary.activeUdpFlows.getUntrackedFlowCount());
+        }
         log.info(pcapFileSummary.ipProtocolCounter.toString());
     }
 
@@ -31,7 +31,12 @@ import com.liquidfortress.packetanalyzer.tcp.AccountBruteForceDetector;
 import com.liquidfortress.packetanalyzer.tcp.ActiveTcpConnections;
 import com.liquidfortress.packetanalyzer.tcp.ClosedTcpConnections;
 import com.liquidfortress.packetanalyzer.tcp.SynFloodDetector;
+import com.liquidfortress.packetanalyzer.tcp.TimedOutTcpConnections;
+import com.liquidfortress.packetanalyzer.udp.ActiveUdpFlows;
+import com.liquidfortress.packetanalyzer.util.FlowRecordLog;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
 
 /**
@@ -45,14 +50,21 @@ public class PcapFileSummary {
     public long packetCount = 0;
     public long nonIpPacketCount = 0;
     public long tcpConnectionCount = 0;
+    // packets skipped because a header was truncated or malformed; counted rather than logged as they are
+    // found, so that files analyzed in parallel are reported whole
+    public long malformedPacketCount = 0;
     public final UniqueIpAddresses uniqueIpAddresses = new UniqueIpAddresses();
     public final UdpSources udpSources = new UdpSources();
-    public final ActiveTcpConnections activeTcpConnections = new ActiveTcpConnections();
-    public final ClosedTcpConnections closedTcpConnections = new ClosedTcpConnections();
+    public final ClosedTcpConnections closedTcpConnections;
+    public final TimedOutTcpConnections timedOutTcpConnections = new TimedOutTcpConnections();
+    public final ActiveTcpConnections activeTcpConnections;
+    public final ActiveUdpFlows activeUdpFlows;
+    public final FlowRecordLog flowRecordLog; // null unless flow records are exported
     public final IpProtocolCounter ipProtocolCounter = new IpProtocolCounter();
     public final IpMacTracker ipMacTracker = new IpMacTracker();
     public final IpDefragmenter ipDefragmenter = new IpDefragmenter();
     public final PortScanDetector portScanDetector = new PortScanDetector();
+    public final IpScanDetector ipScanDetector = new IpScanDetector();
     public final PingOfDeathDetector pingOfDeathDetector = new PingOfDeathDetector();
     public final SmurfDetector smurfDetector = new SmurfDetector();
     public final SynFloodDetector synFloodDetector = new SynFloodDetector();
@@ -60,6 +72,97 @@ public class PcapFileSummary {
     public final LinkedList<AttackSummary> attackSummaries = new LinkedList<>();
 
     public PcapFileSummary(String filename) {
+        this(filename, null, null);
+    }
+
+    /**
+     * @param filename            name of the capture, or a description of what was merged
+     * @param spillDirectory      directory where closed TCP connections are logged as
+     *                            they close, or null to keep them on the heap
+     * @param flowRecordDirectory directory where flow records are logged as flows
+     *                            end, or null if flow records are not exported
+     */
+    public PcapFileSummary(String filename, File spillDirectory, File flowRecordDirectory) {
         this.filename = filename;
+        this.closedTcpConnections = new ClosedTcpConnections(spillDirectory);
+        this.flowRecordLog = (flowRecordDirectory != null) ? new FlowRecordLog(flowRecordDirectory) : null;
+        this.activeTcpConnections = new ActiveTcpConnections(timedOutTcpConnections, flowRecordLog);
+        this.activeUdpFlows = new ActiveUdpFlows(flowRecordLog);
+    }
+
+    /**
+     * Merge the results of another summary into this one.  Every component
+     * merges associatively, so partial results from flow shards, files or
+     * separate runs can be reduced in any grouping.  The in-progress state
+     * of the detectors and the IP defragmenter is not merged; it only
+     * matters while packets are still being processed.
+     *
+     * @param other summary to merge into this one; it must not be used afterwards
+     */
+    public void merge(PcapFileSummary other) {
+        if (other == this) {
+            throw new IllegalArgumentException("Cannot merge a PcapFileSummary with itself!");
+        }
+        packetCount += other.packetCount;
+        nonIpPacketCount += other.nonIpPacketCount;
+        tcpConnectionCount += other.tcpConnectionCount;
+        malformedPacketCount += other.malformedPacketCount;
+        uniqueIpAddresses.merge(other.uniqueIpAddresses);
+        udpSources.merge(other.udpSources);
+        ipProtocolCounter.merge(other.ipProtocolCounter);
+        ipMacTracker.mergeWarnings(other.ipMacTracker);
+        activeTcpConnections.merge(other.activeTcpConnections);
+        activeUdpFlows.merge(other.activeUdpFlows);
+        if ((flowRecordLog != null) && (other.flowRecordLog != null)) {
+            flowRecordLog.merge(other.flowRecordLog);
+        }
+        closedTcpConnections.merge(other.closedTcpConnections);
+        timedOutTcpConnections.merge(other.timedOutTcpConnections);
+        attackSummaries.addAll(other.attackSummaries);
+    }
+
+    /**
+     * Add what the aggregate report of several files shows: the counters,
+     * the attack summaries and, when flow records are exported, the flow
+     * records.  Unlike merge, the connection and flow tables are not kept,
+     * so an aggregate does not grow with every file's connections; the
+     * flows still tracked at the end of the other file are logged instead.
+     *
+     * @param other summary of one file, already reported; it must not be used afterwards
+     */
+    public void add(PcapFileSummary other) {
+        if (other == this) {
+            throw new IllegalArgumentException("Cannot add a PcapFileSummary to itself!");
+        }
+        packetCount += other.packetCount;
+        nonIpPacketCount += other.nonIpPacketCount;
+        tcpConnectionCount += other.tcpConnectionCount;
+        malformedPacketCount += other.malformedPacketCount;
+        uniqueIpAddresses.merge(other.uniqueIpAddresses);
+        udpSources.merge(other.udpSources);
+        ipProtocolCounter.merge(other.ipProtocolCounter);
+        attackSummaries.addAll(other.attackSummaries);
+        if ((flowRecordLog != null) && (other.flowRecordLog != null)) {
+            other.activeTcpConnections.writeFlowRecords(other.flowRecordLog);
+            other.activeUdpFlows.writeFlowRecords(other.flowRecordLog);
+            flowRecordLog.merge(other.flowRecordLog);
+        }
+    }
+
+    /**
+     * Export the flow records of every flow: the TCP connections that
+     * ended, followed by the TCP connections and UDP flows that were still
+     * tracked at the end.  Only done once, after all merges.
+     *
+     * @param flowExportFile file to write
+     * @throws IOException if the export cannot be written
+     */
+    public void exportFlowRecords(File flowExportFile) throws IOException {
+        if (flowRecordLog == null) {
+            throw new IllegalStateException("Flow records were not logged for " + filename);
+        }
+        activeTcpConnections.writeFlowRecords(flowRecordLog);
+        activeUdpFlows.writeFlowRecords(flowRecordLog);
+        flowRecordLog.writeTo(flowExportFile);
     }
 }
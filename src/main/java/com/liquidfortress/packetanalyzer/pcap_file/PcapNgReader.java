@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+
+/**
+ * PcapNgReader
+ * <p/>
+ * Streaming reader for pcapng capture files.  Section Header, Interface
+ * Description, Enhanced Packet, Simple Packet and the obsolete Packet
+ * blocks are decoded; all other block types are skipped.
+ */
+public class PcapNgReader extends StreamCaptureReader {
+
+    public static final int SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+    private static final int INTERFACE_DESCRIPTION_BLOCK = 0x00000001;
+    private static final int PACKET_BLOCK = 0x00000002;
+    private static final int SIMPLE_PACKET_BLOCK = 0x00000003;
+    private static final int ENHANCED_PACKET_BLOCK = 0x00000006;
+    private static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+    private static final int OPTION_END = 0;
+    private static final int OPTION_IF_TSRESOL = 9;
+    private static final int OPTION_IF_TSOFFSET = 14;
+    private static final int MIN_BLOCK_LENGTH = 12;
+    private static final int MAX_BLOCK_LENGTH = 64 * 1024 * 1024; // sanity limit for corrupt block headers
+
+    // per-interface details from the Interface Description Blocks of the current section
+    private static class InterfaceDescription {
+        int linkType;
+        int snapLength;
+        long unitsPerSecond = 1000000L; // default resolution is microseconds
+        long offsetSeconds = 0;
+
+        long toNanos(long timestamp) {
+            long seconds = timestamp / unitsPerSecond;
+            long fraction = timestamp % unitsPerSecond;
+            long nanos;
+            if (1000000000L % unitsPerSecond == 0) {
+                nanos = fraction * (1000000000L / unitsPerSecond);
+            } else if (fraction <= Long.MAX_VALUE / 1000000000L) {
+                nanos = (fraction * 1000000000L) / unitsPerSecond;
+            } else {
+                nanos = (long) (fraction * (1000000000.0 / unitsPerSecond));
+            }
+            return ((seconds + offsetSeconds) * 1000000000L) + nanos;
+        }
+    }
+
+    private final ArrayList<InterfaceDescription> interfaces = new ArrayList<>();
+
+    public PcapNgReader(ReadableByteChannel channel) throws IOException {
+        super(channel);
+        if (!fill(MIN_BLOCK_LENGTH) ||
+                (buffer.order(ByteOrder.LITTLE_ENDIAN).getInt(buffer.position()) != SECTION_HEADER_BLOCK)) {
+            close();
+            throw new IOException("Not a pcapng file: missing Section Header Block");
+        }
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        while (fill(MIN_BLOCK_LENGTH)) {
+            int blockStart = buffer.position();
+            int blockType = buffer.getInt(blockStart);
+            if (blockType == SECTION_HEADER_BLOCK) {
+                // the byte order magic decides the byte order of the whole section, including this block
+                int magic = buffer.order(ByteOrder.LITTLE_ENDIAN).getInt(blockStart + 8);
+                if (magic == Integer.reverseBytes(BYTE_ORDER_MAGIC)) {
+                    buffer.order(ByteOrder.BIG_ENDIAN);
+                } else if (magic != BYTE_ORDER_MAGIC) {
+                    throw new IOException("Corrupt pcapng Section Header Block: byte order magic is 0x" +
+                            Integer.toHexString(magic));
+                }
+                interfaces.clear();
+            }
+            int blockLength = buffer.getInt(blockStart + 4);
+            if ((blockLength < MIN_BLOCK_LENGTH) || (blockLength > MAX_BLOCK_LENGTH) || ((blockLength & 3) != 0)) {
+                throw new IOException("Corrupt pcapng block of type 0x" + Integer.toHexString(blockType) +
+                        ": block length is " + blockLength);
+            }
+            if (!fill(blockLength)) {
+                return false; // truncated final block
+            }
+            blockStart = buffer.position(); // fill may have compacted the buffer
+            boolean isPacket = false;
+            if (blockType == INTERFACE_DESCRIPTION_BLOCK) {
+                readInterfaceDescription(blockStart, blockLength);
+            } else if (blockType == ENHANCED_PACKET_BLOCK) {
+                InterfaceDescription description = getInterface(buffer.getInt(blockStart + 8));
+                long timestamp = ((buffer.getInt(blockStart + 12) & 0xFFFFFFFFL) << 32) |
+                        (buffer.getInt(blockStart + 16) & 0xFFFFFFFFL);
+                isPacket = setPacketRecord(description, blockStart + 28, buffer.getInt(blockStart + 20),
+                        buffer.getInt(blockStart + 24), blockStart + blockLength - 4);
+                timestampNanos = description.toNanos(timestamp);
+            } else if (blockType == PACKET_BLOCK) {
+                InterfaceDescription description = getInterface(buffer.getShort(blockStart + 8) & 0xFFFF);
+                long timestamp = ((buffer.getInt(blockStart + 12) & 0xFFFFFFFFL) << 32) |
+                        (buffer.getInt(blockStart + 16) & 0xFFFFFFFFL);
+                isPacket = setPacketRecord(description, blockStart + 28, buffer.getInt(blockStart + 20),
+                        buffer.getInt(blockStart + 24), blockStart + blockLength - 4);
+                timestampNanos = description.toNanos(timestamp);
+            } else if (blockType == SIMPLE_PACKET_BLOCK) {
+                // simple packets always belong to the first interface and carry no timestamp,
+                // so they are given the timestamp of the previous packet
+                InterfaceDescription description = getInterface(0);
+                int length = buffer.getInt(blockStart + 8);
+                int snapped = (description.snapLength > 0) ? Math.min(length, description.snapLength) : length;
+                isPacket = setPacketRecord(description, blockStart + 12, snapped, length, blockStart + blockLength - 4);
+            }
+            buffer.position(blockStart + blockLength);
+            if (isPacket) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private InterfaceDescription getInterface(int interfaceId) throws IOException {
+        if ((interfaceId < 0) || (interfaceId >= interfaces.size())) {
+            throw new IOException("pcapng packet refers to undefined interface " + interfaceId);
+        }
+        return interfaces.get(interfaceId);
+    }
+
+    private boolean setPacketRecord(InterfaceDescription description, int dataOffset, int captured, int original,
+                                    int blockBodyEnd) throws IOException {
+        if ((captured < 0) || (dataOffset + captured > blockBodyEnd)) {
+            throw new IOException("Corrupt pcapng packet block: captured length is " + captured);
+        }
+        setRecord(dataOffset, captured, original);
+        this.linkType = description.linkType;
+        return true;
+    }
+
+    private void readInterfaceDescription(int blockStart, int blockLength) {
+        InterfaceDescription description = new InterfaceDescription();
+        description.linkType = buffer.getShort(blockStart + 8) & 0xFFFF;
+        description.snapLength = buffer.getInt(blockStart + 12);
+        int optionOffset = blockStart + 16;
+        int optionsEnd = blockStart + blockLength - 4;
+        while (optionOffset + 4 <= optionsEnd) {
+            int code = buffer.getShort(optionOffset) & 0xFFFF;
+            int length = buffer.getShort(optionOffset + 2) & 0xFFFF;
+            int valueOffset = optionOffset + 4;
+            if ((code == OPTION_END) || (valueOffset + length > optionsEnd)) {
+                break;
+            }
+            if ((code == OPTION_IF_TSRESOL) && (length >= 1)) {
+                int resolution = buffer.get(valueOffset);
+                int exponent = resolution & 0x7F;
+                if ((resolution & 0x80) != 0) {
+                    description.unitsPerSecond = (exponent < 63) ? (1L << exponent) : Long.MAX_VALUE;
+                } else {
+                    long units = 1;
+                    for (int i = 0; (i < exponent) && (units <= Long.MAX_VALUE / 10); i++) {
+                        units *= 10;
+                    }
+                    description.unitsPerSecond = units;
+                }
+            } else if ((code == OPTION_IF_TSOFFSET) && (length >= 8)) {
+                description.offsetSeconds = buffer.getLong(valueOffset);
+            }
+            optionOffset = valueOffset + ((length + 3) & ~3);
+        }
+        interfaces.add(description);
+    }
+}
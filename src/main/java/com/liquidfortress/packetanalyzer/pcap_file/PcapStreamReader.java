@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * PcapStreamReader
+ * <p/>
+ * Sequential reader for classic libpcap capture files that cannot be
+ * memory mapped, such as the output of a decompressing channel
+ */
+public class PcapStreamReader extends StreamCaptureReader {
+
+    private static final int MAGIC_MICROSECONDS = 0xa1b2c3d4;
+    private static final int MAGIC_NANOSECONDS = 0xa1b23c4d;
+    private static final int GLOBAL_HEADER_LENGTH = 24;
+    private static final int RECORD_HEADER_LENGTH = 16;
+    private static final int MAX_CAPTURED_LENGTH = 16 * 1024 * 1024; // sanity limit for corrupt record headers
+
+    private final long nanosPerTimestampUnit; // the fractional timestamp is in micro- or nanoseconds
+
+    public PcapStreamReader(ReadableByteChannel channel) throws IOException {
+        super(channel);
+        if (!fill(GLOBAL_HEADER_LENGTH)) {
+            close();
+            throw new IOException("Stream is too short to be a pcap file");
+        }
+        int magic = buffer.order(ByteOrder.LITTLE_ENDIAN).getInt(buffer.position());
+        if ((magic == Integer.reverseBytes(MAGIC_MICROSECONDS)) || (magic == Integer.reverseBytes(MAGIC_NANOSECONDS))) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            magic = Integer.reverseBytes(magic);
+        }
+        if (magic == MAGIC_MICROSECONDS) {
+            nanosPerTimestampUnit = 1000L;
+        } else if (magic == MAGIC_NANOSECONDS) {
+            nanosPerTimestampUnit = 1L;
+        } else {
+            close();
+            throw new IOException("Unsupported pcap magic number 0x" + Integer.toHexString(magic));
+        }
+        this.linkType = buffer.getInt(buffer.position() + 20) & 0x0FFFFFFF; // upper bits may carry FCS information
+        buffer.position(buffer.position() + GLOBAL_HEADER_LENGTH);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (!fill(RECORD_HEADER_LENGTH)) {
+            return false;
+        }
+        int headerOffset = buffer.position();
+        int capturedLength = buffer.getInt(headerOffset + 8);
+        if ((capturedLength < 0) || (capturedLength > MAX_CAPTURED_LENGTH)) {
+            throw new IOException("Corrupt pcap record header: captured length is " + capturedLength);
+        }
+        if (!fill(RECORD_HEADER_LENGTH + capturedLength)) {
+            return false; // truncated final record
+        }
+        headerOffset = buffer.position(); // fill may have compacted the buffer
+        long seconds = buffer.getInt(headerOffset) & 0xFFFFFFFFL;
+        long fraction = buffer.getInt(headerOffset + 4) & 0xFFFFFFFFL;
+        this.timestampNanos = (seconds * 1000000000L) + (fraction * nanosPerTimestampUnit);
+        setRecord(headerOffset + RECORD_HEADER_LENGTH, capturedLength, buffer.getInt(headerOffset + 12));
+        buffer.position(headerOffset + RECORD_HEADER_LENGTH + capturedLength);
+        return true;
+    }
+}
@@ -20,22 +20,27 @@
 
 package com.liquidfortress.packetanalyzer.pcap_file;
 
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.dispatch.Analyzer;
 import com.liquidfortress.packetanalyzer.main.Main;
-import com.liquidfortress.packetanalyzer.tcp.IpAddressPair;
+import com.liquidfortress.packetanalyzer.util.KeyedWindows;
 import org.apache.logging.log4j.core.Logger;
 
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.Arrays;
 
 /**
  * PortScanDetector
  * <p/>
  * Tracks TCP and UDP traffic to detect port scanning
+ * <p/>
+ * Each source address has a SLIDING KeyedWindows window of its packets
+ * with the scanned port as the item.  The detection score is the weight
+ * of the distinct ports, updated only when a port enters or leaves the
+ * window, so adding a packet, expiring old ones and reading the score are
+ * all amortized O(1).
  */
-public class PortScanDetector {
+public class PortScanDetector implements Analyzer {
+    private static final int[] IP_PROTOCOLS = {PacketDecoder.IP_PROTOCOL_TCP};
     /* We follow a modified version of the following heuristic for port scan detection:
      * "A portscan is detected when a detection score of 21 points
      * in a time range of 300 ms for one individual source IP address
@@ -47,68 +52,105 @@ public class PortScanDetector {
      */
     private static final int DETECTION_SCORE = 42;
     private static final long LOOKBACK_WINDOW = 600; //milliseconds
+    private static final long LOOKBACK_WINDOW_NANOS = LOOKBACK_WINDOW * 1000000L;
+    private static final int WELL_KNOWN_PORT_LIMIT = 1024;
+    private static final int WELL_KNOWN_PORT_SCORE = 3;
+    private static final int OTHER_PORT_SCORE = 1;
+    private static final int SUSPICIOUS_PORT_SCORE = 10;
     private static Logger log = Main.log;
 
-    private boolean attackInProgress = false;
-    private AttackSummary attackSummary = null;
-    private final HashMap<IpAddressPair, LinkedHashSet<PacketInfo>> traffic = new HashMap<>();
+    private final IncidentTracker incidents = new IncidentTracker("PORT SCANNING"); // keyed by source address
+
+    // packets of each source address within the lookback window
+    private final KeyedWindows windows = new KeyedWindows(KeyedWindows.Kind.SLIDING, LOOKBACK_WINDOW_NANOS,
+            PortScanDetector::portScore, this::windowClosed);
+    private long[] reportedSequences = new long[0]; // per source: packets before this one are in its attack summary
+    private final KeyedWindows.EventConsumer reporter = this::report;
+    private AttackSummary reportSummary = null;
+    private String reportSource = null;
+
+    static int portScore(int port) {
+        switch (port) {
+            case 11:
+            case 12:
+            case 13:
+            case 2000:
+                return SUSPICIOUS_PORT_SCORE;
+            default:
+                return (port < WELL_KNOWN_PORT_LIMIT) ? WELL_KNOWN_PORT_SCORE : OTHER_PORT_SCORE;
+        }
+    }
+
+    @Override
+    public int[] getIpProtocols() {
+        return IP_PROTOCOLS;
+    }
+
+    @Override
+    public boolean onPacket(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo) {
+        add(packetInfo, pcapFileSummary);
+        return true;
+    }
 
     public void add(PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
         if (packetInfo == null) {
             throw new IllegalArgumentException("packetInfo cannot be null!");
         }
-        // add the packetInfo
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        Instant currentTime = Timestamp.valueOf(packetInfo.get(PacketInfo.TIMESTAMP)).toInstant();
-        Instant lookbackStart = currentTime.minusMillis(LOOKBACK_WINDOW);
+        long currentTime = packetInfo.getTimestampNanos();
+        long lookbackStart = currentTime - LOOKBACK_WINDOW_NANOS;
+        long sourceHigh = packetInfo.getSourceAddressHigh();
+        long sourceLow = packetInfo.getSourceAddressLow();
+        int sourcePort = packetInfo.getSourcePort();
+        int destinationPort = packetInfo.getDestinationPort();
+        // the item is the scanned port; the value keeps both ports for the report
+        int source = windows.add(sourceHigh, sourceLow, 0, currentTime, destinationPort, ((long) sourcePort << 16) | destinationPort,
+                packetInfo.getDestinationAddressHigh(), packetInfo.getDestinationAddressLow(), pcapFileSummary);
 
-        IpAddressPair ipAddressPair = new IpAddressPair(sourceAddress, destinationAddress);
-        LinkedHashSet<PacketInfo> packetInfos = traffic.get(ipAddressPair);
-        if (packetInfos == null) {
-            packetInfos = new LinkedHashSet<>();
-            packetInfos.add(packetInfo);
-        } else {
-            // prune packetInfos that are beyond the lookback window
-            LinkedHashSet<PacketInfo> keep = new LinkedHashSet<>();
-            for (PacketInfo pi : packetInfos) {
-                Instant packetTime = Timestamp.valueOf(pi.get(PacketInfo.TIMESTAMP)).toInstant();
-                if (packetTime.isAfter(lookbackStart)) {
-                    keep.add(pi);
-                }
+        int incident = incidents.find(sourceHigh, sourceLow);
+        if (windows.getDistinctWeight(source) >= DETECTION_SCORE) {
+            if (reportedSequences.length < windows.getCapacity()) {
+                reportedSequences = Arrays.copyOf(reportedSequences, windows.getCapacity());
+            }
+            if (incident == IncidentTracker.NO_INCIDENT) { // attack first detected
+                log.trace("*** PORT SCANNING detected!");
+                incident = incidents.open(sourceHigh, sourceLow, lookbackStart, pcapFileSummary);
+                reportedSequences[source] = windows.getFirstSequence(source);
             }
-            keep.add(packetInfo);
-            packetInfos = keep;
+            // add more details while attack in progress; each packet is added once
+            incidents.update(incident, currentTime);
+            reportSummary = incidents.getAttackSummary(incident);
+            reportSource = packetInfo.getSourceAddress();
+            windows.forEachEvent(source, reportedSequences[source], reporter);
+            reportedSequences[source] = windows.getEndSequence(source);
+            reportSummary = null;
+        } else if (incident != IncidentTracker.NO_INCIDENT) { // attack ended, close out attack details
+            incidents.close(incident, currentTime, pcapFileSummary);
         }
-        traffic.put(ipAddressPair, packetInfos);
+    }
 
-        // calculate detection score
-        HashSet<String> portSet = new HashSet<>();
-        for (PacketInfo recentPi : packetInfos) {
-            String destinationPort = recentPi.get(PacketInfo.DESTINATION_PORT);
-            portSet.add(destinationPort);
-        }
-        if (portSet.size() >= DETECTION_SCORE && !attackInProgress) { // attack first detected
-            log.trace("*** PORT SCANNING detected!");
-            attackInProgress = true;
-            attackSummary = new AttackSummary();
-            attackSummary.setAttackName("PORT SCANNING");
-            attackSummary.setStartTimestamp(lookbackStart.toString());
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
-            }
-        } else if (portSet.size() >= DETECTION_SCORE && attackInProgress) { // add more details while attack in progress
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
-            }
-        } else if (portSet.size() < DETECTION_SCORE && attackInProgress) { // attack ended, close out attack details
-            attackInProgress = false;
-            attackSummary.setEndTimestamp(currentTime.toString());
-            pcapFileSummary.attackSummaries.add(attackSummary);
-            this.attackSummary = null;
+    private void report(long timestampNanos, int destinationPort, long ports, long targetHigh, long targetLow) {
+        reportSummary.addSourceIpAndPort(reportSource + ":" + (ports >>> 16));
+        reportSummary.addTargetIpAndPort(PacketInfo.formatAddress(targetHigh, targetLow) + ":" + destinationPort);
+    }
+
+    // a source whose last packet left the lookback window has stopped scanning
+    private void windowClosed(int source, boolean expiring, PcapFileSummary pcapFileSummary) {
+        int incident = incidents.find(windows.getKeyHigh(source), windows.getKeyLow(source));
+        if (incident != IncidentTracker.NO_INCIDENT) {
+            incidents.close(incident, windows.getLastTimestampNanos(source), pcapFileSummary);
         }
+    }
 
+    // report the attacks that are still in progress at the end of the capture
+    @Override
+    public void onFinish(PcapFileSummary pcapFileSummary) {
+        incidents.closeAll(pcapFileSummary);
+    }
+
+    /**
+     * @return the number of source addresses with packets in the lookback window
+     */
+    public int getTrackedSourceCount() {
+        return windows.size();
     }
 }
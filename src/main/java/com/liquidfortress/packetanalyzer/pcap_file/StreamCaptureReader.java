@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * StreamCaptureReader
+ * <p/>
+ * Base class for capture readers that parse a channel sequentially.
+ * Records are parsed in place from a reusable direct buffer that is
+ * refilled from the channel, which is normally a ReadAheadChannel so
+ * that reading and decompression overlap with decoding.
+ */
+public abstract class StreamCaptureReader implements CaptureReader {
+
+    private static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final ReadableByteChannel channel;
+    protected ByteBuffer buffer;    // valid data is [position, limit)
+    private ByteBuffer recordView;  // shares the content of buffer
+    private boolean endOfChannel = false;
+
+    private int recordOffset;
+    private int capturedLength;
+    private int originalLength;
+    protected long timestampNanos = 0;
+    protected int linkType;
+
+    protected StreamCaptureReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        allocateBuffer(DEFAULT_BUFFER_SIZE);
+        buffer.limit(0);
+    }
+
+    private void allocateBuffer(int capacity) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(capacity);
+        if (buffer != null) {
+            larger.order(buffer.order());
+            larger.put(buffer);
+            larger.flip();
+        }
+        buffer = larger;
+        recordView = buffer.duplicate();
+    }
+
+    // make at least length bytes available from the current position; false at the end of the channel
+    protected boolean fill(int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            return true;
+        }
+        if (length > buffer.capacity()) {
+            allocateBuffer(Integer.highestOneBit(length - 1) << 1);
+        }
+        buffer.compact();
+        while ((buffer.position() < length) && !endOfChannel) {
+            if (channel.read(buffer) < 0) {
+                endOfChannel = true;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= length;
+    }
+
+    protected void setRecord(int dataOffset, int captured, int original) {
+        this.recordOffset = dataOffset;
+        this.capturedLength = captured;
+        this.originalLength = original;
+    }
+
+    @Override
+    public ByteBuffer getRecord() {
+        recordView.limit(recordOffset + capturedLength);
+        recordView.position(recordOffset);
+        return recordView;
+    }
+
+    @Override
+    public int getCapturedLength() {
+        return capturedLength;
+    }
+
+    @Override
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    @Override
+    public int getLinkType() {
+        return linkType;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pipeline;
+
+import com.liquidfortress.packetanalyzer.pcap_file.CaptureReader;
+import com.liquidfortress.packetanalyzer.util.FlowHash;
+
+/**
+ * FlowShardSelector
+ * <p/>
+ * Decode stage of the pipeline: reads just enough of the Ethernet, IP and
+ * TCP / UDP headers of a record to compute a symmetric hash of its flow,
+ * so both directions of a flow are assigned to the same shard.  IPv4
+ * fragments carry no ports, and any TCP or UDP flow may be fragmented, so
+ * IPv4 flows are hashed by their addresses and protocol only: a reassembled
+ * segment is then processed on the shard that holds its connection.  IPv6
+ * fragments are not reassembled, so IPv6 flows are hashed with their ports.
+ */
+public class FlowShardSelector {
+
+    private static final int ETHERNET_HEADER_LENGTH = 14;
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86DD;
+    private static final int PROTOCOL_TCP = 6;
+    private static final int PROTOCOL_UDP = 17;
+
+    private final int shardCount;
+
+    public FlowShardSelector(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    private static int getShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return (getShort(data, offset) << 16) | getShort(data, offset + 2);
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        return ((getInt(data, offset) & 0xFFFFFFFFL) << 32) | (getInt(data, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private static boolean hasPorts(int protocol) {
+        return (protocol == PROTOCOL_TCP) || (protocol == PROTOCOL_UDP);
+    }
+
+    /**
+     * Select the shard for a record
+     *
+     * @param data     record bytes
+     * @param length   captured length of the record
+     * @param linkType link type of the record
+     * @return shard index; records that are not IP go to shard 0
+     */
+    public int select(byte[] data, int length, int linkType) {
+        if ((linkType != CaptureReader.LINKTYPE_ETHERNET) || (length < ETHERNET_HEADER_LENGTH)) {
+            return 0;
+        }
+        int etherType = getShort(data, 12);
+        int ip = ETHERNET_HEADER_LENGTH;
+        long flowHash;
+        if ((etherType == ETHERTYPE_IPV4) && (length >= ip + 20)) {
+            int protocol = data[ip + 9] & 0xFF;
+            flowHash = FlowHash.flow(FlowHash.ipv4Endpoint(getInt(data, ip + 12), 0),
+                    FlowHash.ipv4Endpoint(getInt(data, ip + 16), 0), protocol);
+        } else if ((etherType == ETHERTYPE_IPV6) && (length >= ip + 40)) {
+            int protocol = data[ip + 6] & 0xFF;
+            int sourcePort = 0;
+            int destinationPort = 0;
+            if (hasPorts(protocol) && (length >= ip + 44)) {
+                sourcePort = getShort(data, ip + 40);
+                destinationPort = getShort(data, ip + 42);
+            }
+            flowHash = FlowHash.flow(FlowHash.ipv6Endpoint(getLong(data, ip + 8), getLong(data, ip + 16), sourcePort),
+                    FlowHash.ipv6Endpoint(getLong(data, ip + 24), getLong(data, ip + 32), destinationPort), protocol);
+        } else {
+            return 0;
+        }
+        return (int) ((flowHash >>> 1) % shardCount);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PacketBatch
+ * <p/>
+ * A reusable batch of copied capture records that moves through the
+ * pipeline stages.  The decode stage fills in the shard of every record;
+ * every shard worker sees every batch and processes only its own records.
+ */
+public class PacketBatch {
+
+    final byte[][] data;
+    final ByteBuffer[] buffers; // wrap data, so that records can be decoded in place
+    final int[] lengths;
+    final long[] timestamps;
+    final int[] linkTypes;
+    final int[] shards;
+    int size = 0;
+    // the decode stage's work on this batch, done before the batch is dispatched
+    Future<?> decoding;
+    // shard workers that still have to process this batch before it can be reused
+    final AtomicInteger pendingShards = new AtomicInteger();
+
+    PacketBatch(int capacity) {
+        this.data = new byte[capacity][];
+        this.buffers = new ByteBuffer[capacity];
+        this.lengths = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.linkTypes = new int[capacity];
+        this.shards = new int[capacity];
+    }
+
+    boolean isFull() {
+        return size == lengths.length;
+    }
+
+    // returns the slot for the next record, growing its buffer if needed
+    byte[] nextSlot(int length) {
+        byte[] slot = data[size];
+        if ((slot == null) || (slot.length < length)) {
+            slot = new byte[Math.max(length, 2048)];
+            data[size] = slot;
+            buffers[size] = ByteBuffer.wrap(slot);
+        }
+        return slot;
+    }
+}
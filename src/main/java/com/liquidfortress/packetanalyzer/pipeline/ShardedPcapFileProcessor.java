@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pipeline;
+
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.dispatch.PacketDispatcher;
+import com.liquidfortress.packetanalyzer.main.DecodePlan;
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.main.Mode;
+import com.liquidfortress.packetanalyzer.pcap_file.CaptureReader;
+import com.liquidfortress.packetanalyzer.pcap_file.CaptureReaderFactory;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileProcessor;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import org.apache.logging.log4j.core.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ShardedPcapFileProcessor
+ * <p/>
+ * Processes a single capture file with a staged pipeline:
+ * the calling thread reads and copies records into batches, a pool of
+ * decode workers assigns every record to a flow shard, a dispatcher hands
+ * the decoded batches in capture order to every shard worker, and each
+ * shard worker runs the protocol processors on its own records with its
+ * own PcapFileSummary.  Since every packet of a flow lands on the same
+ * shard, connection tracking stays single-writer and in capture order.
+ * The shard summaries are merged into one summary at the end.
+ */
+public class ShardedPcapFileProcessor {
+    private static final int BATCH_SIZE = 256;
+    private static final int BATCH_POOL_SIZE = 64;
+    private static final PacketBatch END_OF_CAPTURE = new PacketBatch(0);
+    private static Logger log = Main.log;
+
+    private static class ShardWorker implements Runnable {
+        private final PcapFileSummary pcapFileSummary;
+        private final PacketDecoder decoder = new PacketDecoder();
+        private final PacketInfo packetInfo = new PacketInfo();
+        private final int shard;
+        private final PacketDispatcher dispatcher;
+        private final ArrayBlockingQueue<PacketBatch> batches = new ArrayBlockingQueue<>(BATCH_POOL_SIZE + 1);
+        private final ArrayBlockingQueue<PacketBatch> freeBatches;
+
+        ShardWorker(String filename, File spillDirectory, File flowRecordDirectory, int shard, DecodePlan plan,
+                    ArrayBlockingQueue<PacketBatch> freeBatches) {
+            this.pcapFileSummary = new PcapFileSummary(filename, spillDirectory, flowRecordDirectory);
+            this.shard = shard;
+            this.dispatcher = new PacketDispatcher(plan, pcapFileSummary);
+            this.freeBatches = freeBatches;
+        }
+
+        @Override
+        public void run() {
+            try {
+                PacketBatch batch = batches.take();
+                while (batch != END_OF_CAPTURE) {
+                    for (int i = 0; i < batch.size; i++) {
+                        if (batch.shards[i] == shard) {
+                            processRecord(batch, i);
+                        }
+                    }
+                    if (batch.pendingShards.decrementAndGet() == 0) {
+                        batch.size = 0;
+                        freeBatches.put(batch);
+                    }
+                    batch = batches.take();
+                }
+                dispatcher.finish();
+            } catch (InterruptedException e) {
+                log.error("Shard " + shard + " was interrupted while processing " + pcapFileSummary.filename);
+            }
+        }
+
+        private void processRecord(PacketBatch batch, int i) {
+            try {
+                PcapFileProcessor.processRecord(batch.buffers[i], 0, batch.lengths[i], batch.timestamps[i],
+                        batch.linkTypes[i], decoder, packetInfo, pcapFileSummary, dispatcher);
+            } catch (RuntimeException e) {
+                // keep the shard alive; a dead shard would stall the whole pipeline
+                log.error("Exception occurred while processing a packet. Exception was: " + e);
+            }
+        }
+    }
+
+    private static void decode(PacketBatch batch, FlowShardSelector flowShardSelector) {
+        for (int i = 0; i < batch.size; i++) {
+            batch.shards[i] = flowShardSelector.select(batch.data[i], batch.lengths[i], batch.linkTypes[i]);
+        }
+    }
+
+    // hands decoded batches to every shard in the order they were read
+    private static void dispatch(ArrayBlockingQueue<PacketBatch> decodedBatches, ArrayBlockingQueue<PacketBatch> freeBatches,
+                                 ShardWorker[] shardWorkers) {
+        try {
+            while (true) {
+                PacketBatch batch = decodedBatches.take();
+                if (batch != END_OF_CAPTURE) {
+                    try {
+                        batch.decoding.get();
+                    } catch (ExecutionException e) {
+                        log.error("Exception occurred while decoding a batch. Exception was: " + e.getCause());
+                        // drop its records, but give the batch back; the reader waits for free batches
+                        batch.size = 0;
+                        freeBatches.put(batch);
+                        continue;
+                    }
+                    batch.pendingShards.set(shardWorkers.length);
+                }
+                for (ShardWorker shardWorker : shardWorkers) {
+                    shardWorker.batches.put(batch);
+                }
+                if (batch == END_OF_CAPTURE) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Pipeline dispatcher was interrupted");
+        }
+    }
+
+    public static PcapFileSummary processPcapFile(File pcapFile, Mode mode, int shardCount, File spillDirectory,
+                                                  File flowRecordDirectory) {
+        String filename = pcapFile.getAbsolutePath();
+        log.trace("Opening pcap file: " + filename + " with " + shardCount + " flow shards");
+        ArrayBlockingQueue<PacketBatch> freeBatches = new ArrayBlockingQueue<>(BATCH_POOL_SIZE);
+        for (int i = 0; i < BATCH_POOL_SIZE; i++) {
+            freeBatches.add(new PacketBatch(BATCH_SIZE));
+        }
+        ArrayBlockingQueue<PacketBatch> decodedBatches = new ArrayBlockingQueue<>(BATCH_POOL_SIZE + 1);
+        DecodePlan plan = DecodePlan.forMode(mode, flowRecordDirectory != null);
+        ShardWorker[] shardWorkers = new ShardWorker[shardCount];
+        Thread[] shardThreads = new Thread[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            shardWorkers[shard] = new ShardWorker(filename, spillDirectory, flowRecordDirectory, shard, plan, freeBatches);
+            shardThreads[shard] = new Thread(shardWorkers[shard], "flow-shard-" + shard);
+            shardThreads[shard].start();
+        }
+        Thread dispatcher = new Thread(() -> dispatch(decodedBatches, freeBatches, shardWorkers), "pipeline-dispatcher");
+        dispatcher.start();
+        FlowShardSelector flowShardSelector = new FlowShardSelector(shardCount);
+        ExecutorService decoders = Executors.newFixedThreadPool(Math.max(1, shardCount / 2));
+
+        try {
+            PacketBatch batch = freeBatches.take();
+            try (CaptureReader captureReader = CaptureReaderFactory.open(pcapFile)) {
+                while (captureReader.next()) {
+                    ByteBuffer record = captureReader.getRecord();
+                    int length = record.remaining();
+                    record.get(batch.nextSlot(length), 0, length);
+                    batch.lengths[batch.size] = length;
+                    batch.timestamps[batch.size] = captureReader.getTimestampNanos();
+                    batch.linkTypes[batch.size] = captureReader.getLinkType();
+                    batch.size++;
+                    if (batch.isFull()) {
+                        PacketBatch full = batch;
+                        full.decoding = decoders.submit(() -> decode(full, flowShardSelector));
+                        decodedBatches.put(full);
+                        batch = freeBatches.take();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // a corrupt or truncated capture must still end the pipeline, or its threads never finish
+                log.error("Exception occurred while processing pcapFile: " + pcapFile + ".  Exception was: " + e);
+            }
+            // the records read before an error are still analyzed
+            PacketBatch last = batch;
+            last.decoding = decoders.submit(() -> decode(last, flowShardSelector));
+            decodedBatches.put(last);
+            decodedBatches.put(END_OF_CAPTURE);
+            dispatcher.join();
+            for (Thread shardThread : shardThreads) {
+                shardThread.join();
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while processing pcapFile: " + pcapFile);
+            dispatcher.interrupt();
+            for (Thread shardThread : shardThreads) {
+                shardThread.interrupt();
+            }
+        } finally {
+            decoders.shutdownNow();
+        }
+
+        PcapFileSummary pcapFileSummary = new PcapFileSummary(filename, spillDirectory, flowRecordDirectory);
+        for (ShardWorker shardWorker : shardWorkers) {
+            pcapFileSummary.merge(shardWorker.pcapFileSummary);
+        }
+        return pcapFileSummary;
+    }
+}
@@ -22,10 +22,6 @@ package com.liquidfortress.packetanalyzer.statistics;
 
 import org.pcap4j.packet.namednumber.IpNumber;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-
 /**
  * IpProtocolCounter
  * <p/>
@@ -33,32 +29,36 @@ import java.util.Set;
  */
 public class IpProtocolCounter {
 
-    private HashMap<IpNumber, Integer> protocolCounts = new HashMap<>();
+    // indexed by IP protocol number; protocol names are only looked up for the report
+    private final long[] protocolCounts = new long[256];
 
     public IpProtocolCounter() {
     }
 
-    public void increment(IpNumber ipNumber) {
-        Integer count = protocolCounts.get(ipNumber);
-        if (count == null) {
-            count = new Integer(1);
-        } else {
-            count++;
+    public void increment(int ipProtocol) {
+        protocolCounts[ipProtocol & 0xFF]++;
+    }
+
+    // per-protocol sums: associative and commutative
+    public void merge(IpProtocolCounter other) {
+        for (int ipProtocol = 0; ipProtocol < protocolCounts.length; ipProtocol++) {
+            protocolCounts[ipProtocol] += other.protocolCounts[ipProtocol];
         }
-        protocolCounts.put(ipNumber, count);
     }
 
-    public Set<Map.Entry<IpNumber, Integer>> entrySet() {
-        return protocolCounts.entrySet();
+    public long get(int ipProtocol) {
+        return protocolCounts[ipProtocol & 0xFF];
     }
 
     public String toString() {
         StringBuilder builder = new StringBuilder("=== IP Protocol Counts ===\n");
-        for (Map.Entry<IpNumber, Integer> entry : entrySet()) {
-            builder.append(entry.getKey());
-            builder.append(": ");
-            builder.append(entry.getValue());
-            builder.append("\n");
+        for (int ipProtocol = 0; ipProtocol < protocolCounts.length; ipProtocol++) {
+            if (protocolCounts[ipProtocol] > 0) {
+                builder.append(IpNumber.getInstance((byte) ipProtocol));
+                builder.append(": ");
+                builder.append(protocolCounts[ipProtocol]);
+                builder.append("\n");
+            }
         }
         return builder.toString();
     }
@@ -20,17 +20,17 @@
 
 package com.liquidfortress.packetanalyzer.statistics;
 
-import java.util.HashSet;
+import com.liquidfortress.packetanalyzer.util.PackedKeySet;
 
 /**
  * UdpSources
  * <p/>
- * HashSet used to track unique UDP sources
+ * Set used to track unique UDP sources
  */
 public class UdpSources {
 
-    // UDP sources are stored in "IP Address:port" format
-    private HashSet<String> sources = new HashSet<>();
+    // UDP sources are stored as a 128-bit address and a port
+    private final PackedKeySet sources = new PackedKeySet();
 
     public UdpSources() {
     }
@@ -39,11 +39,16 @@ public class UdpSources {
         return sources.size();
     }
 
-    public boolean contains(Object o) {
-        return sources.contains(o);
+    public boolean contains(long addressHigh, long addressLow, int port) {
+        return sources.contains(addressHigh, addressLow, port);
     }
 
-    public boolean add(String s) {
-        return sources.add(s);
+    public boolean add(long addressHigh, long addressLow, int port) {
+        return sources.add(addressHigh, addressLow, port);
+    }
+
+    // set union: associative and commutative
+    public void merge(UdpSources other) {
+        sources.merge(other.sources);
     }
 }
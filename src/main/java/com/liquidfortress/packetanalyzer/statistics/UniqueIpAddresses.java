@@ -20,7 +20,7 @@
 
 package com.liquidfortress.packetanalyzer.statistics;
 
-import java.util.HashSet;
+import com.liquidfortress.packetanalyzer.util.PackedKeySet;
 
 /**
  * UniqueIpAddresses
@@ -29,7 +29,8 @@ import java.util.HashSet;
  */
 public class UniqueIpAddresses {
 
-    private HashSet<String> uniqueIpAddresses = new HashSet<>();
+    // addresses are stored as 128-bit values; IPv4 addresses in their IPv4-mapped form
+    private final PackedKeySet uniqueIpAddresses = new PackedKeySet();
 
     public UniqueIpAddresses() {
     }
@@ -38,9 +39,12 @@ public class UniqueIpAddresses {
         return uniqueIpAddresses.size();
     }
 
-    public boolean add(String hostAddress) {
-        return uniqueIpAddresses.add(hostAddress);
+    public boolean add(long addressHigh, long addressLow) {
+        return uniqueIpAddresses.add(addressHigh, addressLow, 0);
     }
-}
-
 
+    // set union: associative and commutative
+    public void merge(UniqueIpAddresses other) {
+        uniqueIpAddresses.merge(other.uniqueIpAddresses);
+    }
+}
@@ -20,35 +20,47 @@
 
 package com.liquidfortress.packetanalyzer.tcp;
 
+import com.liquidfortress.packetanalyzer.dispatch.Analyzer;
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.IncidentTracker;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
-import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
+import com.liquidfortress.packetanalyzer.util.FlowStore;
+import com.liquidfortress.packetanalyzer.util.KeyedWindows;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.Packet;
 
-import java.sql.Timestamp;
-import java.time.Instant;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 
 /**
  * AccountBruteForceDetector
  * <p/>
- * Detects brute force and dictionary attacks against Telnet
+ * Detects brute force and dictionary attacks against Telnet, reading the
+ * reassembled byte streams of established connections
+ * <p/>
+ * The telnet packets of each watched client and server pair are kept in a
+ * SLIDING KeyedWindows window.  Pairs are told apart by the low 64 bits
+ * of each address, which is exact for IPv4.  Each pair has its own
+ * incident, so other clients of the same server, or their successful
+ * logins, do not end an attack in progress.
  */
-public class AccountBruteForceDetector {
+public class AccountBruteForceDetector implements Analyzer {
     private static final int TELNET_PORT = 23;
+    private static final int MAX_CAPTURED_LENGTH = 1024; // longer input is not a username or password
     private static final long LOOKBACK_WINDOW = 30000; //milliseconds
     private static final int DETECTION_SCORE = 4;
     private static Logger log = Main.log;
-    // watchList tracks which IP address pairs we are watching and the PacketInfos since we started watching
-    private HashMap<IpAddressPair, LinkedHashSet<PacketInfo>> watchList = new HashMap<>();
+    // watchList tracks which client and server pairs we are watching and their packets within the lookback window
+    // each packet is an event whose item is 1 if the server sent it, and whose value holds both ports
+    private final KeyedWindows watchList = new KeyedWindows(KeyedWindows.Kind.SLIDING, LOOKBACK_WINDOW * 1000000L,
+            null, this::pairExpired);
     // packetData stores the captured packet data from telnet; we will assemble this data into usernames and passwords
     // since there could be multiple ports active simultaneously, we store data per port
-    private HashMap<IpAddressPair, HashMap<Integer, String>> packetData = new HashMap<>();
+    private HashMap<IpAddressPair, HashMap<Integer, StringBuilder>> packetData = new HashMap<>();
     // telnetLoginsInProgress stores the captured username data on a per source port basis
     // after the telnet daemon response is captured, the username data is either cleared or
     // matched with the password and transferred to failedAttempts
@@ -56,29 +68,108 @@ public class AccountBruteForceDetector {
     // failedAttempts stores the data from past failed telnet login attempts and counts how many failed attempts have occurred
     // if more than DETECTION_SCORE attempts have occurred, the alert is triggered
     private HashMap<IpAddressPair, LinkedList<TelnetLoginAttempt>> failedAttempts = new HashMap<>();
-    private boolean attackInProgress = false;
-    private AttackSummary attackSummary = null;
+    // keyed like the watchList, by client and server, so one pair's quiet or successful login ends only its own attack
+    private final IncidentTracker incidents = new IncidentTracker("BRUTE FORCE / DICTIONARY ATTACK");
+    private long[] reportedSequences = new long[0]; // per pair: packets before this one are in its attack summary
+    private final KeyedWindows.EventConsumer reporter = this::report;
+    private AttackSummary reportSummary = null;
+    private String reportClient = null;
+    private String reportServer = null;
+
+    @Override
+    public int[] getIpProtocols() {
+        return NO_IP_PROTOCOLS;
+    }
+
+    @Override
+    public boolean readsTcpStreams() {
+        return true;
+    }
+
+    // input captured on a connection that ended cannot be completed any more
+    @Override
+    public void onFlowEnd(FlowStore flows, int flow, PcapFileSummary pcapFileSummary) {
+        if ((flows.getIpProtocol() != TcpFlowStore.PROTOCOL_TCP) || (flows.getServerPort(flow) != TELNET_PORT)) {
+            return;
+        }
+        IpAddressPair ipAddressPair = new IpAddressPair(flows.getClientIpAddress(flow), flows.getServerIpAddress(flow));
+        clearCapturedPacketData(ipAddressPair, flows.getClientPort(flow));
+        removeTelnetLoginAttempt(ipAddressPair, flows.getClientPort(flow));
+    }
 
     private boolean underAttack(IpAddressPair ipAddressPair) {
         LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(ipAddressPair);
         return ((attempts != null) && (attempts.size() >= DETECTION_SCORE));
     }
 
-    private void addToWatchList(IpAddressPair ipAddressPair, PacketInfo packetInfo) {
-        LinkedHashSet<PacketInfo> packetInfos = watchList.get(ipAddressPair);
-        if (packetInfos == null) {
-            packetInfos = new LinkedHashSet<>();
+    // the watchList key of the pair a telnet packet belongs to, given the address of each end
+    private static long pairKey(long addressHigh, long addressLow) {
+        return addressLow ^ (addressHigh * 0x9E3779B97F4A7C15L); // IPv4 addresses have no high bits
+    }
+
+    private static long clientKey(PacketInfo packetInfo) {
+        return (packetInfo.getSourcePort() == TELNET_PORT) ?
+                pairKey(packetInfo.getDestinationAddressHigh(), packetInfo.getDestinationAddressLow()) :
+                pairKey(packetInfo.getSourceAddressHigh(), packetInfo.getSourceAddressLow());
+    }
+
+    private static long serverKey(PacketInfo packetInfo) {
+        return (packetInfo.getSourcePort() == TELNET_PORT) ?
+                pairKey(packetInfo.getSourceAddressHigh(), packetInfo.getSourceAddressLow()) :
+                pairKey(packetInfo.getDestinationAddressHigh(), packetInfo.getDestinationAddressLow());
+    }
+
+    private int findOnWatchList(PacketInfo packetInfo) {
+        return watchList.find(clientKey(packetInfo), serverKey(packetInfo), TELNET_PORT);
+    }
+
+    private void addToWatchList(PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+        boolean fromServer = (packetInfo.getSourcePort() == TELNET_PORT);
+        long ports = ((long) packetInfo.getSourcePort() << 16) | packetInfo.getDestinationPort();
+        watchList.add(clientKey(packetInfo), serverKey(packetInfo), TELNET_PORT, packetInfo.getTimestampNanos(),
+                fromServer ? 1 : 0, ports, packetInfo.getSourceAddressHigh(), packetInfo.getSourceAddressLow(),
+                pcapFileSummary);
+    }
+
+    // a pair that logged in, or sent no telnet packets for a whole lookback window, ends its own attack
+    private void pairExpired(int pair, boolean expiring, PcapFileSummary pcapFileSummary) {
+        int incident = incidents.find(watchList.getKeyHigh(pair), watchList.getKeyLow(pair), TELNET_PORT);
+        if (incident != IncidentTracker.NO_INCIDENT) {
+            long endTimestampNanos = incidents.getAttackSummary(incident).getEndTimestampNanos();
+            if (endTimestampNanos == AttackSummary.NOT_SET) {
+                endTimestampNanos = watchList.getLastTimestampNanos(pair);
+            }
+            incidents.close(incident, endTimestampNanos, pcapFileSummary);
         }
-        packetInfos.add(packetInfo);
-        watchList.put(ipAddressPair, packetInfos);
     }
 
-    private void removeFromWatchList(IpAddressPair ipAddressPair) {
-        watchList.remove(ipAddressPair);
+    private void removeFromWatchList(PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+        int pair = findOnWatchList(packetInfo);
+        if (pair != KeyedWindows.NO_KEY) {
+            watchList.remove(pair, pcapFileSummary);
+        }
     }
 
-    private boolean onWatchlist(IpAddressPair ipAddressPair) {
-        return watchList.containsKey(ipAddressPair);
+    private boolean onWatchlist(PacketInfo packetInfo) {
+        return findOnWatchList(packetInfo) != KeyedWindows.NO_KEY;
+    }
+
+    // add the watched packets of a pair that are not in the attack summary yet
+    private void reportWatchedPackets(int pair, AttackSummary attackSummary, PacketInfo packetInfo) {
+        boolean fromServer = (packetInfo.getSourcePort() == TELNET_PORT);
+        reportSummary = attackSummary;
+        reportClient = fromServer ? packetInfo.getDestinationAddress() : packetInfo.getSourceAddress();
+        reportServer = fromServer ? packetInfo.getSourceAddress() : packetInfo.getDestinationAddress();
+        watchList.forEachEvent(pair, reportedSequences[pair], reporter);
+        reportedSequences[pair] = watchList.getEndSequence(pair);
+        reportSummary = null;
+    }
+
+    private void report(long timestampNanos, int fromServer, long ports, long sourceHigh, long sourceLow) {
+        String source = (fromServer == 1) ? reportServer : reportClient;
+        String target = (fromServer == 1) ? reportClient : reportServer;
+        reportSummary.addSourceIpAndPort(source + ":" + (ports >>> 16));
+        reportSummary.addTargetIpAndPort(target + ":" + (ports & 0xffff));
     }
 
     private String processBackspace(String input) {
@@ -100,33 +191,34 @@ public class AccountBruteForceDetector {
     }
 
     private void capturePacketData(IpAddressPair ipAddressPair, int senderPort, String payloadStr) {
-        HashMap<Integer, String> portsData = packetData.get(ipAddressPair);
+        HashMap<Integer, StringBuilder> portsData = packetData.get(ipAddressPair);
         if (portsData == null) {
             portsData = new HashMap<>();
+            packetData.put(ipAddressPair, portsData);
         }
-        // clean up payloadStr
-
-        String data = portsData.get(senderPort);
+        StringBuilder data = portsData.get(senderPort);
         if (data == null) {
-            data = payloadStr;
-        } else {
-            data += payloadStr;
+            data = new StringBuilder();
+            portsData.put(senderPort, data);
+        }
+        int room = MAX_CAPTURED_LENGTH - data.length();
+        if (room > 0) {
+            data.append(payloadStr, 0, Math.min(room, payloadStr.length()));
         }
-        portsData.put(senderPort, data);
-        packetData.put(ipAddressPair, portsData);
     }
 
     private String getCapturedPacketData(IpAddressPair ipAddressPair, int senderPort) {
-        HashMap<Integer, String> portsData = packetData.get(ipAddressPair);
+        HashMap<Integer, StringBuilder> portsData = packetData.get(ipAddressPair);
         if (portsData != null) {
-            return cleanStr(portsData.get(senderPort));
+            StringBuilder data = portsData.get(senderPort);
+            return (data == null) ? null : cleanStr(data.toString());
         } else {
             return null;
         }
     }
 
     private void clearCapturedPacketData(IpAddressPair ipAddressPair, int senderPort) {
-        HashMap<Integer, String> portsData = packetData.get(ipAddressPair);
+        HashMap<Integer, StringBuilder> portsData = packetData.get(ipAddressPair);
         if (portsData != null) {
             portsData.remove(senderPort);
         }
@@ -147,7 +239,7 @@ public class AccountBruteForceDetector {
         telnetLoginsInProgress.put(ipAddressPair, portsUsernames);
     }
 
-    private void storePassword(IpAddressPair ipAddressPair, int senderPort, String password, String timestamp) {
+    private void storePassword(IpAddressPair ipAddressPair, int senderPort, String password, long timestampNanos) {
         // store the captured password in telnetLoginsInProgress
         HashMap<Integer, TelnetLoginAttempt> portsUsernames = telnetLoginsInProgress.get(ipAddressPair);
         if (portsUsernames == null) {
@@ -158,7 +250,7 @@ public class AccountBruteForceDetector {
             loginAttempt = new TelnetLoginAttempt();
         }
         loginAttempt.password = password;
-        loginAttempt.timestamp = timestamp;
+        loginAttempt.timestampNanos = timestampNanos;
         portsUsernames.put(senderPort, loginAttempt);
         telnetLoginsInProgress.put(ipAddressPair, portsUsernames);
     }
@@ -184,102 +276,92 @@ public class AccountBruteForceDetector {
     }
 
 
-    public void detect(Packet packet, PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+    /**
+     * Look at the next in-order telnet bytes of an established connection
+     *
+     * @param buffer        buffer holding the bytes
+     * @param payloadOffset index of the first byte
+     * @param payloadLength number of bytes
+     * @param packetInfo    packet that made the bytes available
+     */
+    @Override
+    public void onStreamData(ByteBuffer buffer, int payloadOffset, int payloadLength, PacketInfo packetInfo,
+                             PcapFileSummary pcapFileSummary) {
         if (packetInfo == null) {
             throw new IllegalArgumentException("packetInfo cannot be null!");
         }
         // extract common data
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        int sourcePort = Integer.parseInt(packetInfo.get(PacketInfo.SOURCE_PORT));
-        int destinationPort = Integer.parseInt(packetInfo.get(PacketInfo.DESTINATION_PORT));
-        Instant currentTime = Timestamp.valueOf(packetInfo.get(PacketInfo.TIMESTAMP)).toInstant();
-        Instant lookbackStart = currentTime.minusMillis(LOOKBACK_WINDOW);
-        IpAddressPair ipAddressPair = new IpAddressPair(sourceAddress, destinationAddress);
-        String str = null;
-        if (packet != null && packet.getRawData() != null) {
-            str = new String(packet.getRawData());
-        } else {
+        int sourcePort = packetInfo.getSourcePort();
+        int destinationPort = packetInfo.getDestinationPort();
+        if (payloadLength <= 0) {
             return; // if there is no packet data, stop processing
         }
+        boolean fromServer = (sourcePort == TELNET_PORT);
+        if (!fromServer && ((destinationPort != TELNET_PORT) || !onWatchlist(packetInfo))) {
+            return; // only telnet prompts start a watch, and client input matters only while watched
+        }
+        long lookbackStart = packetInfo.getTimestampNanos() - LOOKBACK_WINDOW * 1000000L;
+        IpAddressPair ipAddressPair = new IpAddressPair(packetInfo.getSourceAddress(), packetInfo.getDestinationAddress());
+        // prompts are searched in whole; no more client input is kept than MAX_CAPTURED_LENGTH
+        byte[] payload = new byte[fromServer ? payloadLength : Math.min(payloadLength, MAX_CAPTURED_LENGTH)];
+        ByteBuffer view = buffer.duplicate();
+        view.position(payloadOffset);
+        view.get(payload);
+        String str = new String(payload, StandardCharsets.US_ASCII);
 
-        if (onWatchlist(ipAddressPair)) {
-            // prune failedAttempts and watchList packetInfos that are beyond the lookback window
-            //// first prune watchList packetInfos
-            LinkedHashSet<PacketInfo> wlPacketInfos = watchList.get(ipAddressPair);
-            if (wlPacketInfos != null && !wlPacketInfos.isEmpty()) {
-                LinkedHashSet<PacketInfo> keep = new LinkedHashSet<>();
-                for (PacketInfo pi : wlPacketInfos) {
-                    Instant packetTime = Timestamp.valueOf(pi.get(PacketInfo.TIMESTAMP)).toInstant();
-                    if (packetTime.isAfter(lookbackStart)) {
-                        keep.add(pi);
-                    }
-                }
-                if (keep.isEmpty()) {
-                    removeFromWatchList(ipAddressPair);
-                } else {
-                    watchList.put(ipAddressPair, keep);
-                }
+        watchList.expire(packetInfo.getTimestampNanos(), pcapFileSummary);
+        int pair = findOnWatchList(packetInfo);
+        if (pair != KeyedWindows.NO_KEY) {
+            // drop the watchList packets and failedAttempts that are beyond the lookback window
+            watchList.advance(pair, packetInfo.getTimestampNanos(), pcapFileSummary);
+            if (reportedSequences.length < watchList.getCapacity()) {
+                reportedSequences = Arrays.copyOf(reportedSequences, watchList.getCapacity());
             }
-            //// next prune failedAttempts
             LinkedList<TelnetLoginAttempt> ipFailedAttempts = failedAttempts.get(ipAddressPair);
-            if (ipFailedAttempts != null && !ipFailedAttempts.isEmpty()) {
-                LinkedList<TelnetLoginAttempt> keepAttempts = new LinkedList<>();
-                for (TelnetLoginAttempt attempt : ipFailedAttempts) {
-                    Instant attemptTime = Timestamp.valueOf(attempt.timestamp).toInstant();
-                    if (attemptTime.isAfter(lookbackStart)) {
-                        keepAttempts.add(attempt);
-                    }
+            if (ipFailedAttempts != null) {
+                while (!ipFailedAttempts.isEmpty() && (ipFailedAttempts.getFirst().timestampNanos <= lookbackStart)) {
+                    ipFailedAttempts.removeFirst();
                 }
-                if (keepAttempts.isEmpty()) {
+                if (ipFailedAttempts.isEmpty()) {
                     failedAttempts.remove(ipAddressPair);
-                } else {
-                    failedAttempts.put(ipAddressPair, keepAttempts);
                 }
             }
             // trigger if beyond threshold
-            if (underAttack(ipAddressPair) && !attackInProgress) {
+            long clientKey = watchList.getKeyHigh(pair);
+            long serverKey = watchList.getKeyLow(pair);
+            int incident = incidents.find(clientKey, serverKey, TELNET_PORT);
+            if (underAttack(ipAddressPair) && incident == IncidentTracker.NO_INCIDENT) {
                 log.trace("*** BRUTE FORCE / DICTIONARY ATTACK detected!");
-                attackInProgress = true;
-                attackSummary = new AttackSummary();
-                attackSummary.setAttackName("BRUTE FORCE / DICTIONARY ATTACK");
-                attackSummary.setStartTimestamp(PacketInfoUtils.getEarliest(watchList.get(ipAddressPair)).get(PacketInfo.TIMESTAMP));
-                LinkedHashSet<PacketInfo> packetInfos = watchList.get(ipAddressPair);
-                for (PacketInfo info : packetInfos) {
-                    attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                    attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
-                }
+                incident = incidents.open(clientKey, serverKey, TELNET_PORT,
+                        watchList.getStartTimestampNanos(pair), pcapFileSummary);
+                incidents.update(incident, packetInfo.getTimestampNanos());
+                AttackSummary attackSummary = incidents.getAttackSummary(incident);
+                reportedSequences[pair] = watchList.getFirstSequence(pair);
+                reportWatchedPackets(pair, attackSummary, packetInfo);
                 LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(ipAddressPair);
                 for (TelnetLoginAttempt attempt : attempts) {
                     attackSummary.addUsernameAndPassword(attempt.username + ":" + attempt.password);
                 }
-            } else if (underAttack(ipAddressPair) && attackInProgress) {
-                LinkedHashSet<PacketInfo> packetInfos = watchList.get(ipAddressPair);
-                for (PacketInfo info : packetInfos) {
-                    attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                    attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
-                }
-                attackSummary.setEndTimestamp(PacketInfoUtils.getLatest(watchList.get(ipAddressPair)).get(PacketInfo.TIMESTAMP));
+            } else if (underAttack(ipAddressPair)) {
+                incidents.update(incident, packetInfo.getTimestampNanos());
+                AttackSummary attackSummary = incidents.getAttackSummary(incident);
+                reportWatchedPackets(pair, attackSummary, packetInfo);
+                attackSummary.setEndTimestampNanos(watchList.getLastTimestampNanos(pair));
                 LinkedList<TelnetLoginAttempt> attempts = failedAttempts.get(ipAddressPair);
                 for (TelnetLoginAttempt attempt : attempts) {
                     attackSummary.addUsernameAndPassword(attempt.username + ":" + attempt.password);
                 }
-            } else if (!underAttack(ipAddressPair) && attackInProgress) {
-                attackInProgress = false;
-                if (watchList.get(ipAddressPair) != null) {
-                    attackSummary.setEndTimestamp(PacketInfoUtils.getLatest(watchList.get(ipAddressPair)).get(PacketInfo.TIMESTAMP));
-                }
-                pcapFileSummary.attackSummaries.add(attackSummary);
-                this.attackSummary = null;
+            } else if (incident != IncidentTracker.NO_INCIDENT) {
+                incidents.close(incident, watchList.getLastTimestampNanos(pair), pcapFileSummary);
             }
         }
         // filter out packets that are not to / from telnet port 23
-        if (sourcePort == TELNET_PORT) { // the telnet server is sending
+        if (fromServer) { // the telnet server is sending
             if (str.contains("login:")) {
                 // Add this IP pair to the watch list, log the data to monitor the login for failure
-                addToWatchList(ipAddressPair, packetInfo);
+                addToWatchList(packetInfo, pcapFileSummary);
 
-            } else if (onWatchlist(ipAddressPair) && str.contains("Password:")) {
+            } else if (onWatchlist(packetInfo) && str.contains("Password:")) {
                 // capture the username and start capturing the password
                 String username = getCapturedPacketData(ipAddressPair, destinationPort);
                 log.trace("Captured username: " + username);
@@ -287,33 +369,39 @@ public class AccountBruteForceDetector {
                 // clear the captured data
                 clearCapturedPacketData(ipAddressPair, destinationPort);
 
-            } else if (onWatchlist(ipAddressPair) && str.contains("Login incorrect")) {
+            } else if (onWatchlist(packetInfo) && str.contains("Login incorrect")) {
                 // the login was a failure, capture username and password
                 String password = getCapturedPacketData(ipAddressPair, destinationPort);
                 log.trace("Captured password: " + password);
                 // get the captured username from telnetLoginsInProgress
-                storePassword(ipAddressPair, destinationPort, password, packetInfo.get(PacketInfo.TIMESTAMP));
+                storePassword(ipAddressPair, destinationPort, password, packetInfo.getTimestampNanos());
                 // add the failure record for the IpAddressPair in failedAttempts
                 moveTelnetLoginAttemptToFailedAttempts(ipAddressPair, destinationPort);
                 // clear the packetData
                 clearCapturedPacketData(ipAddressPair, destinationPort);
 
-            } else if (onWatchlist(ipAddressPair) && str.contains("Connected to")) {
+            } else if (onWatchlist(packetInfo) && str.contains("Connected to")) {
                 // the login was a success, clear the captured data and records
                 // clear the watchList, packetData, and telnetLoginsInProgress records
                 clearCapturedPacketData(ipAddressPair, destinationPort);
                 removeTelnetLoginAttempt(ipAddressPair, destinationPort);
-                removeFromWatchList(ipAddressPair);
+                removeFromWatchList(packetInfo, pcapFileSummary);
             }
 
-        } else if (onWatchlist(ipAddressPair) && destinationPort == TELNET_PORT) { // the possible attacker is sending
+        } else if (onWatchlist(packetInfo) && destinationPort == TELNET_PORT) { // the possible attacker is sending
             // if the IP Address pair in on the watchList, capture the data
             // capture the PacketInfo
-            addToWatchList(ipAddressPair, packetInfo);
+            addToWatchList(packetInfo, pcapFileSummary);
             // capture the data
             capturePacketData(ipAddressPair, sourcePort, str);
 
         }
 
     }
+
+    // report the attacks that are still in progress at the end of the capture
+    @Override
+    public void onFinish(PcapFileSummary pcapFileSummary) {
+        incidents.closeAll(pcapFileSummary);
+    }
 }
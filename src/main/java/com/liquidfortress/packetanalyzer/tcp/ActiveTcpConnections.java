@@ -20,46 +20,80 @@
 
 package com.liquidfortress.packetanalyzer.tcp;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import com.liquidfortress.packetanalyzer.util.ActiveFlows;
+import com.liquidfortress.packetanalyzer.util.FlowRecordLog;
+
+import java.util.function.Consumer;
 
 /**
  * ActiveTcpConnections
  * <p/>
  * Tracks the state of multiple TCP connections
- * until each connection is closed
+ * until each connection is closed or goes idle.  Idle connections are
+ * expired with a timeout per connection state and moved to
+ * TimedOutTcpConnections; no more than MAX_CONNECTIONS connections are
+ * tracked at once.  The payload streams of the connections are reassembled
+ * by a TcpStreamReassembler addressed by the same handles.
  */
-public class ActiveTcpConnections {
+public class ActiveTcpConnections extends ActiveFlows<TcpFlowStore> {
+
+    // idle timeouts per connection state, in the spirit of a stateful firewall
+    public static final long EMBRYONIC_TIMEOUT = 30 * NANOS_PER_SECOND;    // handshake not completed
+    public static final long ESTABLISHED_TIMEOUT = 300 * NANOS_PER_SECOND; // handshake completed
+    public static final long CLOSING_TIMEOUT = 60 * NANOS_PER_SECOND;      // a FIN has been seen
+    public static final int MAX_CONNECTIONS = 1 << 20;
 
-    private HashMap<IpAddressPair, TcpConnectionTracker> connections = new HashMap<>();
+    private final TimedOutTcpConnections timedOutTcpConnections;
+    private final TcpStreamReassembler streams = new TcpStreamReassembler();
+
+    /**
+     * @param timedOutTcpConnections receives the connections that expire
+     * @param flowRecordLog          receives the flow records of the connections, or null
+     */
+    public ActiveTcpConnections(TimedOutTcpConnections timedOutTcpConnections, FlowRecordLog flowRecordLog) {
+        super(new TcpFlowStore(), MAX_CONNECTIONS, flowRecordLog);
+        this.timedOutTcpConnections = timedOutTcpConnections;
+    }
 
-    public int size() {
-        return connections.size();
+    public TcpStreamReassembler getStreams() {
+        return streams;
     }
 
-    public TcpConnectionTracker get(Object o) {
-        return connections.get(o);
+    @Override
+    public void remove(int flow) {
+        streams.release(flow);
+        super.remove(flow);
     }
 
-    public TcpConnectionTracker put(IpAddressPair ipAddressPair, TcpConnectionTracker tcpConnectionTracker) {
-        return connections.put(ipAddressPair, tcpConnectionTracker);
+    @Override
+    protected long idleTimeout(int flow) {
+        switch (flows.getState(flow)) {
+            case ESTABLISHED:
+                return ESTABLISHED_TIMEOUT;
+            case CLOSING:
+                return CLOSING_TIMEOUT;
+            default:
+                return EMBRYONIC_TIMEOUT;
+        }
     }
 
-    public Set<IpAddressPair> keySet() {
-        return connections.keySet();
+    @Override
+    protected void expired(int flow) {
+        timedOutTcpConnections.add(flows, flow);
     }
 
-    public Collection<TcpConnectionTracker> values() {
-        return connections.values();
+    @Override
+    protected int copyFlow(TcpFlowStore otherFlows, int otherFlow) {
+        return flows.copyFrom(otherFlows, otherFlow);
     }
 
-    public Set<Map.Entry<IpAddressPair, TcpConnectionTracker>> entrySet() {
-        return connections.entrySet();
+    // the connection that is already here is kept
+    @Override
+    protected void mergeFlow(int flow, TcpFlowStore otherFlows, int otherFlow) {
     }
 
-    public TcpConnectionTracker remove(Object o) {
-        return connections.remove(o);
+    // reports of the tracked connections, in handle order
+    public void forEach(Consumer<? super TcpConnectionTracker> consumer) {
+        flows.forEach((int flow) -> consumer.accept(flows.snapshot(flow)));
     }
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * ClosedTcpConnectionLog
+ * <p/>
+ * Append-only on-disk log of closed TCP connections, made of one or more
+ * segment files in a spill directory.  Connections are written as compact
+ * records when they close and read back one at a time for the report, so
+ * the heap does not grow with the number of connections in a capture.
+ * Merging another log adopts its segment files instead of copying them.
+ * Segment files are deleted when the JVM exits.
+ */
+public class ClosedTcpConnectionLog {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File spillDirectory;
+    private final List<File> segments = new ArrayList<>();
+    private final List<Long> segmentSizes = new ArrayList<>(); // records in each segment
+    private DataOutputStream writer; // appends to the last segment; null until the next add
+    private long size = 0;
+
+    public ClosedTcpConnectionLog(File spillDirectory) {
+        if ((spillDirectory == null) || !spillDirectory.isDirectory()) {
+            throw new IllegalArgumentException("ClosedTcpConnectionLog needs an existing spill directory!");
+        }
+        this.spillDirectory = spillDirectory;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public void add(TcpConnectionTracker tcpConnectionTracker) {
+        try {
+            if (writer == null) {
+                File segment = File.createTempFile("closed-tcp-", ".log", spillDirectory);
+                segment.deleteOnExit();
+                segments.add(segment);
+                segmentSizes.add(0L);
+                writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segment), BUFFER_SIZE));
+            }
+            tcpConnectionTracker.writeTo(writer);
+            int last = segmentSizes.size() - 1;
+            segmentSizes.set(last, segmentSizes.get(last) + 1);
+            size++;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the closed TCP connection log in " + spillDirectory, e);
+        }
+    }
+
+    // finish the current segment; a later add starts a new one
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the closed TCP connection log in " + spillDirectory, e);
+        } finally {
+            writer = null;
+        }
+    }
+
+    // concatenation: the segments of the other log follow the segments of this one
+    public void merge(ClosedTcpConnectionLog other) {
+        closeWriter();
+        other.closeWriter();
+        segments.addAll(other.segments);
+        segmentSizes.addAll(other.segmentSizes);
+        size += other.size;
+        other.segments.clear();
+        other.segmentSizes.clear();
+        other.size = 0;
+    }
+
+    /**
+     * Stream the logged connections, in the order they were added
+     *
+     * @param consumer receives each connection; only one is on the heap at a time
+     */
+    public void forEach(Consumer<? super TcpConnectionTracker> consumer) {
+        closeWriter();
+        for (int i = 0; i < segments.size(); i++) {
+            File segment = segments.get(i);
+            try (DataInputStream reader = new DataInputStream(new BufferedInputStream(new FileInputStream(segment), BUFFER_SIZE))) {
+                for (long record = segmentSizes.get(i); record > 0; record--) {
+                    consumer.accept(TcpConnectionTracker.readFrom(reader));
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read the closed TCP connection log " + segment, e);
+            }
+        }
+    }
+}
@@ -20,42 +20,59 @@
 
 package com.liquidfortress.packetanalyzer.tcp;
 
-import java.util.Iterator;
+import java.io.File;
 import java.util.LinkedList;
-import java.util.ListIterator;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
 
 /**
  * ClosedTcpConnections
  * <p/>
- * Stores closed TCP Connection data
+ * Stores closed TCP Connection data, either on the heap or, when a spill
+ * directory is given, in a ClosedTcpConnectionLog on disk
  */
 public class ClosedTcpConnections {
 
     private final LinkedList<TcpConnectionTracker> closedConnections = new LinkedList<>();
+    private final ClosedTcpConnectionLog spillLog; // null when connections are kept on the heap
 
-    public boolean add(TcpConnectionTracker tcpConnectionTracker) {
-        return closedConnections.add(tcpConnectionTracker);
+    public ClosedTcpConnections() {
+        this(null);
     }
 
-    public int size() {
-        return closedConnections.size();
+    /**
+     * @param spillDirectory directory for the on-disk log, or null to keep closed connections on the heap
+     */
+    public ClosedTcpConnections(File spillDirectory) {
+        this.spillLog = (spillDirectory != null) ? new ClosedTcpConnectionLog(spillDirectory) : null;
     }
 
-    public Iterator<TcpConnectionTracker> iterator() {
-        return closedConnections.iterator();
+    public boolean add(TcpConnectionTracker tcpConnectionTracker) {
+        if (spillLog != null) {
+            spillLog.add(tcpConnectionTracker);
+            return true;
+        }
+        return closedConnections.add(tcpConnectionTracker);
     }
 
-    public ListIterator<TcpConnectionTracker> listIterator() {
-        return closedConnections.listIterator();
+    // concatenation: associative, and keeps the order of the partial results
+    public void merge(ClosedTcpConnections other) {
+        if ((spillLog != null) && (other.spillLog != null)) {
+            spillLog.merge(other.spillLog);
+        } else {
+            other.forEach(this::add);
+        }
     }
 
-    public Stream<TcpConnectionTracker> stream() {
-        return closedConnections.stream();
+    public long size() {
+        return (spillLog != null) ? spillLog.size() : closedConnections.size();
     }
 
+    // a spilled log is streamed from disk, one connection at a time
     public void forEach(Consumer<? super TcpConnectionTracker> consumer) {
-        closedConnections.forEach(consumer);
+        if (spillLog != null) {
+            spillLog.forEach(consumer);
+        } else {
+            closedConnections.forEach(consumer);
+        }
     }
 }
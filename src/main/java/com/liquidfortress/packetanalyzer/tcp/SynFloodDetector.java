@@ -20,82 +20,233 @@
 
 package com.liquidfortress.packetanalyzer.tcp;
 
+import com.liquidfortress.packetanalyzer.dispatch.Analyzer;
 import com.liquidfortress.packetanalyzer.main.Main;
 import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.IncidentTracker;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
-import com.liquidfortress.packetanalyzer.util.PacketInfoUtils;
+import com.liquidfortress.packetanalyzer.util.AddressTable;
+import com.liquidfortress.packetanalyzer.util.FlowStore;
+import com.liquidfortress.packetanalyzer.util.RecencyList;
 import org.apache.logging.log4j.core.Logger;
 
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.Arrays;
 
 /**
  * SynFloodDetector
  * <p/>
- * Detect SYN FLOOD attacks
+ * Detect SYN FLOOD attacks.  The TCP connection tracking reports the SYNs
+ * and their acknowledgements through onSyn and onSynAcknowledged, so it
+ * does not look at packets itself.
+ * <p/>
+ * Each server endpoint counts its unanswered SYNs in a ring of time
+ * buckets covering the lookback window.  A SYN-ACK takes its SYN back out
+ * of the bucket it was counted in, found by the handle of the connection,
+ * so every SYN and every acknowledgement costs a constant amount of work.
+ * Each server has its own incident, and servers that have seen no SYN
+ * for a whole window are expired from the oldest end of a RecencyList.
  */
-public class SynFloodDetector {
+public class SynFloodDetector implements Analyzer {
     private static final long LOOKBACK_WINDOW = 600; // milliseconds
+    private static final int BUCKET_COUNT = 6;
+    private static final long BUCKET_NANOS = LOOKBACK_WINDOW * 1000000L / BUCKET_COUNT;
+    private static final long NO_BUCKET = Long.MIN_VALUE;
     private static final int MAX_UNACKED_SYNS = 14;
+    private static final int RECENT_SYNS = MAX_UNACKED_SYNS + 1; // sources reported when an attack is first detected
+    private static final int MAX_REPORTED_SOURCES = 256; // a flood usually comes from far more (spoofed) sources
+    private static final int NO_SERVER = -1;
     private static Logger log = Main.log;
-    private final HashMap<String, LinkedHashSet<PacketInfo>> syns = new HashMap<>();
-
-    private boolean attackInProgress = false;
-    private AttackSummary attackSummary = null;
-
-    public void detect(String serverAddress, PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
-        // add the step1PacketInfo to the unACKed SYN packets for this IP address
-        Instant currentTime = Timestamp.valueOf(packetInfo.get(PacketInfo.TIMESTAMP)).toInstant();
-        Instant lookbackStart = currentTime.minusMillis(LOOKBACK_WINDOW);
-        LinkedHashSet<PacketInfo> packetInfos = syns.get(serverAddress);
-        if (packetInfos == null) {
-            packetInfos = new LinkedHashSet<>();
-            packetInfos.add(packetInfo);
+
+    private final IncidentTracker incidents = new IncidentTracker("SYN FLOOD"); // keyed by server endpoint
+
+    // per server state, indexed by the handle kept in servers
+    private final AddressTable servers = new AddressTable();
+    private final RecencyList recentServers = new RecencyList();
+    private long[] serverHighs = new long[0];
+    private long[] serverLows = new long[0];
+    private int[] serverPorts = new int[0];
+    private long[] lastSynNanos = new long[0];
+    private long[] bucketNumbers = new long[0];     // BUCKET_COUNT per server: which time bucket each slot holds
+    private int[] bucketSyns = new int[0];          // unanswered SYNs per slot
+    private long[] bucketFirstSynNanos = new long[0];
+    private long[] recentSynNanos = new long[0];    // RECENT_SYNS per server, ring of the latest SYNs
+    private long[] recentSourceHighs = new long[0];
+    private long[] recentSourceLows = new long[0];
+    private int[] recentSourcePorts = new int[0];
+    private int[] recentSynCounts = new int[0];
+
+    // per connection handle: where its SYN was counted, until the server answers
+    private int[] synServers = new int[0];
+    private long[] synBuckets = new long[0];
+
+    @Override
+    public int[] getIpProtocols() {
+        return NO_IP_PROTOCOLS;
+    }
+
+    /**
+     * Count a client SYN
+     *
+     * @param flow       handle of the connection it opened, or FlowStore.NO_FLOW if it is not tracked
+     * @param packetInfo the SYN; it is not kept
+     */
+    @Override
+    public void onSyn(int flow, PacketInfo packetInfo, PcapFileSummary pcapFileSummary) {
+        long currentTime = packetInfo.getTimestampNanos();
+        long lookbackStart = currentTime - LOOKBACK_WINDOW * 1000000L;
+        expireServers(lookbackStart, pcapFileSummary);
+
+        long serverHigh = packetInfo.getDestinationAddressHigh();
+        long serverLow = packetInfo.getDestinationAddressLow();
+        int serverPort = packetInfo.getDestinationPort();
+        int server = servers.get(serverHigh, serverLow, serverPort);
+        if (server == AddressTable.NO_VALUE) {
+            server = allocateServer(serverHigh, serverLow, serverPort);
         } else {
-            // prune packetInfos that are beyond the lookback window
-            LinkedHashSet<PacketInfo> keep = new LinkedHashSet<>();
-            for (PacketInfo pi : packetInfos) {
-                Instant packetTime = Timestamp.valueOf(pi.get(PacketInfo.TIMESTAMP)).toInstant();
-                if (packetTime.isAfter(lookbackStart)) {
-                    keep.add(pi);
-                }
+            recentServers.touch(server);
+        }
+        lastSynNanos[server] = currentTime;
+
+        // count the SYN in the bucket of its time
+        long bucket = currentTime / BUCKET_NANOS;
+        int slot = server * BUCKET_COUNT + (int) Math.floorMod(bucket, (long) BUCKET_COUNT);
+        if (bucketNumbers[slot] != bucket) {
+            bucketNumbers[slot] = bucket;
+            bucketSyns[slot] = 0;
+            bucketFirstSynNanos[slot] = currentTime;
+        }
+        bucketSyns[slot]++;
+        if (flow != FlowStore.NO_FLOW) {
+            rememberSyn(flow, server, bucket);
+        }
+        int recent = server * RECENT_SYNS + (recentSynCounts[server]++ % RECENT_SYNS);
+        recentSynNanos[recent] = currentTime;
+        recentSourceHighs[recent] = packetInfo.getSourceAddressHigh();
+        recentSourceLows[recent] = packetInfo.getSourceAddressLow();
+        recentSourcePorts[recent] = packetInfo.getSourcePort();
+
+        // unanswered SYNs within the lookback window
+        int unackedSyns = 0;
+        long earliestSynNanos = currentTime;
+        for (int i = server * BUCKET_COUNT; i < (server + 1) * BUCKET_COUNT; i++) {
+            if ((bucketNumbers[i] > bucket - BUCKET_COUNT) && (bucketSyns[i] > 0)) {
+                unackedSyns += bucketSyns[i];
+                earliestSynNanos = Math.min(earliestSynNanos, bucketFirstSynNanos[i]);
             }
-            keep.add(packetInfo);
-            packetInfos = keep;
         }
-        syns.put(serverAddress, packetInfos);
 
-        if (packetInfos.size() > MAX_UNACKED_SYNS && !attackInProgress) { // attack first detected
+        int incident = incidents.find(serverHigh, serverLow, serverPort);
+        if (unackedSyns > MAX_UNACKED_SYNS && incident == IncidentTracker.NO_INCIDENT) { // attack first detected
             log.trace("*** SYN FLOOD attack detected!");
-            attackInProgress = true;
-            attackSummary = new AttackSummary();
-            attackSummary.setAttackName("SYN FLOOD");
-            attackSummary.setStartTimestamp(PacketInfoUtils.getEarliest(packetInfos).get(PacketInfo.TIMESTAMP));
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
+            incident = incidents.open(serverHigh, serverLow, serverPort, earliestSynNanos, pcapFileSummary);
+            incidents.update(incident, currentTime);
+            AttackSummary attackSummary = incidents.getAttackSummary(incident);
+            attackSummary.addTargetIpAndPort(packetInfo.getDestinationEndpoint());
+            addRecentSources(server, lookbackStart, attackSummary);
+        } else if (unackedSyns > MAX_UNACKED_SYNS) { // add more details while attack in progress
+            incidents.update(incident, currentTime);
+            AttackSummary attackSummary = incidents.getAttackSummary(incident);
+            if (attackSummary.getSourceIpAndPorts().size() < MAX_REPORTED_SOURCES) {
+                attackSummary.addSourceIpAndPort(packetInfo.getSourceEndpoint());
             }
-        } else if (packetInfos.size() > MAX_UNACKED_SYNS && attackInProgress) { // add more details while attack in progress
-            for (PacketInfo info : packetInfos) {
-                attackSummary.addSourceIpAndPort(info.get(PacketInfo.SOURCE_ADDRESS) + ":" + info.get(PacketInfo.SOURCE_PORT));
-                attackSummary.addTargetIpAndPort(info.get(PacketInfo.DESTINATION_ADDRESS) + ":" + info.get(PacketInfo.DESTINATION_PORT));
+        } else if (incident != IncidentTracker.NO_INCIDENT) { // attack ended, close out attack details
+            incidents.close(incident, currentTime, pcapFileSummary);
+        }
+    }
+
+    /**
+     * The server answered the SYN of a connection: it is no longer half-open
+     */
+    @Override
+    public void onSynAcknowledged(int flow, PcapFileSummary pcapFileSummary) {
+        if ((flow >= synServers.length) || (synServers[flow] == NO_SERVER)) {
+            return;
+        }
+        int server = synServers[flow];
+        long bucket = synBuckets[flow];
+        synServers[flow] = NO_SERVER;
+        int slot = server * BUCKET_COUNT + (int) Math.floorMod(bucket, (long) BUCKET_COUNT);
+        // a SYN that has left the window, or whose server was expired, is no longer counted
+        if ((bucketNumbers[slot] == bucket) && (bucketSyns[slot] > 0)) {
+            bucketSyns[slot]--;
+        }
+    }
+
+    // report the attacks that are still in progress at the end of the capture
+    @Override
+    public void onFinish(PcapFileSummary pcapFileSummary) {
+        incidents.closeAll(pcapFileSummary);
+    }
+
+    /**
+     * @return the number of server endpoints with SYNs in the lookback window
+     */
+    public int getTrackedServerCount() {
+        return servers.size();
+    }
+
+    // the sources of the latest SYNs within the lookback window, oldest first
+    private void addRecentSources(int server, long lookbackStart, AttackSummary attackSummary) {
+        int count = Math.min(recentSynCounts[server], RECENT_SYNS);
+        for (int i = recentSynCounts[server] - count; i < recentSynCounts[server]; i++) {
+            int recent = server * RECENT_SYNS + (i % RECENT_SYNS);
+            if (recentSynNanos[recent] > lookbackStart) {
+                String address = PacketInfo.formatAddress(recentSourceHighs[recent], recentSourceLows[recent]);
+                attackSummary.addSourceIpAndPort(address + ":" + recentSourcePorts[recent]);
             }
-        } else if (packetInfos.size() <= MAX_UNACKED_SYNS && attackInProgress) { // attack ended, close out attack details
-            attackInProgress = false;
-            attackSummary.setEndTimestamp(PacketInfoUtils.getLatest(packetInfos).get(PacketInfo.TIMESTAMP));
-            pcapFileSummary.attackSummaries.add(attackSummary);
-            this.attackSummary = null;
         }
     }
 
-    public void ackReceived(String serverAddress, PacketInfo step1PacketInfo) {
-        LinkedHashSet<PacketInfo> synPacketInfos = syns.get(serverAddress);
-        if (synPacketInfos != null) {
-            synPacketInfos.remove(step1PacketInfo);
+    private void rememberSyn(int flow, int server, long bucket) {
+        if (flow >= synServers.length) {
+            int capacity = Math.max(flow + 1, synServers.length * 2);
+            int oldCapacity = synServers.length;
+            synServers = Arrays.copyOf(synServers, capacity);
+            synBuckets = Arrays.copyOf(synBuckets, capacity);
+            Arrays.fill(synServers, oldCapacity, capacity, NO_SERVER);
+        }
+        synServers[flow] = server;
+        synBuckets[flow] = bucket;
+    }
+
+    // drop servers that have seen no SYN since lookbackStart; their attack, if any, ended with that SYN
+    private void expireServers(long lookbackStart, PcapFileSummary pcapFileSummary) {
+        int server = recentServers.getOldest();
+        while ((server != RecencyList.NONE) && (lastSynNanos[server] <= lookbackStart)) {
+            int incident = incidents.find(serverHighs[server], serverLows[server], serverPorts[server]);
+            if (incident != IncidentTracker.NO_INCIDENT) {
+                incidents.close(incident, lastSynNanos[server], pcapFileSummary);
+            }
+            servers.remove(serverHighs[server], serverLows[server], serverPorts[server]);
+            recentServers.release(server);
+            server = recentServers.getOldest();
+        }
+    }
 
+    private int allocateServer(long serverHigh, long serverLow, int serverPort) {
+        int server = recentServers.allocate();
+        if (lastSynNanos.length < recentServers.getCapacity()) {
+            int capacity = recentServers.getCapacity();
+            serverHighs = Arrays.copyOf(serverHighs, capacity);
+            serverLows = Arrays.copyOf(serverLows, capacity);
+            serverPorts = Arrays.copyOf(serverPorts, capacity);
+            lastSynNanos = Arrays.copyOf(lastSynNanos, capacity);
+            bucketNumbers = Arrays.copyOf(bucketNumbers, capacity * BUCKET_COUNT);
+            bucketSyns = Arrays.copyOf(bucketSyns, capacity * BUCKET_COUNT);
+            bucketFirstSynNanos = Arrays.copyOf(bucketFirstSynNanos, capacity * BUCKET_COUNT);
+            recentSynNanos = Arrays.copyOf(recentSynNanos, capacity * RECENT_SYNS);
+            recentSourceHighs = Arrays.copyOf(recentSourceHighs, capacity * RECENT_SYNS);
+            recentSourceLows = Arrays.copyOf(recentSourceLows, capacity * RECENT_SYNS);
+            recentSourcePorts = Arrays.copyOf(recentSourcePorts, capacity * RECENT_SYNS);
+            recentSynCounts = Arrays.copyOf(recentSynCounts, capacity);
         }
+        serverHighs[server] = serverHigh;
+        serverLows[server] = serverLow;
+        serverPorts[server] = serverPort;
+        Arrays.fill(bucketNumbers, server * BUCKET_COUNT, (server + 1) * BUCKET_COUNT, NO_BUCKET);
+        recentSynCounts[server] = 0;
+        servers.put(serverHigh, serverLow, serverPort, server);
+        return server;
     }
 }
@@ -20,43 +20,82 @@
 
 package com.liquidfortress.packetanalyzer.tcp;
 
-import com.liquidfortress.packetanalyzer.main.Main;
-import com.liquidfortress.packetanalyzer.main.Mode;
-import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
-import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
-import org.apache.logging.log4j.core.Logger;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * TcpConnectionTracker
  * <p/>
- * Records the progress of a single TCP connection
+ * Reported details of a single TCP connection: its endpoints, the
+ * handshake and close steps that were seen, how it ended and the bytes in
+ * the flow.  Connections are tracked in a TcpFlowStore, which takes one of
+ * these snapshots when a connection is reported.
  */
 public class TcpConnectionTracker {
 
+    /**
+     * Connection states, from the first client SYN until the connection ends
+     */
+    public enum State {
+        SYN_SENT,          // client SYN seen
+        SIMULTANEOUS_OPEN, // both ends sent a SYN
+        SYN_RECEIVED,      // server SYN-ACK seen
+        ESTABLISHED,       // handshake completed
+        CLOSING,           // a FIN has been seen
+        CLOSED,            // both FINs have been acknowledged
+        RESET              // ended by an RST
+    }
+
     public static final int NOT_DEFINED = -1;
-    private static Logger log = Main.log;
 
     private final String clientAddress;
     private final String serverAddress;
 
-    private long step1ClientSequenceNumber = NOT_DEFINED; // chosen by client
-    private long step2ServerAckNumber = NOT_DEFINED;      // should be step1ClientSequenceNumber + 1
-    private long step2ServerSequenceNumber = NOT_DEFINED; // chosen by server
-    private long step3ClientSequenceNumber = NOT_DEFINED; // should be step1ClientSequenceNumber + 1
-    private long step3ClientAckNumber = NOT_DEFINED;      // should be step2ServerSequenceNumber + 1
-    private long step4CloseRequestSequenceNumber = NOT_DEFINED;
-    private long step5CloseRequestAckNumber = NOT_DEFINED;
-    private long step6CloseRequestSequenceNumber = NOT_DEFINED;
-    private long step7CloseRequestAckNumber = NOT_DEFINED;
-    private boolean connected = false;  // only true if the connection has been established and is open
-    private boolean closed = false; // only true after the connection has been closed
-    private long totalBytesInFlow = 0;
-
-    private PacketInfo step1PacketInfo;
-
+    private final long step1ClientSequenceNumber; // chosen by client
+    private final long step2ServerAckNumber;      // should be step1ClientSequenceNumber + 1
+    private final long step2ServerSequenceNumber; // chosen by server
+    private final long step3ClientSequenceNumber; // should be step1ClientSequenceNumber + 1
+    private final long step3ClientAckNumber;      // should be step2ServerSequenceNumber + 1
+    private final long step4CloseRequestSequenceNumber;
+    private final long step5CloseRequestAckNumber;
+    private final long step6CloseRequestSequenceNumber;
+    private final long step7CloseRequestAckNumber;
+    private final State state;
+    private final boolean resetByClient;
+    private final long totalBytesInFlow;
+
+    // a connection with only its endpoints known
     public TcpConnectionTracker(String clientAddress, String serverAddress) {
+        this(clientAddress, serverAddress, notDefinedSteps(), State.SYN_SENT, false, 0);
+    }
+
+    /**
+     * @param steps steps 1 to 7 in report order, as returned by getReportedSteps
+     */
+    TcpConnectionTracker(String clientAddress, String serverAddress, long[] steps, State state, boolean resetByClient,
+                         long totalBytesInFlow) {
         this.clientAddress = clientAddress;
         this.serverAddress = serverAddress;
+        this.step1ClientSequenceNumber = steps[0];
+        this.step2ServerAckNumber = steps[1];
+        this.step2ServerSequenceNumber = steps[2];
+        this.step3ClientAckNumber = steps[3];
+        this.step3ClientSequenceNumber = steps[4];
+        this.step4CloseRequestSequenceNumber = steps[5];
+        this.step5CloseRequestAckNumber = steps[6];
+        this.step6CloseRequestSequenceNumber = steps[7];
+        this.step7CloseRequestAckNumber = steps[8];
+        this.state = state;
+        this.resetByClient = resetByClient;
+        this.totalBytesInFlow = totalBytesInFlow;
+    }
+
+    private static long[] notDefinedSteps() {
+        long[] steps = new long[TcpFlowStore.STEP_COUNT];
+        Arrays.fill(steps, NOT_DEFINED);
+        return steps;
     }
 
     // Accessors
@@ -105,182 +144,85 @@ public class TcpConnectionTracker {
         return step7CloseRequestAckNumber;
     }
 
-    public void setStep1ClientSequenceNumber(long step1ClientSequenceNumber, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (this.closed) {
-            log.trace("This connection was previously closed!");
-            return;
-        }
-        if (this.connected) {
-            log.trace("This connection was previously made!");
-            return;
-        }
-        this.step1ClientSequenceNumber = step1ClientSequenceNumber;
-        if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-            this.step1PacketInfo = packetInfo;
-            pcapFileSummary.synFloodDetector.detect(serverAddress, this.step1PacketInfo, pcapFileSummary);
-        }
-    }
-
-    public void setStep2Numbers(long step2ServerAckNumber, long step2ServerSequenceNumber, PcapFileSummary pcapFileSummary, Mode mode) {
-        if (this.closed) {
-            log.trace("This connection was previously closed!");
-            return;
-        }
-        if (this.connected) {
-            log.trace("This connection was previously made!");
-            return;
-        }
-        if (step1ClientSequenceNumber == NOT_DEFINED) {
-            log.trace("Step 1 Client Sequence Number not yet set!");
-            return;
-        }
-        if (step2ServerAckNumber != (step1ClientSequenceNumber + 1)) {
-            log.trace("Step 2 Server Ack Number should be Step 1 Client Sequence Number + 1!" +
-                    "step1ClientSequenceNumber is: " + step1ClientSequenceNumber +
-                    "step2ServerAckNumber argument is: " + step2ServerAckNumber);
-            return;
-        }
-        this.step2ServerAckNumber = step2ServerAckNumber;
-        this.step2ServerSequenceNumber = step2ServerSequenceNumber;
-        if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-            pcapFileSummary.synFloodDetector.ackReceived(serverAddress, this.step1PacketInfo);
-            this.step1PacketInfo = null;
-        }
-
-    }
-
-    public void setStep3Numbers(long step3ClientAckNumber, long step3ClientSequenceNumber) {
-        if (this.closed) {
-            log.trace("This connection was previously closed!");
-            return;
-        }
-        if (this.connected) {
-            log.trace("This connection was previously made!");
-            return;
-        }
-        if (step1ClientSequenceNumber == NOT_DEFINED) {
-            log.trace("Step 1 Client Sequence Number not yet set!");
-            return;
-        }
-        if (step2ServerAckNumber == NOT_DEFINED) {
-            log.trace("Step 2 Server Ack Number not yet set!");
-            return;
-        }
-        if (step2ServerSequenceNumber == NOT_DEFINED) {
-            log.trace("Step 2 Server Sequence Number not yet set!");
-            return;
-        }
-        if (step3ClientAckNumber != (step2ServerSequenceNumber + 1)) {
-            log.trace("Step 3 Client Ack Number should be Step 2 Server Sequence Number + 1!" +
-                    "step2ServerSequenceNumber is: " + step2ServerSequenceNumber +
-                    "step3ClientAckNumber argument is: " + step3ClientAckNumber);
-            return;
-        }
-        if (step3ClientSequenceNumber != (step1ClientSequenceNumber + 1)) {
-            log.trace("Step 3 Client Sequence Number should be Step 1 Client Sequence Number + 1!" +
-                    "step1ClientSequenceNumber is: " + step1ClientSequenceNumber +
-                    "step3ClientSequenceNumber argument is: " + step3ClientSequenceNumber);
-            return;
-        }
-        this.step3ClientAckNumber = step3ClientAckNumber;
-        this.step3ClientSequenceNumber = step3ClientSequenceNumber;
-        this.connected = true;
+    public State getState() {
+        return state;
     }
 
-    public void setStep4CloseRequestSequenceNumber(long step4CloseRequestSequenceNumber) {
-        if (this.closed) {
-            log.trace("This connection was previously closed!");
-            return;
-        }
-        if (!connected) {
-            log.trace("TCP connection was never made!");
-            return;
-        }
-        this.step4CloseRequestSequenceNumber = step4CloseRequestSequenceNumber;
+    public boolean isConnected() {
+        return (state == State.ESTABLISHED) || (state == State.CLOSING);
     }
 
-    public void setStep5CloseRequestAckNumber(long step5CloseRequestAckNumber) {
-        if (this.closed) {
-            log.trace("This connection was previously closed!");
-            return;
-        }
-        if (!connected) {
-            log.trace("TCP connection was never made!");
-            return;
-        }
-        if (this.step4CloseRequestSequenceNumber == NOT_DEFINED) {
-            log.trace("step4CloseRequestSequenceNumber was not set!");
-            return;
-        }
-        this.step5CloseRequestAckNumber = step5CloseRequestAckNumber;
+    public boolean isClosed() {
+        return (state == State.CLOSED) || (state == State.RESET);
     }
 
-    public void setStep6CloseRequestSequenceNumber(long step6CloseRequestSequenceNumber) {
-        if (this.closed) {
-            log.trace("This connection was previously closed!");
-            return;
-        }
-        if (!connected) {
-            log.trace("TCP connection was never made!");
-            return;
-        }
-        if (this.step4CloseRequestSequenceNumber == NOT_DEFINED) {
-            log.trace("step4CloseRequestSequenceNumber was not set!");
-            return;
-        }
-        if (this.step5CloseRequestAckNumber == NOT_DEFINED) {
-            log.trace("step5CloseRequestAckNumber was not set!");
-            return;
-        }
-        this.step6CloseRequestSequenceNumber = step6CloseRequestSequenceNumber;
+    // true if the three-way handshake completed at some point
+    public boolean wasEstablished() {
+        return step3ClientAckNumber != NOT_DEFINED;
     }
 
-    public void setStep7CloseRequestAckNumber(long step7CloseRequestAckNumber) {
-        if (this.closed) {
-            log.trace("This connection was previously closed!");
-            return;
-        }
-        if (!connected) {
-            log.trace("TCP connection was never made!");
-            return;
-        }
-        if (this.step4CloseRequestSequenceNumber == NOT_DEFINED) {
-            log.trace("step4CloseRequestSequenceNumber was not set!");
-            return;
-        }
-        if (this.step5CloseRequestAckNumber == NOT_DEFINED) {
-            log.trace("step5CloseRequestAckNumber was not set!");
-            return;
-        }
-        if (this.step6CloseRequestSequenceNumber == NOT_DEFINED) {
-            log.trace("step6CloseRequestSequenceNumber was not set!");
-            return;
-        }
-        this.step7CloseRequestAckNumber = step7CloseRequestAckNumber;
-        this.connected = false;
-        this.closed = true;
+    public boolean isResetByClient() {
+        return resetByClient;
     }
 
-    public boolean isConnected() {
-        return connected;
+    public long getTotalBytesInFlow() {
+        return totalBytesInFlow;
     }
 
-    // Mutators
-
-    public boolean isClosed() {
-        return closed;
+    /**
+     * Write the reported details of this connection as a compact binary
+     * record: both endpoints, a bit mask of the steps that were seen, the
+     * 32-bit sequence and acknowledgement numbers of those steps, the end
+     * state and the flow byte count.
+     *
+     * @param out record log to write to
+     * @throws IOException if the record cannot be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        long[] steps = getReportedSteps();
+        int stepMask = 0;
+        for (int i = 0; i < steps.length; i++) {
+            if (steps[i] != NOT_DEFINED) {
+                stepMask |= 1 << i;
+            }
+        }
+        out.writeUTF(clientAddress);
+        out.writeUTF(serverAddress);
+        out.writeShort(stepMask);
+        for (long step : steps) {
+            if (step != NOT_DEFINED) {
+                out.writeInt((int) step);
+            }
+        }
+        out.writeByte(state.ordinal());
+        out.writeBoolean(resetByClient);
+        out.writeLong(totalBytesInFlow);
     }
 
-    public long getTotalBytesInFlow() {
-        return totalBytesInFlow;
+    /**
+     * Read a connection written by writeTo
+     *
+     * @param in record log to read from
+     * @return the connection, with the details needed for reporting
+     * @throws IOException if the record cannot be read
+     */
+    public static TcpConnectionTracker readFrom(DataInput in) throws IOException {
+        String clientAddress = in.readUTF();
+        String serverAddress = in.readUTF();
+        int stepMask = in.readUnsignedShort();
+        long[] steps = new long[TcpFlowStore.STEP_COUNT];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = ((stepMask & (1 << i)) != 0) ? (in.readInt() & 0xFFFFFFFFL) : NOT_DEFINED;
+        }
+        State state = State.values()[in.readUnsignedByte()];
+        boolean resetByClient = in.readBoolean();
+        return new TcpConnectionTracker(clientAddress, serverAddress, steps, state, resetByClient, in.readLong());
     }
 
-    public void addFlowBytes(long additionalBytes) {
-        if (additionalBytes < 0) {
-            log.trace("additionalBytes must be non-negative!");
-            return;
-        }
-        this.totalBytesInFlow += additionalBytes;
+    private long[] getReportedSteps() {
+        return new long[]{step1ClientSequenceNumber, step2ServerAckNumber, step2ServerSequenceNumber,
+                step3ClientAckNumber, step3ClientSequenceNumber, step4CloseRequestSequenceNumber,
+                step5CloseRequestAckNumber, step6CloseRequestSequenceNumber, step7CloseRequestAckNumber};
     }
 
     public String toString() {
@@ -329,6 +271,9 @@ public class TcpConnectionTracker {
         } else {
             builder.append("Initiator ACK Acknowledge Number: TCP Connection Not Closed\n");
         }
+        if (state == State.RESET) {
+            builder.append("=== Connection Reset by the " + (resetByClient ? "Client" : "Server") + " ===\n");
+        }
         builder.append("=== Total Bytes in Flow: " + totalBytesInFlow + " ===\n");
         return builder.toString();
     }
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.main.Main;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import com.liquidfortress.packetanalyzer.util.FlowStore;
+import org.apache.logging.log4j.core.Logger;
+import org.pcap4j.packet.namednumber.TcpPort;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * TcpFlowStore
+ * <p/>
+ * Column store for the TCP connections that are being tracked.  Each
+ * connection is an int handle that indexes parallel primitive arrays
+ * (the FlowStore key and counters, plus handshake and close steps and
+ * state), so a million connections cost a few dozen bytes
+ * each and a walk over all of them reads the arrays in order.  The
+ * endpoint text and the report of a connection are only built by
+ * snapshot, when the connection is reported.
+ */
+public class TcpFlowStore extends FlowStore {
+
+    public static final int PROTOCOL_TCP = 6;
+    private static Logger log = Main.log;
+
+    // step columns, in report order
+    private static final int STEP1_CLIENT_SEQUENCE = 0;
+    private static final int STEP2_SERVER_ACK = 1;
+    private static final int STEP2_SERVER_SEQUENCE = 2;
+    private static final int STEP3_CLIENT_ACK = 3;
+    private static final int STEP3_CLIENT_SEQUENCE = 4;
+    private static final int STEP4_CLOSE_REQUEST_SEQUENCE = 5;
+    private static final int STEP5_CLOSE_REQUEST_ACK = 6;
+    private static final int STEP6_CLOSE_REQUEST_SEQUENCE = 7;
+    private static final int STEP7_CLOSE_REQUEST_ACK = 8;
+    static final int STEP_COUNT = 9;
+
+    private static final int INITIATOR_IS_CLIENT = 1; // which end sent the first FIN
+    private static final int RESET_BY_CLIENT = 1 << 1;
+
+    private static final TcpConnectionTracker.State[] STATES = TcpConnectionTracker.State.values();
+
+    private int[] steps;            // STEP_COUNT 32-bit sequence and acknowledgement numbers per connection
+    private short[] definedSteps;   // bit mask of the steps that were seen
+    private int[] initiatorFinEnds; // acknowledgement number that covers the first FIN
+    private int[] receiverFinEnds;  // acknowledgement number that covers the other FIN
+    private byte[] states;
+    private byte[] closeFlags;
+    private IntConsumer synAcknowledgedListener = null;
+
+    public TcpFlowStore() {
+        super(PROTOCOL_TCP);
+        int capacity = capacity();
+        steps = new int[capacity * STEP_COUNT];
+        definedSteps = new short[capacity];
+        initiatorFinEnds = new int[capacity];
+        receiverFinEnds = new int[capacity];
+        states = new byte[capacity];
+        closeFlags = new byte[capacity];
+    }
+
+    @Override
+    protected void growColumns(int capacity) {
+        steps = Arrays.copyOf(steps, capacity * STEP_COUNT);
+        definedSteps = Arrays.copyOf(definedSteps, capacity);
+        initiatorFinEnds = Arrays.copyOf(initiatorFinEnds, capacity);
+        receiverFinEnds = Arrays.copyOf(receiverFinEnds, capacity);
+        states = Arrays.copyOf(states, capacity);
+        closeFlags = Arrays.copyOf(closeFlags, capacity);
+    }
+
+    /**
+     * @param synAcknowledgedListener called with the handle of every connection whose SYN the server answered, or null
+     */
+    public void setSynAcknowledgedListener(IntConsumer synAcknowledgedListener) {
+        this.synAcknowledgedListener = synAcknowledgedListener;
+    }
+
+    // a new connection starts with its client SYN
+    @Override
+    protected void clearColumns(int flow) {
+        definedSteps[flow] = 0;
+        states[flow] = (byte) TcpConnectionTracker.State.SYN_SENT.ordinal();
+        closeFlags[flow] = 0;
+    }
+
+    /**
+     * Copy a connection of another store into this one
+     *
+     * @return handle of the copy in this store
+     */
+    public int copyFrom(TcpFlowStore other, int otherFlow) {
+        int flow = copyFlow(other, otherFlow);
+        System.arraycopy(other.steps, otherFlow * STEP_COUNT, steps, flow * STEP_COUNT, STEP_COUNT);
+        definedSteps[flow] = other.definedSteps[otherFlow];
+        initiatorFinEnds[flow] = other.initiatorFinEnds[otherFlow];
+        receiverFinEnds[flow] = other.receiverFinEnds[otherFlow];
+        states[flow] = other.states[otherFlow];
+        closeFlags[flow] = other.closeFlags[otherFlow];
+        return flow;
+    }
+
+    // "address:port (name)" text used in reports
+    static String endpoint(String address, int port) {
+        return address + ":" + TcpPort.getInstance((short) port);
+    }
+
+    public String getClientAddress(int flow) {
+        return endpoint(getClientIpAddress(flow), getClientPort(flow));
+    }
+
+    public String getServerAddress(int flow) {
+        return endpoint(getServerIpAddress(flow), getServerPort(flow));
+    }
+
+    // Steps and state
+
+    private long getStep(int flow, int step) {
+        return ((definedSteps[flow] & (1 << step)) != 0) ? (steps[flow * STEP_COUNT + step] & 0xFFFFFFFFL) : TcpConnectionTracker.NOT_DEFINED;
+    }
+
+    private boolean isDefined(int flow, int step) {
+        return (definedSteps[flow] & (1 << step)) != 0;
+    }
+
+    private void setStep(int flow, int step, long value) {
+        steps[flow * STEP_COUNT + step] = (int) value;
+        definedSteps[flow] |= 1 << step;
+    }
+
+    public long getStep1ClientSequenceNumber(int flow) {
+        return getStep(flow, STEP1_CLIENT_SEQUENCE);
+    }
+
+    public long getStep2ServerAckNumber(int flow) {
+        return getStep(flow, STEP2_SERVER_ACK);
+    }
+
+    public long getStep2ServerSequenceNumber(int flow) {
+        return getStep(flow, STEP2_SERVER_SEQUENCE);
+    }
+
+    public long getStep3ClientAckNumber(int flow) {
+        return getStep(flow, STEP3_CLIENT_ACK);
+    }
+
+    public long getStep3ClientSequenceNumber(int flow) {
+        return getStep(flow, STEP3_CLIENT_SEQUENCE);
+    }
+
+    public long getStep4CloseRequestSequenceNumber(int flow) {
+        return getStep(flow, STEP4_CLOSE_REQUEST_SEQUENCE);
+    }
+
+    public long getStep5CloseRequestAckNumber(int flow) {
+        return getStep(flow, STEP5_CLOSE_REQUEST_ACK);
+    }
+
+    public long getStep6CloseRequestSequenceNumber(int flow) {
+        return getStep(flow, STEP6_CLOSE_REQUEST_SEQUENCE);
+    }
+
+    public long getStep7CloseRequestAckNumber(int flow) {
+        return getStep(flow, STEP7_CLOSE_REQUEST_ACK);
+    }
+
+    public TcpConnectionTracker.State getState(int flow) {
+        return STATES[states[flow]];
+    }
+
+    private void setState(int flow, TcpConnectionTracker.State state) {
+        states[flow] = (byte) state.ordinal();
+    }
+
+    public boolean isConnected(int flow) {
+        TcpConnectionTracker.State state = getState(flow);
+        return (state == TcpConnectionTracker.State.ESTABLISHED) || (state == TcpConnectionTracker.State.CLOSING);
+    }
+
+    public boolean isClosed(int flow) {
+        TcpConnectionTracker.State state = getState(flow);
+        return (state == TcpConnectionTracker.State.CLOSED) || (state == TcpConnectionTracker.State.RESET);
+    }
+
+    // true if the three-way handshake completed at some point
+    public boolean wasEstablished(int flow) {
+        return isDefined(flow, STEP3_CLIENT_ACK);
+    }
+
+    // bytes sent by both ends
+    public long getTotalBytesInFlow(int flow) {
+        return getClientBytes(flow) + getServerBytes(flow);
+    }
+
+    @Override
+    protected int getRecordState(int flow) {
+        return states[flow];
+    }
+
+    // a >= b in 32-bit sequence number space
+    private static boolean sequenceAtLeast(long a, long b) {
+        return ((a - b) & 0xFFFFFFFFL) < 0x80000000L;
+    }
+
+    public void setStep1ClientSequenceNumber(int flow, long step1ClientSequenceNumber) {
+        if (getState(flow) != TcpConnectionTracker.State.SYN_SENT) {
+            log.trace("This connection is past the client SYN!");
+            return;
+        }
+        setStep(flow, STEP1_CLIENT_SEQUENCE, step1ClientSequenceNumber);
+    }
+
+    public void setStep2Numbers(int flow, long step2ServerAckNumber, long step2ServerSequenceNumber) {
+        if (getState(flow) != TcpConnectionTracker.State.SYN_SENT) {
+            log.trace("This connection is not waiting for a server SYN-ACK!");
+            return;
+        }
+        if (!isDefined(flow, STEP1_CLIENT_SEQUENCE)) {
+            log.trace("Step 1 Client Sequence Number not yet set!");
+            return;
+        }
+        long step1ClientSequenceNumber = getStep1ClientSequenceNumber(flow);
+        if (step2ServerAckNumber != (step1ClientSequenceNumber + 1)) {
+            log.trace("Step 2 Server Ack Number should be Step 1 Client Sequence Number + 1!" +
+                    "step1ClientSequenceNumber is: " + step1ClientSequenceNumber +
+                    "step2ServerAckNumber argument is: " + step2ServerAckNumber);
+            return;
+        }
+        setStep(flow, STEP2_SERVER_ACK, step2ServerAckNumber);
+        setStep(flow, STEP2_SERVER_SEQUENCE, step2ServerSequenceNumber);
+        setState(flow, TcpConnectionTracker.State.SYN_RECEIVED);
+        serverAcknowledgedSyn(flow);
+    }
+
+    private void serverAcknowledgedSyn(int flow) {
+        if (synAcknowledgedListener != null) {
+            synAcknowledgedListener.accept(flow);
+        }
+    }
+
+    public void setStep3Numbers(int flow, long step3ClientAckNumber, long step3ClientSequenceNumber) {
+        if (getState(flow) != TcpConnectionTracker.State.SYN_RECEIVED) {
+            log.trace("This connection is not waiting for a client ACK!");
+            return;
+        }
+        long step2ServerSequenceNumber = getStep2ServerSequenceNumber(flow);
+        if (step3ClientAckNumber != (step2ServerSequenceNumber + 1)) {
+            log.trace("Step 3 Client Ack Number should be Step 2 Server Sequence Number + 1!" +
+                    "step2ServerSequenceNumber is: " + step2ServerSequenceNumber +
+                    "step3ClientAckNumber argument is: " + step3ClientAckNumber);
+            return;
+        }
+        long step1ClientSequenceNumber = getStep1ClientSequenceNumber(flow);
+        if (step3ClientSequenceNumber != (step1ClientSequenceNumber + 1)) {
+            log.trace("Step 3 Client Sequence Number should be Step 1 Client Sequence Number + 1!" +
+                    "step1ClientSequenceNumber is: " + step1ClientSequenceNumber +
+                    "step3ClientSequenceNumber argument is: " + step3ClientSequenceNumber);
+            return;
+        }
+        setStep(flow, STEP3_CLIENT_ACK, step3ClientAckNumber);
+        setStep(flow, STEP3_CLIENT_SEQUENCE, step3ClientSequenceNumber);
+        setState(flow, TcpConnectionTracker.State.ESTABLISHED);
+    }
+
+    /**
+     * Advance a connection with one of its segments
+     *
+     * @param flow                  handle of the connection
+     * @param fromClient            true if the client sent the segment
+     * @param packetInfo            the segment, with its TCP flags set
+     * @param sequenceNumber        sequence number of the segment
+     * @param acknowledgementNumber acknowledgement number of the segment
+     * @param payloadLength         number of payload bytes in the segment
+     * @param pcapFileSummary       results for the current file
+     * @return true once the connection has ended, either closed by both ends or reset
+     */
+    public boolean update(int flow, boolean fromClient, PacketInfo packetInfo, long sequenceNumber, long acknowledgementNumber,
+                          int payloadLength, PcapFileSummary pcapFileSummary) {
+        if (isClosed(flow)) {
+            return true;
+        }
+        if (packetInfo.hasFlag(PacketInfo.RST)) {
+            if (fromClient) {
+                closeFlags[flow] |= RESET_BY_CLIENT;
+            }
+            end(flow, TcpConnectionTracker.State.RESET);
+            return true;
+        }
+        boolean syn = packetInfo.hasFlag(PacketInfo.SYN);
+        boolean ack = packetInfo.hasFlag(PacketInfo.ACK);
+        switch (getState(flow)) {
+            case SYN_SENT:
+                if (fromClient && syn && !ack && (sequenceNumber != getStep1ClientSequenceNumber(flow))) {
+                    // the client gave up on its SYN and retried with a new initial sequence number
+                    setStep(flow, STEP1_CLIENT_SEQUENCE, sequenceNumber);
+                } else if (!fromClient && syn && ack) { // step 2: Server SYN-ACK
+                    setStep2Numbers(flow, acknowledgementNumber, sequenceNumber);
+                } else if (!fromClient && syn) { // simultaneous open: both ends sent a SYN
+                    setStep(flow, STEP2_SERVER_SEQUENCE, sequenceNumber);
+                    setState(flow, TcpConnectionTracker.State.SIMULTANEOUS_OPEN);
+                }
+                return false;
+            case SIMULTANEOUS_OPEN:
+                // each end answers the other's SYN with a SYN-ACK
+                if (!fromClient && ack && !isDefined(flow, STEP2_SERVER_ACK)
+                        && (acknowledgementNumber == getStep1ClientSequenceNumber(flow) + 1)) {
+                    setStep(flow, STEP2_SERVER_ACK, acknowledgementNumber);
+                    serverAcknowledgedSyn(flow);
+                } else if (fromClient && ack && !isDefined(flow, STEP3_CLIENT_ACK)
+                        && (acknowledgementNumber == getStep2ServerSequenceNumber(flow) + 1)) {
+                    setStep(flow, STEP3_CLIENT_ACK, acknowledgementNumber);
+                    setStep(flow, STEP3_CLIENT_SEQUENCE, sequenceNumber);
+                }
+                if (isDefined(flow, STEP2_SERVER_ACK) && isDefined(flow, STEP3_CLIENT_ACK)) {
+                    setState(flow, TcpConnectionTracker.State.ESTABLISHED);
+                    pcapFileSummary.tcpConnectionCount++;
+                }
+                return false;
+            case SYN_RECEIVED:
+                if (fromClient && ack && !syn) { // step 3: Client ACK, which may already carry data or a FIN
+                    setStep3Numbers(flow, acknowledgementNumber, sequenceNumber);
+                    if (getState(flow) != TcpConnectionTracker.State.ESTABLISHED) {
+                        return false;
+                    }
+                    pcapFileSummary.tcpConnectionCount++;
+                    break;
+                }
+                return false;
+            default:
+                break;
+        }
+        return trackClose(flow, fromClient, packetInfo.hasFlag(PacketInfo.FIN), ack, sequenceNumber,
+                acknowledgementNumber, payloadLength);
+    }
+
+    /*
+     * Either end may close first, both may close at once, and a FIN may carry
+     * the ACK of the other end's FIN.  The first FIN and its ACK are steps 4
+     * and 5, the other end's FIN and its ACK are steps 6 and 7.
+     */
+    private boolean trackClose(int flow, boolean fromClient, boolean fin, boolean ack, long sequenceNumber,
+                               long acknowledgementNumber, int payloadLength) {
+        boolean closeRequested = isDefined(flow, STEP4_CLOSE_REQUEST_SEQUENCE);
+        boolean fromInitiator = closeRequested && (fromClient == ((closeFlags[flow] & INITIATOR_IS_CLIENT) != 0));
+        if (ack && closeRequested) {
+            if (!fromInitiator && !isDefined(flow, STEP5_CLOSE_REQUEST_ACK)
+                    && sequenceAtLeast(acknowledgementNumber, initiatorFinEnds[flow] & 0xFFFFFFFFL)) {
+                setStep(flow, STEP5_CLOSE_REQUEST_ACK, acknowledgementNumber);
+            } else if (fromInitiator && isDefined(flow, STEP6_CLOSE_REQUEST_SEQUENCE)
+                    && !isDefined(flow, STEP7_CLOSE_REQUEST_ACK)
+                    && sequenceAtLeast(acknowledgementNumber, receiverFinEnds[flow] & 0xFFFFFFFFL)) {
+                setStep(flow, STEP7_CLOSE_REQUEST_ACK, acknowledgementNumber);
+            }
+        }
+        if (fin) {
+            // a FIN takes up one sequence number after the payload of its segment
+            int finEnd = (int) (sequenceNumber + payloadLength + 1);
+            if (!closeRequested) { // step 4: first FIN, from either end
+                setStep(flow, STEP4_CLOSE_REQUEST_SEQUENCE, sequenceNumber);
+                if (fromClient) {
+                    closeFlags[flow] |= INITIATOR_IS_CLIENT;
+                }
+                initiatorFinEnds[flow] = finEnd;
+                setState(flow, TcpConnectionTracker.State.CLOSING);
+            } else if (!fromInitiator && !isDefined(flow, STEP6_CLOSE_REQUEST_SEQUENCE)) { // step 6: the other FIN
+                setStep(flow, STEP6_CLOSE_REQUEST_SEQUENCE, sequenceNumber);
+                receiverFinEnds[flow] = finEnd;
+            }
+        }
+        if (isDefined(flow, STEP5_CLOSE_REQUEST_ACK) && isDefined(flow, STEP7_CLOSE_REQUEST_ACK)) {
+            end(flow, TcpConnectionTracker.State.CLOSED);
+            return true;
+        }
+        return false;
+    }
+
+    private void end(int flow, TcpConnectionTracker.State endState) {
+        setState(flow, endState);
+    }
+
+    /**
+     * Build the report of a connection
+     *
+     * @param flow handle of the connection
+     * @return a copy of the reported details, which stays valid after the handle is freed
+     */
+    public TcpConnectionTracker snapshot(int flow) {
+        long[] reportedSteps = new long[STEP_COUNT];
+        for (int step = 0; step < STEP_COUNT; step++) {
+            reportedSteps[step] = getStep(flow, step);
+        }
+        return new TcpConnectionTracker(getClientAddress(flow), getServerAddress(flow), reportedSteps, getState(flow),
+                (closeFlags[flow] & RESET_BY_CLIENT) != 0, getTotalBytesInFlow(flow));
+    }
+}
@@ -20,15 +20,13 @@
 
 package com.liquidfortress.packetanalyzer.tcp;
 
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.dispatch.PacketDispatcher;
+import com.liquidfortress.packetanalyzer.main.DecodePlan;
 import com.liquidfortress.packetanalyzer.main.Main;
-import com.liquidfortress.packetanalyzer.main.Mode;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.IllegalRawDataException;
-import org.pcap4j.packet.Packet;
-import org.pcap4j.packet.TcpPacket;
-import org.pcap4j.packet.namednumber.TcpPort;
 
 /**
  * TcpPacketProcessor
@@ -38,109 +36,102 @@ import org.pcap4j.packet.namednumber.TcpPort;
 public class TcpPacketProcessor {
     private static Logger log = Main.log;
 
-    public static void processTcpPacket(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
-            return; // skip empty packets
+    public static boolean processTcpPacket(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo,
+                                           PacketDispatcher dispatcher) {
+        log.trace("Decoding TCP header");
+        if (!decoder.decodeTcp()) {
+            log.trace("Skipping malformed TCP segment");
+            return false;
         }
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        try {
-            log.trace("Converting to TCP packet");
-            TcpPacket tcpPacket = TcpPacket.newPacket(packet.getRawData(), 0, packet.length());
-            TcpPacket.TcpHeader tcpHeader = tcpPacket.getHeader();
-            TcpPort sourcePort = tcpHeader.getSrcPort();
-            TcpPort destinationPort = tcpHeader.getDstPort();
-            packetInfo.put(PacketInfo.SOURCE_PORT, sourcePort.valueAsString());
-            packetInfo.put(PacketInfo.DESTINATION_PORT, destinationPort.valueAsString());
-            String tcpSource = sourceAddress + ":" + sourcePort;
-            String tcpDestination = destinationAddress + ":" + destinationPort;
-            boolean syn = tcpHeader.getSyn();
-            boolean ack = tcpHeader.getAck();
-            boolean fin = tcpHeader.getFin();
-            packetInfo.put(PacketInfo.SYN, Boolean.toString(syn));
-            packetInfo.put(PacketInfo.ACK, Boolean.toString(ack));
-            packetInfo.put(PacketInfo.FIN, Boolean.toString(fin));
-            long sequenceNumber = tcpHeader.getSequenceNumberAsLong();
-            long acknowledgementNumber = tcpHeader.getAcknowledgmentNumberAsLong();
-            log.trace("TCP{ source: " + tcpSource + ", destination: " + tcpDestination +
-                    ", SYN: " + syn + ", ACK: " + ack + ", FIN: " + fin +
+        packetInfo.setPorts(decoder.getSourcePort(), decoder.getDestinationPort());
+        int tcpFlags = decoder.getTcpFlags();
+        boolean syn = (tcpFlags & PacketDecoder.TCP_SYN) != 0;
+        boolean ack = (tcpFlags & PacketDecoder.TCP_ACK) != 0;
+        boolean fin = (tcpFlags & PacketDecoder.TCP_FIN) != 0;
+        boolean rst = (tcpFlags & PacketDecoder.TCP_RST) != 0;
+        if (syn) {
+            packetInfo.setFlag(PacketInfo.SYN);
+        }
+        if (ack) {
+            packetInfo.setFlag(PacketInfo.ACK);
+        }
+        if (fin) {
+            packetInfo.setFlag(PacketInfo.FIN);
+        }
+        if (rst) {
+            packetInfo.setFlag(PacketInfo.RST);
+        }
+        long sequenceNumber = decoder.getTcpSequenceNumber();
+        long acknowledgementNumber = decoder.getTcpAcknowledgementNumber();
+        long segmentLength = decoder.getTransportLength();
+        if (log.isTraceEnabled()) {
+            log.trace("TCP{ source: " + TcpFlowStore.endpoint(packetInfo.getSourceAddress(), packetInfo.getSourcePort()) +
+                    ", destination: " + TcpFlowStore.endpoint(packetInfo.getDestinationAddress(), packetInfo.getDestinationPort()) +
+                    ", SYN: " + syn + ", ACK: " + ack + ", FIN: " + fin + ", RST: " + rst +
                     ", seq number: " + sequenceNumber + ", ack number: " + acknowledgementNumber + " }");
+        }
 
-            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                // check for port scanning
-                pcapFileSummary.portScanDetector.add(packetInfo, pcapFileSummary);
-            }
-
-            // Track TCP connection state
-            //// Track connection handshake
-            IpAddressPair addressPair = new IpAddressPair(tcpSource, tcpDestination);
-            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                // check for brute force / dictionary telnet attack
-                TcpConnectionTracker tcpConnectionTracker = pcapFileSummary.activeTcpConnections.get(addressPair);
-                if (tcpConnectionTracker != null && tcpConnectionTracker.isConnected()) {
-                    pcapFileSummary.accountBruteForceDetector.detect(packet.getPayload(), packetInfo, pcapFileSummary);
+        // Track TCP connection state
+        DecodePlan plan = dispatcher.getPlan();
+        //// Expire connections that went idle before this packet
+        ActiveTcpConnections activeTcpConnections = pcapFileSummary.activeTcpConnections;
+        TcpFlowStore flows = activeTcpConnections.getFlows();
+        activeTcpConnections.expireIdle(packetInfo.getTimestampNanos());
+        int flow = activeTcpConnections.get(packetInfo);
+        int payloadLength = decoder.getPayloadLength();
+        if (dispatcher.readsTcpStreams() && (flow != ActiveTcpConnections.NO_FLOW) && flows.isConnected(flow)
+                && (payloadLength > 0)) {
+            reassemble(flow, decoder, sequenceNumber, payloadLength, pcapFileSummary, packetInfo, dispatcher);
+        }
+        //// Track the connection through its handshake, data transfer and close
+        if (flow == ActiveTcpConnections.NO_FLOW) {
+            if (syn && !ack) { // step 1: Client SYN
+                flow = activeTcpConnections.open(packetInfo);
+                if (flow != ActiveTcpConnections.NO_FLOW) {
+                    flows.setStep1ClientSequenceNumber(flow, sequenceNumber);
+                    if (plan.accountFlows) {
+                        flows.count(flow, true, segmentLength, tcpFlags, packetInfo.getTimestampNanos());
+                    }
                 }
+                // an untracked SYN still counts towards a SYN flood
+                dispatcher.synSent(flow, packetInfo);
             }
-            TcpConnectionTracker tcpConnectionTracker = pcapFileSummary.activeTcpConnections.get(addressPair);
-            if (tcpConnectionTracker == null) {
-                tcpConnectionTracker = new TcpConnectionTracker(tcpSource, tcpDestination);
-                if (syn) { // step 1: Client SYN
-                    tcpConnectionTracker.setStep1ClientSequenceNumber(sequenceNumber, pcapFileSummary, packetInfo, mode);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                    pcapFileSummary.activeTcpConnections.put(addressPair, tcpConnectionTracker);
-                }
-            } else if (!tcpConnectionTracker.isConnected() && !tcpConnectionTracker.isClosed()) {
-                if (syn && ack) { // step 2: Server SYN-ACK
-                    tcpConnectionTracker.setStep2Numbers(acknowledgementNumber, sequenceNumber, pcapFileSummary, mode);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                } else if (ack) { // step 3: Client ACK
-                    tcpConnectionTracker.setStep3Numbers(acknowledgementNumber, sequenceNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                    pcapFileSummary.tcpConnectionCount++;
-                }
-            } else if (tcpConnectionTracker.isConnected() && !tcpConnectionTracker.isClosed()) {
-                // check for password guessing brute force / dictionary attacks while the connection is open
-                // Track connection closing steps
-                if (fin && tcpConnectionTracker.getStep4CloseRequestSequenceNumber() == TcpConnectionTracker.NOT_DEFINED) {
-                    // step 4: Initiator FIN_WAIT_1
-                    tcpConnectionTracker.setStep4CloseRequestSequenceNumber(sequenceNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                } else if (ack && !fin &&
-                        tcpConnectionTracker.getStep4CloseRequestSequenceNumber() != TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep5CloseRequestAckNumber() == TcpConnectionTracker.NOT_DEFINED) {
-                    // step 5: Receiver ACK
-                    tcpConnectionTracker.setStep5CloseRequestAckNumber(acknowledgementNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                } else if (fin && !ack &&
-                        tcpConnectionTracker.getStep5CloseRequestAckNumber() != TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep6CloseRequestSequenceNumber() == TcpConnectionTracker.NOT_DEFINED) {
-                    // step 6: Receiver FIN
-                    tcpConnectionTracker.setStep6CloseRequestSequenceNumber(sequenceNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                } else if (fin && ack &&
-                        tcpConnectionTracker.getStep4CloseRequestSequenceNumber() != TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep5CloseRequestAckNumber() == TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep6CloseRequestSequenceNumber() == TcpConnectionTracker.NOT_DEFINED) {
-                    // combined step 5 and 6: Receiver FIN and ACK
-                    tcpConnectionTracker.setStep5CloseRequestAckNumber(acknowledgementNumber);
-                    tcpConnectionTracker.setStep6CloseRequestSequenceNumber(sequenceNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                } else if (ack && !fin &&
-                        tcpConnectionTracker.getStep5CloseRequestAckNumber() != TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep6CloseRequestSequenceNumber() != TcpConnectionTracker.NOT_DEFINED &&
-                        tcpConnectionTracker.getStep7CloseRequestAckNumber() == TcpConnectionTracker.NOT_DEFINED) {
-                    // step 7: Initiator ACK
-                    tcpConnectionTracker.setStep7CloseRequestAckNumber(acknowledgementNumber);
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                    // remove the closed TCP connection from tracking
-                    pcapFileSummary.closedTcpConnections.add(tcpConnectionTracker);
-                    pcapFileSummary.activeTcpConnections.remove(addressPair);
-                } else { // add to flow tracking
-                    tcpConnectionTracker.addFlowBytes((long) packet.length());
-                }
+            return true;
+        }
+        boolean fromClient = flows.isFromClient(flow, packetInfo);
+        if (plan.accountFlows) {
+            flows.count(flow, fromClient, segmentLength, tcpFlags, packetInfo.getTimestampNanos());
+        } else {
+            flows.seen(flow, packetInfo.getTimestampNanos()); // still needed for the idle timeouts
+        }
+        boolean ended = flows.update(flow, fromClient, packetInfo,
+                sequenceNumber, acknowledgementNumber, payloadLength, pcapFileSummary);
+        if (ended) {
+            // free the connection right away; only connections that were established are reported
+            if (plan.reportConnections && flows.wasEstablished(flow)) {
+                pcapFileSummary.closedTcpConnections.add(flows.snapshot(flow));
             }
-        } catch (IllegalRawDataException e) {
-            log.trace("Exception occurred while processing a packet. Exception was: " + e);
+            activeTcpConnections.remove(flow);
+        } else {
+            activeTcpConnections.touch(flow);
+        }
+        return true;
+    }
+
+    private static void reassemble(int flow, PacketDecoder decoder, long sequenceNumber, int payloadLength,
+                                   PcapFileSummary pcapFileSummary, PacketInfo packetInfo,
+                                   TcpStreamReassembler.StreamConsumer consumer) {
+        ActiveTcpConnections activeTcpConnections = pcapFileSummary.activeTcpConnections;
+        TcpFlowStore flows = activeTcpConnections.getFlows();
+        TcpStreamReassembler streams = activeTcpConnections.getStreams();
+        boolean fromClient = flows.isFromClient(flow, packetInfo);
+        if (!streams.isStarted(flow, fromClient)) {
+            // each side's payload starts right after its SYN
+            long initialSequenceNumber = fromClient ? flows.getStep1ClientSequenceNumber(flow)
+                    : flows.getStep2ServerSequenceNumber(flow);
+            streams.start(flow, fromClient, initialSequenceNumber + 1);
         }
+        streams.add(flow, fromClient, sequenceNumber, decoder.getBuffer(), decoder.getPayloadOffset(), payloadLength,
+                packetInfo, pcapFileSummary, consumer);
     }
 }
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * TcpStreamReassembler
+ * <p/>
+ * Puts the payload of TCP connections back in sequence number order, so
+ * payload analyzers see each direction of a connection as one in-order
+ * byte stream.  Streams are addressed by the handle of their connection in
+ * ActiveTcpConnections and a direction.  Segments that arrive in order are
+ * handed to the consumer straight from the packet buffer; retransmitted and
+ * overlapping bytes are trimmed.  Segments that arrive ahead of a gap are
+ * copied into pooled fixed-size chunks, kept in per-stream lists ordered
+ * by sequence number, until the gap is filled.  A stream may hold no more
+ * than maxStreamBytes ahead of its gap; past that the gap is skipped.  All
+ * streams together hold no more than maxBufferedBytes; past that new
+ * out-of-order segments are dropped.
+ */
+public class TcpStreamReassembler {
+    public static final int CHUNK_SIZE = 2048;
+    public static final int MAX_STREAM_BUFFERED_BYTES = 64 * 1024;
+    public static final int MAX_BUFFERED_BYTES = 16 * 1024 * 1024;
+    private static final int NONE = -1;
+    private static final int INITIAL_STREAMS = 1024;
+    private static final int INITIAL_CHUNKS = 64;
+
+    /**
+     * Receives the in-order bytes of a stream
+     */
+    public interface StreamConsumer {
+        /**
+         * @param data        buffer holding the bytes; only valid during the call
+         * @param offset      index of the first byte in data
+         * @param length      number of bytes
+         * @param packetInfo  packet that made the bytes available
+         */
+        void streamData(ByteBuffer data, int offset, int length, PacketInfo packetInfo, PcapFileSummary pcapFileSummary);
+    }
+
+    private final int maxStreamChunks;
+    private final int maxChunks;
+    // per stream, where stream = flow * 2 + direction
+    private boolean[] started = new boolean[INITIAL_STREAMS];
+    private int[] nextSequenceNumbers = new int[INITIAL_STREAMS];
+    private int[] pendingHeads = newLinks(INITIAL_STREAMS);
+    private int[] pendingChunkCounts = new int[INITIAL_STREAMS];
+    // per chunk
+    private ByteBuffer[] chunks = new ByteBuffer[INITIAL_CHUNKS];
+    private int[] chunkSequenceNumbers = new int[INITIAL_CHUNKS];
+    private int[] chunkLengths = new int[INITIAL_CHUNKS];
+    private int[] chunkNext = newLinks(INITIAL_CHUNKS); // next pending chunk of the stream, or next free chunk
+    private int chunkCount = 0;
+    private int freeChunks = NONE;
+    private long bufferedBytes = 0;
+    private long skippedBytes = 0;
+    private long droppedBytes = 0;
+
+    public TcpStreamReassembler() {
+        this(MAX_STREAM_BUFFERED_BYTES, MAX_BUFFERED_BYTES);
+    }
+
+    /**
+     * @param maxStreamBytes   out-of-order bytes held per stream before its gap is skipped
+     * @param maxBufferedBytes out-of-order bytes held for all streams before segments are dropped
+     */
+    public TcpStreamReassembler(int maxStreamBytes, int maxBufferedBytes) {
+        if ((maxStreamBytes < CHUNK_SIZE) || (maxBufferedBytes < maxStreamBytes)) {
+            throw new IllegalArgumentException("Buffer limits must hold at least one chunk per stream!");
+        }
+        this.maxStreamChunks = maxStreamBytes / CHUNK_SIZE;
+        this.maxChunks = maxBufferedBytes / CHUNK_SIZE;
+    }
+
+    private static int[] newLinks(int length) {
+        int[] links = new int[length];
+        Arrays.fill(links, NONE);
+        return links;
+    }
+
+    private static int[] growLinks(int[] links, int length) {
+        int oldLength = links.length;
+        links = Arrays.copyOf(links, length);
+        Arrays.fill(links, oldLength, length, NONE);
+        return links;
+    }
+
+    private static int stream(int flow, boolean fromClient) {
+        return (flow << 1) | (fromClient ? 0 : 1);
+    }
+
+    private void ensureStreamCapacity(int stream) {
+        if (stream < started.length) {
+            return;
+        }
+        int length = Math.max(started.length * 2, stream + 1);
+        started = Arrays.copyOf(started, length);
+        nextSequenceNumbers = Arrays.copyOf(nextSequenceNumbers, length);
+        pendingHeads = growLinks(pendingHeads, length);
+        pendingChunkCounts = Arrays.copyOf(pendingChunkCounts, length);
+    }
+
+    /**
+     * @return true once a sequence number has been set for the stream
+     */
+    public boolean isStarted(int flow, boolean fromClient) {
+        int stream = stream(flow, fromClient);
+        return (stream < started.length) && started[stream];
+    }
+
+    /**
+     * Set the sequence number of the first byte of a stream, typically the
+     * initial sequence number of its side of the handshake plus one
+     */
+    public void start(int flow, boolean fromClient, long sequenceNumber) {
+        int stream = stream(flow, fromClient);
+        ensureStreamCapacity(stream);
+        started[stream] = true;
+        nextSequenceNumbers[stream] = (int) sequenceNumber;
+    }
+
+    /**
+     * Add a segment to a stream and hand every byte that is now in order to
+     * the consumer.  A stream that was not started begins at this segment.
+     *
+     * @param flow           handle of the connection
+     * @param fromClient     direction of the segment
+     * @param sequenceNumber sequence number of the first payload byte
+     * @param buffer         buffer holding the payload
+     * @param offset         index of the first payload byte in buffer
+     * @param length         payload length
+     * @param consumer       receives the in-order bytes
+     */
+    public void add(int flow, boolean fromClient, long sequenceNumber, ByteBuffer buffer, int offset, int length,
+                    PacketInfo packetInfo, PcapFileSummary pcapFileSummary, StreamConsumer consumer) {
+        if (length <= 0) {
+            return;
+        }
+        if (!isStarted(flow, fromClient)) {
+            start(flow, fromClient, sequenceNumber);
+        }
+        int stream = stream(flow, fromClient);
+        int sequence = (int) sequenceNumber;
+        while (length > 0) {
+            int ahead = sequence - nextSequenceNumbers[stream]; // serial number arithmetic, RFC 1982
+            if (ahead <= 0) {
+                long seen = -(long) ahead; // bytes that were already handed over
+                if (seen < length) {
+                    consumer.streamData(buffer, offset + (int) seen, length - (int) seen, packetInfo, pcapFileSummary);
+                    nextSequenceNumbers[stream] = sequence + length;
+                    drain(stream, packetInfo, pcapFileSummary, consumer);
+                }
+                return;
+            }
+            if (pendingChunkCounts[stream] >= maxStreamChunks) {
+                // the gap is not going to be filled; carry on after it
+                skipGap(stream, packetInfo, pcapFileSummary, consumer);
+                continue;
+            }
+            int chunk = allocateChunk();
+            if (chunk == NONE) {
+                droppedBytes += length;
+                return;
+            }
+            int chunkLength = Math.min(length, CHUNK_SIZE);
+            ByteBuffer data = chunks[chunk];
+            for (int i = 0; i < chunkLength; i++) {
+                data.put(i, buffer.get(offset + i));
+            }
+            chunkSequenceNumbers[chunk] = sequence;
+            chunkLengths[chunk] = chunkLength;
+            insertPending(stream, chunk);
+            sequence += chunkLength;
+            offset += chunkLength;
+            length -= chunkLength;
+        }
+    }
+
+    // keep the pending chunks of a stream ordered by sequence number
+    private void insertPending(int stream, int chunk) {
+        int sequence = chunkSequenceNumbers[chunk];
+        int previous = NONE;
+        int current = pendingHeads[stream];
+        while ((current != NONE) && (chunkSequenceNumbers[current] - sequence <= 0)) {
+            previous = current;
+            current = chunkNext[current];
+        }
+        chunkNext[chunk] = current;
+        if (previous == NONE) {
+            pendingHeads[stream] = chunk;
+        } else {
+            chunkNext[previous] = chunk;
+        }
+        pendingChunkCounts[stream]++;
+        bufferedBytes += chunkLengths[chunk];
+    }
+
+    // hand over the pending chunks that the stream has caught up with
+    private void drain(int stream, PacketInfo packetInfo, PcapFileSummary pcapFileSummary, StreamConsumer consumer) {
+        int chunk = pendingHeads[stream];
+        while (chunk != NONE) {
+            int ahead = chunkSequenceNumbers[chunk] - nextSequenceNumbers[stream];
+            if (ahead > 0) {
+                break;
+            }
+            int seen = -ahead;
+            int chunkLength = chunkLengths[chunk];
+            if (seen < chunkLength) {
+                consumer.streamData(chunks[chunk], seen, chunkLength - seen, packetInfo, pcapFileSummary);
+                nextSequenceNumbers[stream] = chunkSequenceNumbers[chunk] + chunkLength;
+            }
+            int next = chunkNext[chunk];
+            pendingHeads[stream] = next;
+            pendingChunkCounts[stream]--;
+            freeChunk(chunk);
+            chunk = next;
+        }
+    }
+
+    private void skipGap(int stream, PacketInfo packetInfo, PcapFileSummary pcapFileSummary, StreamConsumer consumer) {
+        int first = chunkSequenceNumbers[pendingHeads[stream]];
+        skippedBytes += (first - nextSequenceNumbers[stream]) & 0xFFFFFFFFL;
+        nextSequenceNumbers[stream] = first;
+        drain(stream, packetInfo, pcapFileSummary, consumer);
+    }
+
+    private int allocateChunk() {
+        int chunk = freeChunks;
+        if (chunk != NONE) {
+            freeChunks = chunkNext[chunk];
+            return chunk;
+        }
+        if (chunkCount >= maxChunks) {
+            return NONE;
+        }
+        chunk = chunkCount++;
+        if (chunk >= chunks.length) {
+            int length = Math.min(chunks.length * 2, maxChunks);
+            chunks = Arrays.copyOf(chunks, length);
+            chunkSequenceNumbers = Arrays.copyOf(chunkSequenceNumbers, length);
+            chunkLengths = Arrays.copyOf(chunkLengths, length);
+            chunkNext = growLinks(chunkNext, length);
+        }
+        chunks[chunk] = ByteBuffer.allocate(CHUNK_SIZE);
+        return chunk;
+    }
+
+    // chunks go back to the pool rather than to the garbage collector
+    private void freeChunk(int chunk) {
+        bufferedBytes -= chunkLengths[chunk];
+        chunkNext[chunk] = freeChunks;
+        freeChunks = chunk;
+    }
+
+    /**
+     * Forget both streams of a connection, returning their chunks to the
+     * pool.  Called when the connection is removed, before its handle is
+     * reused.
+     */
+    public void release(int flow) {
+        releaseStream(stream(flow, true));
+        releaseStream(stream(flow, false));
+    }
+
+    private void releaseStream(int stream) {
+        if (stream >= started.length) {
+            return;
+        }
+        int chunk = pendingHeads[stream];
+        while (chunk != NONE) {
+            int next = chunkNext[chunk];
+            freeChunk(chunk);
+            chunk = next;
+        }
+        pendingHeads[stream] = NONE;
+        pendingChunkCounts[stream] = 0;
+        started[stream] = false;
+    }
+
+    /**
+     * @return out-of-order bytes currently held for all streams
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    /**
+     * @return bytes of gaps that were skipped because a stream held too much data after them
+     */
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     * @return out-of-order bytes that were dropped because all chunks were in use
+     */
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+}
@@ -29,7 +29,7 @@ public class TelnetLoginAttempt {
 
     public String username;
     public String password;
-    public String timestamp;
+    public long timestampNanos;
 
     public TelnetLoginAttempt() {
     }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * TimedOutTcpConnections
+ * <p/>
+ * TCP connections that went idle for longer than the timeout of their
+ * state and were dropped from tracking.  All of them are counted, but only
+ * the first MAX_REPORTED are kept for the report, so hostile traffic such
+ * as a SYN flood cannot grow this without bound.
+ */
+public class TimedOutTcpConnections {
+
+    public static final int MAX_REPORTED = 1000;
+
+    private final ArrayList<TcpConnectionTracker> reported = new ArrayList<>();
+    private long count = 0;
+
+    public void add(TcpConnectionTracker tcpConnectionTracker) {
+        count++;
+        if (reported.size() < MAX_REPORTED) {
+            reported.add(tcpConnectionTracker);
+        }
+    }
+
+    // the report of the connection is only built if it is kept
+    void add(TcpFlowStore flows, int flow) {
+        count++;
+        if (reported.size() < MAX_REPORTED) {
+            reported.add(flows.snapshot(flow));
+        }
+    }
+
+    // first MAX_REPORTED of the concatenation: associative, like ClosedTcpConnections
+    public void merge(TimedOutTcpConnections other) {
+        count += other.count;
+        for (TcpConnectionTracker tcpConnectionTracker : other.reported) {
+            if (reported.size() >= MAX_REPORTED) {
+                break;
+            }
+            reported.add(tcpConnectionTracker);
+        }
+    }
+
+    public long size() {
+        return count;
+    }
+
+    public int reportedSize() {
+        return reported.size();
+    }
+
+    public void forEach(Consumer<? super TcpConnectionTracker> consumer) {
+        reported.forEach(consumer);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.udp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.util.ActiveFlows;
+import com.liquidfortress.packetanalyzer.util.FlowRecordLog;
+
+/**
+ * ActiveUdpFlows
+ * <p/>
+ * Counts the datagrams of each UDP flow until the flow goes idle.  UDP has
+ * no connection state, so, like a stateful firewall, a flow that has only
+ * been seen in one direction expires sooner than one that has had an
+ * answer.  No more than MAX_FLOWS flows are tracked at once.
+ */
+public class ActiveUdpFlows extends ActiveFlows<UdpFlowStore> {
+
+    public static final long UNANSWERED_TIMEOUT = 30 * NANOS_PER_SECOND; // only the client has sent
+    public static final long ANSWERED_TIMEOUT = 120 * NANOS_PER_SECOND;  // both ends have sent
+    public static final int MAX_FLOWS = 1 << 20;
+
+    public ActiveUdpFlows() {
+        this(null);
+    }
+
+    /**
+     * @param flowRecordLog receives the flow records of the flows, or null
+     */
+    public ActiveUdpFlows(FlowRecordLog flowRecordLog) {
+        super(new UdpFlowStore(), MAX_FLOWS, flowRecordLog);
+    }
+
+    /**
+     * Count a datagram, starting its flow if it is the first one.  Flows
+     * that went idle before the datagram are expired first.
+     *
+     * @param packetInfo the datagram, with its ports set
+     * @param bytes      UDP header and payload bytes
+     * @return handle of the flow, or NO_FLOW if the table is full and the flow is not tracked
+     */
+    public int count(PacketInfo packetInfo, long bytes) {
+        expireIdle(packetInfo.getTimestampNanos());
+        int flow = get(packetInfo);
+        if (flow == NO_FLOW) {
+            flow = open(packetInfo);
+            if (flow == NO_FLOW) {
+                return NO_FLOW;
+            }
+        }
+        flows.count(flow, flows.isFromClient(flow, packetInfo), bytes, 0, packetInfo.getTimestampNanos());
+        touch(flow);
+        return flow;
+    }
+
+    @Override
+    protected long idleTimeout(int flow) {
+        return (flows.getServerPackets(flow) > 0) ? ANSWERED_TIMEOUT : UNANSWERED_TIMEOUT;
+    }
+
+    @Override
+    protected void expired(int flow) {
+        // only counted; the flow record keeps the details
+    }
+
+    @Override
+    protected int copyFlow(UdpFlowStore otherFlows, int otherFlow) {
+        return flows.copyFrom(otherFlows, otherFlow);
+    }
+
+    // both partial results saw part of the flow: add the counters
+    @Override
+    protected void mergeFlow(int flow, UdpFlowStore otherFlows, int otherFlow) {
+        flows.addFrom(flow, otherFlows, otherFlow);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.udp;
+
+import com.liquidfortress.packetanalyzer.util.FlowStore;
+
+/**
+ * UdpFlowStore
+ * <p/>
+ * Column store for UDP flows; UDP has no connection state, so a flow is
+ * only its key and counters
+ */
+public class UdpFlowStore extends FlowStore {
+
+    public static final int PROTOCOL_UDP = 17;
+
+    public UdpFlowStore() {
+        super(PROTOCOL_UDP);
+    }
+
+    @Override
+    protected void growColumns(int capacity) {
+        // no columns besides the key and counters
+    }
+
+    public int copyFrom(UdpFlowStore other, int otherFlow) {
+        return copyFlow(other, otherFlow);
+    }
+
+    // add the counters of the same flow held by another store
+    public void addFrom(int flow, UdpFlowStore other, int otherFlow) {
+        addCounters(flow, other, otherFlow);
+    }
+
+    @Override
+    protected int getRecordState(int flow) {
+        return 0;
+    }
+}
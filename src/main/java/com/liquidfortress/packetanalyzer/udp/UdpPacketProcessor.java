@@ -20,15 +20,12 @@
 
 package com.liquidfortress.packetanalyzer.udp;
 
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.main.DecodePlan;
 import com.liquidfortress.packetanalyzer.main.Main;
-import com.liquidfortress.packetanalyzer.main.Mode;
 import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
 import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
 import org.apache.logging.log4j.core.Logger;
-import org.pcap4j.packet.IllegalRawDataException;
-import org.pcap4j.packet.Packet;
-import org.pcap4j.packet.UdpPacket;
-import org.pcap4j.packet.namednumber.UdpPort;
 
 /**
  * UdpPacketProcessor
@@ -39,30 +36,28 @@ public class UdpPacketProcessor {
     private static Logger log = Main.log;
 
 
-    public static void processUdpPacket(Packet packet, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, Mode mode) {
-        if (packet == null) {
-            return; // skip empty packets
-        }
-        String sourceAddress = packetInfo.get(PacketInfo.SOURCE_ADDRESS);
-        String destinationAddress = packetInfo.get(PacketInfo.DESTINATION_ADDRESS);
-        try {
-            log.trace("Converting to UDP packet");
-            UdpPacket udpPacket = UdpPacket.newPacket(packet.getRawData(), 0, packet.length());
-            UdpPacket.UdpHeader udpHeader = udpPacket.getHeader();
-            UdpPort sourcePort = udpHeader.getSrcPort();
-            UdpPort destinationPort = udpHeader.getDstPort();
-            packetInfo.put(PacketInfo.SOURCE_PORT, sourcePort.valueAsString());
-            packetInfo.put(PacketInfo.DESTINATION_PORT, destinationPort.valueAsString());
-            if (mode == Mode.POSSIBLE_ATTACKS_ANALYSIS) {
-                //pcapFileSummary.portScanDetector.add(packetInfo);
+    public static boolean processUdpPacket(PacketDecoder decoder, PcapFileSummary pcapFileSummary, PacketInfo packetInfo, DecodePlan plan) {
+        log.trace("Decoding UDP header");
+        if (!decoder.decodeUdp()) {
+            pcapFileSummary.malformedPacketCount++;
+            if (log.isTraceEnabled()) {
+                log.trace("Skipping malformed UDP datagram " + pcapFileSummary.packetCount);
             }
-            String udpSource = sourceAddress + ":" + sourcePort.toString();
-            String udpDestination = destinationAddress + ":" + destinationPort.toString();
-            log.trace("Adding UDP source to set: " + udpSource);
-            pcapFileSummary.udpSources.add(udpSource);
-            log.trace("UDP{ source: " + udpSource + ", destination: " + udpDestination + " }");
-        } catch (IllegalRawDataException e) {
-            log.error("Exception occurred while processing a packet. Exception was: " + e);
+            return false;
+        }
+        packetInfo.setPorts(decoder.getSourcePort(), decoder.getDestinationPort());
+        if (plan.detectAttacks) {
+            //pcapFileSummary.portScanDetector.add(packetInfo);
+        }
+        pcapFileSummary.udpSources.add(packetInfo.getSourceAddressHigh(), packetInfo.getSourceAddressLow(),
+                packetInfo.getSourcePort());
+        if (plan.accountFlows) {
+            pcapFileSummary.activeUdpFlows.count(packetInfo, decoder.getTransportLength());
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("UDP{ source: " + packetInfo.getSourceEndpoint() +
+                    ", destination: " + packetInfo.getDestinationEndpoint() + " }");
         }
+        return true;
     }
 }
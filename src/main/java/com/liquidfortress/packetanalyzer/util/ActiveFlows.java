@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+
+import java.util.function.IntConsumer;
+
+/**
+ * ActiveFlows
+ * <p/>
+ * Bounded set of the flows of one protocol that are being tracked.  Flows
+ * live in a FlowStore and are found by their handle in a FlowTable keyed
+ * by the addresses and ports of the packet, in either direction.  Idle
+ * flows are expired by a timing wheel driven by capture time, with a
+ * timeout chosen by the protocol; no more than maxFlows flows are tracked
+ * at once.  When flow records are exported, the record of every flow is
+ * logged as it stops being tracked.
+ *
+ * @param <S> flow store of the protocol
+ */
+public abstract class ActiveFlows<S extends FlowStore> {
+
+    public static final int NO_FLOW = FlowStore.NO_FLOW;
+    protected static final long NANOS_PER_SECOND = 1000000000L;
+    private static final int TICK_SHIFT = 30; // timing wheel ticks of about one second
+
+    protected final S flows;
+    private final FlowTable flowIndex = new FlowTable(); // 5-tuple to flow handle
+    private final TimingWheel idleTimers = new TimingWheel(TICK_SHIFT);
+    private final IntConsumer onIdleTimer = this::idleTimerFired;
+    private final int maxFlows;
+    private final FlowRecordLog flowRecordLog;
+    private IntConsumer flowEndListener = null;
+    private long now;
+    private long expiredFlowCount = 0;
+    private long untrackedFlowCount = 0;
+
+    /**
+     * @param flows         empty store for the flows
+     * @param maxFlows      most flows tracked at once
+     * @param flowRecordLog receives the flow records of the flows, or null
+     */
+    protected ActiveFlows(S flows, int maxFlows, FlowRecordLog flowRecordLog) {
+        this.flows = flows;
+        this.maxFlows = maxFlows;
+        this.flowRecordLog = flowRecordLog;
+    }
+
+    public int size() {
+        return flows.size();
+    }
+
+    // the tracked flows, by handle
+    public S getFlows() {
+        return flows;
+    }
+
+    // flows that were dropped because they were idle for longer than their timeout
+    public long getExpiredFlowCount() {
+        return expiredFlowCount;
+    }
+
+    // flows that were not tracked because the table was full
+    public long getUntrackedFlowCount() {
+        return untrackedFlowCount;
+    }
+
+    /**
+     * @return handle of the flow the packet belongs to, or NO_FLOW
+     */
+    public int get(PacketInfo packetInfo) {
+        return flowIndex.get(packetInfo.getSourceAddressHigh(), packetInfo.getSourceAddressLow(), packetInfo.getSourcePort(),
+                packetInfo.getDestinationAddressHigh(), packetInfo.getDestinationAddressLow(), packetInfo.getDestinationPort(),
+                flows.getIpProtocol());
+    }
+
+    /**
+     * Start tracking a new flow whose first packet is packetInfo; the
+     * source of the packet is the client
+     *
+     * @return handle of the flow, or NO_FLOW if the table is full and the flow is not tracked
+     */
+    public int open(PacketInfo packetInfo) {
+        if (flows.size() >= maxFlows) {
+            untrackedFlowCount++;
+            return NO_FLOW;
+        }
+        expireIdle(packetInfo.getTimestampNanos()); // the wheel must have reached the capture time
+        int flow = flows.allocate(packetInfo);
+        flowIndex.put(packetInfo.getSourceAddressHigh(), packetInfo.getSourceAddressLow(), packetInfo.getSourcePort(),
+                packetInfo.getDestinationAddressHigh(), packetInfo.getDestinationAddressLow(), packetInfo.getDestinationPort(),
+                flows.getIpProtocol(), flow);
+        touch(flow);
+        return flow;
+    }
+
+    /**
+     * @param flowEndListener called with the handle of every flow that is removed, or null
+     */
+    public void setFlowEndListener(IntConsumer flowEndListener) {
+        this.flowEndListener = flowEndListener;
+    }
+
+    /**
+     * Stop tracking a flow; its handle may be reused by the next flow
+     */
+    public void remove(int flow) {
+        if (flowEndListener != null) {
+            flowEndListener.accept(flow);
+        }
+        if (flowRecordLog != null) {
+            flowRecordLog.add(flows, flow);
+        }
+        idleTimers.cancel(flow);
+        flowIndex.remove(flows.getClientAddressHigh(flow), flows.getClientAddressLow(flow), flows.getClientPort(flow),
+                flows.getServerAddressHigh(flow), flows.getServerAddressLow(flow), flows.getServerPort(flow),
+                flows.getIpProtocol());
+        flows.free(flow);
+    }
+
+    /**
+     * @return how long the flow may stay idle in its current state, in nanoseconds
+     */
+    protected abstract long idleTimeout(int flow);
+
+    /**
+     * Called when a flow has been idle for longer than its timeout, just
+     * before it is removed
+     */
+    protected abstract void expired(int flow);
+
+    /**
+     * Record activity on a flow, once its packet has been counted.  The
+     * timer is only moved when the new deadline is earlier than the
+     * scheduled one (for example once a FIN is seen); a later deadline is
+     * picked up when the timer fires.
+     *
+     * @param flow flow that saw a packet
+     */
+    public void touch(int flow) {
+        long deadline = flows.getLastSeenNanos(flow) + idleTimeout(flow);
+        if (deadline < flows.getIdleDeadlineNanos(flow)) {
+            flows.setIdleDeadlineNanos(flow, deadline);
+            idleTimers.schedule(flow, deadline);
+        }
+    }
+
+    /**
+     * Expire the flows that have been idle for longer than their timeout.
+     * Called with the capture time of every packet of the protocol, before
+     * the packet is tracked.
+     *
+     * @param timestampNanos capture time of the current packet
+     */
+    public void expireIdle(long timestampNanos) {
+        now = timestampNanos;
+        idleTimers.advance(timestampNanos, onIdleTimer);
+    }
+
+    private void idleTimerFired(int flow) {
+        long deadline = flows.getLastSeenNanos(flow) + idleTimeout(flow);
+        if (deadline > now) { // seen since the timer was scheduled
+            flows.setIdleDeadlineNanos(flow, deadline);
+            idleTimers.schedule(flow, deadline);
+            return;
+        }
+        expiredFlowCount++;
+        expired(flow);
+        remove(flow);
+    }
+
+    /**
+     * Copy a flow of another partial result that is not tracked here
+     *
+     * @return handle of the copy in this store
+     */
+    protected abstract int copyFlow(S otherFlows, int otherFlow);
+
+    /**
+     * Combine a flow of another partial result with the same flow here
+     */
+    protected abstract void mergeFlow(int flow, S otherFlows, int otherFlow);
+
+    /**
+     * Merge the flows of another partial result into this one.  Flow
+     * shards never share a flow; flows that both partial results hold
+     * (such as one that spans two files) are combined by mergeFlow, which
+     * must keep the merge associative.  Merged flows are not expired any
+     * more; merging is only done once all packets have been processed.
+     *
+     * @param other flows to add
+     */
+    public void merge(ActiveFlows<S> other) {
+        S otherFlows = other.flows;
+        otherFlows.forEach((int otherFlow) -> {
+            long clientAddressHigh = otherFlows.getClientAddressHigh(otherFlow);
+            long clientAddressLow = otherFlows.getClientAddressLow(otherFlow);
+            int clientPort = otherFlows.getClientPort(otherFlow);
+            long serverAddressHigh = otherFlows.getServerAddressHigh(otherFlow);
+            long serverAddressLow = otherFlows.getServerAddressLow(otherFlow);
+            int serverPort = otherFlows.getServerPort(otherFlow);
+            int flow = flowIndex.get(clientAddressHigh, clientAddressLow, clientPort,
+                    serverAddressHigh, serverAddressLow, serverPort, flows.getIpProtocol());
+            if (flow == NO_FLOW) {
+                flowIndex.put(clientAddressHigh, clientAddressLow, clientPort, serverAddressHigh, serverAddressLow, serverPort,
+                        flows.getIpProtocol(), copyFlow(otherFlows, otherFlow));
+            } else {
+                mergeFlow(flow, otherFlows, otherFlow);
+            }
+        });
+        expiredFlowCount += other.expiredFlowCount;
+        untrackedFlowCount += other.untrackedFlowCount;
+    }
+
+    // flow records of the flows that are still tracked
+    public void writeFlowRecords(FlowRecordLog log) {
+        flows.forEach((int flow) -> log.add(flows, flow));
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import java.util.Arrays;
+
+/**
+ * AddressTable
+ * <p/>
+ * Index from a 128-bit IP address (IPv4 addresses in their IPv4-mapped
+ * form, as kept by PacketInfo), optionally qualified by a port, to an int
+ * handle, such as a slot of a per-host or per-server state array.  Like
+ * FlowTable, keys are stored in flat arrays with open addressing and
+ * linear probing; lookups never allocate and removal uses backward
+ * shifting.
+ */
+public class AddressTable {
+    public static final int NO_VALUE = -1;
+
+    private static final int KEY_WIDTH = 2;
+    private static final int INITIAL_CAPACITY = 256;      // slots; always a power of two
+    private static final int MAXIMUM_CAPACITY = 1 << 29;  // keys array must stay below 2^31 elements
+
+    private long[] keys = new long[INITIAL_CAPACITY * KEY_WIDTH];
+    private int[] ports = new int[INITIAL_CAPACITY];
+    private int[] values = newValues(INITIAL_CAPACITY); // NO_VALUE marks an empty slot
+    private int size = 0;
+
+    public AddressTable() {
+    }
+
+    private static int[] newValues(int capacity) {
+        int[] values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        return values;
+    }
+
+    private static int hash(long addressHigh, long addressLow, int port) {
+        return (int) FlowHash.ipv6Endpoint(addressHigh, addressLow, port);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // slot holding the address, or the empty slot where it would go
+    private int findSlot(long addressHigh, long addressLow, int port) {
+        int mask = values.length - 1;
+        int slot = hash(addressHigh, addressLow, port) & mask;
+        while (values[slot] != NO_VALUE) {
+            int base = slot * KEY_WIDTH;
+            if (keys[base] == addressHigh && keys[base + 1] == addressLow && ports[slot] == port) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return the handle of the address, or NO_VALUE
+     */
+    public int get(long addressHigh, long addressLow) {
+        return get(addressHigh, addressLow, 0);
+    }
+
+    /**
+     * @return the handle of the address and port, or NO_VALUE
+     */
+    public int get(long addressHigh, long addressLow, int port) {
+        return values[findSlot(addressHigh, addressLow, port)];
+    }
+
+    /**
+     * Associate a handle with an address
+     *
+     * @return the handle previously kept for the address, or NO_VALUE
+     */
+    public int put(long addressHigh, long addressLow, int value) {
+        return put(addressHigh, addressLow, 0, value);
+    }
+
+    /**
+     * Associate a handle with an address and port
+     *
+     * @return the handle previously kept for the address and port, or NO_VALUE
+     */
+    public int put(long addressHigh, long addressLow, int port, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("AddressTable handles cannot be negative!");
+        }
+        int slot = findSlot(addressHigh, addressLow, port);
+        int previous = values[slot];
+        values[slot] = value;
+        if (previous == NO_VALUE) {
+            keys[slot * KEY_WIDTH] = addressHigh;
+            keys[slot * KEY_WIDTH + 1] = addressLow;
+            ports[slot] = port;
+            size++;
+            if (size * 2 > values.length) { // keep the load factor at or below one half
+                resize(values.length * 2);
+            }
+        }
+        return previous;
+    }
+
+    public int remove(long addressHigh, long addressLow) {
+        return remove(addressHigh, addressLow, 0);
+    }
+
+    public int remove(long addressHigh, long addressLow, int port) {
+        int slot = findSlot(addressHigh, addressLow, port);
+        int previous = values[slot];
+        if (previous != NO_VALUE) {
+            deleteSlot(slot);
+            size--;
+        }
+        return previous;
+    }
+
+    // backward-shift deletion: pull later entries of the probe run into the hole
+    private void deleteSlot(int hole) {
+        int mask = values.length - 1;
+        int slot = (hole + 1) & mask;
+        while (values[slot] != NO_VALUE) {
+            int home = hash(keys[slot * KEY_WIDTH], keys[slot * KEY_WIDTH + 1], ports[slot]) & mask;
+            // the entry may move into the hole only if the hole lies on its probe path
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                System.arraycopy(keys, slot * KEY_WIDTH, keys, hole * KEY_WIDTH, KEY_WIDTH);
+                ports[hole] = ports[slot];
+                values[hole] = values[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        values[hole] = NO_VALUE;
+    }
+
+    private void resize(int capacity) {
+        if (capacity > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("AddressTable cannot hold more than " + (MAXIMUM_CAPACITY / 2) + " addresses!");
+        }
+        long[] oldKeys = keys;
+        int[] oldPorts = ports;
+        int[] oldValues = values;
+        keys = new long[capacity * KEY_WIDTH];
+        ports = new int[capacity];
+        values = newValues(capacity);
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldValues.length; oldSlot++) {
+            if (oldValues[oldSlot] != NO_VALUE) {
+                long addressHigh = oldKeys[oldSlot * KEY_WIDTH];
+                long addressLow = oldKeys[oldSlot * KEY_WIDTH + 1];
+                int port = oldPorts[oldSlot];
+                int slot = hash(addressHigh, addressLow, port) & mask;
+                while (values[slot] != NO_VALUE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot * KEY_WIDTH] = addressHigh;
+                keys[slot * KEY_WIDTH + 1] = addressLow;
+                ports[slot] = port;
+                values[slot] = oldValues[oldSlot];
+            }
+        }
+    }
+}
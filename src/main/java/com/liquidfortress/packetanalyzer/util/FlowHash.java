@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+/**
+ * FlowHash
+ * <p/>
+ * Symmetric flow hashing: both directions of a flow hash to the same value,
+ * so that either endpoint can be used as the "source" of a lookup
+ */
+public class FlowHash {
+
+    // MurmurHash3 64-bit finalizer; every input bit affects every output bit
+    public static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    public static long ipv4Endpoint(int address, int port) {
+        return mix(((address & 0xFFFFFFFFL) << 16) | (port & 0xFFFF));
+    }
+
+    // the port is mixed on its own: folded into the low address word, (address ^ d, port ^ d) would collide
+    public static long ipv6Endpoint(long addressHigh, long addressLow, int port) {
+        return mix(addressHigh ^ mix(addressLow)) ^ mix(port & 0xFFFF);
+    }
+
+    /**
+     * Combine two endpoint hashes and the IP protocol into a flow hash that
+     * does not depend on the order of the endpoints
+     *
+     * @param endpoint1 hash of one endpoint
+     * @param endpoint2 hash of the other endpoint
+     * @param protocol  IP protocol number
+     * @return symmetric flow hash
+     */
+    public static long flow(long endpoint1, long endpoint2, int protocol) {
+        long low = Math.min(endpoint1, endpoint2);
+        long high = Math.max(endpoint1, endpoint2);
+        return mix((low * 31) ^ high ^ protocol);
+    }
+}
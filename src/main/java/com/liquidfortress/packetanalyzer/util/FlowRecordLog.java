@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FlowRecordLog
+ * <p/>
+ * Append-only log of fixed-width binary flow records, written to segment
+ * files in a directory as flows end and exported as one file at the end.
+ * The export file is a 16 byte header followed by RECORD_LENGTH byte
+ * records, all little-endian, so other tools can mmap it and scan or index
+ * the records directly:
+ * <pre>
+ * header:  0 magic "LFPAFLOW"   8 u16 version   10 u16 header length   12 u16 record length   14 u16 reserved
+ * record:  0 client address high    8 client address low     16 server address high   24 server address low
+ *         32 u16 client port       34 u16 server port        36 u8 IP protocol        37 u8 IP version
+ *         38 u8 client TCP flags   39 u8 server TCP flags    40 first seen (epoch ns) 48 last seen (epoch ns)
+ *         56 client packets        64 client bytes           72 server packets        80 server bytes
+ *         88 u8 state              89 7 reserved bytes
+ * </pre>
+ * Unmarked fields are 64-bit.  Addresses are 128-bit, IPv4 in IPv4-mapped
+ * form.  The client is the end that sent the first packet of the flow.
+ * Bytes are transport layer bytes.  The state is the TCP connection state
+ * ordinal, or 0 for other protocols.  Merging another log adopts its
+ * segment files.  Segment files are deleted when the JVM exits.
+ */
+public class FlowRecordLog {
+
+    public static final byte[] MAGIC = {'L', 'F', 'P', 'A', 'F', 'L', 'O', 'W'};
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 16;
+    public static final int RECORD_LENGTH = 96;
+
+    // record field offsets
+    public static final int CLIENT_ADDRESS_HIGH = 0;
+    public static final int CLIENT_ADDRESS_LOW = 8;
+    public static final int SERVER_ADDRESS_HIGH = 16;
+    public static final int SERVER_ADDRESS_LOW = 24;
+    public static final int CLIENT_PORT = 32;
+    public static final int SERVER_PORT = 34;
+    public static final int IP_PROTOCOL = 36;
+    public static final int IP_VERSION = 37;
+    public static final int CLIENT_TCP_FLAGS = 38;
+    public static final int SERVER_TCP_FLAGS = 39;
+    public static final int FIRST_SEEN = 40;
+    public static final int LAST_SEEN = 48;
+    public static final int CLIENT_PACKETS = 56;
+    public static final int CLIENT_BYTES = 64;
+    public static final int SERVER_PACKETS = 72;
+    public static final int SERVER_BYTES = 80;
+    public static final int STATE = 88;
+
+    private static final int RECORDS_PER_BUFFER = 1024;
+
+    private final File directory;
+    private final List<File> segments = new ArrayList<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORDS_PER_BUFFER * RECORD_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    private FileChannel writer; // appends to the last segment; null until the next add
+    private long size = 0;
+
+    /**
+     * @param directory directory for the segment files, usually the one the export is written to
+     */
+    public FlowRecordLog(File directory) {
+        if ((directory == null) || !directory.isDirectory()) {
+            throw new IllegalArgumentException("FlowRecordLog needs an existing directory!");
+        }
+        this.directory = directory;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Append the record of a flow
+     *
+     * @param flowStore store that holds the flow
+     * @param flow      handle of the flow
+     */
+    public void add(FlowStore flowStore, int flow) {
+        if (buffer.remaining() < RECORD_LENGTH) {
+            flush();
+        }
+        flowStore.writeRecord(flow, buffer, buffer.position());
+        buffer.position(buffer.position() + RECORD_LENGTH);
+        size++;
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            if (writer == null) {
+                File segment = File.createTempFile("flow-records-", ".log", directory);
+                segment.deleteOnExit();
+                segments.add(segment);
+                writer = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            }
+            while (buffer.hasRemaining()) {
+                writer.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the flow record log in " + directory, e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    // finish the current segment; a later add starts a new one
+    private void closeWriter() {
+        if (buffer.position() > 0) {
+            flush();
+        }
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the flow record log in " + directory, e);
+        } finally {
+            writer = null;
+        }
+    }
+
+    // concatenation: the segments of the other log follow the segments of this one
+    public void merge(FlowRecordLog other) {
+        closeWriter();
+        other.closeWriter();
+        segments.addAll(other.segments);
+        size += other.size;
+        other.segments.clear();
+        other.size = 0;
+    }
+
+    /**
+     * Write the header and all records to an export file
+     *
+     * @param exportFile file to create or replace
+     * @throws IOException if the export cannot be written
+     */
+    public void writeTo(File exportFile) throws IOException {
+        closeWriter();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC);
+        header.putShort((short) VERSION);
+        header.putShort((short) HEADER_LENGTH);
+        header.putShort((short) RECORD_LENGTH);
+        header.putShort((short) 0);
+        header.flip();
+        try (FileChannel out = new FileOutputStream(exportFile).getChannel()) {
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (File segment : segments) {
+                try (FileChannel in = FileChannel.open(segment.toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    long length = in.size();
+                    while (position < length) {
+                        position += in.transferTo(position, length - position, out);
+                    }
+                }
+            }
+        }
+    }
+}
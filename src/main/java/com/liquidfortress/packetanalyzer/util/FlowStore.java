@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * FlowStore
+ * <p/>
+ * Column store of flows addressed by int handles.  Every flow keeps its
+ * 5-tuple, oriented from the client (the source of its first packet), and
+ * per-direction packet and byte counters, first and last seen times and
+ * the union of the TCP flags sent by each end, and the idle deadline kept
+ * by ActiveFlows.  Protocol stores add their own columns, grow them in
+ * growColumns and reset them in clearColumns.  Handles of freed flows are
+ * reused.
+ */
+public abstract class FlowStore {
+
+    public static final int NO_FLOW = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final byte IN_USE = 1;
+    private static final byte IPV6 = 1 << 1;
+
+    private final int ipProtocol;
+
+    private long[] clientAddressHigh;
+    private long[] clientAddressLow;
+    private long[] serverAddressHigh;
+    private long[] serverAddressLow;
+    private int[] ports; // client port << 16 | server port
+    private byte[] flowFlags;
+    private long[] firstSeen;
+    private long[] lastSeen;
+    private long[] clientPackets;
+    private long[] clientBytes;
+    private long[] serverPackets;
+    private long[] serverBytes;
+    private byte[] clientTcpFlags;
+    private byte[] serverTcpFlags;
+    private long[] idleDeadlines;
+
+    private int[] freeFlows;
+    private int freeCount = 0;
+    private int highWater = 0; // handles below this have been handed out
+    private int size = 0;
+
+    protected FlowStore(int ipProtocol) {
+        this.ipProtocol = ipProtocol;
+        clientAddressHigh = new long[INITIAL_CAPACITY];
+        clientAddressLow = new long[INITIAL_CAPACITY];
+        serverAddressHigh = new long[INITIAL_CAPACITY];
+        serverAddressLow = new long[INITIAL_CAPACITY];
+        ports = new int[INITIAL_CAPACITY];
+        flowFlags = new byte[INITIAL_CAPACITY];
+        firstSeen = new long[INITIAL_CAPACITY];
+        lastSeen = new long[INITIAL_CAPACITY];
+        clientPackets = new long[INITIAL_CAPACITY];
+        clientBytes = new long[INITIAL_CAPACITY];
+        serverPackets = new long[INITIAL_CAPACITY];
+        serverBytes = new long[INITIAL_CAPACITY];
+        clientTcpFlags = new byte[INITIAL_CAPACITY];
+        serverTcpFlags = new byte[INITIAL_CAPACITY];
+        idleDeadlines = new long[INITIAL_CAPACITY];
+        freeFlows = new int[INITIAL_CAPACITY];
+    }
+
+    // number of flows the columns hold before they grow
+    protected int capacity() {
+        return flowFlags.length;
+    }
+
+    /**
+     * Grow the columns of the protocol store to capacity flows
+     *
+     * @param capacity new number of flows
+     */
+    protected abstract void growColumns(int capacity);
+
+    /**
+     * Reset the columns of the protocol store for a new flow
+     *
+     * @param flow handle of the new flow
+     */
+    protected void clearColumns(int flow) {
+    }
+
+    private void grow() {
+        int capacity = capacity() * 2;
+        clientAddressHigh = Arrays.copyOf(clientAddressHigh, capacity);
+        clientAddressLow = Arrays.copyOf(clientAddressLow, capacity);
+        serverAddressHigh = Arrays.copyOf(serverAddressHigh, capacity);
+        serverAddressLow = Arrays.copyOf(serverAddressLow, capacity);
+        ports = Arrays.copyOf(ports, capacity);
+        flowFlags = Arrays.copyOf(flowFlags, capacity);
+        firstSeen = Arrays.copyOf(firstSeen, capacity);
+        lastSeen = Arrays.copyOf(lastSeen, capacity);
+        clientPackets = Arrays.copyOf(clientPackets, capacity);
+        clientBytes = Arrays.copyOf(clientBytes, capacity);
+        serverPackets = Arrays.copyOf(serverPackets, capacity);
+        serverBytes = Arrays.copyOf(serverBytes, capacity);
+        clientTcpFlags = Arrays.copyOf(clientTcpFlags, capacity);
+        serverTcpFlags = Arrays.copyOf(serverTcpFlags, capacity);
+        idleDeadlines = Arrays.copyOf(idleDeadlines, capacity);
+        freeFlows = Arrays.copyOf(freeFlows, capacity);
+        growColumns(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getIpProtocol() {
+        return ipProtocol;
+    }
+
+    // a handle with cleared counters; the caller fills in the key
+    private int newFlow() {
+        int flow;
+        if (freeCount > 0) {
+            flow = freeFlows[--freeCount];
+        } else {
+            if (highWater == capacity()) {
+                grow();
+            }
+            flow = highWater++;
+        }
+        flowFlags[flow] = IN_USE;
+        clientPackets[flow] = 0;
+        clientBytes[flow] = 0;
+        serverPackets[flow] = 0;
+        serverBytes[flow] = 0;
+        clientTcpFlags[flow] = 0;
+        serverTcpFlags[flow] = 0;
+        idleDeadlines[flow] = Long.MAX_VALUE;
+        size++;
+        return flow;
+    }
+
+    /**
+     * Start a flow; the source of packetInfo is the client.  The packet
+     * itself is not counted.
+     *
+     * @param packetInfo first packet of the flow
+     * @return handle of the flow
+     */
+    public int allocate(PacketInfo packetInfo) {
+        int flow = newFlow();
+        clientAddressHigh[flow] = packetInfo.getSourceAddressHigh();
+        clientAddressLow[flow] = packetInfo.getSourceAddressLow();
+        serverAddressHigh[flow] = packetInfo.getDestinationAddressHigh();
+        serverAddressLow[flow] = packetInfo.getDestinationAddressLow();
+        ports[flow] = (packetInfo.getSourcePort() << 16) | packetInfo.getDestinationPort();
+        if (packetInfo.getIpVersion() == PacketInfo.IP_VERSION_6) {
+            flowFlags[flow] |= IPV6;
+        }
+        firstSeen[flow] = packetInfo.getTimestampNanos();
+        lastSeen[flow] = packetInfo.getTimestampNanos();
+        clearColumns(flow);
+        return flow;
+    }
+
+    /**
+     * Copy the key and counters of a flow of another store of the same protocol
+     *
+     * @return handle of the copy in this store
+     */
+    protected int copyFlow(FlowStore other, int otherFlow) {
+        int flow = newFlow();
+        clientAddressHigh[flow] = other.clientAddressHigh[otherFlow];
+        clientAddressLow[flow] = other.clientAddressLow[otherFlow];
+        serverAddressHigh[flow] = other.serverAddressHigh[otherFlow];
+        serverAddressLow[flow] = other.serverAddressLow[otherFlow];
+        ports[flow] = other.ports[otherFlow];
+        flowFlags[flow] = other.flowFlags[otherFlow];
+        firstSeen[flow] = other.firstSeen[otherFlow];
+        lastSeen[flow] = other.lastSeen[otherFlow];
+        clientPackets[flow] = other.clientPackets[otherFlow];
+        clientBytes[flow] = other.clientBytes[otherFlow];
+        serverPackets[flow] = other.serverPackets[otherFlow];
+        serverBytes[flow] = other.serverBytes[otherFlow];
+        clientTcpFlags[flow] = other.clientTcpFlags[otherFlow];
+        serverTcpFlags[flow] = other.serverTcpFlags[otherFlow];
+        return flow;
+    }
+
+    /**
+     * Add the counters of the same flow, held by another store, to a flow
+     * of this one.  The other store may have seen the flow start from the
+     * other end.
+     */
+    protected void addCounters(int flow, FlowStore other, int otherFlow) {
+        boolean sameClient = (ports[flow] == other.ports[otherFlow])
+                && (clientAddressLow[flow] == other.clientAddressLow[otherFlow])
+                && (clientAddressHigh[flow] == other.clientAddressHigh[otherFlow]);
+        firstSeen[flow] = Math.min(firstSeen[flow], other.firstSeen[otherFlow]);
+        lastSeen[flow] = Math.max(lastSeen[flow], other.lastSeen[otherFlow]);
+        clientPackets[flow] += sameClient ? other.clientPackets[otherFlow] : other.serverPackets[otherFlow];
+        clientBytes[flow] += sameClient ? other.clientBytes[otherFlow] : other.serverBytes[otherFlow];
+        serverPackets[flow] += sameClient ? other.serverPackets[otherFlow] : other.clientPackets[otherFlow];
+        serverBytes[flow] += sameClient ? other.serverBytes[otherFlow] : other.clientBytes[otherFlow];
+        clientTcpFlags[flow] |= sameClient ? other.clientTcpFlags[otherFlow] : other.serverTcpFlags[otherFlow];
+        serverTcpFlags[flow] |= sameClient ? other.serverTcpFlags[otherFlow] : other.clientTcpFlags[otherFlow];
+    }
+
+    public void free(int flow) {
+        if (!isInUse(flow)) {
+            throw new IllegalArgumentException("Flow " + flow + " is not in use!");
+        }
+        flowFlags[flow] = 0;
+        freeFlows[freeCount++] = flow;
+        size--;
+    }
+
+    public boolean isInUse(int flow) {
+        return (flow >= 0) && (flow < highWater) && ((flowFlags[flow] & IN_USE) != 0);
+    }
+
+    // visits the flows in handle order
+    public void forEach(IntConsumer consumer) {
+        for (int flow = 0; flow < highWater; flow++) {
+            if ((flowFlags[flow] & IN_USE) != 0) {
+                consumer.accept(flow);
+            }
+        }
+    }
+
+    // Flow key
+
+    public long getClientAddressHigh(int flow) {
+        return clientAddressHigh[flow];
+    }
+
+    public long getClientAddressLow(int flow) {
+        return clientAddressLow[flow];
+    }
+
+    public int getClientPort(int flow) {
+        return ports[flow] >>> 16;
+    }
+
+    public long getServerAddressHigh(int flow) {
+        return serverAddressHigh[flow];
+    }
+
+    public long getServerAddressLow(int flow) {
+        return serverAddressLow[flow];
+    }
+
+    public int getServerPort(int flow) {
+        return ports[flow] & 0xFFFF;
+    }
+
+    public boolean isIpv6(int flow) {
+        return (flowFlags[flow] & IPV6) != 0;
+    }
+
+    public boolean isFromClient(int flow, PacketInfo packetInfo) {
+        return (packetInfo.getSourcePort() == getClientPort(flow)) && (packetInfo.getSourceAddressLow() == clientAddressLow[flow])
+                && (packetInfo.getSourceAddressHigh() == clientAddressHigh[flow]);
+    }
+
+    // address text, without the port
+    protected String formatAddress(int flow, long high, long low) {
+        return isIpv6(flow) ? PacketInfo.formatIpv6(high, low) : PacketInfo.formatIpv4((int) low);
+    }
+
+    public String getClientIpAddress(int flow) {
+        return formatAddress(flow, clientAddressHigh[flow], clientAddressLow[flow]);
+    }
+
+    public String getServerIpAddress(int flow) {
+        return formatAddress(flow, serverAddressHigh[flow], serverAddressLow[flow]);
+    }
+
+    // Counters
+
+    /**
+     * Count one packet of a flow
+     *
+     * @param flow           handle of the flow
+     * @param fromClient     true if the client sent the packet
+     * @param bytes          transport layer bytes of the packet (header and payload)
+     * @param tcpFlags       TCP flags of the packet, or 0
+     * @param timestampNanos capture time of the packet
+     */
+    public void count(int flow, boolean fromClient, long bytes, int tcpFlags, long timestampNanos) {
+        if (fromClient) {
+            clientPackets[flow]++;
+            clientBytes[flow] += bytes;
+            clientTcpFlags[flow] |= tcpFlags;
+        } else {
+            serverPackets[flow]++;
+            serverBytes[flow] += bytes;
+            serverTcpFlags[flow] |= tcpFlags;
+        }
+        lastSeen[flow] = Math.max(lastSeen[flow], timestampNanos);
+    }
+
+    /**
+     * Note the capture time of a packet of a flow without counting it
+     */
+    public void seen(int flow, long timestampNanos) {
+        lastSeen[flow] = Math.max(lastSeen[flow], timestampNanos);
+    }
+
+    public long getFirstSeenNanos(int flow) {
+        return firstSeen[flow];
+    }
+
+    public long getLastSeenNanos(int flow) {
+        return lastSeen[flow];
+    }
+
+    public long getClientPackets(int flow) {
+        return clientPackets[flow];
+    }
+
+    public long getClientBytes(int flow) {
+        return clientBytes[flow];
+    }
+
+    public long getServerPackets(int flow) {
+        return serverPackets[flow];
+    }
+
+    public long getServerBytes(int flow) {
+        return serverBytes[flow];
+    }
+
+    public int getClientTcpFlags(int flow) {
+        return clientTcpFlags[flow] & 0xFF;
+    }
+
+    public int getServerTcpFlags(int flow) {
+        return serverTcpFlags[flow] & 0xFF;
+    }
+
+    // Idle expiry, maintained by ActiveFlows
+
+    long getIdleDeadlineNanos(int flow) {
+        return idleDeadlines[flow];
+    }
+
+    void setIdleDeadlineNanos(int flow, long idleDeadlineNanos) {
+        idleDeadlines[flow] = idleDeadlineNanos;
+    }
+
+    /**
+     * @return protocol specific state of the flow, written to its flow record
+     */
+    protected abstract int getRecordState(int flow);
+
+    /**
+     * Write the flow record of a flow, in the layout of FlowRecordLog
+     *
+     * @param flow   handle of the flow
+     * @param buffer little-endian buffer to write to
+     * @param offset index of the first byte of the record
+     */
+    public void writeRecord(int flow, ByteBuffer buffer, int offset) {
+        buffer.putLong(offset + FlowRecordLog.CLIENT_ADDRESS_HIGH, clientAddressHigh[flow]);
+        buffer.putLong(offset + FlowRecordLog.CLIENT_ADDRESS_LOW, clientAddressLow[flow]);
+        buffer.putLong(offset + FlowRecordLog.SERVER_ADDRESS_HIGH, serverAddressHigh[flow]);
+        buffer.putLong(offset + FlowRecordLog.SERVER_ADDRESS_LOW, serverAddressLow[flow]);
+        buffer.putShort(offset + FlowRecordLog.CLIENT_PORT, (short) getClientPort(flow));
+        buffer.putShort(offset + FlowRecordLog.SERVER_PORT, (short) getServerPort(flow));
+        buffer.put(offset + FlowRecordLog.IP_PROTOCOL, (byte) ipProtocol);
+        buffer.put(offset + FlowRecordLog.IP_VERSION, (byte) (isIpv6(flow) ? PacketInfo.IP_VERSION_6 : PacketInfo.IP_VERSION_4));
+        buffer.put(offset + FlowRecordLog.CLIENT_TCP_FLAGS, clientTcpFlags[flow]);
+        buffer.put(offset + FlowRecordLog.SERVER_TCP_FLAGS, serverTcpFlags[flow]);
+        buffer.putLong(offset + FlowRecordLog.FIRST_SEEN, firstSeen[flow]);
+        buffer.putLong(offset + FlowRecordLog.LAST_SEEN, lastSeen[flow]);
+        buffer.putLong(offset + FlowRecordLog.CLIENT_PACKETS, clientPackets[flow]);
+        buffer.putLong(offset + FlowRecordLog.CLIENT_BYTES, clientBytes[flow]);
+        buffer.putLong(offset + FlowRecordLog.SERVER_PACKETS, serverPackets[flow]);
+        buffer.putLong(offset + FlowRecordLog.SERVER_BYTES, serverBytes[flow]);
+        buffer.putLong(offset + FlowRecordLog.STATE, getRecordState(flow) & 0xFFL); // state byte and zeroed reserved bytes
+    }
+}
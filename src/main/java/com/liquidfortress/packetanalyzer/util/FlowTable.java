@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import java.util.Arrays;
+
+/**
+ * FlowTable
+ * <p/>
+ * Index from a bidirectional 5-tuple (two 128-bit addresses, two ports and
+ * the IP protocol) to an int handle, such as a slot of a columnar flow
+ * store.  Keys are packed into five longs in a canonical endpoint order, so
+ * both directions of a flow find the same entry, and are stored in flat
+ * arrays with open addressing and linear probing.  Lookups never allocate;
+ * removal uses backward shifting, so no tombstones build up.
+ */
+public class FlowTable {
+    public static final int NO_VALUE = -1;
+
+    private static final int KEY_WIDTH = 5;
+    private static final int INITIAL_CAPACITY = 1024;     // slots; always a power of two
+    private static final int MAXIMUM_CAPACITY = 1 << 28;  // keys array must stay below 2^31 elements
+
+    private long[] keys = new long[INITIAL_CAPACITY * KEY_WIDTH];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int[] values = newValues(INITIAL_CAPACITY); // NO_VALUE marks an empty slot
+    private int size = 0;
+
+    // scratch copy of the canonical key of the last lookup; a table is only used by one thread
+    private long key0, key1, key2, key3, key4;
+    private int keyHash;
+
+    public FlowTable() {
+    }
+
+    private static int[] newValues(int capacity) {
+        int[] values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        return values;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // put the lower endpoint first so that both directions pack to the same key
+    private void packKey(long address1High, long address1Low, int port1,
+                         long address2High, long address2Low, int port2, int protocol) {
+        keyHash = (int) FlowHash.flow(FlowHash.ipv6Endpoint(address1High, address1Low, port1),
+                FlowHash.ipv6Endpoint(address2High, address2Low, port2), protocol);
+        port1 &= 0xFFFF;
+        port2 &= 0xFFFF;
+        boolean swap = (address1High != address2High) ? (address1High > address2High)
+                : (address1Low != address2Low) ? (address1Low > address2Low)
+                : (port1 > port2);
+        if (swap) {
+            key0 = address2High;
+            key1 = address2Low;
+            key2 = address1High;
+            key3 = address1Low;
+            key4 = ((long) (protocol & 0xFF) << 32) | ((long) port2 << 16) | port1;
+        } else {
+            key0 = address1High;
+            key1 = address1Low;
+            key2 = address2High;
+            key3 = address2Low;
+            key4 = ((long) (protocol & 0xFF) << 32) | ((long) port1 << 16) | port2;
+        }
+    }
+
+    /**
+     * @return the longest distance of a flow from its home slot, for checking how well keys spread
+     */
+    int getMaxProbeLength() {
+        int mask = values.length - 1;
+        int longest = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != NO_VALUE) {
+                longest = Math.max(longest, (slot - hashes[slot]) & mask);
+            }
+        }
+        return longest;
+    }
+
+    // slot holding the packed key, or the empty slot where it would go
+    private int findSlot() {
+        int mask = values.length - 1;
+        int slot = keyHash & mask;
+        while (values[slot] != NO_VALUE) {
+            int base = slot * KEY_WIDTH;
+            if (hashes[slot] == keyHash && keys[base] == key0 && keys[base + 1] == key1
+                    && keys[base + 2] == key2 && keys[base + 3] == key3 && keys[base + 4] == key4) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * @return the handle of the flow, in either direction, or NO_VALUE
+     */
+    public int get(long address1High, long address1Low, int port1,
+                   long address2High, long address2Low, int port2, int protocol) {
+        packKey(address1High, address1Low, port1, address2High, address2Low, port2, protocol);
+        return values[findSlot()];
+    }
+
+    /**
+     * Associate a handle with a flow, in either direction
+     *
+     * @return the handle previously kept for the flow, or NO_VALUE
+     */
+    public int put(long address1High, long address1Low, int port1,
+                   long address2High, long address2Low, int port2, int protocol, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("FlowTable handles cannot be negative!");
+        }
+        packKey(address1High, address1Low, port1, address2High, address2Low, port2, protocol);
+        int slot = findSlot();
+        int previous = values[slot];
+        values[slot] = value;
+        if (previous == NO_VALUE) {
+            storeKey(slot);
+            size++;
+            if (size * 2 > values.length) { // keep the load factor at or below one half
+                resize(values.length * 2);
+            }
+        }
+        return previous;
+    }
+
+    public int remove(long address1High, long address1Low, int port1,
+                      long address2High, long address2Low, int port2, int protocol) {
+        packKey(address1High, address1Low, port1, address2High, address2Low, port2, protocol);
+        int slot = findSlot();
+        int previous = values[slot];
+        if (previous != NO_VALUE) {
+            deleteSlot(slot);
+            size--;
+        }
+        return previous;
+    }
+
+    private void storeKey(int slot) {
+        int base = slot * KEY_WIDTH;
+        keys[base] = key0;
+        keys[base + 1] = key1;
+        keys[base + 2] = key2;
+        keys[base + 3] = key3;
+        keys[base + 4] = key4;
+        hashes[slot] = keyHash;
+    }
+
+    // backward-shift deletion: pull later entries of the probe run into the hole
+    private void deleteSlot(int hole) {
+        int mask = values.length - 1;
+        int slot = (hole + 1) & mask;
+        while (values[slot] != NO_VALUE) {
+            int home = hashes[slot] & mask;
+            // the entry may move into the hole only if the hole lies on its probe path
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                System.arraycopy(keys, slot * KEY_WIDTH, keys, hole * KEY_WIDTH, KEY_WIDTH);
+                hashes[hole] = hashes[slot];
+                values[hole] = values[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        values[hole] = NO_VALUE;
+    }
+
+    private void resize(int capacity) {
+        if (capacity > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("FlowTable cannot hold more than " + (MAXIMUM_CAPACITY / 2) + " flows!");
+        }
+        long[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldValues = values;
+        keys = new long[capacity * KEY_WIDTH];
+        hashes = new int[capacity];
+        values = newValues(capacity);
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldValues.length; oldSlot++) {
+            if (oldValues[oldSlot] != NO_VALUE) {
+                int slot = oldHashes[oldSlot] & mask;
+                while (values[slot] != NO_VALUE) {
+                    slot = (slot + 1) & mask;
+                }
+                System.arraycopy(oldKeys, oldSlot * KEY_WIDTH, keys, slot * KEY_WIDTH, KEY_WIDTH);
+                hashes[slot] = oldHashes[oldSlot];
+                values[slot] = oldValues[oldSlot];
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import java.util.Arrays;
+
+/**
+ * IntBitmap
+ * <p/>
+ * Compressed set of 32-bit values laid out like a roaring bitmap: values
+ * are grouped by their high 16 bits into containers kept in key order.  A
+ * container holds its low 16 bits as a sorted char array until it reaches
+ * 4096 values, and as a 65536-bit bitmap (8 KiB) after that.  A host that
+ * touches a whole /16 costs one bitmap, and a scattered handful of
+ * addresses costs a few bytes each.
+ */
+public class IntBitmap {
+    private static final int ARRAY_LIMIT = 4096;       // an array container this full is as large as a bitmap
+    private static final int BITMAP_WORDS = 1 << 10;   // 65536 bits
+    private static final int INITIAL_CONTAINERS = 4;
+    private static final int INITIAL_ARRAY_CAPACITY = 4;
+
+    private char[] keys = new char[INITIAL_CONTAINERS];
+    private char[][] arrays = new char[INITIAL_CONTAINERS][];    // null when the container is a bitmap
+    private long[][] bitmaps = new long[INITIAL_CONTAINERS][];   // null when the container is an array
+    private int[] containerSizes = new int[INITIAL_CONTAINERS];
+    private int containerCount = 0;
+    private int cardinality = 0;
+
+    public IntBitmap() {
+    }
+
+    /**
+     * @return the number of distinct values in the set
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @return true if the value was not in the set before
+     */
+    public boolean add(int value) {
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int container = Arrays.binarySearch(keys, 0, containerCount, key);
+        if (container < 0) {
+            container = -container - 1;
+            insertContainer(container, key);
+        }
+        boolean added = (bitmaps[container] != null) ? addToBitmap(container, low) : addToArray(container, low);
+        if (added) {
+            cardinality++;
+        }
+        return added;
+    }
+
+    public boolean contains(int value) {
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int container = Arrays.binarySearch(keys, 0, containerCount, key);
+        if (container < 0) {
+            return false;
+        }
+        long[] bitmap = bitmaps[container];
+        if (bitmap != null) {
+            return (bitmap[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch(arrays[container], 0, containerSizes[container], low) >= 0;
+    }
+
+    public void clear() {
+        Arrays.fill(arrays, 0, containerCount, null);
+        Arrays.fill(bitmaps, 0, containerCount, null);
+        containerCount = 0;
+        cardinality = 0;
+    }
+
+    private void insertContainer(int container, char key) {
+        if (containerCount == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            arrays = Arrays.copyOf(arrays, capacity);
+            bitmaps = Arrays.copyOf(bitmaps, capacity);
+            containerSizes = Arrays.copyOf(containerSizes, capacity);
+        }
+        int moved = containerCount - container;
+        System.arraycopy(keys, container, keys, container + 1, moved);
+        System.arraycopy(arrays, container, arrays, container + 1, moved);
+        System.arraycopy(bitmaps, container, bitmaps, container + 1, moved);
+        System.arraycopy(containerSizes, container, containerSizes, container + 1, moved);
+        keys[container] = key;
+        arrays[container] = new char[INITIAL_ARRAY_CAPACITY];
+        bitmaps[container] = null;
+        containerSizes[container] = 0;
+        containerCount++;
+    }
+
+    private boolean addToBitmap(int container, char low) {
+        long[] bitmap = bitmaps[container];
+        long bit = 1L << low;
+        if ((bitmap[low >>> 6] & bit) != 0) {
+            return false;
+        }
+        bitmap[low >>> 6] |= bit;
+        containerSizes[container]++;
+        return true;
+    }
+
+    private boolean addToArray(int container, char low) {
+        char[] array = arrays[container];
+        int size = containerSizes[container];
+        int index = Arrays.binarySearch(array, 0, size, low);
+        if (index >= 0) {
+            return false;
+        }
+        if (size == ARRAY_LIMIT) {
+            convertToBitmap(container);
+            return addToBitmap(container, low);
+        }
+        index = -index - 1;
+        if (size == array.length) {
+            array = Arrays.copyOf(array, Math.min(array.length * 2, ARRAY_LIMIT));
+            arrays[container] = array;
+        }
+        System.arraycopy(array, index, array, index + 1, size - index);
+        array[index] = low;
+        containerSizes[container]++;
+        return true;
+    }
+
+    private void convertToBitmap(int container) {
+        long[] bitmap = new long[BITMAP_WORDS];
+        char[] array = arrays[container];
+        for (int i = 0; i < containerSizes[container]; i++) {
+            bitmap[array[i] >>> 6] |= 1L << array[i];
+        }
+        bitmaps[container] = bitmap;
+        arrays[container] = null;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import java.util.Arrays;
+
+/**
+ * IntCountMap
+ * <p/>
+ * Reference counts for non-negative int keys, such as port numbers, in
+ * flat arrays with open addressing and linear probing.  A key is removed
+ * as soon as its count drops to zero, so size() is the number of distinct
+ * keys currently counted.  Nothing is allocated apart from the occasional
+ * doubling of the table.
+ */
+public class IntCountMap {
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 16; // slots; always a power of two
+
+    private int[] keys = newKeys(INITIAL_CAPACITY);
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public IntCountMap() {
+    }
+
+    private static int[] newKeys(int capacity) {
+        int[] keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    private static int hash(int key) {
+        return (int) FlowHash.mix(key);
+    }
+
+    /**
+     * @return the number of distinct keys with a count above zero
+     */
+    public int size() {
+        return size;
+    }
+
+    private int findSlot(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while ((keys[slot] != EMPTY) && (keys[slot] != key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    public int get(int key) {
+        int slot = findSlot(key);
+        return (keys[slot] == key) ? counts[slot] : 0;
+    }
+
+    /**
+     * @return the count of the key after adding one
+     */
+    public int increment(int key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("IntCountMap keys cannot be negative!");
+        }
+        int slot = findSlot(key);
+        if (keys[slot] == key) {
+            return ++counts[slot];
+        }
+        keys[slot] = key;
+        counts[slot] = 1;
+        size++;
+        if (size * 2 > keys.length) { // keep the load factor at or below one half
+            resize(keys.length * 2);
+        }
+        return 1;
+    }
+
+    /**
+     * @return the count of the key after taking one away; the key is removed at zero
+     */
+    public int decrement(int key) {
+        int slot = findSlot(key);
+        if (keys[slot] != key) {
+            throw new IllegalStateException("IntCountMap key " + key + " is not counted!");
+        }
+        int count = --counts[slot];
+        if (count == 0) {
+            deleteSlot(slot);
+            size--;
+        }
+        return count;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    // backward-shift deletion: pull later entries of the probe run into the hole
+    private void deleteSlot(int hole) {
+        int mask = keys.length - 1;
+        int slot = (hole + 1) & mask;
+        while (keys[slot] != EMPTY) {
+            int home = hash(keys[slot]) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                keys[hole] = keys[slot];
+                counts[hole] = counts[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = newKeys(capacity);
+        counts = new int[capacity];
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            if (oldKeys[oldSlot] != EMPTY) {
+                int slot = hash(oldKeys[oldSlot]) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[oldSlot];
+                counts[slot] = oldCounts[oldSlot];
+            }
+        }
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * KeyedWindows
+ * <p/>
+ * Time windows over the events of many keys, driven by capture time.  A
+ * key is an address, optionally qualified by a port, and each event
+ * carries an int item, a long value and the address of the peer it
+ * involves.  Every window keeps its aggregates up to date as events come
+ * and go: the event count, the sum of values, and the number (and total
+ * weight) of distinct items.
+ * <p/>
+ * SLIDING windows hold the events of the last length nanoseconds in a
+ * primitive ring, expiring the oldest ones as time moves on; their items
+ * are reference counted.  A sliding window holds no more than maxEvents
+ * events; past that the oldest event is dropped to make room for the new
+ * one.  TUMBLING windows start with the first event after the previous
+ * window closed and last length nanoseconds.  They keep only their
+ * aggregates, with the distinct items in an IntBitmap, so they cost the
+ * same however many events they see.
+ * <p/>
+ * Keys whose last event is a whole length old are expired, oldest first.
+ * The Listener hears about every window that closes: a tumbling window
+ * that is followed by a new one, and the window of an expiring key.
+ */
+public class KeyedWindows {
+    public static final int NO_KEY = -1;
+    public static final int MAX_WINDOW_EVENTS = 4096;
+
+    public enum Kind {
+        TUMBLING, SLIDING
+    }
+
+    public interface Listener {
+        /**
+         * A window is about to be emptied; its aggregates are still readable
+         *
+         * @param expiring true if the key is expiring, false if a new window follows
+         */
+        void windowClosed(int key, boolean expiring, PcapFileSummary pcapFileSummary);
+    }
+
+    public interface EventConsumer {
+        void event(long timestampNanos, int item, long value, long peerHigh, long peerLow);
+    }
+
+    private final Kind kind;
+    private final long lengthNanos;
+    private final int maxEvents;
+    private final IntUnaryOperator itemWeight;
+    private final Listener listener;
+    private final AddressTable keys = new AddressTable();
+    private final RecencyList recentKeys = new RecencyList();
+    private Window[] windows = new Window[0];
+    private long droppedEvents = 0;
+
+    /**
+     * @param maxEvents  events held by each sliding window before the oldest is dropped
+     * @param itemWeight weight of each distinct item, or null to weigh every item as one
+     * @param listener   told about closing windows, or null
+     */
+    public KeyedWindows(Kind kind, long lengthNanos, int maxEvents, IntUnaryOperator itemWeight, Listener listener) {
+        if (lengthNanos <= 0) {
+            throw new IllegalArgumentException("KeyedWindows length must be positive!");
+        }
+        if (maxEvents <= 0) {
+            throw new IllegalArgumentException("KeyedWindows must hold at least one event!");
+        }
+        this.kind = kind;
+        this.lengthNanos = lengthNanos;
+        this.maxEvents = maxEvents;
+        this.itemWeight = itemWeight;
+        this.listener = listener;
+    }
+
+    public KeyedWindows(Kind kind, long lengthNanos, IntUnaryOperator itemWeight, Listener listener) {
+        this(kind, lengthNanos, MAX_WINDOW_EVENTS, itemWeight, listener);
+    }
+
+    public KeyedWindows(Kind kind, long lengthNanos) {
+        this(kind, lengthNanos, null, null);
+    }
+
+    /**
+     * @return the number of keys with an open window
+     */
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * @return one more than the largest key handed out so far, for sizing per-key columns
+     */
+    public int getCapacity() {
+        return recentKeys.getCapacity();
+    }
+
+    /**
+     * @return the key of the address and port, or NO_KEY if it has no open window
+     */
+    public int find(long keyHigh, long keyLow, int keyPort) {
+        int key = keys.get(keyHigh, keyLow, keyPort);
+        return (key == AddressTable.NO_VALUE) ? NO_KEY : key;
+    }
+
+    /**
+     * Add an event to the window of a key, after moving every window on to
+     * the event's time
+     *
+     * @return the key the event was added to, valid until its window expires
+     */
+    public int add(long keyHigh, long keyLow, int keyPort, long timestampNanos, int item, long value,
+                   long peerHigh, long peerLow, PcapFileSummary pcapFileSummary) {
+        expire(timestampNanos, pcapFileSummary);
+        int key = keys.get(keyHigh, keyLow, keyPort);
+        if (key == AddressTable.NO_VALUE) {
+            key = allocate(keyHigh, keyLow, keyPort, timestampNanos);
+        } else {
+            recentKeys.touch(key);
+            advance(key, timestampNanos, pcapFileSummary);
+        }
+        Window window = windows[key];
+        if ((kind == Kind.SLIDING) && (window.size == maxEvents)) {
+            window.evictOldest(this);
+            droppedEvents++;
+        }
+        window.add(timestampNanos, item, value, peerHigh, peerLow, weight(item));
+        return key;
+    }
+
+    /**
+     * Expire the keys that have had no event for a whole length before timestampNanos
+     */
+    public void expire(long timestampNanos, PcapFileSummary pcapFileSummary) {
+        int key = recentKeys.getOldest();
+        while ((key != RecencyList.NONE) && (windows[key].lastTimestampNanos <= timestampNanos - lengthNanos)) {
+            remove(key, pcapFileSummary);
+            key = recentKeys.getOldest();
+        }
+    }
+
+    /**
+     * Close the window of a key and forget the key
+     */
+    public void remove(int key, PcapFileSummary pcapFileSummary) {
+        if (listener != null) {
+            listener.windowClosed(key, true, pcapFileSummary);
+        }
+        Window window = windows[key];
+        keys.remove(window.keyHigh, window.keyLow, window.keyPort);
+        window.clear();
+        recentKeys.release(key);
+    }
+
+    /**
+     * Move the window of a key on to timestampNanos without adding an event
+     */
+    public void advance(int key, long timestampNanos, PcapFileSummary pcapFileSummary) {
+        Window window = windows[key];
+        switch (kind) {
+            case SLIDING:
+                window.evict(timestampNanos - lengthNanos, this);
+                break;
+            case TUMBLING:
+                if (timestampNanos - window.windowStartNanos >= lengthNanos) {
+                    restart(key, timestampNanos, pcapFileSummary);
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return events that were dropped from full sliding windows before they slid out
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents;
+    }
+
+    // Aggregates of the open window of a key
+
+    public int getCount(int key) {
+        return windows[key].count;
+    }
+
+    public long getSum(int key) {
+        return windows[key].sum;
+    }
+
+    public int getDistinctCount(int key) {
+        return windows[key].distinctCount();
+    }
+
+    // the sum of the weights of the distinct items
+    public long getDistinctWeight(int key) {
+        return windows[key].distinctWeight;
+    }
+
+    // time of the first event of the window that is still in it
+    public long getStartTimestampNanos(int key) {
+        return windows[key].startTimestampNanos();
+    }
+
+    public long getLastTimestampNanos(int key) {
+        return windows[key].lastTimestampNanos;
+    }
+
+    public long getKeyHigh(int key) {
+        return windows[key].keyHigh;
+    }
+
+    public long getKeyLow(int key) {
+        return windows[key].keyLow;
+    }
+
+    public int getKeyPort(int key) {
+        return windows[key].keyPort;
+    }
+
+    // Events of a sliding window, numbered in arrival order
+
+    /**
+     * @return the number of the oldest event in the window
+     */
+    public long getFirstSequence(int key) {
+        return windows[key].firstSequence;
+    }
+
+    /**
+     * @return one more than the number of the newest event in the window
+     */
+    public long getEndSequence(int key) {
+        Window window = windows[key];
+        return window.firstSequence + window.size;
+    }
+
+    /**
+     * Pass the events of a sliding window numbered fromSequence or later to a consumer, oldest first
+     */
+    public void forEachEvent(int key, long fromSequence, EventConsumer consumer) {
+        if (kind != Kind.SLIDING) {
+            throw new IllegalStateException("Only SLIDING windows keep their events!");
+        }
+        windows[key].forEach(fromSequence, consumer);
+    }
+
+    private int weight(int item) {
+        return (itemWeight == null) ? 1 : itemWeight.applyAsInt(item);
+    }
+
+    private void restart(int key, long timestampNanos, PcapFileSummary pcapFileSummary) {
+        if (listener != null) {
+            listener.windowClosed(key, false, pcapFileSummary);
+        }
+        windows[key].clear();
+        windows[key].windowStartNanos = timestampNanos;
+    }
+
+    private int allocate(long keyHigh, long keyLow, int keyPort, long timestampNanos) {
+        int key = recentKeys.allocate();
+        if (windows.length < recentKeys.getCapacity()) {
+            windows = Arrays.copyOf(windows, recentKeys.getCapacity());
+        }
+        if (windows[key] == null) {
+            windows[key] = new Window(kind == Kind.SLIDING);
+        }
+        Window window = windows[key];
+        window.keyHigh = keyHigh;
+        window.keyLow = keyLow;
+        window.keyPort = keyPort;
+        window.windowStartNanos = timestampNanos;
+        keys.put(keyHigh, keyLow, keyPort, key);
+        return key;
+    }
+
+    /**
+     * The window of one key.  Sliding windows keep their events in a ring and
+     * count their items; the others only remember which items they have seen.
+     */
+    private static class Window {
+        private static final int INITIAL_CAPACITY = 8; // always a power of two
+
+        long keyHigh;
+        long keyLow;
+        int keyPort;
+        long windowStartNanos;
+        long lastTimestampNanos;
+        int count = 0;
+        long sum = 0;
+        long distinctWeight = 0;
+
+        private final IntCountMap itemCounts;
+        private final IntBitmap items;
+
+        // ring of events, SLIDING only
+        private long[] timestamps;
+        private int[] eventItems;
+        private long[] values;
+        private long[] peerHighs;
+        private long[] peerLows;
+        private int head = 0;
+        private int size = 0;
+        // events are numbered in arrival order; the numbers carry on when the window is reused
+        private long firstSequence = 0;
+
+        Window(boolean sliding) {
+            if (sliding) {
+                itemCounts = new IntCountMap();
+                items = null;
+                timestamps = new long[INITIAL_CAPACITY];
+                eventItems = new int[INITIAL_CAPACITY];
+                values = new long[INITIAL_CAPACITY];
+                peerHighs = new long[INITIAL_CAPACITY];
+                peerLows = new long[INITIAL_CAPACITY];
+            } else {
+                itemCounts = null;
+                items = new IntBitmap();
+            }
+        }
+
+        int distinctCount() {
+            return (items != null) ? items.cardinality() : itemCounts.size();
+        }
+
+        long startTimestampNanos() {
+            return ((timestamps != null) && (size > 0)) ? timestamps[head] : windowStartNanos;
+        }
+
+        void add(long timestampNanos, int item, long value, long peerHigh, long peerLow, int weight) {
+            lastTimestampNanos = timestampNanos;
+            count++;
+            sum += value;
+            if (items != null) {
+                if (items.add(item)) {
+                    distinctWeight += weight;
+                }
+                return;
+            }
+            if (itemCounts.increment(item) == 1) {
+                distinctWeight += weight;
+            }
+            if (size == timestamps.length) {
+                grow();
+            }
+            int slot = (head + size) & (timestamps.length - 1);
+            timestamps[slot] = timestampNanos;
+            eventItems[slot] = item;
+            values[slot] = value;
+            peerHighs[slot] = peerHigh;
+            peerLows[slot] = peerLow;
+            size++;
+        }
+
+        // drop the events at or before cutoff
+        void evict(long cutoff, KeyedWindows owner) {
+            while ((size > 0) && (timestamps[head] <= cutoff)) {
+                evictOldest(owner);
+            }
+        }
+
+        void evictOldest(KeyedWindows owner) {
+            int item = eventItems[head];
+            if (itemCounts.decrement(item) == 0) {
+                distinctWeight -= owner.weight(item);
+            }
+            count--;
+            sum -= values[head];
+            head = (head + 1) & (timestamps.length - 1);
+            size--;
+            firstSequence++;
+        }
+
+        void forEach(long fromSequence, EventConsumer consumer) {
+            int mask = timestamps.length - 1;
+            for (long sequence = Math.max(fromSequence, firstSequence); sequence < firstSequence + size; sequence++) {
+                int slot = (head + (int) (sequence - firstSequence)) & mask;
+                consumer.event(timestamps[slot], eventItems[slot], values[slot], peerHighs[slot], peerLows[slot]);
+            }
+        }
+
+        void clear() {
+            count = 0;
+            sum = 0;
+            distinctWeight = 0;
+            if (items != null) {
+                items.clear();
+            } else {
+                itemCounts.clear();
+                firstSequence += size;
+                head = 0;
+                size = 0;
+            }
+        }
+
+        private void grow() {
+            int capacity = timestamps.length * 2;
+            timestamps = unwrap(timestamps, capacity);
+            values = unwrap(values, capacity);
+            peerHighs = unwrap(peerHighs, capacity);
+            peerLows = unwrap(peerLows, capacity);
+            int[] grownItems = new int[capacity];
+            int firstPart = eventItems.length - head;
+            System.arraycopy(eventItems, head, grownItems, 0, firstPart);
+            System.arraycopy(eventItems, 0, grownItems, firstPart, head);
+            eventItems = grownItems;
+            head = 0;
+        }
+
+        // copy a full ring into a larger array, oldest event first
+        private long[] unwrap(long[] ring, int capacity) {
+            long[] grown = new long[capacity];
+            int firstPart = ring.length - head;
+            System.arraycopy(ring, head, grown, 0, firstPart);
+            System.arraycopy(ring, 0, grown, firstPart, head);
+            return grown;
+        }
+    }
+}
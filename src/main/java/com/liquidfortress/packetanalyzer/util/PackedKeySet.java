@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+/**
+ * PackedKeySet
+ * <p/>
+ * Set of fixed-width binary keys made of three longs, stored in flat arrays
+ * with open addressing and linear probing.  Adding a key never allocates,
+ * apart from the occasional doubling of the table.
+ */
+public class PackedKeySet {
+    private static final int KEY_WIDTH = 3;
+    private static final int INITIAL_CAPACITY = 1024; // slots; always a power of two
+
+    private long[] keys = new long[INITIAL_CAPACITY * KEY_WIDTH];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+    private int size = 0;
+
+    public PackedKeySet() {
+    }
+
+    private static int hash(long key0, long key1, long key2) {
+        return (int) FlowHash.mix(key0 ^ FlowHash.mix(key1 ^ FlowHash.mix(key2)));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long key0, long key1, long key2) {
+        int mask = used.length - 1;
+        for (int slot = hash(key0, key1, key2) & mask; used[slot]; slot = (slot + 1) & mask) {
+            int base = slot * KEY_WIDTH;
+            if (keys[base] == key0 && keys[base + 1] == key1 && keys[base + 2] == key2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean add(long key0, long key1, long key2) {
+        int mask = used.length - 1;
+        int slot = hash(key0, key1, key2) & mask;
+        while (used[slot]) {
+            int base = slot * KEY_WIDTH;
+            if (keys[base] == key0 && keys[base + 1] == key1 && keys[base + 2] == key2) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int base = slot * KEY_WIDTH;
+        keys[base] = key0;
+        keys[base + 1] = key1;
+        keys[base + 2] = key2;
+        used[slot] = true;
+        size++;
+        if (size * 2 > used.length) { // keep the load factor at or below one half
+            resize(used.length * 2);
+        }
+        return true;
+    }
+
+    // set union: associative and commutative
+    public void merge(PackedKeySet other) {
+        for (int slot = 0; slot < other.used.length; slot++) {
+            if (other.used[slot]) {
+                int base = slot * KEY_WIDTH;
+                add(other.keys[base], other.keys[base + 1], other.keys[base + 2]);
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        keys = new long[capacity * KEY_WIDTH];
+        used = new boolean[capacity];
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldUsed.length; oldSlot++) {
+            if (oldUsed[oldSlot]) {
+                int oldBase = oldSlot * KEY_WIDTH;
+                int slot = hash(oldKeys[oldBase], oldKeys[oldBase + 1], oldKeys[oldBase + 2]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                System.arraycopy(oldKeys, oldBase, keys, slot * KEY_WIDTH, KEY_WIDTH);
+                used[slot] = true;
+            }
+        }
+    }
+}
@@ -20,10 +20,7 @@
 
 package com.liquidfortress.packetanalyzer.util;
 
-import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
-
 import java.sql.Timestamp;
-import java.util.LinkedHashSet;
 
 /**
  * PacketInfoUtils
@@ -32,47 +29,10 @@ import java.util.LinkedHashSet;
  */
 public class PacketInfoUtils {
 
-    // get the earliest PacketInfo in the set based on timestamp
-    public static PacketInfo getEarliest(LinkedHashSet<PacketInfo> packetInfos) {
-        if ((packetInfos == null) || (packetInfos.isEmpty())) {
-            throw new IllegalArgumentException("Cannot get earliest of null or empty PacketInfo set!");
-        }
-        PacketInfo earliest = null;
-        Timestamp earliestTimestamp = null;
-        for (PacketInfo current : packetInfos) {
-            if (earliest == null) {
-                earliest = current;
-                earliestTimestamp = Timestamp.valueOf(current.get(PacketInfo.TIMESTAMP));
-            } else {
-                Timestamp currentTimestamp = Timestamp.valueOf(current.get(PacketInfo.TIMESTAMP));
-                if (currentTimestamp.before(earliestTimestamp)) {
-                    earliest = current;
-                    earliestTimestamp = currentTimestamp;
-                }
-            }
-        }
-        return earliest;
-    }
-
-    // get the latest PacketInfo in the set based on timestamp
-    public static PacketInfo getLatest(LinkedHashSet<PacketInfo> packetInfos) {
-        if ((packetInfos == null) || (packetInfos.isEmpty())) {
-            throw new IllegalArgumentException("Cannot get latest of null or empty PacketInfo set!");
-        }
-        PacketInfo latest = null;
-        Timestamp latestTimestamp = null;
-        for (PacketInfo current : packetInfos) {
-            if (latest == null) {
-                latest = current;
-                latestTimestamp = Timestamp.valueOf(current.get(PacketInfo.TIMESTAMP));
-            } else {
-                Timestamp currentTimestamp = Timestamp.valueOf(current.get(PacketInfo.TIMESTAMP));
-                if (currentTimestamp.after(latestTimestamp)) {
-                    latest = current;
-                    latestTimestamp = currentTimestamp;
-                }
-            }
-        }
-        return latest;
+    // capture time as local date and time, e.g. "2016-03-02 14:05:01.123456"
+    public static String formatTimestamp(long timestampNanos) {
+        Timestamp timestamp = new Timestamp(Math.floorDiv(timestampNanos, 1000000L));
+        timestamp.setNanos((int) Math.floorMod(timestampNanos, 1000000000L));
+        return timestamp.toString();
     }
 }
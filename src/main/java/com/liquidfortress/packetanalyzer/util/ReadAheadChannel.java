@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * ReadAheadChannel
+ * <p/>
+ * Wraps a channel with a background thread that keeps a fixed pool of
+ * direct buffers filled from the source, so that the consumer of this
+ * channel never waits on disk I/O while buffered data is available.
+ * Buffers are recycled through a free queue; nothing is allocated after
+ * construction.
+ */
+public class ReadAheadChannel implements ReadableByteChannel {
+
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    private final ReadableByteChannel source;
+    private final ArrayBlockingQueue<ByteBuffer> filledChunks;
+    private final ArrayBlockingQueue<ByteBuffer> emptyChunks;
+    private final Thread readAheadThread;
+    private volatile IOException failure = null;
+    private volatile boolean open = true;
+    private ByteBuffer currentChunk = null;
+    private boolean endOfStream = false;
+
+    public ReadAheadChannel(ReadableByteChannel source, int chunkSize, int chunkCount) {
+        if ((chunkSize <= 0) || (chunkCount <= 0)) {
+            throw new IllegalArgumentException("chunkSize and chunkCount must be positive!");
+        }
+        this.source = source;
+        this.filledChunks = new ArrayBlockingQueue<>(chunkCount + 1);
+        this.emptyChunks = new ArrayBlockingQueue<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            emptyChunks.add(ByteBuffer.allocateDirect(chunkSize));
+        }
+        this.readAheadThread = new Thread(this::readAhead, "read-ahead");
+        this.readAheadThread.setDaemon(true);
+        this.readAheadThread.start();
+    }
+
+    private void readAhead() {
+        try {
+            boolean sourceExhausted = false;
+            while (!sourceExhausted) {
+                ByteBuffer chunk = emptyChunks.take();
+                chunk.clear();
+                while (chunk.hasRemaining()) {
+                    if (source.read(chunk) < 0) {
+                        sourceExhausted = true;
+                        break;
+                    }
+                }
+                chunk.flip();
+                if (chunk.hasRemaining()) {
+                    filledChunks.put(chunk);
+                }
+            }
+        } catch (InterruptedException e) {
+            return; // the channel was closed
+        } catch (IOException e) {
+            failure = e;
+        }
+        try {
+            filledChunks.put(END_OF_STREAM);
+        } catch (InterruptedException e) {
+            // the channel was closed
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int total = 0;
+        while (destination.hasRemaining() && !endOfStream) {
+            if (currentChunk == null) {
+                // only block for more data if nothing has been delivered yet
+                currentChunk = (total == 0) ? takeChunk() : filledChunks.poll();
+                if (currentChunk == null) {
+                    break;
+                }
+                if (currentChunk == END_OF_STREAM) {
+                    endOfStream = true;
+                    currentChunk = null;
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    break;
+                }
+            }
+            int count = Math.min(destination.remaining(), currentChunk.remaining());
+            int chunkLimit = currentChunk.limit();
+            currentChunk.limit(currentChunk.position() + count);
+            destination.put(currentChunk);
+            currentChunk.limit(chunkLimit);
+            total += count;
+            if (!currentChunk.hasRemaining()) {
+                emptyChunks.add(currentChunk);
+                currentChunk = null;
+            }
+        }
+        return ((total == 0) && endOfStream) ? -1 : total;
+    }
+
+    private ByteBuffer takeChunk() throws IOException {
+        try {
+            return filledChunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for read-ahead data");
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        readAheadThread.interrupt();
+        source.close();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import java.util.Arrays;
+
+/**
+ * RecencyList
+ * <p/>
+ * Hands out int handles and keeps the live ones in order of last use, as
+ * an intrusive doubly linked list over parallel arrays.  Callers keep their
+ * per-handle state in their own arrays, sized to getCapacity(), and expire
+ * or evict from getOldest().  Released handles are reused.
+ */
+public class RecencyList {
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] older = new int[INITIAL_CAPACITY];
+    private int[] newer = new int[INITIAL_CAPACITY];
+    private int[] freeHandles = new int[INITIAL_CAPACITY];
+    private int freeHandleCount = 0;
+    private int handleCount = 0;
+    private int size = 0;
+    private int oldest = NONE;
+    private int newest = NONE;
+
+    public RecencyList() {
+    }
+
+    /**
+     * @return the number of live handles
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return one more than the largest handle that has been handed out so far
+     */
+    public int getCapacity() {
+        return older.length;
+    }
+
+    /**
+     * @return the least recently used handle, or NONE
+     */
+    public int getOldest() {
+        return oldest;
+    }
+
+    /**
+     * @return a new handle, as the most recently used one
+     */
+    public int allocate() {
+        int handle;
+        if (freeHandleCount > 0) {
+            handle = freeHandles[--freeHandleCount];
+        } else {
+            handle = handleCount++;
+            if (handle == older.length) {
+                int capacity = older.length * 2;
+                older = Arrays.copyOf(older, capacity);
+                newer = Arrays.copyOf(newer, capacity);
+                freeHandles = Arrays.copyOf(freeHandles, capacity);
+            }
+        }
+        linkNewest(handle);
+        size++;
+        return handle;
+    }
+
+    /**
+     * Mark a live handle as the most recently used one
+     */
+    public void touch(int handle) {
+        if (handle != newest) {
+            unlink(handle);
+            linkNewest(handle);
+        }
+    }
+
+    /**
+     * Return a live handle for reuse
+     */
+    public void release(int handle) {
+        unlink(handle);
+        freeHandles[freeHandleCount++] = handle;
+        size--;
+    }
+
+    private void unlink(int handle) {
+        int olderHandle = older[handle];
+        int newerHandle = newer[handle];
+        if (olderHandle == NONE) {
+            oldest = newerHandle;
+        } else {
+            newer[olderHandle] = newerHandle;
+        }
+        if (newerHandle == NONE) {
+            newest = olderHandle;
+        } else {
+            older[newerHandle] = olderHandle;
+        }
+    }
+
+    private void linkNewest(int handle) {
+        older[handle] = newest;
+        newer[handle] = NONE;
+        if (newest == NONE) {
+            oldest = handle;
+        } else {
+            newer[newest] = handle;
+        }
+        newest = handle;
+    }
+}
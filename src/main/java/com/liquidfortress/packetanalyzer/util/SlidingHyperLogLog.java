@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import java.util.Arrays;
+
+/**
+ * SlidingHyperLogLog
+ * <p/>
+ * Counts the distinct 64-bit hashes seen within a sliding window of
+ * capture time, for many keys at once.  Callers hand out the sketch handles
+ * (from a RecencyList, say) and size the store with ensureCapacity().
+ * <p/>
+ * A sketch counts exactly while its window holds at most EXACT_LIMIT
+ * distinct hashes, so a count that first reaches a detection threshold
+ * below that limit is exact.  The first hash beyond that promotes it to
+ * HyperLogLog registers, one set per time bucket of the window.  The
+ * registers do not keep the hashes, so a promoted sketch stays promoted
+ * until it is cleared, and its count is estimated even after it falls
+ * back below EXACT_LIMIT.  Each sketch also
+ * keeps the registers of its live buckets merged, with a count of the
+ * merged registers of each rank.  A register that grows updates them in
+ * place, so they are only merged afresh when the window moves on to a new
+ * bucket, and an estimate is read from the rank counts.  Adding and
+ * estimating cost a constant amount of work however many hashes arrive,
+ * and every sketch has the same fixed size.  A promoted sketch covers the current
+ * bucket and the bucketCount - 1 before it, and its estimate has a relative
+ * standard error of getStandardError().
+ */
+public class SlidingHyperLogLog {
+    public static final int EXACT_LIMIT = 32;
+    private static final long NO_BUCKET = Long.MIN_VALUE;
+
+    private final int precision;
+    private final int registerCount;
+    private final int rankCount;
+    private final int bucketCount;
+    private final long bucketNanos;
+    private final long windowNanos;
+    private final double alpha;
+
+    // per sketch, indexed by handle
+    private boolean[] promoted = new boolean[0];
+    private int[] exactSizes = new int[0];
+    private long[] exactHashes = new long[0];       // EXACT_LIMIT per sketch
+    private long[] exactNanos = new long[0];        // when each exact hash was last seen
+    private long[] bucketNumbers = new long[0];     // bucketCount per sketch: which time bucket each slot holds
+    private byte[] registers = new byte[0];         // registerCount per slot
+    private long[] mergedBuckets = new long[0];     // newest bucket of the merged registers, or NO_BUCKET
+    private byte[] mergedRegisters = new byte[0];   // registerCount per sketch
+    private int[] rankCounts = new int[0];          // rankCount per sketch: merged registers of each rank
+    private long[] estimateBuckets = new long[0];   // bucket the cached estimate was made in, or NO_BUCKET
+    private long[] estimates = new long[0];
+
+    /**
+     * @param precision   log2 of the number of registers per bucket, 4 to 16
+     * @param bucketCount number of time buckets in the window
+     * @param bucketNanos length of each time bucket
+     */
+    public SlidingHyperLogLog(int precision, int bucketCount, long bucketNanos) {
+        if ((precision < 4) || (precision > 16)) {
+            throw new IllegalArgumentException("SlidingHyperLogLog precision must be between 4 and 16!");
+        }
+        if ((bucketCount <= 0) || (bucketNanos <= 0)) {
+            throw new IllegalArgumentException("SlidingHyperLogLog buckets must be positive!");
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.rankCount = 64 - precision + 2;
+        this.bucketCount = bucketCount;
+        this.bucketNanos = bucketNanos;
+        this.windowNanos = bucketCount * bucketNanos;
+        this.alpha = 0.7213 / (1.0 + 1.079 / registerCount);
+    }
+
+    /**
+     * @return the relative standard error of an estimate, 1.04 / sqrt(registers)
+     */
+    public double getStandardError() {
+        return 1.04 / Math.sqrt(registerCount);
+    }
+
+    /**
+     * Make room for the sketches with handles below capacity
+     */
+    public void ensureCapacity(int capacity) {
+        int oldCapacity = exactSizes.length;
+        if (capacity <= oldCapacity) {
+            return;
+        }
+        capacity = Math.max(capacity, oldCapacity * 2);
+        promoted = Arrays.copyOf(promoted, capacity);
+        exactSizes = Arrays.copyOf(exactSizes, capacity);
+        exactHashes = Arrays.copyOf(exactHashes, capacity * EXACT_LIMIT);
+        exactNanos = Arrays.copyOf(exactNanos, capacity * EXACT_LIMIT);
+        bucketNumbers = Arrays.copyOf(bucketNumbers, capacity * bucketCount);
+        registers = Arrays.copyOf(registers, capacity * bucketCount * registerCount);
+        mergedBuckets = Arrays.copyOf(mergedBuckets, capacity);
+        mergedRegisters = Arrays.copyOf(mergedRegisters, capacity * registerCount);
+        rankCounts = Arrays.copyOf(rankCounts, capacity * rankCount);
+        estimateBuckets = Arrays.copyOf(estimateBuckets, capacity);
+        estimates = Arrays.copyOf(estimates, capacity);
+        for (int sketch = oldCapacity; sketch < capacity; sketch++) {
+            clear(sketch);
+        }
+    }
+
+    /**
+     * Empty a sketch, for reuse by a new key
+     */
+    public void clear(int sketch) {
+        promoted[sketch] = false;
+        exactSizes[sketch] = 0;
+        Arrays.fill(bucketNumbers, sketch * bucketCount, (sketch + 1) * bucketCount, NO_BUCKET);
+        mergedBuckets[sketch] = NO_BUCKET;
+        estimateBuckets[sketch] = NO_BUCKET;
+    }
+
+    /**
+     * @return true while the sketch counts exactly
+     */
+    public boolean isExact(int sketch) {
+        return !promoted[sketch];
+    }
+
+    public void add(int sketch, long hash, long timestampNanos) {
+        if (promoted[sketch]) {
+            addToRegisters(sketch, hash, timestampNanos);
+            return;
+        }
+        long windowStart = timestampNanos - windowNanos;
+        int first = sketch * EXACT_LIMIT;
+        int free = -1;
+        for (int i = first; i < first + exactSizes[sketch]; i++) {
+            if (exactHashes[i] == hash) {
+                exactNanos[i] = Math.max(exactNanos[i], timestampNanos);
+                return;
+            }
+            if ((free < 0) && (exactNanos[i] <= windowStart)) {
+                free = i; // this hash has left the window
+            }
+        }
+        if ((free < 0) && (exactSizes[sketch] < EXACT_LIMIT)) {
+            free = first + exactSizes[sketch]++;
+        }
+        if (free >= 0) {
+            exactHashes[free] = hash;
+            exactNanos[free] = timestampNanos;
+            return;
+        }
+        // too many distinct hashes to count exactly: move the ones still in the window to registers
+        promoted[sketch] = true;
+        long firstBucket = Math.floorDiv(timestampNanos, bucketNanos) - bucketCount + 1;
+        for (int i = first; i < first + EXACT_LIMIT; i++) {
+            if (Math.floorDiv(exactNanos[i], bucketNanos) >= firstBucket) {
+                addToRegisters(sketch, exactHashes[i], exactNanos[i]);
+            }
+        }
+        addToRegisters(sketch, hash, timestampNanos);
+    }
+
+    /**
+     * @return the number of distinct hashes within the window that ends at timestampNanos
+     */
+    public long estimate(int sketch, long timestampNanos) {
+        if (!promoted[sketch]) {
+            long windowStart = timestampNanos - windowNanos;
+            int count = 0;
+            for (int i = sketch * EXACT_LIMIT; i < sketch * EXACT_LIMIT + exactSizes[sketch]; i++) {
+                if (exactNanos[i] > windowStart) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        long bucket = Math.floorDiv(timestampNanos, bucketNanos);
+        if (mergedBuckets[sketch] != bucket) {
+            merge(sketch, bucket);
+        }
+        if (estimateBuckets[sketch] != bucket) {
+            estimates[sketch] = mergedEstimate(sketch);
+            estimateBuckets[sketch] = bucket;
+        }
+        return estimates[sketch];
+    }
+
+    private void addToRegisters(int sketch, long hash, long timestampNanos) {
+        long bucket = Math.floorDiv(timestampNanos, bucketNanos);
+        int slot = sketch * bucketCount + (int) Math.floorMod(bucket, (long) bucketCount);
+        if (bucketNumbers[slot] != bucket) {
+            if (bucketNumbers[slot] > bucket) {
+                return; // older than the window
+            }
+            // the slot held a bucket that has left the window, so the merged registers are not affected
+            bucketNumbers[slot] = bucket;
+            Arrays.fill(registers, slot * registerCount, (slot + 1) * registerCount, (byte) 0);
+        }
+        int index = (int) (hash >>> (64 - precision));
+        int register = slot * registerCount + index;
+        // position of the first 1 bit after the register index; the guard bit keeps it within 64 - precision + 1
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        if (registers[register] >= rank) {
+            return;
+        }
+        registers[register] = rank;
+        // a bucket newer than the merged registers is merged when the window moves on to it
+        long mergedBucket = mergedBuckets[sketch];
+        int merged = sketch * registerCount + index;
+        if ((bucket <= mergedBucket) && (bucket > mergedBucket - bucketCount) && (mergedRegisters[merged] < rank)) {
+            rankCounts[sketch * rankCount + mergedRegisters[merged]]--;
+            rankCounts[sketch * rankCount + rank]++;
+            mergedRegisters[merged] = rank;
+            estimateBuckets[sketch] = NO_BUCKET;
+        }
+    }
+
+    // merge the registers of the buckets in the window that ends with bucket
+    private void merge(int sketch, long bucket) {
+        int firstSlot = sketch * bucketCount;
+        int firstRank = sketch * rankCount;
+        Arrays.fill(rankCounts, firstRank, firstRank + rankCount, 0);
+        for (int r = 0; r < registerCount; r++) {
+            byte rank = 0;
+            for (int slot = firstSlot; slot < firstSlot + bucketCount; slot++) {
+                if ((bucketNumbers[slot] > bucket - bucketCount) && (bucketNumbers[slot] <= bucket)) {
+                    rank = (byte) Math.max(rank, registers[slot * registerCount + r]);
+                }
+            }
+            mergedRegisters[sketch * registerCount + r] = rank;
+            rankCounts[firstRank + rank]++;
+        }
+        mergedBuckets[sketch] = bucket;
+        estimateBuckets[sketch] = NO_BUCKET;
+    }
+
+    private long mergedEstimate(int sketch) {
+        int firstRank = sketch * rankCount;
+        double sum = 0.0;
+        for (int rank = 0; rank < rankCount; rank++) {
+            sum += Math.scalb((double) rankCounts[firstRank + rank], -rank);
+        }
+        int zeros = rankCounts[firstRank];
+        double estimate = alpha * registerCount * registerCount / sum;
+        if ((estimate <= 2.5 * registerCount) && (zeros > 0)) {
+            estimate = registerCount * Math.log((double) registerCount / zeros); // linear counting for small counts
+        }
+        return Math.round(estimate);
+    }
+}
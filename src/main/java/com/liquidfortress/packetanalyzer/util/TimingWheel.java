@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * TimingWheel
+ * <p/>
+ * Hierarchical timing wheel driven by capture time rather than the wall
+ * clock.  Timers are identified by int handles, such as the slots of a
+ * columnar flow store, and kept in intrusive doubly linked bucket lists
+ * made of parallel arrays, so a timer costs a few array entries and no
+ * object.  Four levels of 64 slots cover about 2^24 ticks; a timer further
+ * out than that is parked in the top level and cascaded again until its
+ * deadline comes into range.  Scheduling, cancelling and firing a timer are
+ * O(1); timers of the higher levels are cascaded down as time passes, as in
+ * the classic kernel timer wheel.
+ */
+public class TimingWheel {
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final long MAX_DELTA = (1L << (LEVELS * SLOT_BITS)) - 1;
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int tickShift;
+    private final int[] bucketHeads = newLinks(LEVELS * SLOTS);
+    // per handle
+    private long[] expiryTicks = new long[INITIAL_CAPACITY];
+    private int[] buckets = newLinks(INITIAL_CAPACITY); // NONE when not scheduled
+    private int[] previous = newLinks(INITIAL_CAPACITY);
+    private int[] next = newLinks(INITIAL_CAPACITY);
+    private long currentTick = NOT_STARTED; // last tick that has been processed
+    private int size = 0;
+
+    /**
+     * @param tickShift log2 of the tick length in nanoseconds, e.g. 30 for ticks of about one second
+     */
+    public TimingWheel(int tickShift) {
+        if ((tickShift < 0) || (tickShift > 40)) {
+            throw new IllegalArgumentException("tickShift must be between 0 and 40!");
+        }
+        this.tickShift = tickShift;
+    }
+
+    private static int[] newLinks(int length) {
+        int[] links = new int[length];
+        Arrays.fill(links, NONE);
+        return links;
+    }
+
+    private static int[] growLinks(int[] links, int length) {
+        int oldLength = links.length;
+        links = Arrays.copyOf(links, length);
+        Arrays.fill(links, oldLength, length, NONE);
+        return links;
+    }
+
+    private void ensureCapacity(int handle) {
+        if (handle < buckets.length) {
+            return;
+        }
+        int capacity = Math.max(buckets.length * 2, handle + 1);
+        expiryTicks = Arrays.copyOf(expiryTicks, capacity);
+        buckets = growLinks(buckets, capacity);
+        previous = growLinks(previous, capacity);
+        next = growLinks(next, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isScheduled(int handle) {
+        return (handle < buckets.length) && (buckets[handle] != NONE);
+    }
+
+    /**
+     * Schedule a timer, moving it if it is already scheduled.  A deadline
+     * that has already passed fires on the next tick.
+     *
+     * @param handle        non-negative timer handle
+     * @param deadlineNanos capture time in epoch nanoseconds
+     */
+    public void schedule(int handle, long deadlineNanos) {
+        if (currentTick == NOT_STARTED) {
+            throw new IllegalStateException("TimingWheel must be advanced to the capture time before scheduling!");
+        }
+        ensureCapacity(handle);
+        if (buckets[handle] != NONE) {
+            unlink(handle);
+            size--;
+        }
+        // round up so that a timer never fires before its deadline
+        expiryTicks[handle] = (deadlineNanos >> tickShift) + (((deadlineNanos & ((1L << tickShift) - 1)) != 0) ? 1 : 0);
+        place(handle, currentTick + 1);
+        size++;
+    }
+
+    public void cancel(int handle) {
+        if (isScheduled(handle)) {
+            unlink(handle);
+            size--;
+        }
+    }
+
+    /**
+     * Advance the wheel to the given capture time, handing every timer that
+     * fires to the consumer.  A fired timer is no longer scheduled, so the
+     * consumer may schedule it again.  Time never moves backwards; an
+     * earlier capture time is ignored.
+     *
+     * @param nowNanos capture time in epoch nanoseconds
+     * @param fired    receives the handle of each fired timer
+     */
+    public void advance(long nowNanos, IntConsumer fired) {
+        long targetTick = nowNanos >> tickShift;
+        if ((currentTick == NOT_STARTED) || ((size == 0) && (targetTick > currentTick))) {
+            currentTick = targetTick; // nothing to fire on the way
+            return;
+        }
+        while (currentTick < targetTick) {
+            long tick = currentTick + 1;
+            // cascade from the highest level whose slot index wrapped on this tick
+            int level = 0;
+            while ((level < LEVELS - 1) && ((tick & ((1L << ((level + 1) * SLOT_BITS)) - 1)) == 0)) {
+                level++;
+            }
+            for (; level > 0; level--) {
+                int bucket = level * SLOTS + (int) ((tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+                int handle = bucketHeads[bucket];
+                bucketHeads[bucket] = NONE;
+                while (handle != NONE) {
+                    int following = next[handle];
+                    place(handle, tick);
+                    handle = following;
+                }
+            }
+            currentTick = tick;
+            int bucket = (int) (tick & SLOT_MASK);
+            int handle;
+            while ((handle = bucketHeads[bucket]) != NONE) {
+                unlink(handle);
+                size--;
+                fired.accept(handle);
+            }
+        }
+    }
+
+    // link the timer into the bucket for its expiry tick, relative to the next tick to be processed
+    private void place(int handle, long base) {
+        long expiryTick = expiryTicks[handle];
+        long delta = expiryTick - base;
+        int bucket;
+        if (delta < SLOTS) {
+            bucket = (int) (Math.max(expiryTick, base) & SLOT_MASK);
+        } else {
+            long tick = (delta > MAX_DELTA) ? base + MAX_DELTA : expiryTick;
+            int level = 1;
+            while ((level < LEVELS - 1) && (delta >= (1L << ((level + 1) * SLOT_BITS)))) {
+                level++;
+            }
+            bucket = level * SLOTS + (int) ((tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+        }
+        buckets[handle] = bucket;
+        previous[handle] = NONE;
+        next[handle] = bucketHeads[bucket];
+        if (next[handle] != NONE) {
+            previous[next[handle]] = handle;
+        }
+        bucketHeads[bucket] = handle;
+    }
+
+    private void unlink(int handle) {
+        if (previous[handle] != NONE) {
+            next[previous[handle]] = next[handle];
+        } else {
+            bucketHeads[buckets[handle]] = next[handle];
+        }
+        if (next[handle] != NONE) {
+            previous[next[handle]] = previous[handle];
+        }
+        previous[handle] = NONE;
+        next[handle] = NONE;
+        buckets[handle] = NONE;
+    }
+}
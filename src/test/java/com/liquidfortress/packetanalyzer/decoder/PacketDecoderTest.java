@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.decoder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * PacketDecoderTest
+ * <p/>
+ * Tests for PacketDecoder
+ */
+public class PacketDecoderTest {
+
+    // Ethernet + IPv4 + TCP SYN from 10.0.0.1:40000 to 10.0.0.2:23 with 3 bytes of data and 2 bytes of padding
+    private static byte[] tcpFrame() {
+        ByteBuffer frame = ByteBuffer.allocate(14 + 20 + 20 + 3 + 2);
+        frame.put(new byte[12]).putShort((short) PacketDecoder.ETHERTYPE_IPV4);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) (20 + 20 + 3)).putShort((short) 0x1234)
+                .putShort((short) 0).put((byte) 64).put((byte) PacketDecoder.IP_PROTOCOL_TCP).putShort((short) 0)
+                .putInt(0x0A000001).putInt(0x0A000002);
+        frame.putShort((short) 40000).putShort((short) 23).putInt(0xFFFFFFF0).putInt(0)
+                .put((byte) 0x50).put((byte) PacketDecoder.TCP_SYN).putShort((short) 8192).putInt(0);
+        frame.put("abc".getBytes());
+        return frame.array();
+    }
+
+    @Test
+    public void decodeTcpTest() {
+        byte[] frame = tcpFrame();
+        // the record sits in the middle of a little-endian buffer, as in a mapped pcap file
+        ByteBuffer buffer = ByteBuffer.allocate(frame.length + 16).order(ByteOrder.LITTLE_ENDIAN);
+        System.arraycopy(frame, 0, buffer.array(), 16, frame.length);
+        PacketDecoder decoder = new PacketDecoder();
+        decoder.wrap(buffer, 16, frame.length);
+
+        Assert.assertTrue(decoder.decodeEthernet());
+        Assert.assertEquals(PacketDecoder.ETHERTYPE_IPV4, decoder.getEtherType());
+        Assert.assertTrue(decoder.decodeIpv4());
+        Assert.assertFalse(decoder.isIpv4Fragment());
+        Assert.assertEquals(0x0A000001, decoder.getIpv4Source());
+        Assert.assertEquals(0x0A000002, decoder.getIpv4Destination());
+        Assert.assertEquals(PacketDecoder.IP_PROTOCOL_TCP, decoder.getIpProtocol());
+        Assert.assertEquals(23, decoder.getTransportLength()); // padding is not part of the segment
+        Assert.assertTrue(decoder.decodeTcp());
+        Assert.assertEquals(40000, decoder.getSourcePort());
+        Assert.assertEquals(23, decoder.getDestinationPort());
+        Assert.assertEquals(0xFFFFFFF0L, decoder.getTcpSequenceNumber());
+        Assert.assertEquals(PacketDecoder.TCP_SYN, decoder.getTcpFlags());
+        Assert.assertEquals(3, decoder.getPayloadLength());
+        Assert.assertEquals('a', buffer.get(decoder.getPayloadOffset()));
+        Assert.assertEquals(0, buffer.position()); // only absolute reads
+    }
+
+    @Test
+    public void truncatedTcpTest() {
+        byte[] frame = tcpFrame();
+        PacketDecoder decoder = new PacketDecoder();
+        decoder.wrap(ByteBuffer.wrap(frame), 0, 14 + 20 + 10); // snap length cut the TCP header short
+        Assert.assertTrue(decoder.decodeEthernet());
+        Assert.assertTrue(decoder.decodeIpv4());
+        Assert.assertFalse(decoder.decodeTcp());
+
+        decoder.wrap(ByteBuffer.wrap(frame), 0, 10);
+        Assert.assertFalse(decoder.decodeEthernet());
+    }
+}
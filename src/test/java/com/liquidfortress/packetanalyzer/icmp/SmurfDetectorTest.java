@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.icmp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import com.liquidfortress.packetanalyzer.util.SlidingHyperLogLog;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * SmurfDetectorTest
+ * <p/>
+ * Tests for SmurfDetector
+ */
+public class SmurfDetectorTest {
+    private static final long MILLI = 1000000L;
+    private static final int VICTIM = 0xC0A80117; // 192.168.1.23
+    private static final int OTHER_VICTIM = 0xC0A80118;
+    private static final int AMPLIFIERS = 0x0A000000;
+
+    private PcapFileSummary summary;
+    private SmurfDetector detector;
+    private long timestampNanos;
+
+    @Before
+    public void setUp() {
+        summary = new PcapFileSummary("test");
+        detector = new SmurfDetector();
+        timestampNanos = 0;
+    }
+
+    private void reply(int source, int victim) {
+        timestampNanos += MILLI;
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setTimestampNanos(timestampNanos);
+        packetInfo.setIpv4Addresses(source, victim);
+        detector.add(packetInfo, summary);
+    }
+
+    @Test
+    public void fewRepliersTest() {
+        for (int i = 0; i < 20; i++) {
+            reply(AMPLIFIERS + i, VICTIM);
+            reply(AMPLIFIERS + i, VICTIM); // repeated sources are counted once
+        }
+        detector.onFinish(summary);
+        Assert.assertTrue(summary.attackSummaries.isEmpty());
+    }
+
+    @Test
+    public void exactCountTest() {
+        for (int i = 0; i < 21; i++) {
+            reply(AMPLIFIERS + i, VICTIM);
+        }
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        AttackSummary attackSummary = summary.attackSummaries.get(0);
+        Assert.assertEquals(21, attackSummary.getSourceIpAndPorts().size());
+        Assert.assertEquals(AttackSummary.NOT_SET, attackSummary.getEstimatedSourceCount());
+    }
+
+    @Test
+    public void estimatedCountTest() {
+        int repliers = 4 * SlidingHyperLogLog.EXACT_LIMIT;
+        for (int i = 0; i < repliers; i++) {
+            reply(AMPLIFIERS + i, VICTIM);
+        }
+        long lastReplyNanos = timestampNanos;
+        Assert.assertTrue(summary.attackSummaries.isEmpty());
+
+        // the replies stop; the next reply, to another victim, finds the window has passed
+        timestampNanos += 1000 * MILLI;
+        reply(AMPLIFIERS, OTHER_VICTIM);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        Assert.assertEquals(1, detector.getTrackedVictimCount());
+        AttackSummary attackSummary = summary.attackSummaries.get(0);
+        Assert.assertEquals(lastReplyNanos, attackSummary.getEndTimestampNanos());
+        Assert.assertEquals(repliers, attackSummary.getSourceIpAndPorts().size());
+        long estimate = attackSummary.getEstimatedSourceCount();
+        double error = attackSummary.getEstimatedSourceCountError();
+        Assert.assertTrue(error > 0.0);
+        Assert.assertTrue("estimate " + estimate, Math.abs(estimate - repliers) <= 3 * error * repliers);
+        Assert.assertTrue(attackSummary.toString().contains("estimatedSourceCount=" + estimate));
+
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+    }
+}
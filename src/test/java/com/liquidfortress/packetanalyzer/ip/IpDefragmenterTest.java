@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.ip;
+
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * IpDefragmenterTest
+ * <p/>
+ * Tests for IpDefragmenter
+ */
+public class IpDefragmenterTest {
+
+    private static ByteBuffer fragment(int identification, int offset, boolean moreFragments, int payloadLength) {
+        ByteBuffer fragment = ByteBuffer.allocate(20 + payloadLength);
+        fragment.put((byte) 0x45).put((byte) 0).putShort((short) (20 + payloadLength))
+                .putShort((short) identification).putShort((short) ((moreFragments ? 0x2000 : 0) | (offset / 8)))
+                .put((byte) 64).put((byte) PacketDecoder.IP_PROTOCOL_ICMPV4).putShort((short) 0)
+                .putInt(0x0A000001).putInt(0x0A000002);
+        for (int i = 0; i < payloadLength; i++) {
+            fragment.put((byte) (offset + i));
+        }
+        fragment.flip();
+        return fragment;
+    }
+
+    private static ByteBuffer add(IpDefragmenter defragmenter, PacketDecoder decoder, ByteBuffer fragment) {
+        decoder.wrap(fragment, 0, fragment.remaining());
+        Assert.assertTrue(decoder.decodeIpv4());
+        Assert.assertTrue(decoder.isIpv4Fragment());
+        return defragmenter.addFragment(decoder);
+    }
+
+    @Test
+    public void outOfOrderTest() {
+        IpDefragmenter defragmenter = new IpDefragmenter();
+        PacketDecoder decoder = new PacketDecoder();
+        Assert.assertNull(add(defragmenter, decoder, fragment(7, 16, false, 10)));
+        Assert.assertNull(add(defragmenter, decoder, fragment(8, 0, true, 16))); // another datagram
+        Assert.assertNull(add(defragmenter, decoder, fragment(7, 0, true, 8)));
+        ByteBuffer datagram = add(defragmenter, decoder, fragment(7, 8, true, 8));
+        Assert.assertNotNull(datagram);
+
+        decoder.wrap(datagram, 0, datagram.remaining());
+        Assert.assertTrue(decoder.decodeReassembledIpv4());
+        Assert.assertFalse(decoder.isIpv4Fragment());
+        Assert.assertEquals(26, decoder.getTransportLength());
+        for (int i = 0; i < 26; i++) {
+            Assert.assertEquals((byte) i, datagram.get(decoder.getTransportOffset() + i));
+        }
+    }
+
+    @Test
+    public void oversizedDatagramTest() {
+        // a ping of death: the last fragment ends beyond 65535 bytes
+        IpDefragmenter defragmenter = new IpDefragmenter();
+        PacketDecoder decoder = new PacketDecoder();
+        ByteBuffer datagram = null;
+        for (int offset = 0; offset < 66000; offset += 1480) {
+            datagram = add(defragmenter, decoder, fragment(9, offset, offset + 1480 < 66000, 1480));
+        }
+        Assert.assertNotNull(datagram);
+        decoder.wrap(datagram, 0, datagram.remaining());
+        Assert.assertTrue(decoder.decodeReassembledIpv4());
+        Assert.assertTrue(decoder.getTransportLength() > 65515);
+    }
+}
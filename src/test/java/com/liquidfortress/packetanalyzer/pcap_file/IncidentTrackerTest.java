@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * IncidentTrackerTest
+ * <p/>
+ * Tests for IncidentTracker
+ */
+public class IncidentTrackerTest {
+
+    private static final long MAPPED = 0x0000FFFF00000000L;
+
+    @Test
+    public void separateIncidentsTest() {
+        PcapFileSummary summary = new PcapFileSummary("test");
+        IncidentTracker incidents = new IncidentTracker("SYN FLOOD");
+        int first = incidents.open(0, MAPPED | 0xC0A8011E, 443, 100, summary);
+        int second = incidents.open(0, MAPPED | 0xC0A8011F, 443, 150, summary);
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(first, incidents.find(0, MAPPED | 0xC0A8011E, 443));
+        Assert.assertEquals(IncidentTracker.NO_INCIDENT, incidents.find(0, MAPPED | 0xC0A8011E, 80));
+        // closing one attack leaves the other one open
+        incidents.close(first, 200, summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        Assert.assertEquals(200, summary.attackSummaries.get(0).getEndTimestampNanos());
+        Assert.assertEquals(second, incidents.find(0, MAPPED | 0xC0A8011F, 443));
+        incidents.update(second, 300);
+        incidents.closeAll(summary);
+        Assert.assertEquals(2, summary.attackSummaries.size());
+        Assert.assertEquals(150, summary.attackSummaries.get(1).getStartTimestampNanos());
+        Assert.assertEquals(300, summary.attackSummaries.get(1).getEndTimestampNanos());
+        Assert.assertEquals(0, incidents.size());
+    }
+
+    @Test
+    public void leastRecentlyUpdatedClosedOutTest() {
+        PcapFileSummary summary = new PcapFileSummary("test");
+        IncidentTracker incidents = new IncidentTracker("PORT SCANNING", 2);
+        int first = incidents.open(0, MAPPED | 1, 10, summary);
+        int second = incidents.open(0, MAPPED | 2, 20, summary);
+        incidents.update(first, 30);
+        incidents.open(0, MAPPED | 3, 40, summary);
+        // the second incident was updated least recently, so it made room
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        Assert.assertEquals(20, summary.attackSummaries.get(0).getEndTimestampNanos());
+        Assert.assertEquals(IncidentTracker.NO_INCIDENT, incidents.find(0, MAPPED | 2));
+        Assert.assertEquals(first, incidents.find(0, MAPPED | 1));
+        Assert.assertEquals(2, incidents.size());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * IpScanDetectorTest
+ * <p/>
+ * Tests for IpScanDetector
+ */
+public class IpScanDetectorTest {
+    private static final long MILLI = 1000000L;
+    private static final int SCANNER = 0x0A040404; // 10.4.4.4
+    private static final int OTHER_SOURCE = 0x0A050505;
+    private static final int TARGETS = 0xC0A80000; // 192.168.0.0/16
+
+    private PcapFileSummary summary;
+    private IpScanDetector detector;
+    private long timestampNanos;
+
+    @Before
+    public void setUp() {
+        summary = new PcapFileSummary("test");
+        detector = new IpScanDetector();
+        timestampNanos = 0;
+    }
+
+    private void send(int source, int destination, int ipProtocol, int... flags) {
+        timestampNanos += MILLI;
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setTimestampNanos(timestampNanos);
+        packetInfo.setIpProtocol(ipProtocol);
+        packetInfo.setIpv4Addresses(source, destination);
+        packetInfo.setPorts(40000, 22);
+        for (int flag : flags) {
+            packetInfo.setFlag(flag);
+        }
+        detector.onPacket(null, summary, packetInfo);
+    }
+
+    private void sweep(int source, int count, int ipProtocol, int... flags) {
+        for (int i = 1; i <= count; i++) {
+            send(source, TARGETS + i, ipProtocol, flags);
+        }
+    }
+
+    @Test
+    public void sweepTest() {
+        sweep(SCANNER, 127, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.SYN);
+        send(SCANNER, TARGETS + 1, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.SYN); // a destination is counted once
+        detector.onFinish(summary);
+        Assert.assertTrue(summary.attackSummaries.isEmpty());
+
+        send(SCANNER, TARGETS + 128, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.SYN);
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        AttackSummary attackSummary = summary.attackSummaries.get(0);
+        Assert.assertEquals(MILLI, attackSummary.getStartTimestampNanos());
+        Assert.assertEquals(timestampNanos, attackSummary.getEndTimestampNanos());
+        Assert.assertTrue(attackSummary.getSourceIpAndPorts().contains("10.4.4.4"));
+        Assert.assertTrue(attackSummary.getTargetIpAndPorts().contains("192.168.0.128:22"));
+    }
+
+    @Test
+    public void udpSweepTest() {
+        sweep(SCANNER, 128, PacketDecoder.IP_PROTOCOL_UDP);
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+    }
+
+    @Test
+    public void repliesIgnoredTest() {
+        sweep(SCANNER, 200, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.SYN, PacketInfo.ACK);
+        sweep(SCANNER, 200, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.ACK);
+        sweep(SCANNER, 200, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.RST);
+        detector.onFinish(summary);
+        Assert.assertTrue(summary.attackSummaries.isEmpty());
+        Assert.assertEquals(0, detector.getTrackedSourceCount());
+    }
+
+    @Test
+    public void quietWindowEndsSweepTest() {
+        sweep(SCANNER, 200, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.SYN);
+        // the next window of the same source holds too few destinations
+        timestampNanos = 3000 * MILLI;
+        sweep(SCANNER, 10, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.SYN);
+        long lastQuietNanos = timestampNanos;
+        Assert.assertTrue(summary.attackSummaries.isEmpty()); // the quiet window is still open
+        // the scan ends when the quiet window closes
+        timestampNanos = 6000 * MILLI;
+        send(SCANNER, TARGETS + 1, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.SYN);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        AttackSummary attackSummary = summary.attackSummaries.get(0);
+        Assert.assertEquals(lastQuietNanos, attackSummary.getEndTimestampNanos());
+
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+    }
+
+    @Test
+    public void expiredSourceEndsSweepTest() {
+        sweep(SCANNER, 128, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.SYN);
+        long lastSweepNanos = timestampNanos;
+        Assert.assertTrue(summary.attackSummaries.isEmpty()); // still in progress
+
+        timestampNanos += 3000 * MILLI;
+        send(OTHER_SOURCE, TARGETS + 1, PacketDecoder.IP_PROTOCOL_TCP, PacketInfo.SYN);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        Assert.assertEquals(lastSweepNanos, summary.attackSummaries.get(0).getEndTimestampNanos());
+        Assert.assertEquals(1, detector.getTrackedSourceCount());
+    }
+}
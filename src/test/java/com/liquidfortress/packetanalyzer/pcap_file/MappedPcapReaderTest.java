@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * MappedPcapReaderTest
+ * <p/>
+ * Tests for MappedPcapReader
+ */
+public class MappedPcapReaderTest {
+
+    private static final int MAGIC_MICROSECONDS = 0xa1b2c3d4;
+    private static final int MAGIC_NANOSECONDS = 0xa1b23c4d;
+
+    private static File writePcap(ByteOrder byteOrder, int magic, byte[]... records) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096).order(byteOrder);
+        buffer.putInt(magic).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        int seconds = 1500000000;
+        for (byte[] record : records) {
+            buffer.putInt(seconds++).putInt(250000).putInt(record.length).putInt(record.length + 10).put(record);
+        }
+        File pcapFile = File.createTempFile("mapped-pcap-reader", ".pcap");
+        pcapFile.deleteOnExit();
+        try (FileOutputStream outputStream = new FileOutputStream(pcapFile)) {
+            outputStream.write(buffer.array(), 0, buffer.position());
+        }
+        return pcapFile;
+    }
+
+    private static void readRecords(ByteOrder byteOrder) throws IOException {
+        File pcapFile = writePcap(byteOrder, MAGIC_MICROSECONDS, new byte[]{1, 2, 3}, new byte[]{4, 5, 6, 7, 8});
+        try (MappedPcapReader reader = new MappedPcapReader(pcapFile)) {
+            Assert.assertEquals(CaptureReader.LINKTYPE_ETHERNET, reader.getLinkType());
+            Assert.assertEquals(65535, reader.getSnapLength());
+
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(3, reader.getCapturedLength());
+            Assert.assertEquals(13, reader.getOriginalLength());
+            Assert.assertEquals(1500000000250000000L, reader.getTimestampNanos());
+            ByteBuffer record = reader.getRecord();
+            Assert.assertEquals(3, record.remaining());
+            Assert.assertEquals(1, record.get(record.position()));
+
+            Assert.assertTrue(reader.next());
+            record = reader.getRecord();
+            Assert.assertEquals(5, record.remaining());
+            Assert.assertEquals(8, record.get(record.limit() - 1));
+            Assert.assertEquals(1500000001250000000L, reader.getTimestampNanos());
+
+            Assert.assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void littleEndianTest() throws IOException {
+        readRecords(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void bigEndianTest() throws IOException {
+        readRecords(ByteOrder.BIG_ENDIAN);
+    }
+
+    @Test
+    public void nanosecondTest() throws IOException {
+        for (ByteOrder byteOrder : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            File pcapFile = writePcap(byteOrder, MAGIC_NANOSECONDS, new byte[]{1, 2, 3});
+            try (MappedPcapReader reader = new MappedPcapReader(pcapFile)) {
+                Assert.assertTrue(reader.next());
+                Assert.assertEquals(1500000000000250000L, reader.getTimestampNanos());
+            }
+            try (PcapStreamReader reader = new PcapStreamReader(FileChannel.open(pcapFile.toPath()))) {
+                Assert.assertTrue(reader.next());
+                Assert.assertEquals(1500000000000250000L, reader.getTimestampNanos());
+                Assert.assertEquals(3, reader.getRecord().remaining());
+                Assert.assertFalse(reader.next());
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void badMagicTest() throws IOException {
+        File notPcap = File.createTempFile("mapped-pcap-reader", ".txt");
+        notPcap.deleteOnExit();
+        try (FileOutputStream outputStream = new FileOutputStream(notPcap)) {
+            outputStream.write(new byte[64]);
+        }
+        new MappedPcapReader(notPcap).close();
+    }
+}
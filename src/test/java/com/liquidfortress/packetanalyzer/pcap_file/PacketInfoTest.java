@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * PacketInfoTest
+ * <p/>
+ * Tests for PacketInfo
+ */
+public class PacketInfoTest {
+
+    @Test
+    public void formatIpv4Test() throws Exception {
+        byte[] address = {(byte) 192, (byte) 168, 0, (byte) 254};
+        int value = ByteBuffer.wrap(address).getInt();
+        Assert.assertEquals(InetAddress.getByAddress(address).getHostAddress(), PacketInfo.formatIpv4(value));
+    }
+
+    @Test
+    public void formatIpv6Test() throws Exception {
+        byte[] address = new byte[16];
+        address[0] = (byte) 0xfe;
+        address[1] = (byte) 0x80;
+        address[14] = (byte) 0xab;
+        address[15] = 0x01;
+        ByteBuffer buffer = ByteBuffer.wrap(address);
+        Assert.assertEquals(InetAddress.getByAddress(address).getHostAddress(),
+                PacketInfo.formatIpv6(buffer.getLong(0), buffer.getLong(8)));
+    }
+
+    @Test
+    public void copyAndResetTest() {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setTimestampNanos(1234567890123456789L);
+        packetInfo.setIpv4Addresses(0x0A000001, 0x0A000002);
+        packetInfo.setIpProtocol(6);
+        packetInfo.setPorts(65535, 23);
+        packetInfo.setFlag(PacketInfo.SYN);
+
+        PacketInfo copy = packetInfo.copy();
+        Assert.assertEquals(packetInfo, copy);
+        Assert.assertEquals(packetInfo.hashCode(), copy.hashCode());
+        Assert.assertEquals(65535, copy.getSourcePort());
+        Assert.assertEquals("10.0.0.1:65535", copy.getSourceEndpoint());
+        Assert.assertEquals("10.0.0.2:23", copy.getDestinationEndpoint());
+        Assert.assertTrue(copy.hasFlag(PacketInfo.SYN));
+        Assert.assertFalse(copy.hasFlag(PacketInfo.ACK));
+
+        packetInfo.reset();
+        Assert.assertNotEquals(packetInfo, copy);
+        Assert.assertEquals(PacketInfo.IP_VERSION_NONE, packetInfo.getIpVersion());
+        Assert.assertEquals("10.0.0.1", copy.getSourceAddress());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.tcp.TcpConnectionTracker;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * PcapFileSummaryTest
+ * <p/>
+ * Tests for merging PcapFileSummary partial results
+ */
+public class PcapFileSummaryTest {
+
+    private static final int TCP = 6;
+    private static final int UDP = 17;
+
+    // 10.0.0.x in IPv4-mapped form
+    private static long address(int host) {
+        return 0x0000FFFF0A000000L | host;
+    }
+
+    // a packet of the connection 10.0.0.<first letter of name>:1 => 10.0.0.1:22
+    private static PacketInfo connection(String name) {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setIpv4Addresses(0x0A000000 | name.charAt(0), 0x0A000001);
+        packetInfo.setPorts(1, 22);
+        return packetInfo;
+    }
+
+    private static PcapFileSummary partial(String name, int packets, int... hosts) {
+        return partial(name, packets, 0, hosts);
+    }
+
+    private static PcapFileSummary partial(String name, int packets, long activeBytes, int... hosts) {
+        PcapFileSummary summary = new PcapFileSummary(name);
+        summary.packetCount = packets;
+        summary.nonIpPacketCount = 1;
+        summary.tcpConnectionCount = hosts.length;
+        for (int host : hosts) {
+            summary.uniqueIpAddresses.add(0, address(host));
+            summary.udpSources.add(0, address(host), 53);
+            summary.ipProtocolCounter.increment(TCP);
+            summary.closedTcpConnections.add(new TcpConnectionTracker("10.0.0." + host + ":1024", "10.0.0.1:80"));
+        }
+        summary.ipProtocolCounter.increment(UDP);
+        int flow = summary.activeTcpConnections.open(connection(name));
+        summary.activeTcpConnections.getFlows().count(flow, true, activeBytes, 0, 0);
+        return summary;
+    }
+
+    private static void assertSameResults(PcapFileSummary expected, PcapFileSummary actual) {
+        Assert.assertEquals(expected.packetCount, actual.packetCount);
+        Assert.assertEquals(expected.nonIpPacketCount, actual.nonIpPacketCount);
+        Assert.assertEquals(expected.tcpConnectionCount, actual.tcpConnectionCount);
+        Assert.assertEquals(expected.uniqueIpAddresses.size(), actual.uniqueIpAddresses.size());
+        Assert.assertEquals(expected.udpSources.size(), actual.udpSources.size());
+        Assert.assertEquals(expected.ipProtocolCounter.get(TCP), actual.ipProtocolCounter.get(TCP));
+        Assert.assertEquals(expected.ipProtocolCounter.get(UDP), actual.ipProtocolCounter.get(UDP));
+        Assert.assertEquals(expected.activeTcpConnections.size(), actual.activeTcpConnections.size());
+        Assert.assertEquals(expected.closedTcpConnections.size(), actual.closedTcpConnections.size());
+    }
+
+    @Test
+    public void mergeTest() {
+        PcapFileSummary a = partial("a", 10, 2, 3);
+        PcapFileSummary b = partial("b", 20, 3, 4);
+        a.merge(b);
+        Assert.assertEquals(30, a.packetCount);
+        Assert.assertEquals(2, a.nonIpPacketCount);
+        Assert.assertEquals(3, a.uniqueIpAddresses.size());
+        Assert.assertEquals(4, a.ipProtocolCounter.get(TCP));
+        Assert.assertEquals(2, a.ipProtocolCounter.get(UDP));
+        Assert.assertEquals(2, a.activeTcpConnections.size());
+        Assert.assertEquals(4, a.closedTcpConnections.size());
+    }
+
+    @Test
+    public void associativityTest() {
+        // (a + b) + c
+        PcapFileSummary left = partial("a", 10, 2, 3);
+        left.merge(partial("b", 20, 3, 4));
+        left.merge(partial("c", 30, 5));
+
+        // a + (b + c)
+        PcapFileSummary bc = partial("b", 20, 3, 4);
+        bc.merge(partial("c", 30, 5));
+        PcapFileSummary right = partial("a", 10, 2, 3);
+        right.merge(bc);
+
+        assertSameResults(left, right);
+    }
+
+    @Test
+    public void mergeKeepsExistingActiveConnectionTest() {
+        PcapFileSummary a = partial("x", 1, 100L);
+        PcapFileSummary b = partial("x", 1, 200L);
+        a.merge(b);
+        Assert.assertEquals(1, a.activeTcpConnections.size());
+        int kept = a.activeTcpConnections.get(connection("x"));
+        Assert.assertEquals(100, a.activeTcpConnections.getFlows().getTotalBytesInFlow(kept));
+    }
+
+    @Test
+    public void addKeepsOnlyReportedResultsTest() {
+        PcapFileSummary aggregate = new PcapFileSummary("all");
+        aggregate.add(partial("a", 10, 2, 3));
+        aggregate.add(partial("b", 20, 3, 4));
+        Assert.assertEquals(30, aggregate.packetCount);
+        Assert.assertEquals(2, aggregate.nonIpPacketCount);
+        Assert.assertEquals(4, aggregate.tcpConnectionCount);
+        Assert.assertEquals(3, aggregate.uniqueIpAddresses.size());
+        Assert.assertEquals(3, aggregate.udpSources.size());
+        Assert.assertEquals(4, aggregate.ipProtocolCounter.get(TCP));
+        // the connections of each file are reported with the file, not kept for the whole run
+        Assert.assertEquals(0, aggregate.activeTcpConnections.size());
+        Assert.assertEquals(0, aggregate.closedTcpConnections.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mergeWithItselfTest() {
+        PcapFileSummary a = partial("a", 1);
+        a.merge(a);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import com.liquidfortress.packetanalyzer.util.ReadAheadChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+
+/**
+ * PcapNgReaderTest
+ * <p/>
+ * Tests for PcapNgReader
+ */
+public class PcapNgReaderTest {
+
+    private static void putSectionHeader(ByteBuffer buffer) {
+        buffer.putInt(PcapNgReader.SECTION_HEADER_BLOCK).putInt(28).putInt(0x1A2B3C4D)
+                .putShort((short) 1).putShort((short) 0).putLong(-1L).putInt(28);
+    }
+
+    private static void putInterface(ByteBuffer buffer, int linkType, int tsresol) {
+        if (tsresol < 0) {
+            buffer.putInt(1).putInt(20).putShort((short) linkType).putShort((short) 0).putInt(65535).putInt(20);
+        } else {
+            // if_tsresol option padded to 4 bytes, then opt_endofopt
+            buffer.putInt(1).putInt(32).putShort((short) linkType).putShort((short) 0).putInt(65535)
+                    .putShort((short) 9).putShort((short) 1).put((byte) tsresol).put(new byte[3])
+                    .putInt(0).putInt(32);
+        }
+    }
+
+    private static void putEnhancedPacket(ByteBuffer buffer, int interfaceId, long timestamp, byte[] data) {
+        int padded = (data.length + 3) & ~3;
+        int blockLength = 32 + padded;
+        buffer.putInt(6).putInt(blockLength).putInt(interfaceId)
+                .putInt((int) (timestamp >>> 32)).putInt((int) timestamp)
+                .putInt(data.length).putInt(data.length).put(data).put(new byte[padded - data.length])
+                .putInt(blockLength);
+    }
+
+    private static byte[] buildCapture(ByteOrder byteOrder) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024).order(byteOrder);
+        putSectionHeader(buffer);
+        putInterface(buffer, CaptureReader.LINKTYPE_ETHERNET, -1); // microseconds
+        putInterface(buffer, 113, 9);                              // nanoseconds, Linux cooked capture
+        putEnhancedPacket(buffer, 0, 1500000000123456L, new byte[]{1, 2, 3, 4, 5});
+        // an unknown block (Name Resolution Block) must be skipped
+        buffer.putInt(4).putInt(16).putInt(0).putInt(16);
+        putEnhancedPacket(buffer, 1, 1500000001123456789L, new byte[]{9, 8, 7});
+        // a simple packet block uses interface 0
+        buffer.putInt(3).putInt(20).putInt(2).put(new byte[]{42, 43, 0, 0}).putInt(20);
+        byte[] capture = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(capture);
+        return capture;
+    }
+
+    private static void readCapture(ByteOrder byteOrder) throws IOException {
+        byte[] capture = buildCapture(byteOrder);
+        // tiny read-ahead chunks so that blocks straddle chunk boundaries
+        ReadAheadChannel channel = new ReadAheadChannel(Channels.newChannel(new ByteArrayInputStream(capture)), 7, 3);
+        try (PcapNgReader reader = new PcapNgReader(channel)) {
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(CaptureReader.LINKTYPE_ETHERNET, reader.getLinkType());
+            Assert.assertEquals(5, reader.getCapturedLength());
+            Assert.assertEquals(1500000000123456000L, reader.getTimestampNanos());
+            ByteBuffer record = reader.getRecord();
+            Assert.assertEquals(5, record.remaining());
+            Assert.assertEquals(1, record.get(record.position()));
+            Assert.assertEquals(5, record.get(record.limit() - 1));
+
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(113, reader.getLinkType());
+            Assert.assertEquals(1500000001123456789L, reader.getTimestampNanos());
+            Assert.assertEquals(9, reader.getRecord().get());
+
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(CaptureReader.LINKTYPE_ETHERNET, reader.getLinkType());
+            Assert.assertEquals(2, reader.getCapturedLength());
+            Assert.assertEquals(42, reader.getRecord().get());
+
+            Assert.assertFalse(reader.next());
+        }
+    }
+
+    @Test
+    public void littleEndianTest() throws IOException {
+        readCapture(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    public void bigEndianTest() throws IOException {
+        readCapture(ByteOrder.BIG_ENDIAN);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pcap_file;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * PortScanDetectorTest
+ * <p/>
+ * Tests for PortScanDetector
+ */
+public class PortScanDetectorTest {
+    private static final long MILLI = 1000000L;
+    private static final int SCANNER = 0x0A040404; // 10.4.4.4
+    private static final int OTHER_SOURCE = 0x0A050505;
+    private static final int TARGET = 0xC0A80117;
+
+    private PcapFileSummary summary;
+    private PortScanDetector detector;
+    private long timestampNanos;
+
+    @Before
+    public void setUp() {
+        summary = new PcapFileSummary("test");
+        detector = new PortScanDetector();
+        timestampNanos = 0;
+    }
+
+    private void send(int source, int destinationPort) {
+        timestampNanos += MILLI;
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setTimestampNanos(timestampNanos);
+        packetInfo.setIpv4Addresses(source, TARGET);
+        packetInfo.setPorts(40000, destinationPort);
+        packetInfo.setFlag(PacketInfo.SYN);
+        detector.add(packetInfo, summary);
+    }
+
+    @Test
+    public void portScoreTest() {
+        Assert.assertEquals(10, PortScanDetector.portScore(11));
+        Assert.assertEquals(10, PortScanDetector.portScore(2000));
+        Assert.assertEquals(3, PortScanDetector.portScore(1023));
+        Assert.assertEquals(1, PortScanDetector.portScore(1024));
+    }
+
+    @Test
+    public void suspiciousPortsTest() {
+        for (int port : new int[]{11, 12, 13, 2000}) {
+            send(SCANNER, port);
+            send(SCANNER, port); // a port is only scored once
+        }
+        detector.onFinish(summary);
+        Assert.assertTrue(summary.attackSummaries.isEmpty()); // 40 points
+        send(SCANNER, 80);
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size()); // 43 points
+        AttackSummary attackSummary = summary.attackSummaries.get(0);
+        Assert.assertEquals(1, attackSummary.getSourceIpAndPorts().size());
+        Assert.assertEquals(5, attackSummary.getTargetIpAndPorts().size());
+        Assert.assertTrue(attackSummary.getTargetIpAndPorts().contains("192.168.1.23:2000"));
+    }
+
+    @Test
+    public void highPortsTest() {
+        for (int port = 5000; port < 5041; port++) {
+            send(SCANNER, port);
+        }
+        detector.onFinish(summary);
+        Assert.assertTrue(summary.attackSummaries.isEmpty()); // 41 points
+        send(SCANNER, 5041);
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        Assert.assertEquals(42, summary.attackSummaries.get(0).getTargetIpAndPorts().size());
+    }
+
+    @Test
+    public void scanEndsTest() {
+        for (int port = 1; port <= 14; port++) {
+            send(SCANNER, port);
+        }
+        long lastScanNanos = timestampNanos;
+        Assert.assertTrue(summary.attackSummaries.isEmpty()); // still in progress
+        Assert.assertEquals(1, detector.getTrackedSourceCount());
+
+        // the scanner's packets age out of the lookback window
+        timestampNanos += 600 * MILLI;
+        send(OTHER_SOURCE, 80);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        Assert.assertEquals(1, detector.getTrackedSourceCount());
+        AttackSummary attackSummary = summary.attackSummaries.get(0);
+        Assert.assertEquals(lastScanNanos, attackSummary.getEndTimestampNanos());
+        Assert.assertEquals(14, attackSummary.getTargetIpAndPorts().size());
+
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+    }
+}
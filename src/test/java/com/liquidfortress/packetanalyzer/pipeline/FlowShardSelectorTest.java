@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.pipeline;
+
+import com.liquidfortress.packetanalyzer.pcap_file.CaptureReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FlowShardSelectorTest
+ * <p/>
+ * Tests for FlowShardSelector
+ */
+public class FlowShardSelectorTest {
+    private static final int SHARDS = 16;
+
+    // Ethernet + IPv4 header followed by the two ports of a TCP header
+    private static byte[] ipv4Frame(int source, int destination, int fragmentField, int sourcePort, int destinationPort) {
+        ByteBuffer frame = ByteBuffer.allocate(14 + 20 + 20);
+        frame.putShort(12, (short) 0x0800);
+        frame.put(14, (byte) 0x45);
+        frame.putShort(14 + 6, (short) fragmentField);
+        frame.put(14 + 9, (byte) 6);
+        frame.putInt(14 + 12, source);
+        frame.putInt(14 + 16, destination);
+        frame.putShort(34, (short) sourcePort);
+        frame.putShort(36, (short) destinationPort);
+        return frame.array();
+    }
+
+    private static int select(FlowShardSelector selector, byte[] frame) {
+        return selector.select(frame, frame.length, CaptureReader.LINKTYPE_ETHERNET);
+    }
+
+    @Test
+    public void fragmentsFollowTheirFlowTest() {
+        FlowShardSelector selector = new FlowShardSelector(SHARDS);
+        int client = 0x0A000002;
+        int server = 0xC0A80101;
+        for (int port = 40000; port < 40100; port++) {
+            int shard = select(selector, ipv4Frame(client, server, 0, port, 80));
+            Assert.assertEquals(shard, select(selector, ipv4Frame(server, client, 0, 80, port)));
+            // a first fragment (MF set) and a later one (offset, no ports) of the same flow
+            Assert.assertEquals(shard, select(selector, ipv4Frame(client, server, 0x2000, port, 80)));
+            Assert.assertEquals(shard, select(selector, ipv4Frame(client, server, 0x00B9, 0x4142, 0x4344)));
+        }
+    }
+
+    @Test
+    public void hostsSpreadTest() {
+        FlowShardSelector selector = new FlowShardSelector(SHARDS);
+        boolean[] used = new boolean[SHARDS];
+        for (int host = 0; host < 256; host++) {
+            used[select(selector, ipv4Frame(0x0A000000 | host, 0xC0A80101, 0, 40000, 80))] = true;
+        }
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Assert.assertTrue("shard " + shard + " is never used", used[shard]);
+        }
+    }
+}
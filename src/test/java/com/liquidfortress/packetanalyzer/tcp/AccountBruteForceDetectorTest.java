@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * AccountBruteForceDetectorTest
+ * <p/>
+ * Tests for AccountBruteForceDetector
+ */
+public class AccountBruteForceDetectorTest {
+    private static final long MILLI = 1000000L;
+    private static final int SERVER = 0xC0A80117; // 192.168.1.23
+    private static final int ATTACKER = 0x0A040404;
+    private static final int USER = 0x0A050505;
+
+    private PcapFileSummary summary;
+    private AccountBruteForceDetector detector;
+    private long timestampNanos;
+
+    @Before
+    public void setUp() {
+        summary = new PcapFileSummary("test");
+        detector = new AccountBruteForceDetector();
+        timestampNanos = 0;
+    }
+
+    private void send(boolean fromServer, int client, int clientPort, String data) {
+        timestampNanos += MILLI;
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setTimestampNanos(timestampNanos);
+        if (fromServer) {
+            packetInfo.setIpv4Addresses(SERVER, client);
+            packetInfo.setPorts(23, clientPort);
+        } else {
+            packetInfo.setIpv4Addresses(client, SERVER);
+            packetInfo.setPorts(clientPort, 23);
+        }
+        byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+        detector.onStreamData(ByteBuffer.wrap(bytes), 0, bytes.length, packetInfo, summary);
+    }
+
+    private void failLogins(int client, int clientPort, int count) {
+        for (int i = 0; i < count; i++) {
+            send(true, client, clientPort, "\r\nlogin: ");
+            send(false, client, clientPort, "user" + i + "\r\n");
+            send(true, client, clientPort, "Password:");
+            send(false, client, clientPort, "pw" + i + "\r\n");
+            send(true, client, clientPort, "\r\nLogin incorrect\r\n");
+        }
+    }
+
+    @Test
+    public void otherClientsDoNotEndAttackTest() {
+        failLogins(ATTACKER, 42000, 4);
+        send(true, ATTACKER, 42000, "\r\nlogin: "); // the attack is detected
+        long attackEndNanos = timestampNanos;
+        // another client of the same server fails once, then logs in
+        failLogins(USER, 43000, 1);
+        send(true, USER, 43000, "\r\nlogin: ");
+        send(false, USER, 43000, "root\r\n");
+        send(true, USER, 43000, "Password:");
+        send(false, USER, 43000, "toor\r\n");
+        send(true, USER, 43000, "Connected to host\r\n");
+        Assert.assertTrue(summary.attackSummaries.isEmpty());
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        AttackSummary attackSummary = summary.attackSummaries.get(0);
+        Assert.assertEquals(attackEndNanos, attackSummary.getEndTimestampNanos());
+        Assert.assertEquals(4, attackSummary.getUsernameAndPasswords().size());
+        Assert.assertTrue(attackSummary.getUsernameAndPasswords().contains("user3:pw3"));
+    }
+
+    @Test
+    public void successfulLoginEndsOwnAttackTest() {
+        failLogins(ATTACKER, 42000, 4);
+        send(true, ATTACKER, 42000, "\r\nlogin: ");
+        send(false, ATTACKER, 42000, "root\r\n");
+        send(true, ATTACKER, 42000, "Password:");
+        send(false, ATTACKER, 42000, "toor\r\n");
+        send(true, ATTACKER, 42000, "Connected to host\r\n");
+        Assert.assertEquals(1, summary.attackSummaries.size());
+    }
+}
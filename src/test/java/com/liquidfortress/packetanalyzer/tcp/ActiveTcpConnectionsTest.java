@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * ActiveTcpConnectionsTest
+ * <p/>
+ * Tests for idle expiry of ActiveTcpConnections
+ */
+public class ActiveTcpConnectionsTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long START = 1500000000L * SECOND;
+
+    private static PacketInfo packet(int client, long timestampNanos) {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setTimestampNanos(timestampNanos);
+        packetInfo.setIpv4Addresses(0x0A000000 | client, 0x0A000001);
+        packetInfo.setPorts(40000, 22);
+        return packetInfo;
+    }
+
+    @Test
+    public void embryonicTimeoutTest() {
+        PcapFileSummary summary = new PcapFileSummary("test");
+        ActiveTcpConnections connections = summary.activeTcpConnections;
+        Assert.assertNotEquals(ActiveTcpConnections.NO_FLOW, connections.open(packet(2, START)));
+
+        connections.expireIdle(START + ActiveTcpConnections.EMBRYONIC_TIMEOUT - SECOND);
+        Assert.assertEquals(1, connections.size());
+        connections.expireIdle(START + ActiveTcpConnections.EMBRYONIC_TIMEOUT + 2 * SECOND);
+        Assert.assertEquals(0, connections.size());
+        Assert.assertEquals(ActiveTcpConnections.NO_FLOW, connections.get(packet(2, START)));
+        Assert.assertEquals(1, summary.timedOutTcpConnections.size());
+    }
+
+    @Test
+    public void establishedStaysWhileActiveTest() {
+        PcapFileSummary summary = new PcapFileSummary("test");
+        ActiveTcpConnections connections = summary.activeTcpConnections;
+        TcpFlowStore flows = connections.getFlows();
+        PacketInfo syn = packet(3, START);
+        int flow = connections.open(syn);
+        flows.setStep1ClientSequenceNumber(flow, 100);
+        flows.setStep2Numbers(flow, 101, 500);
+        flows.setStep3Numbers(flow, 501, 101);
+        Assert.assertTrue(flows.isConnected(flow));
+
+        // a packet every minute keeps the connection well past the embryonic timeout
+        long now = START;
+        for (int minute = 1; minute <= 20; minute++) {
+            now = START + minute * 60 * SECOND;
+            connections.expireIdle(now);
+            flows.count(flow, true, 40, 0, now);
+            connections.touch(flow);
+        }
+        Assert.assertEquals(flow, connections.get(syn));
+
+        connections.expireIdle(now + ActiveTcpConnections.ESTABLISHED_TIMEOUT + 2 * SECOND);
+        Assert.assertEquals(0, connections.size());
+        Assert.assertEquals(1, summary.timedOutTcpConnections.size());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ClosedTcpConnectionsTest
+ * <p/>
+ * Tests for spilling closed TCP connections to disk
+ */
+public class ClosedTcpConnectionsTest {
+
+    private static PacketInfo segment(int... flags) {
+        PacketInfo packetInfo = new PacketInfo();
+        for (int flag : flags) {
+            packetInfo.setFlag(flag);
+        }
+        return packetInfo;
+    }
+
+    // a connection that completed its handshake and was then reset by the server
+    private static TcpConnectionTracker resetConnection(int client) {
+        PcapFileSummary summary = new PcapFileSummary("test");
+        TcpFlowStore flows = new TcpFlowStore();
+        PacketInfo syn = segment(PacketInfo.SYN);
+        syn.setIpv4Addresses(0x0A000000 | client, 0x0A000001);
+        syn.setPorts(40000, 22);
+        int flow = flows.allocate(syn);
+        flows.setStep1ClientSequenceNumber(flow, 0xFFFFFFF0L);
+        flows.setStep2Numbers(flow, 0xFFFFFFF1L, 500);
+        flows.setStep3Numbers(flow, 501, 0xFFFFFFF1L);
+        flows.count(flow, true, 1234 + client, 0, 0);
+        flows.update(flow, false, segment(PacketInfo.RST), 501, 0, 0, summary);
+        return flows.snapshot(flow);
+    }
+
+    @Test
+    public void spillAndMergeTest() throws Exception {
+        File spillDirectory = Files.createTempDirectory("closed-tcp-connections").toFile();
+        spillDirectory.deleteOnExit();
+        ClosedTcpConnections a = new ClosedTcpConnections(spillDirectory);
+        ClosedTcpConnections b = new ClosedTcpConnections(spillDirectory);
+        List<String> expected = new ArrayList<>();
+        for (int client = 2; client < 5; client++) {
+            TcpConnectionTracker tracker = resetConnection(client);
+            expected.add(tracker.toString());
+            a.add(tracker);
+        }
+        for (int client = 5; client < 7; client++) {
+            TcpConnectionTracker tracker = resetConnection(client);
+            expected.add(tracker.toString());
+            b.add(tracker);
+        }
+        a.merge(b);
+        // keep writing after the merge; the new connection goes after the merged ones
+        TcpConnectionTracker last = resetConnection(7);
+        expected.add(last.toString());
+        a.add(last);
+
+        Assert.assertEquals(6, a.size());
+        List<String> actual = new ArrayList<>();
+        a.forEach((TcpConnectionTracker tracker) -> actual.add(tracker.toString()));
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void mergeSpilledIntoHeapTest() throws Exception {
+        File spillDirectory = Files.createTempDirectory("closed-tcp-connections").toFile();
+        spillDirectory.deleteOnExit();
+        ClosedTcpConnections spilled = new ClosedTcpConnections(spillDirectory);
+        spilled.add(resetConnection(2));
+        ClosedTcpConnections heap = new ClosedTcpConnections();
+        heap.add(resetConnection(3));
+        heap.merge(spilled);
+        Assert.assertEquals(2, heap.size());
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.AttackSummary;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import com.liquidfortress.packetanalyzer.util.FlowStore;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * SynFloodDetectorTest
+ * <p/>
+ * Tests for SynFloodDetector
+ */
+public class SynFloodDetectorTest {
+    private static final long MILLI = 1000000L;
+    private static final int SERVER = 0xC0A80117; // 192.168.1.23
+    private static final int OTHER_SERVER = 0xC0A80118;
+    private static final int CLIENTS = 0x0A000000;
+
+    private PcapFileSummary summary;
+    private SynFloodDetector detector;
+    private int nextFlow;
+
+    @Before
+    public void setUp() {
+        summary = new PcapFileSummary("test");
+        detector = new SynFloodDetector();
+        nextFlow = 0;
+    }
+
+    // a SYN from a new client, with a new connection handle; returns the handle
+    private int syn(long timestampNanos, int server, int serverPort) {
+        int flow = nextFlow++;
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setTimestampNanos(timestampNanos);
+        packetInfo.setIpv4Addresses(CLIENTS + flow, server);
+        packetInfo.setPorts(40000, serverPort);
+        packetInfo.setFlag(PacketInfo.SYN);
+        detector.onSyn(flow, packetInfo, summary);
+        return flow;
+    }
+
+    private void synFlood(long timestampNanos, int server, int serverPort, int count) {
+        for (int i = 0; i < count; i++) {
+            syn(timestampNanos + i * MILLI, server, serverPort);
+        }
+    }
+
+    @Test
+    public void floodPerServerTest() {
+        synFlood(MILLI, SERVER, 80, 14);
+        synFlood(MILLI, SERVER, 443, 14);
+        detector.onFinish(summary);
+        Assert.assertTrue(summary.attackSummaries.isEmpty());
+
+        synFlood(20 * MILLI, SERVER, 80, 1); // the 15th unanswered SYN
+        synFlood(20 * MILLI, SERVER, 443, 1);
+        synFlood(20 * MILLI, OTHER_SERVER, 80, 15);
+        detector.onFinish(summary);
+        Assert.assertEquals(3, summary.attackSummaries.size());
+        AttackSummary attackSummary = summary.attackSummaries.get(0);
+        Assert.assertEquals(1, attackSummary.getTargetIpAndPorts().size());
+        Assert.assertTrue(attackSummary.getTargetIpAndPorts().contains("192.168.1.23:80"));
+        Assert.assertEquals(MILLI, attackSummary.getStartTimestampNanos());
+        Assert.assertEquals(15, attackSummary.getSourceIpAndPorts().size());
+        Assert.assertEquals(3, detector.getTrackedServerCount());
+    }
+
+    @Test
+    public void acknowledgedSynsTest() {
+        int first = syn(MILLI, SERVER, 80);
+        synFlood(300 * MILLI, SERVER, 80, 13);
+        detector.onSynAcknowledged(first, summary);
+        detector.onSynAcknowledged(first, summary); // already answered
+        detector.onSynAcknowledged(1000, summary);  // never seen
+        // the first SYN has left the window; had its answer been taken from a later bucket, 15 SYNs would not be enough
+        synFlood(650 * MILLI, SERVER, 80, 1);
+        detector.onFinish(summary);
+        Assert.assertTrue(summary.attackSummaries.isEmpty());
+        synFlood(660 * MILLI, SERVER, 80, 1);
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+    }
+
+    @Test
+    public void untrackedSynsTest() {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setIpv4Addresses(CLIENTS, SERVER);
+        packetInfo.setPorts(40000, 80);
+        for (int i = 1; i <= 15; i++) {
+            packetInfo.setTimestampNanos(i * MILLI);
+            detector.onSyn(FlowStore.NO_FLOW, packetInfo, summary);
+        }
+        detector.onFinish(summary);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+    }
+
+    @Test
+    public void expiredServerTest() {
+        int stale = syn(MILLI, SERVER, 80);
+        synFlood(1000 * MILLI, SERVER, 80, 14); // the server was expired and is tracked afresh
+        detector.onSynAcknowledged(stale, summary);
+        synFlood(1020 * MILLI, SERVER, 80, 1);
+        long lastSynNanos = 1020 * MILLI;
+        Assert.assertTrue(summary.attackSummaries.isEmpty()); // still in progress
+
+        // no SYN for a whole window ends the attack at the last SYN
+        synFlood(2000 * MILLI, OTHER_SERVER, 80, 1);
+        Assert.assertEquals(1, summary.attackSummaries.size());
+        Assert.assertEquals(lastSynNanos, summary.attackSummaries.get(0).getEndTimestampNanos());
+        Assert.assertEquals(1, detector.getTrackedServerCount());
+    }
+}
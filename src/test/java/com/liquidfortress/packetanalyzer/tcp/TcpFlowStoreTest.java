@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.pcap_file.PcapFileSummary;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * TcpFlowStoreTest
+ * <p/>
+ * Tests for the TCP connection state machine of TcpFlowStore
+ */
+public class TcpFlowStoreTest {
+
+    private static final boolean CLIENT = true;
+    private static final boolean SERVER = false;
+
+    private PcapFileSummary summary;
+    private TcpFlowStore flows;
+    private int flow;
+
+    private static PacketInfo segment(int... flags) {
+        PacketInfo packetInfo = new PacketInfo();
+        for (int flag : flags) {
+            packetInfo.setFlag(flag);
+        }
+        return packetInfo;
+    }
+
+    private boolean send(boolean fromClient, long sequenceNumber, long acknowledgementNumber, int payloadLength, int... flags) {
+        return flows.update(flow, fromClient, segment(flags), sequenceNumber, acknowledgementNumber, payloadLength, summary);
+    }
+
+    @Before
+    public void openConnection() {
+        summary = new PcapFileSummary("test");
+        flows = new TcpFlowStore();
+        PacketInfo syn = segment(PacketInfo.SYN);
+        syn.setIpv4Addresses(0x0A000002, 0x0A000001);
+        syn.setPorts(40000, 22);
+        flow = flows.allocate(syn);
+        flows.setStep1ClientSequenceNumber(flow, 100);
+    }
+
+    private void completeHandshake() {
+        Assert.assertFalse(send(CLIENT, 100, 0, 0, PacketInfo.SYN)); // retransmitted SYN
+        Assert.assertFalse(send(SERVER, 500, 101, 0, PacketInfo.SYN, PacketInfo.ACK));
+        Assert.assertFalse(send(CLIENT, 101, 501, 0, PacketInfo.ACK));
+        Assert.assertEquals(TcpConnectionTracker.State.ESTABLISHED, flows.getState(flow));
+        Assert.assertEquals(1, summary.tcpConnectionCount);
+    }
+
+    @Test
+    public void synAcknowledgedTest() {
+        int[] acknowledged = new int[1];
+        flows.setSynAcknowledgedListener((int acknowledgedFlow) -> {
+            Assert.assertEquals(flow, acknowledgedFlow);
+            acknowledged[0]++;
+        });
+        completeHandshake();
+        Assert.assertEquals(1, acknowledged[0]);
+    }
+
+    @Test
+    public void simultaneousCloseTest() {
+        completeHandshake();
+        Assert.assertFalse(send(CLIENT, 101, 501, 10, PacketInfo.ACK));
+        // both ends send a FIN before seeing the other's
+        Assert.assertFalse(send(CLIENT, 111, 501, 0, PacketInfo.FIN, PacketInfo.ACK));
+        Assert.assertFalse(send(SERVER, 501, 111, 0, PacketInfo.FIN, PacketInfo.ACK));
+        Assert.assertEquals(TcpConnectionTracker.State.CLOSING, flows.getState(flow));
+        Assert.assertFalse(send(CLIENT, 112, 502, 0, PacketInfo.ACK));
+        Assert.assertTrue(send(SERVER, 502, 112, 0, PacketInfo.ACK));
+        Assert.assertEquals(TcpConnectionTracker.State.CLOSED, flows.getState(flow));
+        Assert.assertEquals(111, flows.getStep4CloseRequestSequenceNumber(flow));
+        Assert.assertEquals(112, flows.getStep5CloseRequestAckNumber(flow));
+        Assert.assertEquals(501, flows.getStep6CloseRequestSequenceNumber(flow));
+        Assert.assertEquals(502, flows.getStep7CloseRequestAckNumber(flow));
+    }
+
+    @Test
+    public void serverClosesFirstTest() {
+        completeHandshake();
+        Assert.assertFalse(send(SERVER, 501, 101, 0, PacketInfo.FIN, PacketInfo.ACK));
+        Assert.assertFalse(send(CLIENT, 101, 502, 0, PacketInfo.FIN, PacketInfo.ACK)); // ACK and FIN together
+        Assert.assertTrue(send(SERVER, 502, 102, 0, PacketInfo.ACK));
+        Assert.assertTrue(flows.isClosed(flow));
+    }
+
+    @Test
+    public void resetTest() {
+        completeHandshake();
+        Assert.assertTrue(send(SERVER, 501, 101, 0, PacketInfo.RST));
+        Assert.assertEquals(TcpConnectionTracker.State.RESET, flows.getState(flow));
+        Assert.assertTrue(flows.wasEstablished(flow));
+
+        TcpConnectionTracker report = flows.snapshot(flow);
+        Assert.assertTrue(report.getClientAddress().startsWith("10.0.0.2:40000"));
+        Assert.assertEquals(TcpConnectionTracker.State.RESET, report.getState());
+        Assert.assertFalse(report.isResetByClient());
+        Assert.assertEquals(501, report.getStep3ClientAckNumber());
+        Assert.assertEquals(TcpConnectionTracker.NOT_DEFINED, report.getStep4CloseRequestSequenceNumber());
+    }
+
+    @Test
+    public void refusedTest() {
+        Assert.assertTrue(send(SERVER, 0, 101, 0, PacketInfo.RST, PacketInfo.ACK));
+        Assert.assertFalse(flows.wasEstablished(flow));
+    }
+
+    @Test
+    public void simultaneousOpenTest() {
+        Assert.assertFalse(send(SERVER, 500, 0, 0, PacketInfo.SYN));
+        Assert.assertEquals(TcpConnectionTracker.State.SIMULTANEOUS_OPEN, flows.getState(flow));
+        Assert.assertFalse(send(SERVER, 500, 101, 0, PacketInfo.SYN, PacketInfo.ACK));
+        Assert.assertFalse(send(CLIENT, 100, 501, 0, PacketInfo.SYN, PacketInfo.ACK));
+        Assert.assertEquals(TcpConnectionTracker.State.ESTABLISHED, flows.getState(flow));
+        Assert.assertEquals(1, summary.tcpConnectionCount);
+    }
+
+    @Test
+    public void handleReuseTest() {
+        completeHandshake();
+        flows.count(flow, true, 1000, 0, 0);
+        flows.free(flow);
+        Assert.assertFalse(flows.isInUse(flow));
+        Assert.assertEquals(0, flows.size());
+
+        PacketInfo syn = segment(PacketInfo.SYN);
+        syn.setIpv4Addresses(0x0A000003, 0x0A000001);
+        syn.setPorts(40001, 22);
+        int reused = flows.allocate(syn);
+        Assert.assertEquals(flow, reused);
+        Assert.assertEquals(TcpConnectionTracker.State.SYN_SENT, flows.getState(reused));
+        Assert.assertEquals(TcpConnectionTracker.NOT_DEFINED, flows.getStep1ClientSequenceNumber(reused));
+        Assert.assertEquals(0, flows.getTotalBytesInFlow(reused));
+        Assert.assertTrue(flows.isFromClient(reused, syn));
+    }
+}
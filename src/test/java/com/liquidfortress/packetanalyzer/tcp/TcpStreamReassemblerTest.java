@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.tcp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TcpStreamReassemblerTest
+ * <p/>
+ * Tests for the ordering, trimming and memory limits of TCP stream reassembly
+ */
+public class TcpStreamReassemblerTest {
+
+    private static final int FLOW = 3;
+
+    private final StringBuilder received = new StringBuilder();
+    private final TcpStreamReassembler.StreamConsumer consumer = (data, offset, length, packetInfo, pcapFileSummary) -> {
+        for (int i = 0; i < length; i++) {
+            received.append((char) data.get(offset + i));
+        }
+    };
+
+    private void add(TcpStreamReassembler streams, long sequenceNumber, String payload) {
+        // the payload sits behind some header bytes, as in a captured packet
+        ByteBuffer buffer = ByteBuffer.wrap(("HDR" + payload).getBytes(StandardCharsets.US_ASCII));
+        streams.add(FLOW, true, sequenceNumber, buffer, 3, payload.length(), null, null, consumer);
+    }
+
+    @Test
+    public void outOfOrderTest() {
+        TcpStreamReassembler streams = new TcpStreamReassembler();
+        streams.start(FLOW, true, 101);
+        add(streams, 106, "world");
+        Assert.assertEquals("", received.toString());
+        Assert.assertEquals(5, streams.getBufferedBytes());
+        add(streams, 101, "hello");
+        Assert.assertEquals("helloworld", received.toString());
+        Assert.assertEquals(0, streams.getBufferedBytes());
+    }
+
+    @Test
+    public void retransmissionTest() {
+        TcpStreamReassembler streams = new TcpStreamReassembler();
+        streams.start(FLOW, true, 1);
+        add(streams, 1, "user");
+        add(streams, 1, "user");      // retransmitted
+        add(streams, 3, "ername");    // overlaps what was already seen
+        add(streams, 13, "word");
+        add(streams, 13, "word");     // retransmitted while out of order
+        add(streams, 9, "pass");
+        Assert.assertEquals("usernamepassword", received.toString());
+        Assert.assertEquals(0, streams.getBufferedBytes());
+    }
+
+    @Test
+    public void sequenceNumberWrapTest() {
+        TcpStreamReassembler streams = new TcpStreamReassembler();
+        streams.start(FLOW, true, 0xFFFFFFFEL);
+        add(streams, 0x00000002L, "cd");
+        add(streams, 0xFFFFFFFEL, "ab..");
+        Assert.assertEquals("ab..cd", received.toString());
+    }
+
+    @Test
+    public void gapSkippedAtStreamLimitTest() {
+        TcpStreamReassembler streams = new TcpStreamReassembler(2 * TcpStreamReassembler.CHUNK_SIZE,
+                TcpStreamReassembler.MAX_BUFFERED_BYTES);
+        streams.start(FLOW, true, 0);
+        add(streams, 10, "a");
+        add(streams, 20, "b");
+        Assert.assertEquals("", received.toString());
+        add(streams, 30, "c"); // the stream is full, so the gap before "a" is given up
+        Assert.assertEquals("a", received.toString());
+        Assert.assertEquals(10, streams.getSkippedBytes());
+        add(streams, 11, "123456789");
+        Assert.assertEquals("a123456789b", received.toString());
+    }
+
+    @Test
+    public void globalLimitAndReleaseTest() {
+        int chunk = TcpStreamReassembler.CHUNK_SIZE;
+        TcpStreamReassembler streams = new TcpStreamReassembler(chunk, chunk);
+        streams.start(FLOW, true, 0);
+        streams.start(FLOW + 1, true, 0);
+        add(streams, 10, "held");
+        ByteBuffer buffer = ByteBuffer.wrap("lost".getBytes(StandardCharsets.US_ASCII));
+        streams.add(FLOW + 1, true, 10, buffer, 0, 4, null, null, consumer);
+        Assert.assertEquals(4, streams.getBufferedBytes());
+        Assert.assertEquals(4, streams.getDroppedBytes());
+
+        // releasing the connection returns its chunk to the pool
+        streams.release(FLOW);
+        Assert.assertFalse(streams.isStarted(FLOW, true));
+        Assert.assertEquals(0, streams.getBufferedBytes());
+        streams.add(FLOW + 1, true, 10, buffer, 0, 4, null, null, consumer);
+        Assert.assertEquals(4, streams.getBufferedBytes());
+        Assert.assertEquals("", received.toString());
+    }
+}
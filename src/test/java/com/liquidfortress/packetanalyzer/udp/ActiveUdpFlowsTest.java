@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.udp;
+
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * ActiveUdpFlowsTest
+ * <p/>
+ * Tests for the per-direction counters and idle expiry of UDP flows
+ */
+public class ActiveUdpFlowsTest {
+
+    private static final long SECOND = 1000000000L;
+
+    private static final int CLIENT = 0x0A000002;
+    private static final int SERVER = 0x0A000001;
+
+    private static PacketInfo datagram(int source, int sourcePort, int destination, int destinationPort, long timestampNanos) {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setTimestampNanos(timestampNanos);
+        packetInfo.setIpv4Addresses(source, destination);
+        packetInfo.setPorts(sourcePort, destinationPort);
+        return packetInfo;
+    }
+
+    @Test
+    public void bothDirectionsTest() {
+        ActiveUdpFlows udpFlows = new ActiveUdpFlows();
+        int flow = udpFlows.count(datagram(CLIENT, 5353, SERVER, 53, 10 * SECOND), 40);
+        Assert.assertEquals(flow, udpFlows.count(datagram(SERVER, 53, CLIENT, 5353, 11 * SECOND), 120));
+        Assert.assertEquals(flow, udpFlows.count(datagram(CLIENT, 5353, SERVER, 53, 12 * SECOND), 40));
+        udpFlows.count(datagram(CLIENT, 5354, SERVER, 53, 12 * SECOND), 40);
+
+        UdpFlowStore flows = udpFlows.getFlows();
+        Assert.assertEquals(2, udpFlows.size());
+        Assert.assertEquals(5353, flows.getClientPort(flow));
+        Assert.assertEquals(2, flows.getClientPackets(flow));
+        Assert.assertEquals(80, flows.getClientBytes(flow));
+        Assert.assertEquals(1, flows.getServerPackets(flow));
+        Assert.assertEquals(120, flows.getServerBytes(flow));
+        Assert.assertEquals(10 * SECOND, flows.getFirstSeenNanos(flow));
+        Assert.assertEquals(12 * SECOND, flows.getLastSeenNanos(flow));
+    }
+
+    @Test
+    public void mergeAddsCountersTest() {
+        ActiveUdpFlows a = new ActiveUdpFlows();
+        int flow = a.count(datagram(CLIENT, 5353, SERVER, 53, 10 * SECOND), 40);
+        ActiveUdpFlows b = new ActiveUdpFlows();
+        // b first saw the flow from the server end
+        b.count(datagram(SERVER, 53, CLIENT, 5353, 5 * SECOND), 120);
+        b.count(datagram(CLIENT, 5353, SERVER, 53, 20 * SECOND), 40);
+        b.count(datagram(CLIENT, 6000, SERVER, 53, 20 * SECOND), 40);
+        a.merge(b);
+
+        UdpFlowStore flows = a.getFlows();
+        Assert.assertEquals(2, a.size());
+        Assert.assertEquals(2, flows.getClientPackets(flow));
+        Assert.assertEquals(80, flows.getClientBytes(flow));
+        Assert.assertEquals(1, flows.getServerPackets(flow));
+        Assert.assertEquals(120, flows.getServerBytes(flow));
+        Assert.assertEquals(5 * SECOND, flows.getFirstSeenNanos(flow));
+        Assert.assertEquals(20 * SECOND, flows.getLastSeenNanos(flow));
+    }
+
+    @Test
+    public void unansweredExpiresSoonerTest() {
+        long start = 1500000000L * SECOND;
+        ActiveUdpFlows udpFlows = new ActiveUdpFlows();
+        int answered = udpFlows.count(datagram(CLIENT, 5353, SERVER, 53, start), 40);
+        udpFlows.count(datagram(SERVER, 53, CLIENT, 5353, start + SECOND), 120);
+        udpFlows.count(datagram(CLIENT, 514, SERVER, 514, start), 200);
+
+        // any datagram advances the clock
+        udpFlows.count(datagram(CLIENT, 7000, SERVER, 7000, start + ActiveUdpFlows.UNANSWERED_TIMEOUT + 2 * SECOND), 40);
+        Assert.assertEquals(ActiveUdpFlows.NO_FLOW, udpFlows.get(datagram(CLIENT, 514, SERVER, 514, start)));
+        Assert.assertEquals(answered, udpFlows.get(datagram(CLIENT, 5353, SERVER, 53, start)));
+        Assert.assertEquals(1, udpFlows.getExpiredFlowCount());
+
+        udpFlows.expireIdle(start + ActiveUdpFlows.ANSWERED_TIMEOUT + 3 * SECOND);
+        Assert.assertEquals(ActiveUdpFlows.NO_FLOW, udpFlows.get(datagram(CLIENT, 5353, SERVER, 53, start)));
+        Assert.assertEquals(3, udpFlows.getExpiredFlowCount());
+        Assert.assertEquals(0, udpFlows.size());
+    }
+}
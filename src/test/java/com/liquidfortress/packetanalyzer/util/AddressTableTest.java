@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * AddressTableTest
+ * <p/>
+ * Tests for AddressTable
+ */
+public class AddressTableTest {
+
+    private static final long MAPPED = 0x0000FFFF00000000L;
+
+    @Test
+    public void putGetRemoveTest() {
+        AddressTable table = new AddressTable();
+        Assert.assertEquals(AddressTable.NO_VALUE, table.put(0, MAPPED | 0x0A000001, 3));
+        Assert.assertEquals(3, table.put(0, MAPPED | 0x0A000001, 4));
+        Assert.assertEquals(4, table.get(0, MAPPED | 0x0A000001));
+        // the IPv6 address with the same low bits is a different key
+        Assert.assertEquals(AddressTable.NO_VALUE, table.get(0x20010DB800000000L, MAPPED | 0x0A000001));
+        Assert.assertEquals(4, table.remove(0, MAPPED | 0x0A000001));
+        Assert.assertEquals(0, table.size());
+    }
+
+    @Test
+    public void portTest() {
+        AddressTable table = new AddressTable();
+        table.put(0, MAPPED | 0xC0A8011E, 443, 1);
+        table.put(0, MAPPED | 0xC0A8011E, 80, 2);
+        Assert.assertEquals(1, table.get(0, MAPPED | 0xC0A8011E, 443));
+        Assert.assertEquals(2, table.get(0, MAPPED | 0xC0A8011E, 80));
+        // the address without a port is yet another key
+        Assert.assertEquals(AddressTable.NO_VALUE, table.get(0, MAPPED | 0xC0A8011E));
+        Assert.assertEquals(1, table.remove(0, MAPPED | 0xC0A8011E, 443));
+        Assert.assertEquals(2, table.get(0, MAPPED | 0xC0A8011E, 80));
+        Assert.assertEquals(1, table.size());
+    }
+
+    @Test
+    public void growAndRemoveTest() {
+        AddressTable table = new AddressTable();
+        int addresses = 100000;
+        for (int i = 0; i < addresses; i++) {
+            table.put(0x20010DB800000000L, i, i);
+        }
+        Assert.assertEquals(addresses, table.size());
+        for (int i = 0; i < addresses; i += 2) {
+            Assert.assertEquals(i, table.remove(0x20010DB800000000L, i));
+        }
+        Assert.assertEquals(addresses / 2, table.size());
+        for (int i = 0; i < addresses; i++) {
+            Assert.assertEquals((i % 2 == 0) ? AddressTable.NO_VALUE : i, table.get(0x20010DB800000000L, i));
+        }
+    }
+}
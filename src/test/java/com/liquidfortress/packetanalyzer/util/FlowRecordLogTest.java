@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import com.liquidfortress.packetanalyzer.decoder.PacketDecoder;
+import com.liquidfortress.packetanalyzer.pcap_file.PacketInfo;
+import com.liquidfortress.packetanalyzer.udp.UdpFlowStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * FlowRecordLogTest
+ * <p/>
+ * Tests for the binary flow record export
+ */
+public class FlowRecordLogTest {
+
+    private static final long SECOND = 1000000000L;
+
+    private static PacketInfo datagram(int source, int sourcePort, int destination, int destinationPort) {
+        PacketInfo packetInfo = new PacketInfo();
+        packetInfo.setTimestampNanos(7 * SECOND);
+        packetInfo.setIpv4Addresses(source, destination);
+        packetInfo.setPorts(sourcePort, destinationPort);
+        return packetInfo;
+    }
+
+    @Test
+    public void exportTest() throws Exception {
+        File directory = Files.createTempDirectory("flow-records").toFile();
+        directory.deleteOnExit();
+        UdpFlowStore flows = new UdpFlowStore();
+        int first = flows.allocate(datagram(0x0A000002, 5353, 0x0A000001, 53));
+        flows.count(first, true, 40, 0, 7 * SECOND);
+        flows.count(first, false, 120, PacketDecoder.TCP_ACK, 9 * SECOND);
+        int second = flows.allocate(datagram(0x0A000003, 40000, 0x0A000001, 53));
+        flows.count(second, true, 50, 0, 7 * SECOND);
+
+        FlowRecordLog a = new FlowRecordLog(directory);
+        a.add(flows, first);
+        FlowRecordLog b = new FlowRecordLog(directory);
+        b.add(flows, second);
+        a.merge(b);
+        File export = new File(directory, "flows.bin");
+        export.deleteOnExit();
+        a.writeTo(export);
+
+        Assert.assertEquals(FlowRecordLog.HEADER_LENGTH + 2 * FlowRecordLog.RECORD_LENGTH, export.length());
+        try (FileChannel channel = FileChannel.open(export.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[FlowRecordLog.MAGIC.length];
+            mapped.get(magic);
+            Assert.assertArrayEquals(FlowRecordLog.MAGIC, magic);
+            Assert.assertEquals(FlowRecordLog.RECORD_LENGTH, mapped.getShort(12));
+
+            int offset = FlowRecordLog.HEADER_LENGTH;
+            Assert.assertEquals(0x0000FFFF0A000002L, mapped.getLong(offset + FlowRecordLog.CLIENT_ADDRESS_LOW));
+            Assert.assertEquals(5353, mapped.getShort(offset + FlowRecordLog.CLIENT_PORT) & 0xFFFF);
+            Assert.assertEquals(53, mapped.getShort(offset + FlowRecordLog.SERVER_PORT) & 0xFFFF);
+            Assert.assertEquals(UdpFlowStore.PROTOCOL_UDP, mapped.get(offset + FlowRecordLog.IP_PROTOCOL));
+            Assert.assertEquals(PacketInfo.IP_VERSION_4, mapped.get(offset + FlowRecordLog.IP_VERSION));
+            Assert.assertEquals(PacketDecoder.TCP_ACK, mapped.get(offset + FlowRecordLog.SERVER_TCP_FLAGS));
+            Assert.assertEquals(7 * SECOND, mapped.getLong(offset + FlowRecordLog.FIRST_SEEN));
+            Assert.assertEquals(9 * SECOND, mapped.getLong(offset + FlowRecordLog.LAST_SEEN));
+            Assert.assertEquals(1, mapped.getLong(offset + FlowRecordLog.CLIENT_PACKETS));
+            Assert.assertEquals(120, mapped.getLong(offset + FlowRecordLog.SERVER_BYTES));
+
+            offset += FlowRecordLog.RECORD_LENGTH;
+            Assert.assertEquals(40000, mapped.getShort(offset + FlowRecordLog.CLIENT_PORT) & 0xFFFF);
+            Assert.assertEquals(50, mapped.getLong(offset + FlowRecordLog.CLIENT_BYTES));
+            Assert.assertEquals(0, mapped.getLong(offset + FlowRecordLog.SERVER_PACKETS));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * FlowTableTest
+ * <p/>
+ * Tests for FlowTable
+ */
+public class FlowTableTest {
+
+    private static final int TCP = 6;
+    private static final int UDP = 17;
+    private static final long MAPPED = 0x0000FFFF00000000L;
+
+    @Test
+    public void bothDirectionsTest() {
+        FlowTable table = new FlowTable();
+        Assert.assertEquals(FlowTable.NO_VALUE, table.put(0, MAPPED | 0x0A000002, 40000, 0, MAPPED | 0x0A000001, 22, TCP, 7));
+        Assert.assertEquals(7, table.get(0, MAPPED | 0x0A000002, 40000, 0, MAPPED | 0x0A000001, 22, TCP));
+        Assert.assertEquals(7, table.get(0, MAPPED | 0x0A000001, 22, 0, MAPPED | 0x0A000002, 40000, TCP));
+        // same endpoints, other protocol or swapped ports are different flows
+        Assert.assertEquals(FlowTable.NO_VALUE, table.get(0, MAPPED | 0x0A000002, 40000, 0, MAPPED | 0x0A000001, 22, UDP));
+        Assert.assertEquals(FlowTable.NO_VALUE, table.get(0, MAPPED | 0x0A000002, 22, 0, MAPPED | 0x0A000001, 40000, TCP));
+        Assert.assertEquals(1, table.size());
+    }
+
+    @Test
+    public void highPortsTest() {
+        FlowTable table = new FlowTable();
+        // ports of 32768 and above must not spill into the protocol
+        Assert.assertEquals(FlowTable.NO_VALUE, table.put(0, MAPPED | 0x0A000001, 50000, 0, MAPPED | 0x0A000002, 60000, TCP, 7));
+        Assert.assertEquals(FlowTable.NO_VALUE, table.get(0, MAPPED | 0x0A000001, 50000, 0, MAPPED | 0x0A000002, 60000, UDP));
+        Assert.assertEquals(FlowTable.NO_VALUE, table.put(0, MAPPED | 0x0A000002, 60000, 0, MAPPED | 0x0A000001, 50000, UDP, 8));
+        Assert.assertEquals(7, table.get(0, MAPPED | 0x0A000002, 60000, 0, MAPPED | 0x0A000001, 50000, TCP));
+        Assert.assertEquals(8, table.get(0, MAPPED | 0x0A000001, 50000, 0, MAPPED | 0x0A000002, 60000, UDP));
+        Assert.assertEquals(2, table.size());
+    }
+
+    @Test
+    public void growAndRemoveTest() {
+        FlowTable table = new FlowTable();
+        int flows = 100000;
+        for (int i = 0; i < flows; i++) {
+            table.put(0x20010DB800000000L, i, i & 0xFFFF, 0x20010DB800000000L, 1, 443, TCP, i);
+        }
+        Assert.assertEquals(flows, table.size());
+        // removing every other flow must not hide the ones that probed past it
+        for (int i = 0; i < flows; i += 2) {
+            Assert.assertEquals(i, table.remove(0x20010DB800000000L, 1, 443, 0x20010DB800000000L, i, i & 0xFFFF, TCP));
+        }
+        Assert.assertEquals(flows / 2, table.size());
+        for (int i = 0; i < flows; i++) {
+            int value = table.get(0x20010DB800000000L, i, i & 0xFFFF, 0x20010DB800000000L, 1, 443, TCP);
+            Assert.assertEquals((i % 2 == 0) ? FlowTable.NO_VALUE : i, value);
+        }
+    }
+
+    @Test
+    public void spreadTest() {
+        FlowTable table = new FlowTable();
+        // flipping the same bits of an address and its port must not land flows on the same slots
+        int flows = 65536;
+        for (int i = 0; i < flows; i++) {
+            table.put(0, MAPPED | (0x0A000000 ^ i), 40000 ^ i, 0, MAPPED | 0xC0A80101, 80, TCP, i);
+        }
+        Assert.assertEquals(flows, table.size());
+        Assert.assertTrue("probe length " + table.getMaxProbeLength(), table.getMaxProbeLength() < 64);
+        for (int i = 0; i < flows; i += 4096) {
+            Assert.assertEquals(i, table.get(0, MAPPED | 0xC0A80101, 80, 0, MAPPED | (0x0A000000 ^ i), 40000 ^ i, TCP));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * IntBitmapTest
+ * <p/>
+ * Tests for IntBitmap
+ */
+public class IntBitmapTest {
+
+    @Test
+    public void sparseTest() {
+        IntBitmap bitmap = new IntBitmap();
+        Assert.assertTrue(bitmap.add(0xC0A80101));  // 192.168.1.1
+        Assert.assertTrue(bitmap.add(0x0A000001));  // 10.0.0.1
+        Assert.assertFalse(bitmap.add(0xC0A80101));
+        Assert.assertTrue(bitmap.add(0xFFFFFFFF));
+        Assert.assertEquals(3, bitmap.cardinality());
+        Assert.assertTrue(bitmap.contains(0x0A000001));
+        Assert.assertTrue(bitmap.contains(0xFFFFFFFF));
+        Assert.assertFalse(bitmap.contains(0x0A000002));
+        bitmap.clear();
+        Assert.assertEquals(0, bitmap.cardinality());
+        Assert.assertFalse(bitmap.contains(0x0A000001));
+    }
+
+    @Test
+    public void denseTest() {
+        // a whole /16 turns its container into a bitmap
+        IntBitmap bitmap = new IntBitmap();
+        for (int host = 0; host < 65536; host += 2) {
+            Assert.assertTrue(bitmap.add(0x0A010000 | host));
+        }
+        for (int host = 0; host < 65536; host++) {
+            Assert.assertEquals(host % 2 != 0, bitmap.add(0x0A010000 | host));
+        }
+        Assert.assertEquals(65536, bitmap.cardinality());
+        Assert.assertTrue(bitmap.contains(0x0A01FFFF));
+        Assert.assertFalse(bitmap.contains(0x0A020000));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * IntCountMapTest
+ * <p/>
+ * Tests for IntCountMap
+ */
+public class IntCountMapTest {
+
+    @Test
+    public void countTest() {
+        IntCountMap counts = new IntCountMap();
+        Assert.assertEquals(1, counts.increment(80));
+        Assert.assertEquals(2, counts.increment(80));
+        Assert.assertEquals(1, counts.increment(443));
+        Assert.assertEquals(2, counts.size());
+        Assert.assertEquals(1, counts.decrement(80));
+        Assert.assertEquals(0, counts.decrement(443));
+        Assert.assertEquals(1, counts.size());
+        Assert.assertEquals(0, counts.get(443));
+        Assert.assertEquals(1, counts.get(80));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void decrementMissingKeyTest() {
+        new IntCountMap().decrement(22);
+    }
+
+    @Test
+    public void growAndRemoveTest() {
+        IntCountMap counts = new IntCountMap();
+        for (int port = 0; port < 65536; port++) {
+            counts.increment(port);
+        }
+        Assert.assertEquals(65536, counts.size());
+        // removing every other port must not hide the ones that probed past it
+        for (int port = 0; port < 65536; port += 2) {
+            Assert.assertEquals(0, counts.decrement(port));
+        }
+        Assert.assertEquals(32768, counts.size());
+        for (int port = 0; port < 65536; port++) {
+            Assert.assertEquals((port % 2 == 0) ? 0 : 1, counts.get(port));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+/**
+ * KeyedWindowsTest
+ * <p/>
+ * Tests for KeyedWindows
+ */
+public class KeyedWindowsTest {
+    private static final long SECOND = 1000000000L;
+    private static final long HIGH = 0L;
+    private static final long LOW = 0xffff0a000001L; // 10.0.0.1
+
+    @Test
+    public void slidingTest() {
+        KeyedWindows windows = new KeyedWindows(KeyedWindows.Kind.SLIDING, 10 * SECOND, item -> item, null);
+        int key = windows.add(HIGH, LOW, 0, SECOND, 5, 100, 0, 0, null);
+        windows.add(HIGH, LOW, 0, 2 * SECOND, 5, 200, 0, 0, null);
+        windows.add(HIGH, LOW, 0, 3 * SECOND, 7, 300, 0, 0, null);
+        Assert.assertEquals(3, windows.getCount(key));
+        Assert.assertEquals(600, windows.getSum(key));
+        Assert.assertEquals(2, windows.getDistinctCount(key));
+        Assert.assertEquals(12, windows.getDistinctWeight(key));
+        Assert.assertEquals(SECOND, windows.getStartTimestampNanos(key));
+        // the first two events slide out, taking item 5 with them
+        Assert.assertEquals(key, windows.add(HIGH, LOW, 0, 12 * SECOND, 9, 400, 0, 0, null));
+        Assert.assertEquals(2, windows.getCount(key));
+        Assert.assertEquals(700, windows.getSum(key));
+        Assert.assertEquals(2, windows.getDistinctCount(key));
+        Assert.assertEquals(16, windows.getDistinctWeight(key));
+        Assert.assertEquals(3 * SECOND, windows.getStartTimestampNanos(key));
+        Assert.assertEquals(12 * SECOND, windows.getLastTimestampNanos(key));
+        Assert.assertEquals(2, windows.getFirstSequence(key));
+        Assert.assertEquals(4, windows.getEndSequence(key));
+    }
+
+    @Test
+    public void forEachEventTest() {
+        KeyedWindows windows = new KeyedWindows(KeyedWindows.Kind.SLIDING, 10 * SECOND);
+        int key = KeyedWindows.NO_KEY;
+        for (int i = 0; i < 100; i++) { // enough events to grow the ring
+            key = windows.add(HIGH, LOW, 80, i * SECOND / 100, i, i, HIGH, LOW + i, null);
+        }
+        ArrayList<Long> values = new ArrayList<>();
+        windows.forEachEvent(key, 95, (timestampNanos, item, value, peerHigh, peerLow) -> {
+            Assert.assertEquals(LOW + item, peerLow);
+            values.add(value);
+        });
+        Assert.assertEquals(5, values.size());
+        Assert.assertEquals(95L, (long) values.get(0));
+        Assert.assertEquals(99L, (long) values.get(4));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void forEachEventTumblingTest() {
+        KeyedWindows windows = new KeyedWindows(KeyedWindows.Kind.TUMBLING, SECOND);
+        int key = windows.add(HIGH, LOW, 0, 0, 1, 1, 0, 0, null);
+        windows.forEachEvent(key, 0, (timestampNanos, item, value, peerHigh, peerLow) -> {
+        });
+    }
+
+    @Test
+    public void tumblingTest() {
+        ArrayList<Integer> closedCounts = new ArrayList<>();
+        KeyedWindows[] holder = new KeyedWindows[1];
+        holder[0] = new KeyedWindows(KeyedWindows.Kind.TUMBLING, 10 * SECOND, null,
+                (key, expiring, pcapFileSummary) -> {
+                    Assert.assertFalse(expiring);
+                    closedCounts.add(holder[0].getDistinctCount(key));
+                });
+        KeyedWindows windows = holder[0];
+        int key = windows.add(HIGH, LOW, 0, 0, 1, 0, 0, 0, null);
+        windows.add(HIGH, LOW, 0, 4 * SECOND, 2, 0, 0, 0, null);
+        windows.add(HIGH, LOW, 0, 9 * SECOND, 2, 0, 0, 0, null);
+        Assert.assertEquals(3, windows.getCount(key));
+        Assert.assertEquals(2, windows.getDistinctCount(key));
+        Assert.assertTrue(closedCounts.isEmpty());
+        // the window ends ten seconds after its first event and the next one starts at the new event
+        windows.add(HIGH, LOW, 0, 11 * SECOND, 3, 0, 0, 0, null);
+        Assert.assertEquals(1, closedCounts.size());
+        Assert.assertEquals(2, (int) closedCounts.get(0));
+        Assert.assertEquals(1, windows.getCount(key));
+        Assert.assertEquals(11 * SECOND, windows.getStartTimestampNanos(key));
+    }
+
+    @Test
+    public void expireTest() {
+        ArrayList<Long> expired = new ArrayList<>();
+        KeyedWindows[] holder = new KeyedWindows[1];
+        holder[0] = new KeyedWindows(KeyedWindows.Kind.SLIDING, 10 * SECOND, null,
+                (key, expiring, pcapFileSummary) -> {
+                    Assert.assertTrue(expiring);
+                    expired.add(holder[0].getKeyLow(key));
+                });
+        KeyedWindows windows = holder[0];
+        windows.add(HIGH, LOW, 0, 0, 1, 0, 0, 0, null);
+        windows.add(HIGH, LOW + 1, 0, 5 * SECOND, 1, 0, 0, 0, null);
+        // a key stays while its events keep coming
+        int key = windows.add(HIGH, LOW, 0, 9 * SECOND, 2, 0, 0, 0, null);
+        Assert.assertEquals(2, windows.size());
+        windows.expire(14 * SECOND, null);
+        Assert.assertTrue(expired.isEmpty());
+        Assert.assertEquals(2, windows.getCount(key));
+        // keys go once their last event is a whole length old, oldest first
+        windows.expire(15 * SECOND, null);
+        Assert.assertEquals(1, expired.size());
+        Assert.assertEquals(LOW + 1, (long) expired.get(0));
+        windows.expire(19 * SECOND, null);
+        Assert.assertEquals(2, expired.size());
+        Assert.assertEquals(LOW, (long) expired.get(1));
+        Assert.assertEquals(KeyedWindows.NO_KEY, windows.find(HIGH, LOW, 0));
+        Assert.assertEquals(0, windows.size());
+    }
+
+    @Test
+    public void maxEventsTest() {
+        KeyedWindows windows = new KeyedWindows(KeyedWindows.Kind.SLIDING, 10 * SECOND, 3, null, null);
+        int key = KeyedWindows.NO_KEY;
+        for (int i = 0; i < 5; i++) {
+            key = windows.add(HIGH, LOW, 0, i * SECOND, i, i, 0, 0, null);
+        }
+        // the two oldest events made room for the newest ones
+        Assert.assertEquals(3, windows.getCount(key));
+        Assert.assertEquals(9, windows.getSum(key));
+        Assert.assertEquals(3, windows.getDistinctCount(key));
+        Assert.assertEquals(2 * SECOND, windows.getStartTimestampNanos(key));
+        Assert.assertEquals(2, windows.getFirstSequence(key));
+        Assert.assertEquals(2, windows.getDroppedEventCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void lengthTest() {
+        new KeyedWindows(KeyedWindows.Kind.SLIDING, 0);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * RecencyListTest
+ * <p/>
+ * Tests for RecencyList
+ */
+public class RecencyListTest {
+
+    @Test
+    public void orderTest() {
+        RecencyList list = new RecencyList();
+        Assert.assertEquals(RecencyList.NONE, list.getOldest());
+        int first = list.allocate();
+        int second = list.allocate();
+        int third = list.allocate();
+        Assert.assertEquals(first, list.getOldest());
+        list.touch(first);
+        Assert.assertEquals(second, list.getOldest());
+        list.release(second);
+        Assert.assertEquals(third, list.getOldest());
+        Assert.assertEquals(2, list.size());
+        // released handles are handed out again
+        Assert.assertEquals(second, list.allocate());
+        list.release(third);
+        list.release(first);
+        Assert.assertEquals(second, list.getOldest());
+    }
+
+    @Test
+    public void growTest() {
+        RecencyList list = new RecencyList();
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i, list.allocate());
+        }
+        Assert.assertTrue(list.getCapacity() >= 1000);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(i, list.getOldest());
+            list.release(i);
+        }
+        Assert.assertEquals(0, list.size());
+        Assert.assertEquals(RecencyList.NONE, list.getOldest());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * SlidingHyperLogLogTest
+ * <p/>
+ * Tests for SlidingHyperLogLog
+ */
+public class SlidingHyperLogLogTest {
+    private static final long MILLI = 1000000L;
+
+    private static SlidingHyperLogLog newSketches() {
+        SlidingHyperLogLog sketches = new SlidingHyperLogLog(8, 6, 100 * MILLI); // a 600 ms window
+        sketches.ensureCapacity(2);
+        return sketches;
+    }
+
+    @Test
+    public void exactTest() {
+        SlidingHyperLogLog sketches = newSketches();
+        for (int i = 0; i < 20; i++) {
+            sketches.add(0, FlowHash.mix(i % 10), i * MILLI);
+        }
+        sketches.add(1, FlowHash.mix(99), 0);
+        Assert.assertTrue(sketches.isExact(0));
+        Assert.assertEquals(10, sketches.estimate(0, 20 * MILLI));
+        Assert.assertEquals(1, sketches.estimate(1, 20 * MILLI));
+        // hashes last seen a whole window ago no longer count, and their room is reused
+        Assert.assertEquals(5, sketches.estimate(0, 614 * MILLI));
+        for (int i = 0; i < SlidingHyperLogLog.EXACT_LIMIT; i++) {
+            sketches.add(0, FlowHash.mix(1000 + i), 700 * MILLI);
+        }
+        Assert.assertTrue(sketches.isExact(0));
+        Assert.assertEquals(SlidingHyperLogLog.EXACT_LIMIT, sketches.estimate(0, 700 * MILLI));
+    }
+
+    @Test
+    public void estimateTest() {
+        SlidingHyperLogLog sketches = newSketches();
+        int distinct = 100000;
+        for (int i = 0; i < distinct; i++) {
+            sketches.add(0, FlowHash.mix(i), i * 500L); // all within 50 ms
+        }
+        Assert.assertFalse(sketches.isExact(0));
+        long estimate = sketches.estimate(0, 50 * MILLI);
+        Assert.assertEquals(distinct, estimate, 3 * sketches.getStandardError() * distinct);
+        // the buckets that held them slide out of the window
+        Assert.assertEquals(0, sketches.estimate(0, 700 * MILLI));
+    }
+
+    @Test
+    public void incrementalMergeTest() {
+        SlidingHyperLogLog sketches = newSketches();
+        for (int i = 0; i < 20000; i++) {
+            long timestampNanos = i * 50000L; // 1 s, so buckets keep sliding out
+            sketches.add(0, FlowHash.mix(i % 5000), timestampNanos);
+            // estimating after every hash keeps the merged registers up to date
+            long estimate = sketches.estimate(0, timestampNanos);
+            if (i % 997 == 0) {
+                // the same hashes, merged only once
+                SlidingHyperLogLog reference = newSketches();
+                for (int j = 0; j <= i; j++) {
+                    reference.add(0, FlowHash.mix(j % 5000), j * 50000L);
+                }
+                Assert.assertEquals(reference.estimate(0, timestampNanos), estimate);
+            }
+        }
+    }
+
+    @Test
+    public void promotionKeepsWindowTest() {
+        SlidingHyperLogLog sketches = newSketches();
+        for (int i = 0; i <= SlidingHyperLogLog.EXACT_LIMIT; i++) {
+            sketches.add(0, FlowHash.mix(i), 200 * MILLI + i);
+        }
+        Assert.assertFalse(sketches.isExact(0));
+        Assert.assertEquals(SlidingHyperLogLog.EXACT_LIMIT + 1, sketches.estimate(0, 300 * MILLI), 2);
+        sketches.clear(0);
+        Assert.assertTrue(sketches.isExact(0));
+        Assert.assertEquals(0, sketches.estimate(0, 300 * MILLI));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void precisionTest() {
+        new SlidingHyperLogLog(3, 6, MILLI);
+    }
+}
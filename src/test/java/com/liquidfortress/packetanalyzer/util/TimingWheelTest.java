@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2017.  Richard Scott McNew.
+ *
+ * This file is part of Liquid Fortress Packet Analyzer.
+ *
+ * Liquid Fortress Packet Analyzer is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Liquid Fortress Packet Analyzer is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Liquid Fortress Packet Analyzer.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.liquidfortress.packetanalyzer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * TimingWheelTest
+ * <p/>
+ * Tests for TimingWheel
+ */
+public class TimingWheelTest {
+
+    private static final long START = 1500000000L << 20; // ticks of 2^20 nanoseconds
+
+    @Test
+    public void firesInDeadlineOrderTest() {
+        TimingWheel wheel = new TimingWheel(0);
+        wheel.advance(START, (int handle) -> Assert.fail());
+        Random random = new Random(42);
+        int timers = 10000;
+        long[] deadlines = new long[timers];
+        boolean[] fired = new boolean[timers];
+        for (int handle = 0; handle < timers; handle++) {
+            // spread over every level, including past the reach of the top level
+            deadlines[handle] = START + 1 + (random.nextLong() & ((1L << random.nextInt(27)) - 1));
+            wheel.schedule(handle, deadlines[handle]);
+        }
+        Assert.assertEquals(timers, wheel.size());
+        long now = START;
+        while (wheel.size() > 0) {
+            long previous = now;
+            now += 1 + random.nextInt(5000);
+            long current = now;
+            wheel.advance(now, (int handle) -> {
+                Assert.assertTrue("fired early", deadlines[handle] <= current);
+                Assert.assertTrue("fired late", deadlines[handle] > previous);
+                Assert.assertFalse("fired twice", fired[handle]);
+                fired[handle] = true;
+            });
+        }
+        for (boolean timerFired : fired) {
+            Assert.assertTrue(timerFired);
+        }
+    }
+
+    @Test
+    public void cancelAndRescheduleTest() {
+        TimingWheel wheel = new TimingWheel(30);
+        long second = 1L << 30;
+        long start = 1500000000L * second; // on a tick boundary
+        wheel.advance(start, (int handle) -> Assert.fail());
+        wheel.schedule(0, start + 10 * second);
+        wheel.schedule(1, start + 10 * second);
+        wheel.cancel(0);
+        wheel.schedule(1, start + 100 * second);
+        Assert.assertFalse(wheel.isScheduled(0));
+        Assert.assertEquals(1, wheel.size());
+        List<Integer> fired = new ArrayList<>();
+        wheel.advance(start + 99 * second, fired::add);
+        Assert.assertTrue(fired.isEmpty());
+        wheel.advance(start + 100 * second, fired::add);
+        Assert.assertEquals(1, fired.size());
+        Assert.assertEquals(Integer.valueOf(1), fired.get(0));
+        Assert.assertEquals(0, wheel.size());
+    }
+}